@@ -0,0 +1,85 @@
+package com.silkroad.db.deploy.Benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.silkroad.db.deploy.Migrator;
+import com.silkroad.db.deploy.Types.ChangelogManifest;
+import com.silkroad.db.deploy.Utils.ChangelogIndex;
+
+import liquibase.changelog.ChangeLogParameters;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.parser.ChangeLogParserFactory;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * Discovery of {@code db/changelog-root.xml} (the root file plus its
+ * {@code includeAll} of {@code db/migration}) and the checksum Liquibase
+ * computes for every changeset when it validates the changelog against
+ * {@code DATABASECHANGELOG}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChangelogBenchmark {
+
+    private ResourceAccessor resourceAccessor;
+    private DatabaseChangeLog changeLog;
+    private ChangelogManifest manifest;
+
+    @Setup
+    public void setup() throws Exception {
+        this.resourceAccessor = new ClassLoaderResourceAccessor();
+        this.changeLog = parse(this.resourceAccessor);
+        this.manifest = ChangelogIndex.index(Migrator.CHANGELOG_FILE, this.changeLog);
+    }
+
+    @Benchmark
+    public DatabaseChangeLog parseChangelog() throws Exception {
+        return parse(this.resourceAccessor);
+    }
+
+    @Benchmark
+    public void computeChecksums(Blackhole blackhole) {
+        for (ChangeSet changeSet : this.changeLog.getChangeSets()) {
+            blackhole.consume(changeSet.generateCheckSum());
+        }
+    }
+
+    /**
+     * What a migration run pays before talking to the database: a fresh
+     * resource accessor, the parse and every checksum.
+     */
+    @Benchmark
+    public void parseAndComputeChecksums(Blackhole blackhole) throws Exception {
+        DatabaseChangeLog changeLog = parse(new ClassLoaderResourceAccessor());
+        for (ChangeSet changeSet : changeLog.getChangeSets()) {
+            blackhole.consume(changeSet.generateCheckSum());
+        }
+    }
+
+    /**
+     * The same changelog rebuilt from the build-time manifest, see
+     * {@link ChangelogIndex}; checksums come precomputed.
+     */
+    @Benchmark
+    public void loadIndexedChangelog(Blackhole blackhole) throws Exception {
+        DatabaseChangeLog changeLog = ChangelogIndex.toDatabaseChangeLog(this.manifest);
+        for (ChangeSet changeSet : changeLog.getChangeSets()) {
+            blackhole.consume(changeSet.generateCheckSum());
+        }
+    }
+
+    private static DatabaseChangeLog parse(ResourceAccessor resourceAccessor) throws Exception {
+        return ChangeLogParserFactory.getInstance()
+                .getParser(Migrator.CHANGELOG_FILE, resourceAccessor)
+                .parse(Migrator.CHANGELOG_FILE, new ChangeLogParameters(), resourceAccessor);
+    }
+}
@@ -0,0 +1,69 @@
+package com.silkroad.db.deploy.Benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.silkroad.db.deploy.Exceptions.ValidationException;
+import com.silkroad.db.deploy.Migrator;
+import com.silkroad.db.deploy.Sql.SqlTemplate;
+import com.silkroad.db.deploy.Types.*;
+
+/**
+ * Compiling and rendering {@code db/initialize-db.sql.template}, as done by
+ * {@link Migrator#runInitializationScript()} before the script is executed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InitTemplateBenchmark {
+
+    private String templateText;
+    private SqlTemplate template;
+    private RdsAppSecret rdsAppSecret;
+    private Map<String, String> values;
+
+    @Setup
+    public void setup() throws IOException, ValidationException {
+        this.template = SqlTemplate.forResource(Migrator.INIT_TEMPLATE_FILE);
+        try (InputStream is = Migrator.class.getClassLoader().getResourceAsStream(Migrator.INIT_TEMPLATE_FILE)) {
+            this.templateText = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        this.rdsAppSecret = new RdsAppSecret();
+        this.rdsAppSecret.setDatabaseName("tenant_0001");
+        this.rdsAppSecret.setUsername("tenant_0001_app");
+        this.rdsAppSecret.setPassword("p@ss'w0rd\\with-escapes");
+
+        this.values = new HashMap<String, String>();
+        this.values.put("dbname", this.rdsAppSecret.getDatabaseName());
+        this.values.put("dbusername", this.rdsAppSecret.getUsername());
+        this.values.put("dbpassword", this.rdsAppSecret.getPassword());
+    }
+
+    @Benchmark
+    public SqlTemplate compileTemplate() throws ValidationException {
+        return SqlTemplate.compile(Migrator.INIT_TEMPLATE_FILE, this.templateText);
+    }
+
+    @Benchmark
+    public String renderTemplate() throws ValidationException {
+        return this.template.render(this.values);
+    }
+
+    /**
+     * What each tenant pays: the cached template lookup and the render.
+     */
+    @Benchmark
+    public String renderInitializationScript() throws IOException, ValidationException {
+        return Migrator.renderInitializationScript(this.rdsAppSecret);
+    }
+}
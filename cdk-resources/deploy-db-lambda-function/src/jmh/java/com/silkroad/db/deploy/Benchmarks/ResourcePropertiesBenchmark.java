@@ -0,0 +1,54 @@
+package com.silkroad.db.deploy.Benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.silkroad.db.deploy.Types.*;
+import com.silkroad.db.deploy.Utils.*;
+
+/**
+ * Reads the properties {@link com.silkroad.db.deploy.LambdaHandler} reads
+ * from a CloudFormation custom resource event. CloudFormation delivers every
+ * scalar as a string, so the map below mirrors a real event.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResourcePropertiesBenchmark {
+
+    private Map<String, Object> event;
+
+    @Setup
+    public void setup() {
+        Map<String, Object> rdsHost = new HashMap<String, Object>();
+        rdsHost.put("hostname", "tenant-db.cluster-abcdefghijkl.us-east-1.rds.amazonaws.com");
+        rdsHost.put("port", "3306");
+
+        this.event = new HashMap<String, Object>();
+        this.event.put("ServiceToken", "arn:aws:lambda:us-east-1:123456789012:function:deploy-db");
+        this.event.put("region", "us-east-1");
+        this.event.put("rdsHost", rdsHost);
+        this.event.put("rdsAdminSecretArn", "arn:aws:secretsmanager:us-east-1:123456789012:secret:admin-AbCdEf");
+        this.event.put("rdsAppSecretArn", "arn:aws:secretsmanager:us-east-1:123456789012:secret:app-GhIjKl");
+        this.event.put("isDebug", "false");
+    }
+
+    /**
+     * One handler invocation: every property the create/update path reads.
+     */
+    @Benchmark
+    public DeploymentProperties bindProperties() {
+        return ResourcePropertiesBinder.bind(this.event);
+    }
+
+    @Benchmark
+    public DeploymentProperties bindEmptyProperties() {
+        return ResourcePropertiesBinder.bind(new HashMap<String, Object>());
+    }
+}
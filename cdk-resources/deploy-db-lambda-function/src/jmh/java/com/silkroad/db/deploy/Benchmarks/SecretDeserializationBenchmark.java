@@ -0,0 +1,59 @@
+package com.silkroad.db.deploy.Benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.silkroad.db.deploy.Types.*;
+
+/**
+ * Gson deserialization of the Secrets Manager secret strings. The
+ * {@code *NewGson} variants build a {@link Gson} per call, which is what
+ * {@link com.silkroad.db.deploy.Data.ReferenceDataLoader} does today; the
+ * others reuse one instance like
+ * {@link com.silkroad.db.deploy.Utils.SecretResolver}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SecretDeserializationBenchmark {
+
+    // Same shape as the secrets generated by RDS / the tenant management stack
+    private static final String ADMIN_SECRET = "{\"engine\":\"mysql\","
+            + "\"host\":\"tenant-db.cluster-abcdefghijkl.us-east-1.rds.amazonaws.com\",\"port\":3306,"
+            + "\"username\":\"admin\",\"password\":\"Zx8q!v2Lr#9mK4tW\",\"dbClusterIdentifier\":\"tenant-db\"}";
+    private static final String APP_SECRET = "{\"databaseName\":\"tenant_0001\","
+            + "\"username\":\"tenant_0001_app\",\"password\":\"Hy7p@3Qs!8nB2cVd\"}";
+
+    private Gson gson;
+
+    @Setup
+    public void setup() {
+        this.gson = new GsonBuilder().create();
+    }
+
+    @Benchmark
+    public RdsAdminSecret adminSecret() {
+        return this.gson.fromJson(ADMIN_SECRET, RdsAdminSecret.class);
+    }
+
+    @Benchmark
+    public RdsAppSecret appSecret() {
+        return this.gson.fromJson(APP_SECRET, RdsAppSecret.class);
+    }
+
+    @Benchmark
+    public RdsAdminSecret adminSecretNewGson() {
+        return new GsonBuilder().create().fromJson(ADMIN_SECRET, RdsAdminSecret.class);
+    }
+
+    @Benchmark
+    public RdsAppSecret appSecretNewGson() {
+        return new GsonBuilder().create().fromJson(APP_SECRET, RdsAppSecret.class);
+    }
+}
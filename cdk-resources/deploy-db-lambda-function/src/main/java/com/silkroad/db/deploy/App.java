@@ -1,16 +1,30 @@
 package com.silkroad.db.deploy;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.apache.commons.cli.*;
 import org.apache.commons.lang3.StringUtils;
 
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import com.silkroad.db.deploy.Archive.*;
 import com.silkroad.db.deploy.Exceptions.*;
+import com.silkroad.db.deploy.Metrics.*;
+import com.silkroad.db.deploy.Profile.*;
 import com.silkroad.db.deploy.Types.*;
 import com.silkroad.db.deploy.Utils.*;
+import com.silkroad.db.deploy.Verify.*;
 
 public class App {
         public static void main(String[] args) throws AppException, ValidationException, ParseException {
-                ConsoleLogger logger = new ConsoleLogger();
-
                 // Create Options object
                 final Options options = new Options();
 
@@ -27,8 +41,8 @@ public class App {
                                 .builder("hn")
                                 .longOpt("host_name")
                                 .hasArg(true)
-                                .required(true)
-                                .desc("The RDS hostname (Required)")
+                                .required(false)
+                                .desc("The RDS hostname (Required unless --manifest is set)")
                                 .build();
                 options.addOption(hostnameOption);
 
@@ -36,8 +50,8 @@ public class App {
                                 .builder("hp")
                                 .longOpt("host_port")
                                 .hasArg(true)
-                                .required(true)
-                                .desc("The RDS host port (Required)")
+                                .required(false)
+                                .desc("The RDS host port (Required unless --manifest is set)")
                                 .build();
                 options.addOption(hostportOption);
 
@@ -45,8 +59,8 @@ public class App {
                                 .builder("adun")
                                 .longOpt("admin_user_name")
                                 .hasArg(true)
-                                .required(true)
-                                .desc("The RDS admin user name (Required)")
+                                .required(false)
+                                .desc("The RDS admin user name (Required unless --manifest is set)")
                                 .build();
                 options.addOption(adminUserNameOption);
 
@@ -54,8 +68,8 @@ public class App {
                                 .builder("adup")
                                 .longOpt("admin_user_password")
                                 .hasArg(true)
-                                .required(true)
-                                .desc("The RDS admin user password (Required)")
+                                .required(false)
+                                .desc("The RDS admin user password (Required unless --manifest is set)")
                                 .build();
                 options.addOption(adminUserPasswordOption);
 
@@ -63,8 +77,8 @@ public class App {
                                 .builder("dbn")
                                 .longOpt("db_name")
                                 .hasArg(true)
-                                .required(true)
-                                .desc("The RDS database name (Required)")
+                                .required(false)
+                                .desc("The RDS database name (Required unless --manifest is set)")
                                 .build();
                 options.addOption(dbNameOption);
 
@@ -72,8 +86,8 @@ public class App {
                                 .builder("apun")
                                 .longOpt("app_user_name")
                                 .hasArg(true)
-                                .required(true)
-                                .desc("The RDS app database username (Required)")
+                                .required(false)
+                                .desc("The RDS app database username (Required unless --manifest is set)")
                                 .build();
                 options.addOption(appUserNameOption);
 
@@ -81,8 +95,8 @@ public class App {
                                 .builder("apup")
                                 .longOpt("app_user_password")
                                 .hasArg(true)
-                                .required(true)
-                                .desc("The RDS app database user password (Required)")
+                                .required(false)
+                                .desc("The RDS app database user password (Required unless --manifest is set)")
                                 .build();
                 options.addOption(appUserPasswordOption);
 
@@ -95,8 +109,145 @@ public class App {
                                 .build();
                 options.addOption(isDebugOption);
 
+                Option manifestOption = Option
+                                .builder("m")
+                                .longOpt("manifest")
+                                .hasArg(true)
+                                .required(false)
+                                .desc("Path to a JSON fleet manifest listing the databases to migrate concurrently")
+                                .build();
+                options.addOption(manifestOption);
+
+                Option maxConcurrencyOption = Option
+                                .builder("mc")
+                                .longOpt("max_concurrency")
+                                .hasArg(true)
+                                .required(false)
+                                .desc("Fleet mode: maximum number of databases migrated at once (Default: 8)")
+                                .build();
+                options.addOption(maxConcurrencyOption);
+
+                Option maxConcurrencyPerHostOption = Option
+                                .builder("mch")
+                                .longOpt("max_concurrency_per_host")
+                                .hasArg(true)
+                                .required(false)
+                                .desc("Fleet mode: maximum number of databases migrated at once on the same host (Default: 4)")
+                                .build();
+                options.addOption(maxConcurrencyPerHostOption);
+
+                Option dryRunOption = Option
+                                .builder("dr")
+                                .longOpt("dry_run")
+                                .hasArg(false)
+                                .required(false)
+                                .desc("List the pending changesets with their estimated cost without executing anything")
+                                .build();
+                options.addOption(dryRunOption);
+
+                Option metricsFileOption = Option
+                                .builder("mf")
+                                .longOpt("metrics_file")
+                                .hasArg(true)
+                                .required(false)
+                                .desc("Append phase and changeset metrics to this file as embedded metric format JSON lines")
+                                .build();
+                options.addOption(metricsFileOption);
+
+                Option archiveDirOption = Option
+                                .builder("ad")
+                                .longOpt("archive_dir")
+                                .hasArg(true)
+                                .required(false)
+                                .desc("Export the database to a compressed archive in this directory instead of migrating it")
+                                .build();
+                options.addOption(archiveDirOption);
+
+                Option archiveBucketOption = Option
+                                .builder("ab")
+                                .longOpt("archive_bucket")
+                                .hasArg(true)
+                                .required(false)
+                                .desc("Export the database to a compressed archive in this S3 bucket instead of migrating it")
+                                .build();
+                options.addOption(archiveBucketOption);
+
+                Option archivePrefixOption = Option
+                                .builder("ap")
+                                .longOpt("archive_prefix")
+                                .hasArg(true)
+                                .required(false)
+                                .desc("Key prefix of the archive in --archive_bucket")
+                                .build();
+                options.addOption(archivePrefixOption);
+
+                Option archiveParallelismOption = Option
+                                .builder("apl")
+                                .longOpt("archive_parallelism")
+                                .hasArg(true)
+                                .required(false)
+                                .desc("Number of tables exported at once (Default: 4)")
+                                .build();
+                options.addOption(archiveParallelismOption);
+
+                Option createMissingIndexesOption = Option
+                                .builder("cmi")
+                                .longOpt("create_missing_indexes")
+                                .hasArg(false)
+                                .required(false)
+                                .desc("Create the indexes the declared query shapes are missing instead of only reporting them")
+                                .build();
+                options.addOption(createMissingIndexesOption);
+
+                Option verifySchemaOption = Option
+                                .builder("vs")
+                                .longOpt("verify_schema")
+                                .hasArg(false)
+                                .required(false)
+                                .desc("Compare the schema of every database with the expected schema instead of migrating it. "
+                                                + "Without --db_name every database of the host is verified")
+                                .build();
+                options.addOption(verifySchemaOption);
+
+                Option expectedSchemaHashOption = Option
+                                .builder("esh")
+                                .longOpt("expected_schema_hash")
+                                .hasArg(true)
+                                .required(false)
+                                .desc("Schema hash every database must have (Default: the hash most databases have)")
+                                .build();
+                options.addOption(expectedSchemaHashOption);
+
+                Option profileReportOption = Option
+                                .builder("pr")
+                                .longOpt("profile_report")
+                                .hasArg(true)
+                                .required(false)
+                                .desc("Profile every statement of the run and write the slowest ones to this JSON file")
+                                .build();
+                options.addOption(profileReportOption);
+
+                Option slowStatementMillisOption = Option
+                                .builder("ssm")
+                                .longOpt("slow_statement_millis")
+                                .hasArg(true)
+                                .required(false)
+                                .desc("Profiling: statements taking at least this long are logged and explained (Default: 1000)")
+                                .build();
+                options.addOption(slowStatementMillisOption);
+
+                Option regionOption = Option
+                                .builder("r")
+                                .longOpt("region")
+                                .hasArg(true)
+                                .required(false)
+                                .desc("AWS region of --archive_bucket (Default: the region of the environment)")
+                                .build();
+                options.addOption(regionOption);
+
                 CommandLineParser parser = new DefaultParser();
                 CommandLine cmd = parser.parse(options, args);
+                ConsoleLogger logger = new ConsoleLogger(cmd.hasOption(isDebugOption) ? LogLevel.DEBUG : LogLevel.INFO);
 
                 if (cmd.hasOption(helpOption)) {
                         printUsage(options);
@@ -115,6 +266,88 @@ public class App {
                         return;
                 }
 
+                MetricsRecorder metrics = MetricsRecorder.disabled();
+                if (cmd.hasOption(metricsFileOption)) {
+                        metrics = new MetricsRecorder(new FileMetricsSink(Paths.get(cmd.getOptionValue(metricsFileOption))));
+                }
+
+                if (cmd.hasOption(manifestOption)) {
+                        // Connection details come from the manifest, and archiving and profiling
+                        // are single-database operations
+                        List<Option> unsupportedFleetOptions = Arrays.asList(
+                                        hostnameOption,
+                                        hostportOption,
+                                        adminUserNameOption,
+                                        adminUserPasswordOption,
+                                        dbNameOption,
+                                        appUserNameOption,
+                                        appUserPasswordOption,
+                                        archiveDirOption,
+                                        archiveBucketOption,
+                                        archivePrefixOption,
+                                        archiveParallelismOption,
+                                        profileReportOption,
+                                        slowStatementMillisOption);
+                        for (Option option : unsupportedFleetOptions) {
+                                if (cmd.hasOption(option)) {
+                                        System.err.println("Error: Option '" + option.getLongOpt()
+                                                        + "' cannot be combined with 'manifest'");
+                                        validOptions = false;
+                                }
+                        }
+                        if (!validOptions) {
+                                printUsage(options);
+                                return;
+                        }
+
+                        FleetManifest manifest = readManifest(cmd.getOptionValue(manifestOption));
+                        if (cmd.hasOption(verifySchemaOption)) {
+                                verifySchemas(SchemaVerifier.groupByHost(manifest.getTargets()),
+                                                cmd.getOptionValue(expectedSchemaHashOption), logger, metrics);
+                                return;
+                        }
+                        FleetMigrator fleetMigrator = new FleetMigrator(
+                                        manifest.getTargets(),
+                                        Integer.parseInt(cmd.getOptionValue(maxConcurrencyOption, "8")),
+                                        Integer.parseInt(cmd.getOptionValue(maxConcurrencyPerHostOption, "4")),
+                                        logger,
+                                        cmd.hasOption(isDebugOption),
+                                        cmd.hasOption(dryRunOption));
+                        fleetMigrator.setMetrics(metrics);
+                        fleetMigrator.setCreateMissingIndexes(cmd.hasOption(createMissingIndexesOption));
+
+                        long failed = fleetMigrator.run().stream().filter(r -> !r.isSuccess()).count();
+                        if (failed > 0) {
+                                throw new AppException(String.format("%d fleet target(s) failed to migrate", failed));
+                        }
+                        return;
+                }
+
+                List<Option> singleTargetOptions = cmd.hasOption(verifySchemaOption)
+                                ? Arrays.asList(
+                                                hostnameOption,
+                                                hostportOption,
+                                                adminUserNameOption,
+                                                adminUserPasswordOption)
+                                : Arrays.asList(
+                                                hostnameOption,
+                                                hostportOption,
+                                                adminUserNameOption,
+                                                adminUserPasswordOption,
+                                                dbNameOption,
+                                                appUserNameOption,
+                                                appUserPasswordOption);
+                for (Option option : singleTargetOptions) {
+                        if (!cmd.hasOption(option) || StringUtils.isEmpty(cmd.getOptionValue(option))) {
+                                System.err.println("Error: Option '" + option.getLongOpt() + "' is required");
+                                validOptions = false;
+                        }
+                }
+                if (!validOptions) {
+                        printUsage(options);
+                        return;
+                }
+
                 RdsHostInfo rdsHostInfo = new RdsHostInfo(
                                 cmd.getOptionValue(hostnameOption),
                                 Integer.parseInt(cmd.getOptionValue(hostportOption, "3306")));
@@ -125,14 +358,114 @@ public class App {
                                 cmd.getOptionValue(adminUserNameOption),
                                 cmd.getOptionValue(adminUserPasswordOption));
 
+                if (cmd.hasOption(verifySchemaOption)) {
+                        List<String> databases = new ArrayList<String>();
+                        if (!StringUtils.isEmpty(cmd.getOptionValue(dbNameOption))) {
+                                databases.add(cmd.getOptionValue(dbNameOption));
+                        }
+                        verifySchemas(List.of(new SchemaHost(rdsHostInfo, rdsAdminSecret, databases)),
+                                        cmd.getOptionValue(expectedSchemaHashOption), logger, metrics);
+                        return;
+                }
+
                 RdsAppSecret rdsAppSecret = new RdsAppSecret(
                                 cmd.getOptionValue(dbNameOption),
                                 cmd.getOptionValue(appUserNameOption),
                                 cmd.getOptionValue(appUserPasswordOption));
 
-                Migrator migrator = new Migrator(rdsHostInfo, rdsAdminSecret, rdsAppSecret, logger, true);
-                migrator.runInitializationScript();
-                migrator.runMigrationScripts();
+                if (cmd.hasOption(archiveDirOption) || cmd.hasOption(archiveBucketOption)) {
+                        try (IArchiveSink sink = cmd.hasOption(archiveDirOption)
+                                        ? new FileSystemArchiveSink(Paths.get(cmd.getOptionValue(archiveDirOption)))
+                                        : S3ArchiveSink.forBucket(
+                                                        cmd.getOptionValue(regionOption),
+                                                        null,
+                                                        cmd.getOptionValue(archiveBucketOption),
+                                                        cmd.getOptionValue(archivePrefixOption));
+                                        ConnectionSession session = new ConnectionSession(rdsHostInfo, rdsAdminSecret)) {
+                                DatabaseArchiver archiver = new DatabaseArchiver(rdsHostInfo, rdsAdminSecret, session,
+                                                rdsAppSecret.getDatabaseName(), sink, logger);
+                                archiver.setParallelism(Integer.parseInt(cmd.getOptionValue(archiveParallelismOption,
+                                                String.valueOf(DatabaseArchiver.DEFAULT_PARALLELISM))));
+                                archiver.setMetrics(metrics.withProperty("Database", rdsAppSecret.getDatabaseName()));
+                                archiver.archive();
+                        }
+                        return;
+                }
+
+                try (Migrator migrator = new Migrator(rdsHostInfo, rdsAdminSecret, rdsAppSecret, logger, true)) {
+                        migrator.setMetrics(metrics.withProperty("Database", rdsAppSecret.getDatabaseName()));
+                        migrator.setCreateMissingIndexes(cmd.hasOption(createMissingIndexesOption));
+                        if (cmd.hasOption(dryRunOption)) {
+                                migrator.planMigrationScripts();
+                                return;
+                        }
+
+                        StatementProfiler profiler = null;
+                        if (cmd.hasOption(profileReportOption)) {
+                                profiler = new StatementProfiler(logger);
+                                profiler.setSlowThresholdMillis(Long.parseLong(cmd.getOptionValue(
+                                                slowStatementMillisOption,
+                                                String.valueOf(StatementProfiler.DEFAULT_SLOW_THRESHOLD_MILLIS))));
+                                migrator.setProfiler(profiler);
+                        }
+                        try {
+                                migrator.runInitializationScript();
+                                migrator.runMigrationScripts();
+                        } finally {
+                                if (profiler != null) {
+                                        writeProfileReport(profiler, cmd.getOptionValue(profileReportOption));
+                                }
+                        }
+                }
+        }
+
+        /**
+         * Logs the profile and writes it to {@code path}, also after a failed
+         * run, when it matters most.
+         */
+        public static void writeProfileReport(StatementProfiler profiler, String path) throws AppException {
+                profiler.logReport();
+                try {
+                        profiler.writeReport(Paths.get(path));
+                } catch (IOException e) {
+                        throw new AppException(String.format("Failed to write profile report '%s'", path), e);
+                }
+        }
+
+        /**
+         * Fails when any database does not have the expected schema.
+         */
+        public static void verifySchemas(List<SchemaHost> hosts, String expectedSchemaHash, ILogger logger,
+                        MetricsRecorder metrics) throws AppException {
+                SchemaVerifier verifier = new SchemaVerifier(logger);
+                verifier.setMetrics(metrics);
+                List<SchemaVerificationResult> results = verifier.verify(hosts, expectedSchemaHash);
+                for (SchemaVerificationResult result : results) {
+                        logger.info(String.format("%s %s %s", result.isMatches() ? "OK" : "DRIFTED", result.getName(),
+                                        result.getSchemaHash() != null ? result.getSchemaHash() : "(no tables)"));
+                }
+
+                long drifted = results.stream().filter(r -> !r.isMatches()).count();
+                if (drifted > 0) {
+                        throw new AppException(String.format("%d of %d database(s) do not have the expected schema",
+                                        drifted, results.size()));
+                }
+        }
+
+        public static FleetManifest readManifest(String path) throws AppException, ValidationException {
+                Gson gson = new GsonBuilder().create();
+                FleetManifest manifest;
+                try (Reader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+                        manifest = gson.fromJson(reader, FleetManifest.class);
+                } catch (IOException e) {
+                        throw new AppException(String.format("Failed to read fleet manifest '%s'", path), e);
+                }
+
+                if (manifest == null) {
+                        throw new ValidationException(String.format("Fleet manifest '%s' is empty", path));
+                }
+                manifest.validate();
+                return manifest;
         }
 
         public static void printUsage(Options options) {
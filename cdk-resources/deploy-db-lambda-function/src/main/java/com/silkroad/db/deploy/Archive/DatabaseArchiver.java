@@ -0,0 +1,593 @@
+package com.silkroad.db.deploy.Archive;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
+import com.silkroad.db.deploy.Exceptions.AppException;
+import com.silkroad.db.deploy.Metrics.MetricsRecorder;
+import com.silkroad.db.deploy.Types.*;
+import com.silkroad.db.deploy.Utils.*;
+
+/**
+ * Exports a database to a compressed archive in an {@link IArchiveSink}, e.g.
+ * before a tenant database is decommissioned.
+ *
+ * The archive holds a {@code schema.sql.gz} object with the table and view
+ * definitions, one {@code tables/<table>.jsonl.gz} object per table with one
+ * JSON object per row, and a {@code manifest.json} object that is written
+ * last. Binary values are base64 strings; every other non-numeric value is
+ * written as MySQL returns it as text.
+ *
+ * Tables are read by {@code parallelism} connections, largest first. All of
+ * them start their {@code WITH CONSISTENT SNAPSHOT} transaction while the
+ * tables are locked for writes, so every table is read as of the same point
+ * in time; the lock is released as soon as the snapshots are open. Tables are
+ * paged by primary key ({@code WHERE (pk) > (last) ORDER BY pk LIMIT n}) and
+ * tables without a primary key are streamed row by row, so memory use does
+ * not grow with the table size.
+ */
+public class DatabaseArchiver {
+
+    public static final int DEFAULT_PARALLELISM = 4;
+    public static final int DEFAULT_PAGE_SIZE = 5_000;
+
+    public static final String MANIFEST_OBJECT = "manifest.json";
+    public static final String SCHEMA_OBJECT = "schema.sql.gz";
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    // Don't wait forever for a long write transaction to release its metadata locks
+    private static final int LOCK_WAIT_TIMEOUT_SECONDS = 60;
+
+    private static final DateTimeFormatter KEY_TIMESTAMP = DateTimeFormatter
+            .ofPattern("yyyyMMdd'T'HHmmss'Z'")
+            .withZone(ZoneOffset.UTC);
+
+    private static final Set<String> NUMERIC_TYPES = Set.of("tinyint", "smallint", "mediumint", "int", "bigint",
+            "decimal", "float", "double");
+
+    private static final Set<String> BINARY_TYPES = Set.of("binary", "varbinary", "tinyblob", "blob", "mediumblob",
+            "longblob", "bit", "geometry", "point", "linestring", "polygon", "multipoint", "multilinestring",
+            "multipolygon", "geometrycollection");
+
+    private enum ValueKind {
+        NUMBER,
+        BASE64,
+        STRING
+    }
+
+    private static class TableInfo {
+        private final String name;
+        private final List<String> columns = new ArrayList<String>();
+        private final List<ValueKind> kinds = new ArrayList<ValueKind>();
+        private final List<String> primaryKey = new ArrayList<String>();
+        private long dataLength;
+
+        private TableInfo(String name) {
+            this.name = name;
+        }
+    }
+
+    private final RdsHostInfo rdsHostInfo;
+    private final RdsAdminSecret rdsAdminSecret;
+    private final ConnectionSession session;
+    private final String databaseName;
+    private final IArchiveSink sink;
+    private final ILogger logger;
+    private int parallelism = DEFAULT_PARALLELISM;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private TimeBudget timeBudget = TimeBudget.unlimited();
+    private MetricsRecorder metrics = MetricsRecorder.disabled();
+
+    /**
+     * @param session Session of the coordinating connection, which takes the
+     *                table locks. The reading connections are opened with the
+     *                same host and credentials and closed when done.
+     */
+    public DatabaseArchiver(RdsHostInfo rdsHostInfo, RdsAdminSecret rdsAdminSecret, ConnectionSession session,
+            String databaseName, IArchiveSink sink, ILogger logger) {
+        this.rdsHostInfo = rdsHostInfo;
+        this.rdsAdminSecret = rdsAdminSecret;
+        this.session = session;
+        this.databaseName = databaseName;
+        this.sink = sink;
+        this.logger = logger;
+    }
+
+    /**
+     * Number of connections reading tables at once. Defaults to
+     * {@link #DEFAULT_PARALLELISM}.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    /**
+     * The archive fails rather than stopping half way when the budget runs
+     * out: a later run could not read from the same snapshot. Unlimited by
+     * default.
+     */
+    public void setTimeBudget(TimeBudget timeBudget) {
+        this.timeBudget = timeBudget;
+    }
+
+    public void setMetrics(MetricsRecorder metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Writes the archive below {@code <database>/<UTC timestamp>/}.
+     *
+     * @return the manifest of the archive, or {@code null} when the database
+     *         does not exist
+     */
+    public ArchiveManifest archive() throws AppException {
+        try {
+            return this.archiveCore();
+        } catch (AppException e) {
+            this.session.discard();
+            throw e;
+        } catch (Exception e) {
+            this.session.discard();
+            throw new AppException(String.format(
+                    "An error occurred while trying to archive database '%s', see 'Caused by' for details",
+                    this.databaseName), e);
+        }
+    }
+
+    private ArchiveManifest archiveCore() throws SQLException, AppException, IOException, InterruptedException {
+        Connection coordinator = this.session.getConnection(null, this.logger);
+        if (!databaseExists(coordinator, this.databaseName)) {
+            this.logger.info(String.format("Database '%s' does not exist, nothing to archive", this.databaseName));
+            return null;
+        }
+
+        long startTime = System.nanoTime();
+        Instant startedAt = Instant.now();
+        String prefix = this.databaseName + "/" + KEY_TIMESTAMP.format(startedAt) + "/";
+        this.logger.info(String.format("Archiving database '%s' to '%s'...", this.databaseName,
+                this.sink.getLocation(prefix)));
+
+        List<TableInfo> tables = this.listTables(coordinator);
+        this.writeSchema(coordinator, tables, prefix + SCHEMA_OBJECT);
+
+        ArchiveManifest manifest = new ArchiveManifest();
+        manifest.setDatabaseName(this.databaseName);
+        manifest.setStartedAt(startedAt.toString());
+        manifest.setSchemaObjectKey(prefix + SCHEMA_OBJECT);
+        if (!tables.isEmpty()) {
+            manifest.getTables().addAll(this.exportTables(coordinator, tables, prefix));
+        }
+        manifest.getTables().sort(Comparator.comparing(ArchivedTable::getName));
+        manifest.setCompletedAt(Instant.now().toString());
+
+        try (IArchiveObject object = this.sink.create(prefix + MANIFEST_OBJECT)) {
+            Writer writer = new OutputStreamWriter(object.getOutputStream(), StandardCharsets.UTF_8);
+            new GsonBuilder().setPrettyPrinting().create().toJson(manifest, writer);
+            writer.flush();
+            object.commit();
+        }
+
+        long rowCount = manifest.getTables().stream().mapToLong(ArchivedTable::getRowCount).sum();
+        long durationMillis = (System.nanoTime() - startTime) / 1_000_000;
+        this.metrics.recordPhase("archive", durationMillis, rowCount);
+        this.logger.log(LogLevel.INFO, "Database archived",
+                "database", this.databaseName,
+                "location", this.sink.getLocation(prefix + MANIFEST_OBJECT),
+                "tables", manifest.getTables().size(),
+                "rows", rowCount,
+                "durationMillis", durationMillis);
+        return manifest;
+    }
+
+    private List<ArchivedTable> exportTables(Connection coordinator, List<TableInfo> tables, String prefix)
+            throws SQLException, AppException, IOException, InterruptedException {
+        int workerCount = Math.min(this.parallelism, tables.size());
+        List<ConnectionSession> workerSessions = new ArrayList<ConnectionSession>();
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        try {
+            List<Connection> connections = new ArrayList<Connection>();
+            for (int i = 0; i < workerCount; i++) {
+                ConnectionSession workerSession = new ConnectionSession(this.rdsHostInfo, this.rdsAdminSecret);
+                workerSessions.add(workerSession);
+                connections.add(workerSession.getConnection(this.databaseName, this.logger));
+            }
+            this.openSnapshots(coordinator, tables, connections);
+
+            // Largest tables first, so one big table does not start last and run alone
+            ConcurrentLinkedQueue<TableInfo> pending = new ConcurrentLinkedQueue<TableInfo>(tables);
+            List<ArchivedTable> results = new ArrayList<ArchivedTable>();
+            AtomicBoolean failed = new AtomicBoolean(false);
+            List<Future<List<ArchivedTable>>> futures = new ArrayList<Future<List<ArchivedTable>>>();
+            for (Connection connection : connections) {
+                futures.add(executor.submit(() -> {
+                    List<ArchivedTable> archived = new ArrayList<ArchivedTable>();
+                    TableInfo table;
+                    try {
+                        while (!failed.get() && (table = pending.poll()) != null) {
+                            archived.add(this.exportTable(connection, table, prefix));
+                        }
+                    } catch (Exception e) {
+                        failed.set(true);
+                        throw e;
+                    }
+                    try (Statement statement = connection.createStatement()) {
+                        statement.execute("COMMIT");
+                    }
+                    return archived;
+                }));
+            }
+
+            for (Future<List<ArchivedTable>> future : futures) {
+                try {
+                    results.addAll(future.get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof AppException) {
+                        throw (AppException) e.getCause();
+                    }
+                    throw new AppException("Failed to archive a table, see 'Caused by' for details", e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+            for (ConnectionSession workerSession : workerSessions) {
+                workerSession.close();
+            }
+        }
+    }
+
+    /**
+     * Starts a consistent snapshot on every connection while writes to the
+     * tables are blocked, so that all connections see the same data.
+     */
+    private void openSnapshots(Connection coordinator, List<TableInfo> tables, List<Connection> connections)
+            throws SQLException {
+        StringBuilder lockSql = new StringBuilder("LOCK TABLES ");
+        for (int i = 0; i < tables.size(); i++) {
+            if (i > 0) {
+                lockSql.append(", ");
+            }
+            lockSql.append(quote(this.databaseName)).append('.').append(quote(tables.get(i).name)).append(" READ");
+        }
+
+        long startTime = System.nanoTime();
+        try (Statement statement = coordinator.createStatement()) {
+            statement.execute("SET SESSION lock_wait_timeout = " + LOCK_WAIT_TIMEOUT_SECONDS);
+            statement.execute(lockSql.toString());
+            try {
+                for (Connection connection : connections) {
+                    try (Statement snapshotStatement = connection.createStatement()) {
+                        snapshotStatement.execute("SET SESSION TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+                        snapshotStatement.execute("START TRANSACTION WITH CONSISTENT SNAPSHOT, READ ONLY");
+                    }
+                }
+            } finally {
+                statement.execute("UNLOCK TABLES");
+            }
+        }
+        this.logger.debug(() -> String.format("Opened %d consistent snapshots in %d ms", connections.size(),
+                (System.nanoTime() - startTime) / 1_000_000));
+    }
+
+    private ArchivedTable exportTable(Connection connection, TableInfo table, String prefix)
+            throws SQLException, IOException, AppException {
+        String key = prefix + "tables/" + table.name + ".jsonl.gz";
+        long startTime = System.nanoTime();
+        long rowCount;
+        try (IArchiveObject object = this.sink.create(key)) {
+            GZIPOutputStream gzip = new GZIPOutputStream(object.getOutputStream(), GZIP_BUFFER_SIZE);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8));
+            JsonWriter jsonWriter = new JsonWriter(writer);
+            // Lenient: one top-level object per line
+            jsonWriter.setLenient(true);
+
+            rowCount = table.primaryKey.isEmpty()
+                    ? this.streamRows(connection, table, writer, jsonWriter)
+                    : this.pageRows(connection, table, writer, jsonWriter);
+
+            // The writers are not closed: that would close, and so discard, the object
+            writer.flush();
+            gzip.finish();
+            object.commit();
+        }
+
+        ArchivedTable archived = new ArchivedTable();
+        archived.setName(table.name);
+        archived.setObjectKey(key);
+        archived.setColumns(table.columns);
+        archived.setPrimaryKey(table.primaryKey);
+        for (int i = 0; i < table.columns.size(); i++) {
+            if (table.kinds.get(i) == ValueKind.BASE64) {
+                archived.getBase64Columns().add(table.columns.get(i));
+            }
+        }
+        archived.setRowCount(rowCount);
+        archived.setDurationMillis((System.nanoTime() - startTime) / 1_000_000);
+        this.logger.log(LogLevel.INFO, "Archived table",
+                "table", table.name,
+                "rows", rowCount,
+                "durationMillis", archived.getDurationMillis());
+        return archived;
+    }
+
+    /**
+     * Reads the table in primary key order, one page per query.
+     */
+    private long pageRows(Connection connection, TableInfo table, Writer writer, JsonWriter jsonWriter)
+            throws SQLException, IOException, AppException {
+        String select = "SELECT " + joinQuoted(table.columns) + " FROM " + quote(table.name);
+        String orderBy = " ORDER BY " + joinQuoted(table.primaryKey) + " LIMIT ?";
+        StringBuilder after = new StringBuilder(" WHERE (").append(joinQuoted(table.primaryKey)).append(") > (");
+        for (int i = 0; i < table.primaryKey.size(); i++) {
+            after.append(i > 0 ? ", ?" : "?");
+        }
+        after.append(')');
+
+        int[] keyIndexes = new int[table.primaryKey.size()];
+        for (int i = 0; i < keyIndexes.length; i++) {
+            keyIndexes[i] = table.columns.indexOf(table.primaryKey.get(i)) + 1;
+        }
+
+        long rowCount = 0;
+        Object[] lastKey = null;
+        try (PreparedStatement first = connection.prepareStatement(select + orderBy);
+                PreparedStatement next = connection.prepareStatement(select + after + orderBy)) {
+            while (true) {
+                this.checkTimeBudget(table);
+
+                PreparedStatement statement = lastKey == null ? first : next;
+                int index = 1;
+                if (lastKey != null) {
+                    for (Object value : lastKey) {
+                        statement.setObject(index++, value);
+                    }
+                }
+                statement.setInt(index, this.pageSize);
+
+                int pageRows = 0;
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        writeRow(resultSet, table, writer, jsonWriter);
+                        pageRows++;
+                        if (lastKey == null) {
+                            lastKey = new Object[keyIndexes.length];
+                        }
+                        for (int i = 0; i < keyIndexes.length; i++) {
+                            lastKey[i] = resultSet.getObject(keyIndexes[i]);
+                        }
+                    }
+                }
+                rowCount += pageRows;
+                if (pageRows < this.pageSize) {
+                    return rowCount;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a table without primary key through a streaming result set, which
+     * holds one row at a time instead of the whole result.
+     */
+    private long streamRows(Connection connection, TableInfo table, Writer writer, JsonWriter jsonWriter)
+            throws SQLException, IOException, AppException {
+        this.checkTimeBudget(table);
+
+        long rowCount = 0;
+        String sql = "SELECT " + joinQuoted(table.columns) + " FROM " + quote(table.name);
+        try (Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY)) {
+            // Connector/J streams rows one by one for this fetch size
+            statement.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet resultSet = statement.executeQuery(sql)) {
+                while (resultSet.next()) {
+                    writeRow(resultSet, table, writer, jsonWriter);
+                    if (++rowCount % this.pageSize == 0) {
+                        this.checkTimeBudget(table);
+                    }
+                }
+            }
+        }
+        return rowCount;
+    }
+
+    private void checkTimeBudget(TableInfo table) throws AppException {
+        if (this.timeBudget.isExhausted()) {
+            throw new AppException(String.format(
+                    "Time budget exhausted while archiving table '%s' of database '%s'", table.name,
+                    this.databaseName));
+        }
+    }
+
+    private static void writeRow(ResultSet resultSet, TableInfo table, Writer writer, JsonWriter jsonWriter)
+            throws SQLException, IOException {
+        jsonWriter.beginObject();
+        for (int i = 0; i < table.columns.size(); i++) {
+            jsonWriter.name(table.columns.get(i));
+            switch (table.kinds.get(i)) {
+                case NUMBER: {
+                    // MySQL's text form of a number is valid JSON
+                    jsonWriter.jsonValue(resultSet.getString(i + 1));
+                    break;
+                }
+                case BASE64: {
+                    byte[] bytes = resultSet.getBytes(i + 1);
+                    jsonWriter.value(bytes != null ? Base64.getEncoder().encodeToString(bytes) : null);
+                    break;
+                }
+                default: {
+                    jsonWriter.value(resultSet.getString(i + 1));
+                    break;
+                }
+            }
+        }
+        jsonWriter.endObject();
+        writer.write('\n');
+    }
+
+    private void writeSchema(Connection coordinator, List<TableInfo> tables, String key)
+            throws SQLException, IOException {
+        List<String> views = new ArrayList<String>();
+        String sql = "SELECT TABLE_NAME FROM information_schema.VIEWS WHERE TABLE_SCHEMA = ? ORDER BY TABLE_NAME";
+        try (PreparedStatement statement = coordinator.prepareStatement(sql)) {
+            statement.setString(1, this.databaseName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    views.add(resultSet.getString(1));
+                }
+            }
+        }
+
+        try (IArchiveObject object = this.sink.create(key);
+                Statement statement = coordinator.createStatement()) {
+            GZIPOutputStream gzip = new GZIPOutputStream(object.getOutputStream(), GZIP_BUFFER_SIZE);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8));
+
+            List<String> tableNames = new ArrayList<String>();
+            for (TableInfo table : tables) {
+                tableNames.add(table.name);
+            }
+            tableNames.sort(null);
+            for (String table : tableNames) {
+                writeCreateStatement(statement, "SHOW CREATE TABLE " + quote(this.databaseName) + "." + quote(table),
+                        writer);
+            }
+            for (String view : views) {
+                writeCreateStatement(statement, "SHOW CREATE VIEW " + quote(this.databaseName) + "." + quote(view),
+                        writer);
+            }
+
+            writer.flush();
+            gzip.finish();
+            object.commit();
+        }
+    }
+
+    private static void writeCreateStatement(Statement statement, String sql, Writer writer)
+            throws SQLException, IOException {
+        try (ResultSet resultSet = statement.executeQuery(sql)) {
+            if (resultSet.next()) {
+                writer.write(resultSet.getString(2));
+                writer.write(";\n\n");
+            }
+        }
+    }
+
+    /**
+     * Lists the base tables with their columns and primary keys in three
+     * queries, largest table first.
+     */
+    private List<TableInfo> listTables(Connection connection) throws SQLException {
+        Map<String, TableInfo> tables = new LinkedHashMap<String, TableInfo>();
+        String sql = "SELECT TABLE_NAME, COALESCE(DATA_LENGTH, 0) FROM information_schema.TABLES "
+                + "WHERE TABLE_SCHEMA = ? AND TABLE_TYPE = 'BASE TABLE'";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, this.databaseName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    TableInfo table = new TableInfo(resultSet.getString(1));
+                    table.dataLength = resultSet.getLong(2);
+                    tables.put(table.name, table);
+                }
+            }
+        }
+
+        sql = "SELECT TABLE_NAME, COLUMN_NAME, DATA_TYPE FROM information_schema.COLUMNS "
+                + "WHERE TABLE_SCHEMA = ? ORDER BY TABLE_NAME, ORDINAL_POSITION";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, this.databaseName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    TableInfo table = tables.get(resultSet.getString(1));
+                    if (table != null) {
+                        table.columns.add(resultSet.getString(2));
+                        table.kinds.add(toValueKind(resultSet.getString(3)));
+                    }
+                }
+            }
+        }
+
+        sql = "SELECT TABLE_NAME, COLUMN_NAME FROM information_schema.STATISTICS "
+                + "WHERE TABLE_SCHEMA = ? AND INDEX_NAME = 'PRIMARY' ORDER BY TABLE_NAME, SEQ_IN_INDEX";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, this.databaseName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    TableInfo table = tables.get(resultSet.getString(1));
+                    if (table != null) {
+                        table.primaryKey.add(resultSet.getString(2));
+                    }
+                }
+            }
+        }
+
+        List<TableInfo> result = new ArrayList<TableInfo>(tables.values());
+        result.sort(Comparator.comparingLong((TableInfo table) -> table.dataLength).reversed());
+        return result;
+    }
+
+    private static boolean databaseExists(Connection connection, String databaseName) throws SQLException {
+        String sql = "SELECT 1 FROM information_schema.SCHEMATA WHERE SCHEMA_NAME = ?";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, databaseName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+
+    private static ValueKind toValueKind(String dataType) {
+        String type = dataType.toLowerCase();
+        if (NUMERIC_TYPES.contains(type)) {
+            return ValueKind.NUMBER;
+        }
+        return BINARY_TYPES.contains(type) ? ValueKind.BASE64 : ValueKind.STRING;
+    }
+
+    private static String joinQuoted(List<String> identifiers) {
+        StringBuilder builder = new StringBuilder();
+        for (String identifier : identifiers) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(quote(identifier));
+        }
+        return builder.toString();
+    }
+
+    private static String quote(String identifier) {
+        return "`" + identifier.replace("`", "``") + "`";
+    }
+}
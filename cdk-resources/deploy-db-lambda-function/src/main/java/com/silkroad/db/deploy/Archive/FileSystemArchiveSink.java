@@ -0,0 +1,84 @@
+package com.silkroad.db.deploy.Archive;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes archive objects as files below a local directory, e.g. for the CLI
+ * or to check an archive in tests. Each object is written to a
+ * {@code .partial} file that is renamed once it is committed.
+ */
+public class FileSystemArchiveSink implements IArchiveSink {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path root;
+
+    public FileSystemArchiveSink(Path root) {
+        this.root = root;
+    }
+
+    @Override
+    public IArchiveObject create(String key) throws IOException {
+        Path target = this.root.resolve(key).normalize();
+        if (!target.startsWith(this.root.normalize())) {
+            throw new IOException(String.format("Archive key '%s' points outside of '%s'", key, this.root));
+        }
+        Files.createDirectories(target.getParent());
+        Path partial = target.resolveSibling(target.getFileName() + ".partial");
+        return new FileArchiveObject(partial, target);
+    }
+
+    @Override
+    public String getLocation(String key) {
+        return this.root.resolve(key).toString();
+    }
+
+    @Override
+    public void close() {
+        // Every object closes its own file
+    }
+
+    private static class FileArchiveObject implements IArchiveObject {
+
+        private final Path partial;
+        private final Path target;
+        private final OutputStream out;
+        private boolean closed = false;
+
+        private FileArchiveObject(Path partial, Path target) throws IOException {
+            this.partial = partial;
+            this.target = target;
+            this.out = new BufferedOutputStream(Files.newOutputStream(partial), BUFFER_SIZE);
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return this.out;
+        }
+
+        @Override
+        public void commit() throws IOException {
+            this.closed = true;
+            this.out.close();
+            Files.move(this.partial, this.target, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!this.closed) {
+                this.closed = true;
+                try {
+                    this.out.close();
+                } finally {
+                    Files.deleteIfExists(this.partial);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.silkroad.db.deploy.Archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An object being written to an {@link IArchiveSink}. Closing it without
+ * committing discards what was written.
+ */
+public interface IArchiveObject extends Closeable {
+
+    public OutputStream getOutputStream();
+
+    /**
+     * Flushes the remaining content and publishes the object.
+     */
+    public void commit() throws IOException;
+}
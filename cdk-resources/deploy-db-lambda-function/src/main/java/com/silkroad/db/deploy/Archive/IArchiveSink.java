@@ -0,0 +1,27 @@
+package com.silkroad.db.deploy.Archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Object store the {@link DatabaseArchiver} writes archives to.
+ */
+public interface IArchiveSink extends Closeable {
+
+    /**
+     * Starts a new object. Its content only becomes visible once
+     * {@link IArchiveObject#commit()} is called.
+     */
+    public IArchiveObject create(String key) throws IOException;
+
+    /**
+     * Human-readable location of {@code key}, for logs.
+     */
+    public String getLocation(String key);
+
+    /**
+     * Releases the sink once every object is committed or closed.
+     */
+    @Override
+    public void close();
+}
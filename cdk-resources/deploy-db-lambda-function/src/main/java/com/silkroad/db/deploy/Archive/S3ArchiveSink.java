@@ -0,0 +1,229 @@
+package com.silkroad.db.deploy.Archive;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+/**
+ * Streams archive objects to an S3 bucket.
+ *
+ * Content is buffered one part at a time ({@link #PART_SIZE}) and uploaded as
+ * a multipart upload, so memory use does not depend on the object size.
+ * Objects smaller than one part are written with a single {@code PutObject}.
+ * Uncommitted uploads are aborted.
+ */
+public class S3ArchiveSink implements IArchiveSink {
+
+    // S3 requires at least 5 MiB for every part but the last
+    public static final int PART_SIZE = 8 * 1024 * 1024;
+
+    private static final String CONTENT_TYPE = "application/octet-stream";
+
+    private final S3Client client;
+    private final String bucket;
+    private final String prefix;
+    private final boolean ownsClient;
+
+    /**
+     * The client stays open when the sink is closed; it belongs to the
+     * caller.
+     *
+     * @param prefix Key prefix of every object, e.g. {@code archives}; may be
+     *               empty
+     */
+    public S3ArchiveSink(S3Client client, String bucket, String prefix) {
+        this(client, bucket, prefix, false);
+    }
+
+    private S3ArchiveSink(S3Client client, String bucket, String prefix, boolean ownsClient) {
+        this.client = client;
+        this.bucket = bucket;
+        this.prefix = prefix;
+        this.ownsClient = ownsClient;
+    }
+
+    /**
+     * Creates a sink with its own client, closed with the sink. {@code region}
+     * may be {@code null} to use the default region of the environment.
+     */
+    public static S3ArchiveSink forBucket(String region, URI endpointOverride, String bucket, String prefix) {
+        S3ClientBuilder builder = S3Client.builder()
+                .credentialsProvider(DefaultCredentialsProvider.create());
+        if (region != null) {
+            builder.region(Region.of(region));
+        }
+        if (endpointOverride != null) {
+            builder.endpointOverride(endpointOverride);
+        }
+        return new S3ArchiveSink(builder.build(), bucket, prefix, true);
+    }
+
+    @Override
+    public IArchiveObject create(String key) {
+        return new S3ArchiveObject(this.toObjectKey(key));
+    }
+
+    @Override
+    public String getLocation(String key) {
+        return String.format("s3://%s/%s", this.bucket, this.toObjectKey(key));
+    }
+
+    @Override
+    public void close() {
+        if (this.ownsClient) {
+            this.client.close();
+        }
+    }
+
+    private String toObjectKey(String key) {
+        if (this.prefix == null || this.prefix.isEmpty()) {
+            return key;
+        }
+        return this.prefix.endsWith("/") ? this.prefix + key : this.prefix + "/" + key;
+    }
+
+    private class S3ArchiveObject extends OutputStream implements IArchiveObject {
+
+        private final String key;
+        private final byte[] buffer = new byte[PART_SIZE];
+        private final List<CompletedPart> parts = new ArrayList<CompletedPart>();
+        private int length = 0;
+        private String uploadId;
+        private boolean closed = false;
+
+        private S3ArchiveObject(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return this;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (this.length == this.buffer.length) {
+                this.uploadPart();
+            }
+            this.buffer[this.length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (this.length == this.buffer.length) {
+                    this.uploadPart();
+                }
+                int count = Math.min(len, this.buffer.length - this.length);
+                System.arraycopy(b, off, this.buffer, this.length, count);
+                this.length += count;
+                off += count;
+                len -= count;
+            }
+        }
+
+        @Override
+        public void commit() throws IOException {
+            if (this.closed) {
+                throw new IOException(String.format("Archive object '%s' is already closed", this.key));
+            }
+            this.closed = true;
+
+            try {
+                if (this.uploadId == null) {
+                    client.putObject(PutObjectRequest.builder()
+                            .bucket(bucket)
+                            .key(this.key)
+                            .contentType(CONTENT_TYPE)
+                            .contentLength((long) this.length)
+                            .build(), this.currentPart());
+                    return;
+                }
+                if (this.length > 0) {
+                    this.uploadPart();
+                }
+                client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                        .bucket(bucket)
+                        .key(this.key)
+                        .uploadId(this.uploadId)
+                        .multipartUpload(CompletedMultipartUpload.builder().parts(this.parts).build())
+                        .build());
+            } catch (RuntimeException e) {
+                this.abort();
+                throw new IOException(String.format("Failed to upload archive object '%s'", this.key), e);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!this.closed) {
+                this.closed = true;
+                this.abort();
+            }
+        }
+
+        private void uploadPart() throws IOException {
+            try {
+                if (this.uploadId == null) {
+                    this.uploadId = client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                            .bucket(bucket)
+                            .key(this.key)
+                            .contentType(CONTENT_TYPE)
+                            .build()).uploadId();
+                }
+                int partNumber = this.parts.size() + 1;
+                String eTag = client.uploadPart(UploadPartRequest.builder()
+                        .bucket(bucket)
+                        .key(this.key)
+                        .uploadId(this.uploadId)
+                        .partNumber(partNumber)
+                        .contentLength((long) this.length)
+                        .build(), this.currentPart()).eTag();
+                this.parts.add(CompletedPart.builder().partNumber(partNumber).eTag(eTag).build());
+                this.length = 0;
+            } catch (RuntimeException e) {
+                this.abort();
+                throw new IOException(String.format("Failed to upload part of archive object '%s'", this.key), e);
+            }
+        }
+
+        private RequestBody currentPart() {
+            // Reads the buffer in place rather than copying it
+            return RequestBody.fromInputStream(new ByteArrayInputStream(this.buffer, 0, this.length), this.length);
+        }
+
+        private void abort() {
+            this.closed = true;
+            if (this.uploadId == null) {
+                return;
+            }
+            String uploadId = this.uploadId;
+            this.uploadId = null;
+            try {
+                client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                        .bucket(bucket)
+                        .key(this.key)
+                        .uploadId(uploadId)
+                        .build());
+            } catch (RuntimeException e) {
+                // Left for the bucket's lifecycle rule for incomplete multipart uploads
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.silkroad.db.deploy.Data;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.List;
+
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.ICSVParser;
+import com.opencsv.exceptions.CsvValidationException;
+
+/**
+ * Streams rows from a CSV file whose first row holds the column names. As with
+ * MySQL's own export format, {@code \N} stands for {@code NULL}.
+ */
+public class CsvRowReader implements IRowReader {
+
+    private static final String NULL_VALUE = "\\N";
+
+    private final CSVReader reader;
+    private final List<String> columns;
+
+    public CsvRowReader(Reader reader, List<String> columns) throws IOException {
+        // RFC 4180 quoting only: backslashes are data, which keeps "\N" intact
+        this.reader = new CSVReaderBuilder(reader)
+                .withCSVParser(new CSVParserBuilder().withEscapeChar(ICSVParser.NULL_CHARACTER).build())
+                .build();
+
+        String[] header = this.readNext();
+        if (header == null) {
+            throw new IOException("CSV data is missing its header row");
+        }
+        this.columns = columns != null ? columns : Arrays.asList(header);
+    }
+
+    @Override
+    public List<String> getColumns() {
+        return this.columns;
+    }
+
+    @Override
+    public Object[] next() throws IOException {
+        String[] row = this.readNext();
+        if (row == null) {
+            return null;
+        }
+        if (row.length != this.columns.size()) {
+            throw new IOException(String.format(
+                    "CSV row %d has %d values, expected %d",
+                    this.reader.getRecordsRead(), row.length, this.columns.size()));
+        }
+
+        Object[] values = new Object[row.length];
+        for (int i = 0; i < row.length; i++) {
+            values[i] = NULL_VALUE.equals(row[i]) ? null : row[i];
+        }
+        return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+
+    private String[] readNext() throws IOException {
+        try {
+            return this.reader.readNext();
+        } catch (CsvValidationException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.silkroad.db.deploy.Data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+public interface IRowReader extends Closeable {
+
+    public List<String> getColumns();
+
+    /**
+     * Returns the values of the next row in {@link #getColumns()} order, or
+     * {@code null} at the end of the data.
+     */
+    public Object[] next() throws IOException;
+}
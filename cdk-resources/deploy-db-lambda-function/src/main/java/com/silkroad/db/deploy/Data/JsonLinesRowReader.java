@@ -0,0 +1,97 @@
+package com.silkroad.db.deploy.Data;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Streams rows from a JSON lines file, one JSON object per line. Missing keys
+ * are loaded as {@code NULL}; nested objects and arrays are loaded as their
+ * JSON text.
+ */
+public class JsonLinesRowReader implements IRowReader {
+
+    private final BufferedReader reader;
+    private final List<String> columns;
+    private JsonObject pending;
+    private int lineNumber = 0;
+
+    public JsonLinesRowReader(Reader reader, List<String> columns) throws IOException {
+        this.reader = new BufferedReader(reader);
+
+        if (columns != null) {
+            this.columns = columns;
+        } else {
+            this.pending = this.readObject();
+            this.columns = this.pending != null
+                    ? new ArrayList<String>(this.pending.keySet())
+                    : new ArrayList<String>();
+        }
+    }
+
+    @Override
+    public List<String> getColumns() {
+        return this.columns;
+    }
+
+    @Override
+    public Object[] next() throws IOException {
+        JsonObject object = this.pending != null ? this.pending : this.readObject();
+        this.pending = null;
+        if (object == null) {
+            return null;
+        }
+
+        Object[] values = new Object[this.columns.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = toValue(object.get(this.columns.get(i)));
+        }
+        return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+
+    private JsonObject readObject() throws IOException {
+        String line;
+        while ((line = this.reader.readLine()) != null) {
+            this.lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                return JsonParser.parseString(line).getAsJsonObject();
+            } catch (JsonParseException | IllegalStateException e) {
+                throw new IOException(String.format("Invalid JSON object on line %d", this.lineNumber), e);
+            }
+        }
+        return null;
+    }
+
+    private static Object toValue(JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            return null;
+        }
+        if (element.isJsonPrimitive()) {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                return primitive.getAsBoolean();
+            }
+            if (primitive.isNumber()) {
+                return primitive.getAsBigDecimal();
+            }
+            return primitive.getAsString();
+        }
+        return element.toString();
+    }
+}
@@ -0,0 +1,261 @@
+package com.silkroad.db.deploy.Data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.GsonBuilder;
+import com.silkroad.db.deploy.Exceptions.*;
+import com.silkroad.db.deploy.Types.*;
+import com.silkroad.db.deploy.Utils.*;
+
+/**
+ * Loads the reference / seed data sets declared in
+ * {@code db/data/data-sets.json} into the migrated database.
+ *
+ * Rows are streamed from the classpath and sent as multi-row inserts (JDBC
+ * batches of {@code chunkSize} rows, rewritten by the driver), committing every
+ * {@code commitInterval} rows. The checksum of every loaded file is recorded
+ * in {@code DATABASECHANGELOGDATA} in the same transaction as its last rows, so
+ * reruns only reload files that changed. With a limited {@link TimeBudget}
+ * the budget is checked before each file and {@link #load()} returns
+ * {@code false} once it ran out.
+ */
+public class ReferenceDataLoader {
+
+    public static final String MANIFEST_RESOURCE = "db/data/data-sets.json";
+
+    private static final String TRACKING_TABLE = "DATABASECHANGELOGDATA";
+
+    private final Connection connection;
+    private final ILogger logger;
+    private final TimeBudget timeBudget;
+
+    private long rowsLoaded = 0;
+    private final List<String> loadedTables = new ArrayList<String>();
+
+    public ReferenceDataLoader(Connection connection, ILogger logger) {
+        this(connection, logger, TimeBudget.unlimited());
+    }
+
+    public ReferenceDataLoader(Connection connection, ILogger logger, TimeBudget timeBudget) {
+        this.connection = connection;
+        this.logger = logger;
+        this.timeBudget = timeBudget;
+    }
+
+    public boolean load() throws IOException, SQLException, AppException, ValidationException {
+        DataSetManifest manifest = readManifest();
+        if (manifest == null || manifest.getDataSets().isEmpty()) {
+            logger.debug("No reference data to load");
+            return true;
+        }
+
+        this.ensureTrackingTable();
+        Map<String, String> loadedChecksums = this.readLoadedChecksums();
+
+        for (DataSet dataSet : manifest.getDataSets()) {
+            String checksum = computeChecksum(dataSet.getResource());
+            if (checksum.equals(loadedChecksums.get(dataSet.getResource()))) {
+                logger.debug(String.format("Reference data '%s' is up to date", dataSet.getResource()));
+                continue;
+            }
+            if (this.timeBudget.isExhausted()) {
+                logger.info(String.format("Stopping before reference data '%s'", dataSet.getResource()));
+                return false;
+            }
+
+            int chunkSize = dataSet.getChunkSize() != null ? dataSet.getChunkSize() : manifest.getChunkSize();
+            int commitInterval = dataSet.getCommitInterval() != null
+                    ? dataSet.getCommitInterval()
+                    : manifest.getCommitInterval();
+            this.loadDataSet(dataSet, checksum, chunkSize, commitInterval);
+        }
+        return true;
+    }
+
+    private void loadDataSet(DataSet dataSet, String checksum, int chunkSize, int commitInterval)
+            throws IOException, SQLException, AppException {
+        logger.info(String.format("Loading reference data '%s' into '%s'...", dataSet.getResource(),
+                dataSet.getTable()));
+        long startTime = System.nanoTime();
+        long rowCount = 0;
+
+        boolean autoCommit = this.connection.getAutoCommit();
+        this.connection.setAutoCommit(false);
+        try (IRowReader reader = openReader(dataSet)) {
+            String sql = buildInsertSql(dataSet, reader.getColumns());
+            try (PreparedStatement statement = this.connection.prepareStatement(sql)) {
+                Object[] values;
+                while ((values = reader.next()) != null) {
+                    for (int i = 0; i < values.length; i++) {
+                        statement.setObject(i + 1, values[i]);
+                    }
+                    statement.addBatch();
+                    rowCount++;
+
+                    if (rowCount % chunkSize == 0) {
+                        statement.executeBatch();
+                    }
+                    if (rowCount % commitInterval == 0) {
+                        statement.executeBatch();
+                        this.connection.commit();
+                    }
+                }
+                statement.executeBatch();
+            }
+
+            this.recordLoaded(dataSet.getResource(), checksum, rowCount);
+            this.connection.commit();
+        } catch (SQLException | IOException e) {
+            this.connection.rollback();
+            throw new AppException(String.format(
+                    "Failed to load reference data '%s' into '%s' near row %d",
+                    dataSet.getResource(), dataSet.getTable(), rowCount), e);
+        } finally {
+            this.connection.setAutoCommit(autoCommit);
+        }
+
+        this.rowsLoaded += rowCount;
+        this.loadedTables.add(dataSet.getTable());
+        long durationMillis = Math.max((System.nanoTime() - startTime) / 1_000_000, 1);
+        logger.info(String.format("Loaded %d rows into '%s' in %d ms (%d rows/s)",
+                rowCount, dataSet.getTable(), durationMillis, rowCount * 1000 / durationMillis));
+    }
+
+    /**
+     * Tables {@link #load()} loaded data sets into so far, once per data set.
+     */
+    public List<String> getLoadedTables() {
+        return this.loadedTables;
+    }
+
+    /**
+     * Rows loaded so far by {@link #load()}, across all data sets.
+     */
+    public long getRowsLoaded() {
+        return this.rowsLoaded;
+    }
+
+    private static IRowReader openReader(DataSet dataSet) throws IOException {
+        InputStream is = openResource(dataSet.getResource());
+        Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8);
+        if (dataSet.isJsonLines()) {
+            return new JsonLinesRowReader(reader, dataSet.getColumns());
+        } else {
+            return new CsvRowReader(reader, dataSet.getColumns());
+        }
+    }
+
+    private static String buildInsertSql(DataSet dataSet, List<String> columns) {
+        boolean ignore = "ignore".equals(dataSet.getOnDuplicate());
+
+        StringBuilder builder = new StringBuilder();
+        builder.append(ignore ? "INSERT IGNORE INTO " : "INSERT INTO ");
+        builder.append(quoteIdentifier(dataSet.getTable())).append(" (");
+        for (int i = 0; i < columns.size(); i++) {
+            builder.append(i > 0 ? ", " : "").append(quoteIdentifier(columns.get(i)));
+        }
+        builder.append(") VALUES (");
+        for (int i = 0; i < columns.size(); i++) {
+            builder.append(i > 0 ? ", ?" : "?");
+        }
+        builder.append(")");
+
+        if (!ignore) {
+            builder.append(" ON DUPLICATE KEY UPDATE ");
+            for (int i = 0; i < columns.size(); i++) {
+                String column = quoteIdentifier(columns.get(i));
+                builder.append(i > 0 ? ", " : "").append(column).append(" = VALUES(").append(column).append(")");
+            }
+        }
+        return builder.toString();
+    }
+
+    private void ensureTrackingTable() throws SQLException {
+        try (Statement statement = this.connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS " + TRACKING_TABLE + " ("
+                    + "RESOURCE varchar(255) NOT NULL, "
+                    + "CHECKSUM varchar(64) NOT NULL, "
+                    + "ROWSLOADED bigint NOT NULL, "
+                    + "DATELOADED datetime NOT NULL, "
+                    + "PRIMARY KEY (RESOURCE))");
+        }
+    }
+
+    private Map<String, String> readLoadedChecksums() throws SQLException {
+        Map<String, String> checksums = new HashMap<String, String>();
+        try (Statement statement = this.connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT RESOURCE, CHECKSUM FROM " + TRACKING_TABLE)) {
+            while (resultSet.next()) {
+                checksums.put(resultSet.getString(1), resultSet.getString(2));
+            }
+        }
+        return checksums;
+    }
+
+    private void recordLoaded(String resource, String checksum, long rowCount) throws SQLException {
+        String sql = "INSERT INTO " + TRACKING_TABLE + " (RESOURCE, CHECKSUM, ROWSLOADED, DATELOADED) "
+                + "VALUES (?, ?, ?, NOW()) "
+                + "ON DUPLICATE KEY UPDATE CHECKSUM = VALUES(CHECKSUM), ROWSLOADED = VALUES(ROWSLOADED), "
+                + "DATELOADED = VALUES(DATELOADED)";
+        try (PreparedStatement statement = this.connection.prepareStatement(sql)) {
+            statement.setString(1, resource);
+            statement.setString(2, checksum);
+            statement.setLong(3, rowCount);
+            statement.executeUpdate();
+        }
+    }
+
+    private static DataSetManifest readManifest() throws IOException, ValidationException {
+        InputStream is = ReferenceDataLoader.class.getClassLoader().getResourceAsStream(MANIFEST_RESOURCE);
+        if (is == null) {
+            return null;
+        }
+
+        DataSetManifest manifest;
+        try (Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8)) {
+            manifest = new GsonBuilder().create().fromJson(reader, DataSetManifest.class);
+        }
+        if (manifest != null) {
+            manifest.validate();
+        }
+        return manifest;
+    }
+
+    private static InputStream openResource(String resource) throws IOException {
+        InputStream is = ReferenceDataLoader.class.getClassLoader().getResourceAsStream(resource);
+        if (is == null) {
+            throw new IOException(String.format("Reference data resource '%s' was not found", resource));
+        }
+        return is;
+    }
+
+    private static String computeChecksum(String resource) throws IOException {
+        MessageDigest digest = Sha256.newDigest();
+        byte[] buffer = new byte[8192];
+        try (InputStream is = new DigestInputStream(openResource(resource), digest)) {
+            while (is.read(buffer) != -1) {
+                // Digest only
+            }
+        }
+        return Sha256.toHex(digest.digest());
+    }
+
+    private static String quoteIdentifier(String identifier) {
+        return "`" + identifier.replace("`", "``") + "`";
+    }
+}
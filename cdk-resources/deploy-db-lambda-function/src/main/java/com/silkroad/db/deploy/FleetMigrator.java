@@ -0,0 +1,223 @@
+package com.silkroad.db.deploy;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.silkroad.db.deploy.Exceptions.*;
+import com.silkroad.db.deploy.Metrics.*;
+import com.silkroad.db.deploy.Types.*;
+import com.silkroad.db.deploy.Utils.*;
+
+/**
+ * Runs the {@link Migrator} against many databases at once. At most
+ * {@code maxConcurrency} targets run in total and at most
+ * {@code maxConcurrencyPerHost} run against the same RDS host; targets are
+ * dispatched round-robin across hosts so one busy host does not starve the
+ * others.
+ */
+public class FleetMigrator {
+
+    private List<FleetTarget> targets;
+    private int maxConcurrency;
+    private int maxConcurrencyPerHost;
+    private ILogger logger;
+    private Boolean isDebug;
+    private boolean isDryRun;
+    private MetricsRecorder metrics = MetricsRecorder.disabled();
+    private boolean createMissingIndexes = false;
+
+    private final Map<String, Deque<FleetTarget>> pendingByHost = new LinkedHashMap<String, Deque<FleetTarget>>();
+    private final Map<String, Integer> runningByHost = new HashMap<String, Integer>();
+    private final List<FleetTargetResult> results = Collections.synchronizedList(new ArrayList<FleetTargetResult>());
+    private List<String> hostOrder;
+    private int nextHostIndex = 0;
+    private int running = 0;
+
+    public FleetMigrator(List<FleetTarget> targets, int maxConcurrency, int maxConcurrencyPerHost, ILogger logger,
+            Boolean isDebug) throws ValidationException {
+        this(targets, maxConcurrency, maxConcurrencyPerHost, logger, isDebug, false);
+    }
+
+    /**
+     * @param isDryRun Only plan the migration of every target, see
+     *                 {@link Migrator#planMigrationScripts()}
+     */
+    public FleetMigrator(List<FleetTarget> targets, int maxConcurrency, int maxConcurrencyPerHost, ILogger logger,
+            Boolean isDebug, boolean isDryRun) throws ValidationException {
+        this.targets = targets;
+        this.maxConcurrency = maxConcurrency;
+        this.maxConcurrencyPerHost = maxConcurrencyPerHost;
+        this.logger = logger;
+        this.isDebug = isDebug;
+        this.isDryRun = isDryRun;
+
+        if (this.targets == null || this.targets.isEmpty()) {
+            throw new ValidationException("Missing required argument: 'targets'");
+        }
+        if (this.maxConcurrency < 1) {
+            throw new ValidationException("Invalid argument: 'maxConcurrency' must be greater than 0");
+        }
+        if (this.maxConcurrencyPerHost < 1) {
+            throw new ValidationException("Invalid argument: 'maxConcurrencyPerHost' must be greater than 0");
+        }
+        for (FleetTarget target : this.targets) {
+            target.validate();
+        }
+    }
+
+    /**
+     * Where the metrics of every target are recorded, tagged with the target
+     * name. Disabled by default.
+     */
+    public void setMetrics(MetricsRecorder metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * See {@link Migrator#setCreateMissingIndexes(boolean)}.
+     */
+    public void setCreateMissingIndexes(boolean createMissingIndexes) {
+        this.createMissingIndexes = createMissingIndexes;
+    }
+
+    public List<FleetTargetResult> run() throws AppException {
+        // Liquibase keeps its scope in a process-wide singleton unless told otherwise
+        ThreadLocalScopeManager.install();
+
+        for (FleetTarget target : this.targets) {
+            this.pendingByHost
+                    .computeIfAbsent(target.getHostKey(), k -> new ArrayDeque<FleetTarget>())
+                    .add(target);
+        }
+        this.hostOrder = new ArrayList<String>(this.pendingByHost.keySet());
+
+        logger.info(String.format(
+                "Migrating %d databases across %d hosts (max concurrency: %d, max per host: %d)...",
+                this.targets.size(), this.hostOrder.size(), this.maxConcurrency, this.maxConcurrencyPerHost));
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.maxConcurrency, this.targets.size()));
+        CountDownLatch completed = new CountDownLatch(this.targets.size());
+        long startTime = System.nanoTime();
+
+        try {
+            this.dispatch(executor, completed);
+            completed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AppException("Interrupted while waiting for the fleet migration to complete", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long elapsedMillis = (System.nanoTime() - startTime) / 1_000_000;
+        this.logSummary(elapsedMillis);
+        this.metrics.recordPhase("fleet", elapsedMillis);
+
+        return new ArrayList<FleetTargetResult>(this.results);
+    }
+
+    private synchronized void dispatch(ExecutorService executor, CountDownLatch completed) {
+        int idleHosts = 0;
+        while (this.running < this.maxConcurrency && idleHosts < this.hostOrder.size()) {
+            String hostKey = this.hostOrder.get(this.nextHostIndex);
+            this.nextHostIndex = (this.nextHostIndex + 1) % this.hostOrder.size();
+
+            Deque<FleetTarget> pending = this.pendingByHost.get(hostKey);
+            int hostRunning = this.runningByHost.getOrDefault(hostKey, 0);
+            if (pending.isEmpty() || hostRunning >= this.maxConcurrencyPerHost) {
+                idleHosts++;
+                continue;
+            }
+
+            idleHosts = 0;
+            FleetTarget target = pending.poll();
+            this.runningByHost.put(hostKey, hostRunning + 1);
+            this.running++;
+
+            executor.execute(() -> {
+                try {
+                    this.results.add(this.migrate(target));
+                } finally {
+                    this.release(hostKey);
+                    completed.countDown();
+                    this.dispatch(executor, completed);
+                }
+            });
+        }
+    }
+
+    private synchronized void release(String hostKey) {
+        this.runningByHost.put(hostKey, this.runningByHost.get(hostKey) - 1);
+        this.running--;
+    }
+
+    private FleetTargetResult migrate(FleetTarget target) {
+        ILogger targetLogger = new PrefixedLogger(this.logger, target.getName());
+        MetricsRecorder targetMetrics = this.metrics.withProperty("Database", target.getName());
+        long startTime = System.nanoTime();
+        try (Migrator migrator = new Migrator(
+                target.getRdsHost(),
+                target.getRdsAdminSecret(),
+                target.getRdsAppSecret(),
+                targetLogger,
+                this.isDebug)) {
+
+            migrator.setMetrics(targetMetrics);
+            migrator.setCreateMissingIndexes(this.createMissingIndexes);
+            if (this.isDryRun) {
+                migrator.planMigrationScripts();
+            } else {
+                migrator.runInitializationScript();
+                migrator.runMigrationScripts();
+            }
+
+            long durationMillis = (System.nanoTime() - startTime) / 1_000_000;
+            targetLogger.info(String.format("OK (%d ms)", durationMillis));
+            targetMetrics.recordPhase("target", durationMillis);
+            return new FleetTargetResult(target.getName(), true, durationMillis, null);
+        } catch (Exception e) {
+            long durationMillis = (System.nanoTime() - startTime) / 1_000_000;
+            String errorMessage = getRootCauseMessage(e);
+            targetLogger.error(String.format("FAILED (%d ms): %s", durationMillis, errorMessage));
+            targetMetrics.recordPhase("target-failed", durationMillis);
+            return new FleetTargetResult(target.getName(), false, durationMillis, errorMessage);
+        }
+    }
+
+    private void logSummary(long elapsedMillis) {
+        int succeeded = 0;
+        for (FleetTargetResult result : this.results) {
+            if (result.isSuccess()) {
+                succeeded++;
+            } else {
+                logger.error(String.format("FAILED %s: %s", result.getName(), result.getErrorMessage()));
+            }
+        }
+
+        double minutes = Math.max(elapsedMillis, 1) / 60_000.0;
+        logger.info(String.format(
+                "Fleet migration completed: %d succeeded, %d failed, %d total in %.1f s (%.1f databases/minute)",
+                succeeded, this.results.size() - succeeded, this.results.size(), elapsedMillis / 1000.0,
+                this.results.size() / minutes));
+    }
+
+    private static String getRootCauseMessage(Throwable throwable) {
+        String message = throwable.getMessage();
+        while (throwable.getCause() != null) {
+            throwable = throwable.getCause();
+            if (throwable.getMessage() != null) {
+                message = throwable.getMessage();
+            }
+        }
+        return message;
+    }
+}
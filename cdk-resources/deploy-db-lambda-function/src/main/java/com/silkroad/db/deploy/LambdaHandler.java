@@ -1,50 +1,90 @@
 package com.silkroad.db.deploy;
 
+import java.net.URI;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.commons.lang3.StringUtils;
 
 import com.google.gson.*;
+import com.silkroad.db.deploy.Archive.*;
 import com.silkroad.db.deploy.Exceptions.*;
+import com.silkroad.db.deploy.Metrics.*;
+import com.silkroad.db.deploy.Profile.*;
 import com.silkroad.db.deploy.Types.*;
 import com.silkroad.db.deploy.Utils.*;
+import com.silkroad.db.deploy.Verify.*;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.events.CloudFormationCustomResourceEvent;
 
-import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
-import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.secretsmanager.SecretsManagerClient;
-import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueRequest;
-import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueResponse;
-
 public class LambdaHandler {
-    Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    static {
+        // Do the class-loading and init work during the Lambda init phase (or
+        // before a snapshot) rather than on the first request
+        Primer.register();
+        Primer.prime();
+    }
+
+    // Time kept back for the changeset or chunk in progress when the budget runs out
+    private static final long TIME_BUDGET_RESERVE_MILLIS = 30_000;
+
+    // Kept open across warm invocations, see ConnectionSession
+    private static ConnectionSession session;
+
+    private enum MigrationMode {
+        PLAN,
+        INITIALIZE_AND_MIGRATE,
+        UPDATE,
+        RESUME
+    }
+
+    // A change of any of these points the resource at another database or user
+    private static final List<String> TARGET_PROPERTIES = List.of("region", "rdsHost", "rdsAdminSecretArn",
+            "rdsAppSecretArn");
+
+    private static class ResolvedSecrets {
+        private final SecretResolver resolver;
+        private final RdsAdminSecret rdsAdminSecret;
+        private final RdsAppSecret rdsAppSecret;
+
+        private ResolvedSecrets(SecretResolver resolver, RdsAdminSecret rdsAdminSecret, RdsAppSecret rdsAppSecret) {
+            this.resolver = resolver;
+            this.rdsAdminSecret = rdsAdminSecret;
+            this.rdsAppSecret = rdsAppSecret;
+        }
+    }
+
+    Gson gson = new GsonBuilder().create();
 
     public Object handleRequest(CloudFormationCustomResourceEvent event, Context context) {
-        String eventJson = gson.toJson(event);
+        AsyncLogWriter logWriter = new AsyncLogWriter(context.getLogger());
+        JsonLogger logger = new JsonLogger(logWriter, LogLevel.INFO);
         try {
-            WrappedLambdaLogger logger = new WrappedLambdaLogger(context.getLogger());
-            ResourceProperties properties = new ResourceProperties(event.getResourceProperties());
+            DeploymentProperties properties = ResourcePropertiesBinder.bind(event.getResourceProperties());
+            boolean isDebug = properties.isDebug();
+            logger.setMinLevel(isDebug ? LogLevel.DEBUG : LogLevel.INFO);
 
-            Boolean isDebug = properties.getProperty("isDebug", Boolean.class);
-            if (isDebug == null) {
-                isDebug = false;
-            }
+            // Only serialized when debug logging is on
+            logger.debug(() -> gson.toJson(event));
 
-            if (isDebug) {
-                logger.debug(eventJson);
-            }
+            TimeBudget timeBudget = new TimeBudget(context::getRemainingTimeInMillis, TIME_BUDGET_RESERVE_MILLIS);
+            MetricsRecorder metrics = new MetricsRecorder(new LambdaLoggerMetricsSink(context.getLogger()))
+                    .withProperty("RequestType", event.getRequestType());
 
             switch (event.getRequestType()) {
                 case "Create": {
-                    return this.create(properties, logger, isDebug);
+                    return this.create(properties, logger, isDebug, timeBudget, metrics);
                 }
                 case "Update": {
-                    return this.update(properties, logger, isDebug);
+                    DeploymentProperties oldProperties = ResourcePropertiesBinder
+                            .bind(event.getOldResourceProperties());
+                    return this.update(properties, oldProperties, logger, isDebug, timeBudget, metrics);
                 }
                 case "Delete": {
-                    return this.delete(properties, logger, isDebug);
+                    return this.delete(properties, logger, isDebug, timeBudget, metrics);
                 }
                 default: {
                     String message = String.format("Unexpected request type '%s'", event.getRequestType());
@@ -52,18 +92,129 @@ public class LambdaHandler {
                 }
             }
         } catch (Exception e) {
-            context.getLogger().log(e.toString());
+            throw toDeploymentFailure(e, logger);
+        } finally {
+            logWriter.close();
+        }
+    }
+
+    /**
+     * Entry point of the custom resource provider's {@code isComplete} waiter,
+     * called after {@link #handleRequest} and then periodically until it
+     * reports completion. A 'Create' or 'Update' run that ran out of time
+     * resumes here from the progress saved in the database, so CloudFormation
+     * is only signalled once the whole migration is done.
+     */
+    public Map<String, Object> isComplete(CloudFormationCustomResourceEvent event, Context context) {
+        AsyncLogWriter logWriter = new AsyncLogWriter(context.getLogger());
+        JsonLogger logger = new JsonLogger(logWriter, LogLevel.INFO);
+        try {
+            DeploymentProperties properties = ResourcePropertiesBinder.bind(event.getResourceProperties());
+            boolean isDebug = properties.isDebug();
+            logger.setMinLevel(isDebug ? LogLevel.DEBUG : LogLevel.INFO);
+
+            boolean isComplete = true;
+            if (("Create".equals(event.getRequestType()) || "Update".equals(event.getRequestType()))
+                    && !properties.isDryRun()) {
+                TimeBudget timeBudget = new TimeBudget(context::getRemainingTimeInMillis,
+                        TIME_BUDGET_RESERVE_MILLIS);
+                MetricsRecorder metrics = new MetricsRecorder(new LambdaLoggerMetricsSink(context.getLogger()))
+                        .withProperty("RequestType", event.getRequestType() + ":IsComplete");
+                isComplete = this.migrate(properties, null, logger, isDebug, MigrationMode.RESUME, timeBudget,
+                        metrics);
+            }
 
-            String errors = String.join(System.lineSeparator() + "  - ", getExceptionMessages(e));
-            String message = "Database deployment failed due to the following errors:" + System.lineSeparator()
-                    + errors;
-            throw new RuntimeException(message);
+            logger.log(LogLevel.INFO, "Resource completion checked",
+                    "requestType", event.getRequestType(),
+                    "isComplete", isComplete);
+            Map<String, Object> result = new HashMap<String, Object>();
+            result.put("IsComplete", isComplete);
+            return result;
+        } catch (Exception e) {
+            throw toDeploymentFailure(e, logger);
+        } finally {
+            logWriter.close();
+        }
+    }
+
+    /**
+     * Entry point for direct invocations that check the schema of many
+     * databases at once, see {@link SchemaVerifier}. The event is a
+     * {@link SchemaVerificationRequest}; each host is read with the admin
+     * secret given for it. Drift is reported in the result rather than
+     * failing the invocation.
+     */
+    public Map<String, Object> verifySchema(Map<String, Object> event, Context context) {
+        AsyncLogWriter logWriter = new AsyncLogWriter(context.getLogger());
+        JsonLogger logger = new JsonLogger(logWriter, LogLevel.INFO);
+        try {
+            SchemaVerificationRequest request = gson.fromJson(gson.toJsonTree(event),
+                    SchemaVerificationRequest.class);
+            if (request == null) {
+                throw new ValidationException("Missing schema verification request");
+            }
+            logger.setMinLevel(request.isDebug() ? LogLevel.DEBUG : LogLevel.INFO);
+            request.validate();
+
+            MetricsRecorder metrics = new MetricsRecorder(new LambdaLoggerMetricsSink(context.getLogger()))
+                    .withProperty("RequestType", "VerifySchema");
+
+            // Every admin secret is fetched at once
+            SecretResolver secretResolver = SecretResolver.forRegion(request.getRegion(),
+                    getSecretsManagerEndpoint());
+            List<CompletableFuture<RdsAdminSecret>> secretFutures = new ArrayList<CompletableFuture<RdsAdminSecret>>();
+            for (SchemaVerificationRequest.Host host : request.getHosts()) {
+                secretFutures.add(secretResolver.resolveAsync(host.getRdsAdminSecretArn(), RdsAdminSecret.class));
+            }
+            List<SchemaHost> hosts = new ArrayList<SchemaHost>();
+            for (int i = 0; i < request.getHosts().size(); i++) {
+                SchemaVerificationRequest.Host host = request.getHosts().get(i);
+                RdsAdminSecret rdsAdminSecret = SecretResolver.await(secretFutures.get(i),
+                        host.getRdsAdminSecretArn());
+                if (rdsAdminSecret == null) {
+                    throw new ValidationException(String.format("Secret '%s' is empty", host.getRdsAdminSecretArn()));
+                }
+                rdsAdminSecret.validate();
+                hosts.add(new SchemaHost(host.getRdsHost(), rdsAdminSecret, host.getDatabases()));
+            }
+
+            SchemaVerifier verifier = new SchemaVerifier(logger);
+            verifier.setMetrics(metrics);
+            List<SchemaVerificationResult> results = verifier.verify(hosts, request.getExpectedSchemaHash());
+
+            List<String> drifted = new ArrayList<String>();
+            Map<String, Object> schemaHashes = new HashMap<String, Object>();
+            for (SchemaVerificationResult result : results) {
+                schemaHashes.put(result.getName(), result.getSchemaHash());
+                if (!result.isMatches()) {
+                    drifted.add(result.getName());
+                }
+            }
+            Map<String, Object> response = new HashMap<String, Object>();
+            response.put("IsValid", drifted.isEmpty());
+            response.put("Databases", results.size());
+            response.put("Drifted", drifted);
+            response.put("SchemaHashes", schemaHashes);
+            return response;
+        } catch (Exception e) {
+            throw toDeploymentFailure(e, logger);
+        } finally {
+            logWriter.close();
         }
     }
 
-    private Object create(ResourceProperties properties, ILogger logger, boolean isDebug) {
+    private Object create(DeploymentProperties properties, ILogger logger, boolean isDebug, TimeBudget timeBudget,
+            MetricsRecorder metrics) {
         try {
-            this.migrate(properties, logger, isDebug);
+            if (properties.isDryRun()) {
+                this.migrate(properties, null, logger, isDebug, MigrationMode.PLAN, timeBudget, metrics);
+                return "Task - DryRun";
+            }
+            if (!this.migrate(properties, null, logger, isDebug, MigrationMode.INITIALIZE_AND_MIGRATE, timeBudget,
+                    metrics)) {
+                logger.info("Create resource in progress, the migration resumes in the next 'isComplete' call");
+                return "Task - InProgress";
+            }
             logger.info("Create resource completed successfully");
             return "Task - OK";
         } catch (Exception e) {
@@ -71,9 +222,24 @@ public class LambdaHandler {
         }
     }
 
-    private Object update(ResourceProperties properties, ILogger logger, boolean isDebug) {
+    /**
+     * Runs only the steps whose inputs changed since the last deployment of
+     * the same target: the initialization script when the template or the app
+     * secret version changed, and the migrations when the bundled changelog
+     * did. Both are checked against fingerprints recorded in the database.
+     */
+    private Object update(DeploymentProperties properties, DeploymentProperties oldProperties, ILogger logger,
+            boolean isDebug, TimeBudget timeBudget, MetricsRecorder metrics) {
         try {
-            this.migrate(properties, logger, isDebug);
+            if (properties.isDryRun()) {
+                this.migrate(properties, null, logger, isDebug, MigrationMode.PLAN, timeBudget, metrics);
+                return "Task - DryRun";
+            }
+            if (!this.migrate(properties, oldProperties, logger, isDebug, MigrationMode.UPDATE, timeBudget,
+                    metrics)) {
+                logger.info("Update resource in progress, the migration resumes in the next 'isComplete' call");
+                return "Task - InProgress";
+            }
             logger.info("Update resource completed successfully");
             return "Task - OK";
         } catch (Exception e) {
@@ -81,76 +247,220 @@ public class LambdaHandler {
         }
     }
 
-    private Object delete(ResourceProperties properties, ILogger logger, boolean isDebug) {
-        // NoOp
-        return "Task - NoOp";
+    /**
+     * Archives the database to {@code archiveBucket} when it is set; the
+     * database itself is left in place.
+     */
+    private Object delete(DeploymentProperties properties, ILogger logger, boolean isDebug, TimeBudget timeBudget,
+            MetricsRecorder metrics) {
+        if (StringUtils.isEmpty(properties.getArchiveBucket())) {
+            // NoOp
+            return "Task - NoOp";
+        }
+
+        try {
+            properties.validate();
+            ResolvedSecrets secrets = this.resolveSecrets(properties, logger, metrics);
+            RdsAppSecret rdsAppSecret = secrets.rdsAppSecret;
+            ConnectionSession connectionSession = getSession(properties.getRdsHost(), secrets.rdsAdminSecret);
+
+            try (S3ArchiveSink sink = S3ArchiveSink.forBucket(properties.getRegion(), null,
+                    properties.getArchiveBucket(), properties.getArchivePrefix())) {
+                DatabaseArchiver archiver = new DatabaseArchiver(properties.getRdsHost(), secrets.rdsAdminSecret,
+                        connectionSession, rdsAppSecret.getDatabaseName(), sink, logger);
+                archiver.setTimeBudget(timeBudget);
+                archiver.setMetrics(metrics.withProperty("Database", rdsAppSecret.getDatabaseName()));
+                try {
+                    archiver.archive();
+                } catch (AppException e) {
+                    secrets.resolver.invalidate(properties.getRdsAdminSecretArn(), properties.getRdsAppSecretArn());
+                    throw e;
+                }
+            }
+
+            logger.info("Delete resource completed successfully");
+            return "Task - Archived";
+        } catch (Exception e) {
+            throw new RuntimeException("An error occurred while processing the resource 'Delete' event", e);
+        }
     }
 
-    private void migrate(ResourceProperties properties, ILogger logger, boolean isDebug)
+    /**
+     * @return {@code false} when the time budget ran out before the migration
+     *         completed
+     */
+    private boolean migrate(DeploymentProperties properties, DeploymentProperties oldProperties, ILogger logger,
+            boolean isDebug, MigrationMode mode, TimeBudget timeBudget, MetricsRecorder metrics)
             throws AppException, ValidationException {
+        long startTime = System.nanoTime();
 
-        logger.info("Running database schema migration...");
-
-        String region = properties.getProperty("region", String.class);
-        if (StringUtils.isEmpty(region)) {
-            throw new ValidationException("Missing required resource property: 'region'");
+        switch (mode) {
+            case PLAN:
+                logger.info("Planning database schema migration (dry run)...");
+                break;
+            case RESUME:
+                logger.info("Resuming database schema migration...");
+                break;
+            default:
+                logger.info("Running database schema migration...");
+                break;
         }
 
-        RdsHostInfo rdsHostInfo = properties.getProperty("rdsHost", RdsHostInfo.class);
-        if (rdsHostInfo == null) {
-            throw new ValidationException("Missing required resource property: 'rdsHost'");
+        // Reports every missing or malformed property at once
+        properties.validate();
+        RdsHostInfo rdsHostInfo = properties.getRdsHost();
+        String rdsAdminSecretArn = properties.getRdsAdminSecretArn();
+        String rdsAppSecretArn = properties.getRdsAppSecretArn();
+
+        ResolvedSecrets secrets = this.resolveSecrets(properties, logger, metrics);
+        SecretResolver secretResolver = secrets.resolver;
+        RdsAdminSecret rdsAdminSecret = secrets.rdsAdminSecret;
+        RdsAppSecret rdsAppSecret = secrets.rdsAppSecret;
+
+        metrics = metrics.withProperty("Database", rdsAppSecret.getDatabaseName());
+
+        ConnectionSession connectionSession = getSession(rdsHostInfo, rdsAdminSecret);
+        Migrator migrator = new Migrator(rdsHostInfo, rdsAdminSecret, rdsAppSecret, logger, isDebug,
+                connectionSession);
+        migrator.setTimeBudget(timeBudget);
+        migrator.setMetrics(metrics);
+        migrator.setAppSecretVersion(secretResolver.getVersionId(rdsAppSecretArn));
+        migrator.setCreateMissingIndexes(properties.isCreateMissingIndexes());
+
+        StatementProfiler profiler = null;
+        if (properties.isProfileStatements()) {
+            profiler = new StatementProfiler(logger);
+            if (properties.getSlowStatementMillis() != null) {
+                profiler.setSlowThresholdMillis(properties.getSlowStatementMillis());
+            }
+            migrator.setProfiler(profiler);
         }
-        rdsHostInfo.validate();
 
-        String rdsAdminSecretArn = properties.getProperty("rdsAdminSecretArn", String.class);
-        if (StringUtils.isEmpty(rdsAdminSecretArn)) {
-            throw new ValidationException("Missing required resource property: 'rdsAdminSecretArn'");
+        // Steps are only skipped when the update keeps the same database and user
+        boolean skipUnchanged = false;
+        List<String> changedProperties = null;
+        if (mode == MigrationMode.UPDATE) {
+            changedProperties = properties.getChangedProperties(oldProperties);
+            skipUnchanged = changedProperties.stream().noneMatch(TARGET_PROPERTIES::contains);
         }
 
-        String rdsAppSecretArn = properties.getProperty("rdsAppSecretArn", String.class);
-        if (StringUtils.isEmpty(rdsAppSecretArn)) {
-            throw new ValidationException("Missing required resource property: 'rdsAppSecretArn'");
+        long handshakeMillis = connectionSession.getTotalHandshakeMillis();
+        int reconnectCount = connectionSession.getReconnectCount();
+        try {
+            if (mode == MigrationMode.PLAN) {
+                migrator.planMigrationScripts();
+                return true;
+            }
+
+            // A resumed run only initializes when an earlier attempt ran out of time before it could
+            List<String> skippedSteps = new ArrayList<String>();
+            if ((skipUnchanged || mode == MigrationMode.RESUME) && migrator.isInitializationCurrent()) {
+                skippedSteps.add("init-script");
+            } else if (!migrator.runInitializationScript()) {
+                logger.info("Time budget exhausted before the initialization script could run");
+                return false;
+            }
+
+            boolean isComplete = true;
+            if (skipUnchanged && migrator.isChangelogCurrent()) {
+                skippedSteps.add("migrations");
+            } else {
+                isComplete = migrator.runMigrationScripts();
+            }
+
+            if (mode == MigrationMode.UPDATE) {
+                for (String step : skippedSteps) {
+                    metrics.recordSkipped(step);
+                }
+                logger.log(LogLevel.INFO, "Update steps whose inputs did not change were skipped",
+                        "changedProperties", String.join(",", changedProperties),
+                        "skippedSteps", String.join(",", skippedSteps));
+            }
+
+            logger.log(LogLevel.INFO, "Database connection handshakes since cold start",
+                    "handshakes", connectionSession.getHandshakeCount(),
+                    "handshakeMillis", connectionSession.getTotalHandshakeMillis());
+            return isComplete;
+        } catch (AppException e) {
+            // The cached secrets may have been rotated since they were fetched
+            secretResolver.invalidate(rdsAdminSecretArn, rdsAppSecretArn);
+            throw e;
+        } finally {
+            // Keeps the shared session open, only closes what the migrator opened, e.g. for the profiler
+            migrator.close();
+            if (profiler != null) {
+                profiler.logReport();
+            }
+            metrics.recordPhase("connection", connectionSession.getTotalHandshakeMillis() - handshakeMillis);
+            metrics.recordRetries("reconnect", connectionSession.getReconnectCount() - reconnectCount);
+            metrics.recordPhase("total", (System.nanoTime() - startTime) / 1_000_000);
         }
+    }
+
+    /**
+     * Fetches both secrets concurrently through a client that is kept across
+     * warm invocations.
+     */
+    private ResolvedSecrets resolveSecrets(DeploymentProperties properties, ILogger logger, MetricsRecorder metrics)
+            throws AppException, ValidationException {
+        String rdsAdminSecretArn = properties.getRdsAdminSecretArn();
+        String rdsAppSecretArn = properties.getRdsAppSecretArn();
 
-        SecretsManagerClient secretsClient = SecretsManagerClient.builder()
-                .region(Region.of(region))
-                .credentialsProvider(DefaultCredentialsProvider.create())
-                .build();
+        long secretsStartTime = System.nanoTime();
+        SecretResolver secretResolver = SecretResolver.forRegion(properties.getRegion(), getSecretsManagerEndpoint());
+        CompletableFuture<RdsAdminSecret> rdsAdminSecretFuture = secretResolver
+                .resolveAsync(rdsAdminSecretArn, RdsAdminSecret.class);
+        CompletableFuture<RdsAppSecret> rdsAppSecretFuture = secretResolver
+                .resolveAsync(rdsAppSecretArn, RdsAppSecret.class);
 
-        RdsAdminSecret rdsAdminSecret = null;
-        RdsAppSecret rdsAppSecret = null;
+        RdsAdminSecret rdsAdminSecret = SecretResolver.await(rdsAdminSecretFuture, rdsAdminSecretArn);
+        RdsAppSecret rdsAppSecret = SecretResolver.await(rdsAppSecretFuture, rdsAppSecretArn);
+        metrics.recordPhase("secrets", (System.nanoTime() - secretsStartTime) / 1_000_000);
 
         try {
-            String rdsAdminSecretValue = getSecretValue(secretsClient, rdsAdminSecretArn);
-            rdsAdminSecret = gson.fromJson(rdsAdminSecretValue, RdsAdminSecret.class);
+            if (rdsAdminSecret == null) {
+                throw new ValidationException("Secret 'rdsAdminSecretArn' is empty");
+            }
             rdsAdminSecret.validate();
 
-            String rdsAppSecretValue = getSecretValue(secretsClient, rdsAppSecretArn);
-            rdsAppSecret = gson.fromJson(rdsAppSecretValue, RdsAppSecret.class);
+            if (rdsAppSecret == null) {
+                throw new ValidationException("Secret 'rdsAppSecretArn' is empty");
+            }
             rdsAppSecret.validate();
-        } finally {
-            secretsClient.close();
-        }
-
-        if (isDebug) {
-            logger.debug("rdsAdminSecret: " + rdsAdminSecret);
-            logger.debug("rdsAppSecret: " + rdsAppSecret);
+        } catch (ValidationException e) {
+            secretResolver.invalidate(rdsAdminSecretArn, rdsAppSecretArn);
+            throw e;
         }
 
-        Migrator migrator = new Migrator(rdsHostInfo, rdsAdminSecret, rdsAppSecret, logger, isDebug);
+        logger.debug(() -> "Resolved secrets for database '" + rdsAppSecret.getDatabaseName() + "'");
+        return new ResolvedSecrets(secretResolver, rdsAdminSecret, rdsAppSecret);
+    }
 
-        migrator.runInitializationScript();
-        migrator.runMigrationScripts();
+    private static synchronized ConnectionSession getSession(RdsHostInfo rdsHostInfo, RdsAdminSecret rdsAdminSecret) {
+        if (session != null && !session.matches(rdsHostInfo, rdsAdminSecret)) {
+            // Different target or rotated credentials
+            session.close();
+            session = null;
+        }
+        if (session == null) {
+            session = new ConnectionSession(rdsHostInfo, rdsAdminSecret);
+        }
+        return session;
     }
 
-    private static String getSecretValue(SecretsManagerClient secretsClient, String secretId) {
-        GetSecretValueRequest valueRequest = GetSecretValueRequest.builder()
-                .secretId(secretId)
-                .build();
+    private static URI getSecretsManagerEndpoint() {
+        // Optional override used to point the function at a local Secrets Manager stand-in
+        String endpoint = System.getenv("SECRETS_MANAGER_ENDPOINT");
+        return StringUtils.isEmpty(endpoint) ? null : URI.create(endpoint);
+    }
 
-        GetSecretValueResponse valueResponse = secretsClient.getSecretValue(valueRequest);
+    private static RuntimeException toDeploymentFailure(Exception e, ILogger logger) {
+        logger.error(e.toString());
 
-        return valueResponse.secretString();
+        String errors = String.join(System.lineSeparator() + "  - ", getExceptionMessages(e));
+        String message = "Database deployment failed due to the following errors:" + System.lineSeparator()
+                + errors;
+        return new RuntimeException(message);
     }
 
     private static List<String> getExceptionMessages(Throwable throwable) {
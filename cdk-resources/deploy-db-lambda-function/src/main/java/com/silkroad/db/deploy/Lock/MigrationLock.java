@@ -0,0 +1,219 @@
+package com.silkroad.db.deploy.Lock;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.silkroad.db.deploy.Exceptions.AppException;
+import com.silkroad.db.deploy.Utils.ILogger;
+import com.silkroad.db.deploy.Utils.LogLevel;
+import com.silkroad.db.deploy.Utils.Sha256;
+import com.silkroad.db.deploy.Utils.TimeBudget;
+
+/**
+ * Serializes deployments of one database with a MySQL named lock
+ * ({@code GET_LOCK} / {@code RELEASE_LOCK}).
+ *
+ * The lock belongs to the connection's session, so it is released by the
+ * server as soon as the session ends, e.g. when a Lambda crashes or times
+ * out; there is no lock row to clear by hand. Each database has its own lock
+ * name, so deployments of different tenant databases never wait for each
+ * other.
+ *
+ * {@code GET_LOCK} itself blocks on the server and returns as soon as the
+ * lock is released, so waiting adds no polling latency. It is called in
+ * growing slices (1 s, 2 s, 4 s, ... up to 15 s) only to log who holds the
+ * lock and to give up once {@code maxWaitMillis} or the time budget is used
+ * up.
+ */
+public class MigrationLock implements AutoCloseable {
+
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 5 * 60 * 1000;
+
+    private static final String LOCK_NAME_PREFIX = "deploy-db:";
+
+    // MySQL rejects lock names longer than 64 characters
+    private static final int MAX_LOCK_NAME_LENGTH = 64;
+
+    private static final int INITIAL_SLICE_SECONDS = 1;
+    private static final int MAX_SLICE_SECONDS = 15;
+
+    private final Connection connection;
+    private final String name;
+    private final ILogger logger;
+    private final long maxWaitMillis;
+    private final TimeBudget timeBudget;
+
+    private boolean held = false;
+    private long waitMillis = 0;
+
+    public MigrationLock(Connection connection, String databaseName, ILogger logger) {
+        this(connection, databaseName, logger, DEFAULT_MAX_WAIT_MILLIS, TimeBudget.unlimited());
+    }
+
+    public MigrationLock(Connection connection, String databaseName, ILogger logger, long maxWaitMillis,
+            TimeBudget timeBudget) {
+        this.connection = connection;
+        this.name = toLockName(databaseName);
+        this.logger = logger;
+        this.maxWaitMillis = maxWaitMillis;
+        this.timeBudget = timeBudget;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Waits for the lock.
+     *
+     * @return {@code false} when the time budget ran out first; the caller
+     *         can retry in a later run
+     * @throws AppException when it is still held by another session after
+     *                      {@code maxWaitMillis}
+     */
+    public boolean acquire() throws SQLException, AppException {
+        if (this.held) {
+            return true;
+        }
+
+        long startTime = System.nanoTime();
+        int sliceSeconds = 0;
+        while (true) {
+            if (this.tryAcquire(sliceSeconds)) {
+                this.waitMillis += (System.nanoTime() - startTime) / 1_000_000;
+                if (sliceSeconds > 0) {
+                    this.logger.info(String.format("Acquired lock '%s' after %d ms", this.name, this.waitMillis));
+                }
+                return true;
+            }
+
+            long waitedMillis = (System.nanoTime() - startTime) / 1_000_000;
+            if (this.timeBudget.isExhausted()) {
+                this.waitMillis += waitedMillis;
+                this.logger.info(String.format(
+                        "Time budget exhausted while waiting for lock '%s' held by connection %s",
+                        this.name, this.getHolder()));
+                return false;
+            }
+            long remainingMillis = this.maxWaitMillis - waitedMillis;
+            if (remainingMillis <= 0) {
+                this.waitMillis += waitedMillis;
+                throw new AppException(String.format(
+                        "Timed out after %d ms waiting for lock '%s' held by connection %s",
+                        waitedMillis, this.name, this.getHolder()));
+            }
+            if (this.timeBudget.isLimited()) {
+                remainingMillis = Math.min(remainingMillis, this.timeBudget.getRemainingMillis());
+            }
+
+            sliceSeconds = sliceSeconds == 0 ? INITIAL_SLICE_SECONDS : Math.min(sliceSeconds * 2, MAX_SLICE_SECONDS);
+            sliceSeconds = (int) Math.max(1, Math.min(sliceSeconds, remainingMillis / 1000));
+            this.logger.log(LogLevel.INFO, "Waiting for migration lock",
+                    "lock", this.name,
+                    "heldBy", this.getHolder(),
+                    "waitedMillis", waitedMillis,
+                    "nextWaitSeconds", sliceSeconds);
+        }
+    }
+
+    /**
+     * Takes the lock if it is free, without waiting.
+     */
+    public boolean tryAcquire() throws SQLException, AppException {
+        return this.held || this.tryAcquire(0);
+    }
+
+    public boolean isHeld() {
+        return this.held;
+    }
+
+    /**
+     * Whether this connection's session holds the lock, whoever took it.
+     */
+    public boolean isHeldBySession() throws SQLException {
+        String sql = "SELECT IS_USED_LOCK(?) = CONNECTION_ID()";
+        try (PreparedStatement statement = this.connection.prepareStatement(sql)) {
+            statement.setString(1, this.name);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getBoolean(1);
+            }
+        }
+    }
+
+    /**
+     * Id of the connection holding the lock, or {@code null} when it is free.
+     */
+    public Long getHolder() throws SQLException {
+        try (PreparedStatement statement = this.connection.prepareStatement("SELECT IS_USED_LOCK(?)")) {
+            statement.setString(1, this.name);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    long holder = resultSet.getLong(1);
+                    return resultSet.wasNull() ? null : holder;
+                }
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Total time spent waiting in {@link #acquire()}.
+     */
+    public long getWaitMillis() {
+        return this.waitMillis;
+    }
+
+    public void release() throws SQLException {
+        if (!this.held) {
+            return;
+        }
+        this.held = false;
+        try (PreparedStatement statement = this.connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            statement.setString(1, this.name);
+            statement.executeQuery().close();
+        }
+    }
+
+    /**
+     * Releases the lock. A connection that already failed is left alone: its
+     * session, and with it the lock, is gone or about to be discarded.
+     */
+    @Override
+    public void close() {
+        try {
+            this.release();
+        } catch (SQLException e) {
+            this.logger.log(LogLevel.ERROR, "Failed to release migration lock",
+                    "lock", this.name,
+                    "error", e.getMessage());
+        }
+    }
+
+    private boolean tryAcquire(int timeoutSeconds) throws SQLException, AppException {
+        try (PreparedStatement statement = this.connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            statement.setString(1, this.name);
+            statement.setInt(2, timeoutSeconds);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                int result = resultSet.getInt(1);
+                if (resultSet.wasNull()) {
+                    throw new AppException(String.format("GET_LOCK failed for lock '%s'", this.name));
+                }
+                this.held = result == 1;
+                return this.held;
+            }
+        }
+    }
+
+    static String toLockName(String databaseName) {
+        String name = LOCK_NAME_PREFIX + databaseName;
+        if (name.length() <= MAX_LOCK_NAME_LENGTH) {
+            return name;
+        }
+
+        // Long database names are hashed so that distinct databases keep distinct locks
+        return (LOCK_NAME_PREFIX + Sha256.hex(databaseName)).substring(0, MAX_LOCK_NAME_LENGTH);
+    }
+}
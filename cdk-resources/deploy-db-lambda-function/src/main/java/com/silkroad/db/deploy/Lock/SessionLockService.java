@@ -0,0 +1,201 @@
+package com.silkroad.db.deploy.Lock;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Date;
+
+import com.silkroad.db.deploy.Exceptions.AppException;
+import com.silkroad.db.deploy.Utils.ILogger;
+import com.silkroad.db.deploy.Utils.TimeBudget;
+
+import liquibase.Scope;
+import liquibase.database.Database;
+import liquibase.database.core.MySQLDatabase;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.LockException;
+import liquibase.lockservice.DatabaseChangeLogLock;
+import liquibase.lockservice.LockService;
+import liquibase.lockservice.LockServiceFactory;
+import liquibase.logging.Logger;
+
+/**
+ * Liquibase lock service backed by {@link MigrationLock} instead of the
+ * {@code DATABASECHANGELOGLOCK} table, which Liquibase polls with fixed
+ * sleeps and which stays locked when a run dies.
+ *
+ * When the session already holds the lock (the {@link com.silkroad.db.deploy.Migrator}
+ * takes it before running Liquibase) the service only borrows it and leaves
+ * releasing it to its owner.
+ *
+ * Lock waits are logged to the {@link ILogger} found in the Liquibase
+ * {@link Scope} under {@link #LOGGER_SCOPE_KEY}, so they end up with the rest
+ * of the run's output; without one they go to Liquibase's own log.
+ */
+public class SessionLockService implements LockService {
+
+    public static final String LOGGER_SCOPE_KEY = SessionLockService.class.getName() + ".logger";
+
+    private static boolean registered = false;
+
+    private Database database;
+    private long maxWaitMillis = MigrationLock.DEFAULT_MAX_WAIT_MILLIS;
+    private MigrationLock lock;
+    private boolean borrowed = false;
+
+    /**
+     * Makes Liquibase use this service for MySQL databases.
+     */
+    public static synchronized void register() {
+        if (!registered) {
+            LockServiceFactory.getInstance().register(new SessionLockService());
+            registered = true;
+        }
+    }
+
+    @Override
+    public int getPriority() {
+        return PRIORITY_DATABASE;
+    }
+
+    @Override
+    public boolean supports(Database database) {
+        // Offline databases (SQL generation only) keep Liquibase's own lock service
+        return database instanceof MySQLDatabase && database.getConnection() instanceof JdbcConnection;
+    }
+
+    @Override
+    public void setDatabase(Database database) {
+        this.database = database;
+    }
+
+    @Override
+    public void setChangeLogLockWaitTime(long changeLogLockWaitTime) {
+        // Liquibase passes minutes
+        this.maxWaitMillis = changeLogLockWaitTime * 60 * 1000;
+    }
+
+    @Override
+    public void setChangeLogLockRecheckTime(long changeLogLockRecheckTime) {
+        // Not used: GET_LOCK waits on the server and returns as soon as the lock is free
+    }
+
+    @Override
+    public boolean hasChangeLogLock() {
+        return this.borrowed || (this.lock != null && this.lock.isHeld());
+    }
+
+    @Override
+    public void waitForLock() throws LockException {
+        try {
+            MigrationLock lock = this.getLock();
+            if (this.hasChangeLogLock() || this.borrow(lock)) {
+                return;
+            }
+            if (!lock.acquire()) {
+                throw new LockException(String.format("Could not acquire lock '%s'", lock.getName()));
+            }
+        } catch (SQLException | AppException | DatabaseException e) {
+            throw new LockException(e);
+        }
+    }
+
+    @Override
+    public boolean acquireLock() throws LockException {
+        try {
+            MigrationLock lock = this.getLock();
+            return this.hasChangeLogLock() || this.borrow(lock) || lock.tryAcquire();
+        } catch (SQLException | AppException | DatabaseException e) {
+            throw new LockException(e);
+        }
+    }
+
+    @Override
+    public void releaseLock() throws LockException {
+        if (this.borrowed) {
+            this.borrowed = false;
+            return;
+        }
+        if (this.lock != null) {
+            try {
+                this.lock.release();
+            } catch (SQLException e) {
+                throw new LockException(e);
+            }
+        }
+    }
+
+    @Override
+    public DatabaseChangeLogLock[] listLocks() throws LockException {
+        try {
+            Long holder = this.getLock().getHolder();
+            if (holder == null) {
+                return new DatabaseChangeLogLock[0];
+            }
+            return new DatabaseChangeLogLock[] { new DatabaseChangeLogLock(1, new Date(), "connection " + holder) };
+        } catch (SQLException | DatabaseException e) {
+            throw new LockException(e);
+        }
+    }
+
+    @Override
+    public void forceReleaseLock() throws LockException, DatabaseException {
+        // Another session's lock cannot be released; it goes away with that session
+        this.releaseLock();
+    }
+
+    @Override
+    public void reset() {
+        this.lock = null;
+        this.borrowed = false;
+    }
+
+    @Override
+    public void init() throws DatabaseException {
+        // Nothing to create: named locks need no table
+    }
+
+    @Override
+    public void destroy() throws DatabaseException {
+        // Nothing to drop
+    }
+
+    private boolean borrow(MigrationLock lock) throws SQLException {
+        this.borrowed = lock.isHeldBySession();
+        return this.borrowed;
+    }
+
+    private MigrationLock getLock() throws DatabaseException {
+        if (this.lock == null) {
+            Connection connection = ((JdbcConnection) this.database.getConnection()).getUnderlyingConnection();
+            this.lock = new MigrationLock(connection, this.database.getConnection().getCatalog(),
+                    getScopeLogger(), this.maxWaitMillis, TimeBudget.unlimited());
+        }
+        return this.lock;
+    }
+
+    private static ILogger getScopeLogger() {
+        ILogger logger = Scope.getCurrentScope().get(LOGGER_SCOPE_KEY, ILogger.class);
+        if (logger != null) {
+            return logger;
+        }
+
+        Logger log = Scope.getCurrentScope().getLog(SessionLockService.class);
+        return new ILogger() {
+            @Override
+            public void debug(String message) {
+                log.fine(message);
+            }
+
+            @Override
+            public void info(String message) {
+                log.info(message);
+            }
+
+            @Override
+            public void error(String message) {
+                log.severe(message);
+            }
+        };
+    }
+}
@@ -0,0 +1,32 @@
+package com.silkroad.db.deploy.Metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends the metrics to a local JSON-lines file, e.g. to check them in tests
+ * or to collect them from CLI and fleet runs. A run only writes a few
+ * documents per database, so the file is simply opened for every line.
+ */
+public class FileMetricsSink implements IMetricsSink {
+
+    private final Path path;
+
+    public FileMetricsSink(Path path) {
+        this.path = path;
+    }
+
+    @Override
+    public synchronized void write(String line) {
+        try {
+            Files.write(this.path, (line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Failed to write metrics to '%s'", this.path), e);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.silkroad.db.deploy.Metrics;
+
+public interface IMetricsSink {
+
+    /**
+     * Writes one embedded-metric-format JSON document as a single line.
+     */
+    public void write(String line);
+}
@@ -0,0 +1,21 @@
+package com.silkroad.db.deploy.Metrics;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+/**
+ * Writes the metrics as their own log events, without the level prefix of
+ * the {@code ILogger} implementations, so CloudWatch extracts them.
+ */
+public class LambdaLoggerMetricsSink implements IMetricsSink {
+
+    private final LambdaLogger lambdaLogger;
+
+    public LambdaLoggerMetricsSink(LambdaLogger lambdaLogger) {
+        this.lambdaLogger = lambdaLogger;
+    }
+
+    @Override
+    public void write(String line) {
+        this.lambdaLogger.log(line + System.lineSeparator());
+    }
+}
@@ -0,0 +1,155 @@
+package com.silkroad.db.deploy.Metrics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Records deployment timings as CloudWatch embedded metric format (EMF)
+ * documents, one per measurement:
+ * <ul>
+ * <li>{@code Duration} and {@code RowsAffected} per {@code Phase} (secrets,
+ * connection, init-script, changesets, reference-data, ...)</li>
+ * <li>{@code ChangeSetDuration} and {@code ChangeSetRowsAffected}, with the
+ * changeset as a property rather than a dimension to keep the number of
+ * metrics bounded</li>
+ * <li>{@code Retries} per {@code Operation}</li>
+ * </ul>
+ * Properties such as the database name are attached to every document, so
+ * they can be queried with Logs Insights without becoming dimensions.
+ */
+public class MetricsRecorder {
+
+    public static final String NAMESPACE = "SilkRoad/DatabaseDeployment";
+
+    private static final MetricsRecorder DISABLED = new MetricsRecorder(null, Collections.emptyMap());
+
+    private static final Gson GSON = new Gson();
+
+    private final IMetricsSink sink;
+    private final Map<String, String> properties;
+
+    public MetricsRecorder(IMetricsSink sink) {
+        this(sink, Collections.emptyMap());
+    }
+
+    private MetricsRecorder(IMetricsSink sink, Map<String, String> properties) {
+        this.sink = sink;
+        this.properties = properties;
+    }
+
+    public static MetricsRecorder disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Returns a recorder writing to the same sink that adds {@code key} to
+     * every document.
+     */
+    public MetricsRecorder withProperty(String key, String value) {
+        if (this.sink == null) {
+            return this;
+        }
+        Map<String, String> properties = new LinkedHashMap<String, String>(this.properties);
+        properties.put(key, value);
+        return new MetricsRecorder(this.sink, Collections.unmodifiableMap(properties));
+    }
+
+    public void recordPhase(String phase, long durationMillis) {
+        this.recordPhase(phase, durationMillis, null);
+    }
+
+    public void recordPhase(String phase, long durationMillis, Long rowsAffected) {
+        if (this.sink == null) {
+            return;
+        }
+        JsonObject document = this.newDocument("Phase", phase);
+        addMetric(document, "Duration", "Milliseconds", durationMillis);
+        if (rowsAffected != null) {
+            addMetric(document, "RowsAffected", "Count", rowsAffected);
+        }
+        this.sink.write(GSON.toJson(document));
+    }
+
+    /**
+     * Records a phase that was not run because its inputs did not change.
+     */
+    public void recordSkipped(String phase) {
+        if (this.sink == null) {
+            return;
+        }
+        JsonObject document = this.newDocument("Phase", phase);
+        addMetric(document, "Skipped", "Count", 1);
+        this.sink.write(GSON.toJson(document));
+    }
+
+    public void recordChangeSet(String changeSet, long durationMillis, Long rowsAffected, boolean success) {
+        if (this.sink == null) {
+            return;
+        }
+        JsonObject document = this.newDocument(null, null);
+        document.addProperty("ChangeSet", changeSet);
+        document.addProperty("Success", success);
+        addMetric(document, "ChangeSetDuration", "Milliseconds", durationMillis);
+        if (rowsAffected != null) {
+            addMetric(document, "ChangeSetRowsAffected", "Count", rowsAffected);
+        }
+        this.sink.write(GSON.toJson(document));
+    }
+
+    public void recordRetries(String operation, long count) {
+        if (this.sink == null || count == 0) {
+            return;
+        }
+        JsonObject document = this.newDocument("Operation", operation);
+        addMetric(document, "Retries", "Count", count);
+        this.sink.write(GSON.toJson(document));
+    }
+
+    private JsonObject newDocument(String dimension, String dimensionValue) {
+        JsonArray dimensionSet = new JsonArray();
+        if (dimension != null) {
+            dimensionSet.add(dimension);
+        }
+        JsonArray dimensions = new JsonArray();
+        dimensions.add(dimensionSet);
+
+        JsonObject directive = new JsonObject();
+        directive.addProperty("Namespace", NAMESPACE);
+        directive.add("Dimensions", dimensions);
+        directive.add("Metrics", new JsonArray());
+
+        JsonArray directives = new JsonArray();
+        directives.add(directive);
+
+        JsonObject metadata = new JsonObject();
+        metadata.addProperty("Timestamp", System.currentTimeMillis());
+        metadata.add("CloudWatchMetrics", directives);
+
+        JsonObject document = new JsonObject();
+        document.add("_aws", metadata);
+        if (dimension != null) {
+            document.addProperty(dimension, dimensionValue);
+        }
+        for (Map.Entry<String, String> property : this.properties.entrySet()) {
+            document.addProperty(property.getKey(), property.getValue());
+        }
+        return document;
+    }
+
+    private static void addMetric(JsonObject document, String name, String unit, long value) {
+        JsonObject metric = new JsonObject();
+        metric.addProperty("Name", name);
+        metric.addProperty("Unit", unit);
+        document.getAsJsonObject("_aws")
+                .getAsJsonArray("CloudWatchMetrics")
+                .get(0).getAsJsonObject()
+                .getAsJsonArray("Metrics")
+                .add(metric);
+        document.addProperty(name, value);
+    }
+}
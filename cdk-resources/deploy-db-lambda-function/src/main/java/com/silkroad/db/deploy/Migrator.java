@@ -1,39 +1,119 @@
 package com.silkroad.db.deploy;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.sql.DriverManager;
+import java.io.Reader;
+import java.io.StringReader;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
+import com.silkroad.db.deploy.Data.*;
 import com.silkroad.db.deploy.Exceptions.*;
+import com.silkroad.db.deploy.Lock.*;
+import com.silkroad.db.deploy.Metrics.*;
+import com.silkroad.db.deploy.Online.*;
+import com.silkroad.db.deploy.Plan.*;
+import com.silkroad.db.deploy.Profile.*;
+import com.silkroad.db.deploy.Sql.*;
+import com.silkroad.db.deploy.Tuning.*;
 import com.silkroad.db.deploy.Types.*;
 import com.silkroad.db.deploy.Utils.*;
 
 import liquibase.Contexts;
+import liquibase.LabelExpression;
 import liquibase.Liquibase;
+import liquibase.Scope;
+import liquibase.change.Change;
+import liquibase.change.core.RawSQLChange;
+import liquibase.changelog.ChangeLogHistoryService;
+import liquibase.changelog.ChangeLogHistoryServiceFactory;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.changelog.visitor.AbstractChangeExecListener;
 import liquibase.database.Database;
 import liquibase.database.DatabaseFactory;
 import liquibase.database.jvm.JdbcConnection;
 import liquibase.exception.LiquibaseException;
 import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.util.LiquibaseUtil;
 
-public class Migrator {
+public class Migrator implements AutoCloseable {
+
+    public static final String CHANGELOG_FILE = "db/changelog-root.xml";
+
+    /**
+     * Changesets carrying this label (e.g. {@code --changeset author:id labels:online})
+     * are applied through the {@link OnlineSchemaChanger} instead of Liquibase.
+     */
+    public static final String ONLINE_LABEL = "online";
+
+    /**
+     * Changesets carrying this label hold data backfills ({@code UPDATE}
+     * statements) that are run in primary-key chunks by the
+     * {@link ChunkedBackfiller} instead of as one transaction each.
+     */
+    public static final String BACKFILL_LABEL = "backfill";
+
+    public static final String INIT_TEMPLATE_FILE = "db/initialize-db.sql.template";
+
+    private static final String FINGERPRINT_TABLE = "DATABASECHANGELOGFINGERPRINT";
+
+    // Rows of FINGERPRINT_TABLE
+    private static final int CHANGELOG_FINGERPRINT_ID = 1;
+    private static final int INITIALIZATION_FINGERPRINT_ID = 2;
+
+    // MySQL error codes for "Unknown database" and "Table doesn't exist"
+    private static final int ER_BAD_DB_ERROR = 1049;
+    private static final int ER_NO_SUCH_TABLE = 1146;
+
+    static {
+        // Liquibase locks through MySQL named locks rather than the DATABASECHANGELOGLOCK table
+        SessionLockService.register();
+    }
 
     private RdsHostInfo rdsHostInfo;
     private RdsAdminSecret rdsAdminSecret;
     private RdsAppSecret rdsAppSecret;
     private ILogger logger;
     private Boolean isDebug;
+    private ConnectionSession session;
+    private boolean ownsSession;
+    private TimeBudget timeBudget = TimeBudget.unlimited();
+    private MetricsRecorder metrics = MetricsRecorder.disabled();
+    private String appSecretVersion;
+    private boolean createMissingIndexes = false;
+    private StatementProfiler profiler;
+    // Reads performance_schema for the profiler, away from the profiled connection
+    private ConnectionSession profilerSession;
+
+    // Changesets applied by the current run, whose tables get their statistics refreshed
+    private final List<ChangeSet> appliedChangeSets = new ArrayList<ChangeSet>();
 
     public Migrator(RdsHostInfo rdsHostInfo, RdsAdminSecret rdsAdminSecret, RdsAppSecret rdsAppSecret, ILogger logger,
             Boolean isDebug) throws ValidationException {
+        this(rdsHostInfo, rdsAdminSecret, rdsAppSecret, logger, isDebug, null);
+    }
+
+    /**
+     * @param session An existing session to run on, e.g. one kept warm across
+     *                Lambda invocations. When {@code null} the migrator opens
+     *                its own session and closes it in {@link #close()}.
+     */
+    public Migrator(RdsHostInfo rdsHostInfo, RdsAdminSecret rdsAdminSecret, RdsAppSecret rdsAppSecret, ILogger logger,
+            Boolean isDebug, ConnectionSession session) throws ValidationException {
         this.rdsHostInfo = rdsHostInfo;
         this.rdsAdminSecret = rdsAdminSecret;
         this.rdsAppSecret = rdsAppSecret;
         this.logger = logger;
         this.isDebug = isDebug;
+        this.session = session;
 
         if (this.rdsHostInfo == null) {
             throw new ValidationException("Missing required argument: 'rdsHostInfo'");
@@ -52,104 +132,815 @@ public class Migrator {
         } else {
             this.rdsAppSecret.validate();
         }
+
+        if (this.session == null) {
+            this.session = new ConnectionSession(this.rdsHostInfo, this.rdsAdminSecret);
+            this.ownsSession = true;
+        } else if (!this.session.matches(this.rdsHostInfo, this.rdsAdminSecret)) {
+            throw new ValidationException("Invalid argument: 'session' was opened for a different host or user");
+        }
+    }
+
+    public ConnectionSession getSession() {
+        return this.session;
+    }
+
+    /**
+     * Limits how long {@link #runInitializationScript()} waits for the lock
+     * and how long {@link #runMigrationScripts()} keeps starting new
+     * changesets and chunks. Unlimited by default.
+     */
+    public void setTimeBudget(TimeBudget timeBudget) {
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * Where phase and changeset timings are recorded. Disabled by default.
+     */
+    public void setMetrics(MetricsRecorder metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Version id of {@code rdsAppSecret} in Secrets Manager. When set, a
+     * successful initialization records it so that
+     * {@link #isInitializationCurrent()} can tell whether the user and grants
+     * are up to date. Unknown by default, e.g. for secrets given on the
+     * command line.
+     */
+    public void setAppSecretVersion(String appSecretVersion) {
+        this.appSecretVersion = appSecretVersion;
+    }
+
+    /**
+     * Whether a completed migration creates the indexes the declared query
+     * shapes are missing, see {@link IndexAdvisor}. When {@code false}
+     * (default) they are only reported.
+     */
+    public void setCreateMissingIndexes(boolean createMissingIndexes) {
+        this.createMissingIndexes = createMissingIndexes;
+    }
+
+    /**
+     * Profiles every statement the initialization script and the migrations
+     * send, Liquibase's included. The app password is redacted from the
+     * recorded statements. The profiler reads {@code performance_schema} on
+     * a connection of its own, closed in {@link #close()}. Not profiled by
+     * default.
+     */
+    public void setProfiler(StatementProfiler profiler) {
+        this.profiler = profiler;
+        if (profiler != null) {
+            profiler.addSecret(this.rdsAppSecret.getPassword());
+        }
     }
 
-    public void runInitializationScript() throws AppException {
+    /**
+     * Whether the initialization script already ran for the current template
+     * and app secret version. Always {@code false} when the secret version is
+     * unknown.
+     */
+    public boolean isInitializationCurrent() throws AppException {
         try {
-            this.runInitializationScriptCore();
+            String fingerprint = this.getInitializationFingerprint();
+            return fingerprint != null && fingerprint.equals(this.readAppliedFingerprint(
+                    this.session.getConnection(null, this.logger), INITIALIZATION_FINGERPRINT_ID));
         } catch (Exception e) {
+            this.session.discard();
             throw new AppException(
-                    "An error occurred while trying to execute the database initialization script, see 'Caused by' for details",
+                    "An error occurred while trying to check the database initialization, see 'Caused by' for details",
                     e);
         }
     }
 
-    private void runInitializationScriptCore() throws SQLException, LiquibaseException, AppException, IOException {
-        logger.info("Running initialization script...");
-        String initDbTemplate = null;
-        InputStream is = getClass().getClassLoader().getResourceAsStream("db/initialize-db.sql.template");
+    /**
+     * Whether the last completed migration run applied the bundled changelog
+     * and reference data as they are now, see {@link ChangelogFingerprint}.
+     */
+    public boolean isChangelogCurrent() throws AppException {
         try {
-            byte[] bytes = is.readAllBytes();
-            initDbTemplate = new String(bytes, StandardCharsets.UTF_8);
-        } finally {
-            is.close();
+            String fingerprint = ChangelogFingerprint.load();
+            return fingerprint != null && fingerprint.equals(this.readAppliedFingerprint(
+                    this.session.getConnection(null, this.logger), CHANGELOG_FINGERPRINT_ID));
+        } catch (Exception e) {
+            this.session.discard();
+            throw new AppException(
+                    "An error occurred while trying to check the applied changelog, see 'Caused by' for details", e);
         }
+    }
 
-        String initDbSql = initDbTemplate;
-        initDbSql = initDbSql.replace("{{dbname}}", this.rdsAppSecret.getDatabaseName());
-        initDbSql = initDbSql.replace("{{dbusername}}", this.rdsAppSecret.getUsername());
-        initDbSql = initDbSql.replace("{{dbpassword}}", this.rdsAppSecret.getPassword());
+    @Override
+    public void close() {
+        if (this.ownsSession) {
+            this.session.close();
+        }
+        if (this.profilerSession != null) {
+            this.profilerSession.close();
+            this.profilerSession = null;
+        }
+    }
 
-        if (this.isDebug) {
-            logger.debug(initDbSql);
+    /**
+     * @return {@code false} when the time budget ran out while waiting for
+     *         the migration lock; the script did not run
+     */
+    public boolean runInitializationScript() throws AppException {
+        try {
+            return this.runInitializationScriptCore();
+        } catch (Exception e) {
+            // Don't reuse a connection left in an unknown state
+            this.session.discard();
+            throw new AppException(
+                    "An error occurred while trying to execute the database initialization script, see 'Caused by' for details",
+                    e);
         }
+    }
+
+    private boolean runInitializationScriptCore()
+            throws SQLException, LiquibaseException, AppException, IOException, ValidationException {
+        logger.info("Running initialization script...");
+        String initDbSql = renderInitializationScript(this.rdsAppSecret);
 
-        // allowMultiQueries=true : Enable multi statement execute commands
-        String endpoint = String.format(
-                "jdbc:mysql://%s:%s?allowMultiQueries=true",
-                this.rdsHostInfo.getHostname(),
-                this.rdsHostInfo.getPort());
+        // The rendered script holds the app user password, so only its size is logged
+        final int renderedLength = initDbSql.length();
+        logger.debug(() -> "Rendered '" + INIT_TEMPLATE_FILE + "' (" + renderedLength + " characters)");
 
-        java.sql.Connection connection = DriverManager.getConnection(
-                endpoint,
-                rdsAdminSecret.getUsername(),
-                rdsAdminSecret.getPassword());
+        java.sql.Connection connection = this.profile(this.session.getConnection(null, this.logger));
+        try (MigrationLock lock = this.newLock(connection)) {
+            if (!this.acquire(lock)) {
+                return false;
+            }
+            SqlScriptResult result = new SqlScriptExecutor(connection, this.logger)
+                    .execute(new StringReader(initDbSql), INIT_TEMPLATE_FILE);
+            this.metrics.recordPhase("init-script", result.getDurationMillis(), result.getRowsAffected());
 
-        if (connection == null) {
-            throw new AppException("Failed to open connection");
+            String fingerprint = this.getInitializationFingerprint();
+            if (fingerprint != null) {
+                this.writeAppliedFingerprint(connection, INITIALIZATION_FINGERPRINT_ID, fingerprint);
+            }
+            return true;
         }
+    }
 
-        try {
-            Statement statement = connection.createStatement();
-            statement.execute(initDbSql);
-        } finally {
-            connection.close();
+    /**
+     * Fingerprint of everything the initialization script is rendered from.
+     * The password is covered by the secret version rather than hashed.
+     */
+    private String getInitializationFingerprint() throws IOException, ValidationException {
+        if (this.appSecretVersion == null) {
+            return null;
         }
+        String inputs = String.join("\n",
+                SqlTemplate.forResource(INIT_TEMPLATE_FILE).getFingerprint(),
+                this.appSecretVersion,
+                this.rdsAppSecret.getDatabaseName(),
+                this.rdsAppSecret.getUsername());
+        return Sha256.hex(inputs);
     }
 
-    public void runMigrationScripts() throws AppException {
+    /**
+     * Renders {@link #INIT_TEMPLATE_FILE} for the app database and user. The
+     * template is compiled once and shared by every {@code Migrator} of the
+     * process, see {@link SqlTemplate#forResource(String)}.
+     */
+    public static String renderInitializationScript(RdsAppSecret rdsAppSecret)
+            throws IOException, ValidationException {
+        Map<String, String> values = new HashMap<String, String>(4);
+        values.put("dbname", rdsAppSecret.getDatabaseName());
+        values.put("dbusername", rdsAppSecret.getUsername());
+        values.put("dbpassword", rdsAppSecret.getPassword());
+        return SqlTemplate.forResource(INIT_TEMPLATE_FILE).render(values);
+    }
+
+    /**
+     * @return {@code false} when the time budget ran out before all
+     *         changesets were applied; calling again resumes the run
+     */
+    public boolean runMigrationScripts() throws AppException {
         try {
-            this.runMigrationScriptsCore();
+            return this.runMigrationScriptsCore();
         } catch (Exception e) {
+            // Don't reuse a connection left in an unknown state
+            this.session.discard();
             throw new AppException(
                     "An error occurred while trying to execute the migration scripts, see 'Caused by' for details", e);
         }
     }
 
-    private void runMigrationScriptsCore() throws SQLException, LiquibaseException, AppException {
+    /**
+     * Lists the pending changesets with their DDL algorithm and estimated
+     * duration. Nothing is executed; the initialization script is not run
+     * either.
+     */
+    public MigrationPlan planMigrationScripts() throws AppException {
+        try {
+            logger.info("Planning migration scripts (dry run)...");
+            long startTime = System.nanoTime();
+            java.sql.Connection connection = this.session.getConnection(null, this.logger);
+            MigrationPlan plan = new MigrationPlanner(connection, this.rdsAppSecret.getDatabaseName(), this.logger)
+                    .plan(CHANGELOG_FILE, ONLINE_LABEL);
+            this.metrics.recordPhase("plan", (System.nanoTime() - startTime) / 1_000_000);
+            return plan;
+        } catch (Exception e) {
+            this.session.discard();
+            throw new AppException(
+                    "An error occurred while trying to plan the migration scripts, see 'Caused by' for details", e);
+        }
+    }
+
+    private boolean runMigrationScriptsCore()
+            throws SQLException, LiquibaseException, AppException, IOException, ValidationException {
         logger.info("Running migration scripts...");
-        String endpoint = String.format(
-                "jdbc:mysql://%s:%s/%s",
-                this.rdsHostInfo.getHostname(),
-                this.rdsHostInfo.getPort(),
-                this.rdsAppSecret.getDatabaseName());
+        java.sql.Connection connection = this.profile(
+                this.session.getConnection(this.rdsAppSecret.getDatabaseName(), this.logger));
 
-        java.sql.Connection connection = DriverManager.getConnection(
-                endpoint,
-                rdsAdminSecret.getUsername(),
-                rdsAdminSecret.getPassword());
+        String fingerprint = ChangelogFingerprint.load();
+        if (fingerprint != null
+                && fingerprint.equals(this.readAppliedFingerprint(connection, CHANGELOG_FINGERPRINT_ID))) {
+            logger.info("Changelog fingerprint matches the database, skipping migration scripts");
+            return true;
+        }
 
-        try {
+        // Held until the run ends, so concurrent deployments of this database wait for it
+        try (MigrationLock lock = this.newLock(connection)) {
+            if (!this.acquire(lock)) {
+                return false;
+            }
+            return this.runMigrationScriptsLocked(connection, fingerprint);
+        }
+    }
+
+    private boolean runMigrationScriptsLocked(java.sql.Connection connection, String fingerprint)
+            throws SQLException, LiquibaseException, AppException, IOException, ValidationException {
+        long startTime = System.nanoTime();
+        boolean isComplete = true;
+        this.appliedChangeSets.clear();
+        ChangelogManifest manifest = ChangelogIndex.load();
+        if (manifest != null && CHANGELOG_FILE.equals(manifest.getChangeLogFile())
+                && manifest.getBaselineChangeSetCount() > 0 && isEmptyDatabase(connection)) {
+            this.applyBaseline(connection, manifest);
+        }
+        if (manifest != null && CHANGELOG_FILE.equals(manifest.getChangeLogFile())
+                && countPendingChangeSets(connection, manifest) == 0) {
+            logger.info(String.format("All %d changesets are applied, skipping Liquibase",
+                    manifest.getChangeSets().size()));
+        } else {
+            // Liquibase is never closed here: closing it would close the shared session connection
             JdbcConnection jdbcConnection = new JdbcConnection(connection);
             Database database = DatabaseFactory
                     .getInstance()
                     .findCorrectDatabaseImplementation(jdbcConnection);
 
+            ClassLoaderResourceAccessor resourceAccessor = new ClassLoaderResourceAccessor();
             Liquibase liquibase = new Liquibase(
-                    "db/changelog-root.xml",
-                    new ClassLoaderResourceAccessor(),
+                    ChangelogIndex.loadChangeLog(CHANGELOG_FILE, resourceAccessor),
+                    resourceAccessor,
                     database);
+            liquibase.setChangeExecListener(new ChangeSetMetricsListener());
 
-            liquibase.update(new Contexts());
-        } catch (Exception e) {
-            if (connection != null && connection.isClosed() == false) {
-                connection.rollback();
+            isComplete = this.updateInScope(liquibase, connection);
+        }
+        this.metrics.recordPhase("changesets", (System.nanoTime() - startTime) / 1_000_000);
+
+        List<String> loadedTables = new ArrayList<String>();
+        if (isComplete) {
+            startTime = System.nanoTime();
+            ReferenceDataLoader dataLoader = new ReferenceDataLoader(connection, this.logger, this.timeBudget);
+            isComplete = dataLoader.load();
+            loadedTables = dataLoader.getLoadedTables();
+            this.metrics.recordPhase("reference-data", (System.nanoTime() - startTime) / 1_000_000,
+                    dataLoader.getRowsLoaded());
+        }
+
+        if (!isComplete) {
+            logger.info(String.format(
+                    "Time budget exhausted (%d ms left), progress is saved and the next run resumes from here",
+                    this.timeBudget.getRemainingMillis()));
+            return false;
+        }
+
+        this.runPostMigrationStage(connection, loadedTables);
+
+        if (fingerprint != null) {
+            this.writeAppliedFingerprint(connection, CHANGELOG_FINGERPRINT_ID, fingerprint);
+        }
+        return true;
+    }
+
+    /**
+     * Refreshes the statistics of the tables changed by this run, then
+     * checks the declared query shapes against the migrated schema, see
+     * {@link IndexAdvisor}. Tables changed by an earlier run that ran out of
+     * time are not analyzed again.
+     */
+    private void runPostMigrationStage(java.sql.Connection connection, List<String> loadedTables)
+            throws SQLException, AppException, IOException, ValidationException {
+        Set<String> changedTables = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+        changedTables.addAll(loadedTables);
+        for (ChangeSet changeSet : this.appliedChangeSets) {
+            changedTables.addAll(getChangedTables(changeSet));
+        }
+
+        long startTime = System.nanoTime();
+        if (!changedTables.isEmpty()) {
+            int analyzedCount = new TableStatisticsUpdater(this.rdsHostInfo, this.rdsAdminSecret,
+                    this.rdsAppSecret.getDatabaseName(), this.logger).analyze(connection, changedTables);
+            this.metrics.recordPhase("analyze", (System.nanoTime() - startTime) / 1_000_000, (long) analyzedCount);
+        }
+
+        startTime = System.nanoTime();
+        List<IndexAdvice> advices = new IndexAdvisor(connection, this.logger, this.timeBudget)
+                .advise(this.createMissingIndexes);
+        List<String> missing = new ArrayList<String>();
+        List<String> created = new ArrayList<String>();
+        for (IndexAdvice advice : advices) {
+            if (advice.isCreated()) {
+                created.add(advice.getIndex().getName());
+            } else if (advice.isMissing()) {
+                missing.add(advice.getIndex().getName());
+            }
+        }
+        this.metrics.recordPhase("index-advisor", (System.nanoTime() - startTime) / 1_000_000,
+                (long) missing.size());
+
+        if (!missing.isEmpty() || !created.isEmpty()) {
+            logger.log(LogLevel.INFO, "Checked the query shapes against the migrated schema",
+                    "queryShapes", advices.size(),
+                    "missingIndexes", String.join(",", missing),
+                    "createdIndexes", String.join(",", created));
+        }
+    }
+
+    /**
+     * Tables written or altered by the SQL of {@code changeSet}.
+     */
+    private static Set<String> getChangedTables(ChangeSet changeSet) throws IOException {
+        Set<String> tables = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+        for (Change change : changeSet.getChanges()) {
+            if (!(change instanceof RawSQLChange)) {
+                continue;
+            }
+            SqlScriptTokenizer tokenizer = new SqlScriptTokenizer(new StringReader(((RawSQLChange) change).getSql()));
+            SqlStatement statement;
+            while ((statement = tokenizer.next()) != null) {
+                String table = DdlClassifier.classify(statement).getTable();
+                if (table != null) {
+                    tables.add(table);
+                }
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Applies the {@link ChangelogBaseline} to an empty database in batches
+     * and records the changesets it covers as executed, so that Liquibase
+     * only runs the changesets after it.
+     *
+     * The covered changesets are recorded once the whole script succeeded.
+     * Like a failed changeset, a failure part way leaves the tables created
+     * so far behind and has to be cleaned up before the next run.
+     */
+    private void applyBaseline(java.sql.Connection connection, ChangelogManifest manifest)
+            throws SQLException, LiquibaseException, AppException, IOException {
+        Reader reader = ChangelogBaseline.open();
+        if (reader == null) {
+            logger.info(String.format("Baseline '%s' is missing, replaying every changeset",
+                    ChangelogBaseline.RESOURCE_NAME));
+            return;
+        }
+
+        long startTime = System.nanoTime();
+        logger.info(String.format("Empty database, applying the baseline of %d changesets up to '%s'...",
+                manifest.getBaselineChangeSetCount(), manifest.getBaselineLastChangeSet()));
+        SqlScriptExecutor executor = new SqlScriptExecutor(connection, this.logger);
+        executor.setBatchAllStatements(true);
+        try (Reader baseline = reader) {
+            executor.execute(baseline, ChangelogBaseline.RESOURCE_NAME);
+        }
+
+        // DATABASECHANGELOG is created by Liquibase itself, so its layout is the one Liquibase expects
+        Database database = DatabaseFactory.getInstance()
+                .findCorrectDatabaseImplementation(new JdbcConnection(connection));
+        ChangeLogHistoryService history = ChangeLogHistoryServiceFactory.getInstance().getChangeLogService(database);
+        history.init();
+        history.reset();
+
+        List<ChangeSet> covered = ChangelogIndex.toDatabaseChangeLog(manifest).getChangeSets()
+                .subList(0, manifest.getBaselineChangeSetCount());
+        recordExecuted(connection, covered);
+        this.appliedChangeSets.addAll(covered);
+
+        this.metrics.recordPhase("baseline", (System.nanoTime() - startTime) / 1_000_000,
+                (long) covered.size());
+    }
+
+    /**
+     * Inserts the {@code DATABASECHANGELOG} rows Liquibase would have written
+     * for {@code changeSets}, in one batch.
+     */
+    private static void recordExecuted(java.sql.Connection connection, List<ChangeSet> changeSets)
+            throws SQLException {
+        String deploymentId = String.valueOf(System.currentTimeMillis());
+        deploymentId = deploymentId.substring(deploymentId.length() - 10);
+        String liquibaseVersion = limitSize(LiquibaseUtil.getBuildVersion(), 20);
+
+        String sql = "INSERT INTO DATABASECHANGELOG (ID, AUTHOR, FILENAME, DATEEXECUTED, ORDEREXECUTED, EXECTYPE, "
+                + "MD5SUM, `DESCRIPTION`, COMMENTS, LIQUIBASE, CONTEXTS, LABELS, DEPLOYMENT_ID) "
+                + "VALUES (?, ?, ?, NOW(), ?, 'EXECUTED', ?, ?, ?, ?, NULL, NULL, ?)";
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            int order = 1;
+            for (ChangeSet changeSet : changeSets) {
+                statement.setString(1, changeSet.getId());
+                statement.setString(2, changeSet.getAuthor());
+                statement.setString(3, changeSet.getFilePath());
+                statement.setInt(4, order++);
+                statement.setString(5, changeSet.generateCheckSum().toString());
+                statement.setString(6, limitSize(changeSet.getDescription(), 250));
+                statement.setString(7, limitSize(changeSet.getComments() != null ? changeSet.getComments() : "",
+                        250));
+                statement.setString(8, liquibaseVersion);
+                statement.setString(9, deploymentId);
+                statement.addBatch();
             }
+            statement.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
             throw e;
         } finally {
-            if (connection != null && connection.isClosed() == false) {
-                connection.close();
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static String limitSize(String value, int maxLength) {
+        return value != null && value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+
+    /**
+     * Whether the database has neither tables of its own nor a
+     * {@code DATABASECHANGELOG}. The bookkeeping tables of this tool, such
+     * as {@link #FINGERPRINT_TABLE}, may already exist.
+     */
+    private static boolean isEmptyDatabase(java.sql.Connection connection) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() "
+                + "AND (TABLE_NAME = 'DATABASECHANGELOG' OR TABLE_NAME NOT LIKE 'DATABASECHANGELOG%')";
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery(sql)) {
+            return resultSet.next() && resultSet.getLong(1) == 0;
+        }
+    }
+
+    private java.sql.Connection profile(java.sql.Connection connection) throws SQLException, AppException {
+        if (this.profiler == null) {
+            return connection;
+        }
+        if (this.profilerSession == null) {
+            this.profilerSession = new ConnectionSession(this.rdsHostInfo, this.rdsAdminSecret);
+        }
+        return this.profiler.wrap(connection, this.profilerSession.getConnection(null, this.logger));
+    }
+
+    private MigrationLock newLock(java.sql.Connection connection) {
+        return new MigrationLock(connection, this.rdsAppSecret.getDatabaseName(), this.logger,
+                MigrationLock.DEFAULT_MAX_WAIT_MILLIS, this.timeBudget);
+    }
+
+    private boolean acquire(MigrationLock lock) throws SQLException, AppException {
+        long waitMillis = lock.getWaitMillis();
+        try {
+            return lock.acquire();
+        } finally {
+            this.metrics.recordPhase("lock-wait", lock.getWaitMillis() - waitMillis);
+        }
+    }
+
+    private boolean updateInScope(Liquibase liquibase, java.sql.Connection connection)
+            throws LiquibaseException, SQLException, AppException, IOException {
+        // SessionLockService logs lock waits to this run's logger
+        try {
+            return Scope.child(Map.of(SessionLockService.LOGGER_SCOPE_KEY, this.logger),
+                    () -> this.update(liquibase, connection));
+        } catch (LiquibaseException | SQLException | AppException | IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new LiquibaseException(e);
+        }
+    }
+
+    /**
+     * Runs the pending changesets in changelog order. Stretches of regular
+     * changesets go through Liquibase as usual; each online changeset is
+     * applied by the {@link OnlineSchemaChanger}, each backfill changeset by
+     * the {@link ChunkedBackfiller}, and then recorded as executed.
+     *
+     * With a limited time budget, changesets run one at a time and the budget
+     * is checked before each one. Returns {@code false} when it ran out.
+     */
+    private boolean update(Liquibase liquibase, java.sql.Connection connection)
+            throws LiquibaseException, SQLException, AppException, IOException {
+        List<ChangeSet> pending = liquibase.listUnrunChangeSets(new Contexts(), new LabelExpression());
+        boolean stepwise = this.timeBudget.isLimited();
+        if (!stepwise && pending.stream().noneMatch(Migrator::isAppliedByMigrator)) {
+            liquibase.update(new Contexts());
+            return true;
+        }
+
+        int regularCount = 0;
+        for (ChangeSet changeSet : pending) {
+            if (!stepwise && !isAppliedByMigrator(changeSet)) {
+                regularCount++;
+                continue;
+            }
+
+            if (regularCount > 0) {
+                liquibase.update(regularCount, new Contexts(), new LabelExpression());
+                regularCount = 0;
+            }
+
+            if (this.timeBudget.isExhausted()) {
+                logger.info(String.format("Stopping before changeset '%s::%s'", changeSet.getId(),
+                        changeSet.getAuthor()));
+                return false;
+            }
+
+            if (!isAppliedByMigrator(changeSet)) {
+                // The next unrun changeset is this one
+                liquibase.update(1, new Contexts(), new LabelExpression());
+            } else if (isBackfill(changeSet)) {
+                if (!this.applyBackfill(liquibase, connection, changeSet)) {
+                    return false;
+                }
+            } else if (!this.applyOnline(liquibase, connection, changeSet)) {
+                return false;
             }
         }
+
+        if (regularCount > 0) {
+            liquibase.update(regularCount, new Contexts(), new LabelExpression());
+        }
+        return true;
+    }
+
+    /**
+     * Applies an online changeset statement by statement, checkpointing the
+     * statement index and copy position while rows are copied and when the
+     * time budget runs out.
+     */
+    private boolean applyOnline(Liquibase liquibase, java.sql.Connection connection, ChangeSet changeSet)
+            throws LiquibaseException, SQLException, AppException, IOException {
+        String checkpointName = "online:" + changeSet.getFilePath() + "::" + changeSet.getId() + "::"
+                + changeSet.getAuthor();
+        CheckpointStore checkpoints = new CheckpointStore(connection);
+        CheckpointStore.Checkpoint checkpoint = checkpoints.load(checkpointName);
+
+        logger.info(String.format("%s online changeset '%s::%s'...",
+                checkpoint != null ? "Resuming" : "Applying", changeSet.getId(), changeSet.getAuthor()));
+        OnlineSchemaChanger changer = new OnlineSchemaChanger(connection, this.logger, this.timeBudget);
+        List<String> statements = getStatements(changeSet, ONLINE_LABEL);
+        long startTime = System.nanoTime();
+        long rowCount = 0;
+        for (int i = checkpoint != null ? checkpoint.getStep() : 0; i < statements.size(); i++) {
+            String resumePosition = checkpoint != null && i == checkpoint.getStep() ? checkpoint.getPosition() : null;
+            boolean isComplete = changer.apply(statements.get(i), resumePosition, checkpoints, checkpointName, i);
+            rowCount += changer.getRowCount();
+            if (!isComplete) {
+                checkpoints.save(checkpointName, i, changer.getSuspendedPosition());
+                this.metrics.recordRetries("throttle", changer.getThrottleWaitCount());
+                return false;
+            }
+            // A later statement must never re-run an earlier, completed one
+            checkpoints.save(checkpointName, i + 1, null);
+        }
+
+        liquibase.getDatabase().markChangeSetExecStatus(changeSet, ChangeSet.ExecType.EXECUTED);
+        liquibase.getDatabase().commit();
+        checkpoints.clear(checkpointName);
+        this.appliedChangeSets.add(changeSet);
+
+        this.metrics.recordChangeSet(changeSet.toString(false), (System.nanoTime() - startTime) / 1_000_000,
+                rowCount, true);
+        this.metrics.recordRetries("throttle", changer.getThrottleWaitCount());
+        return true;
+    }
+
+    /**
+     * Applies a backfill changeset statement by statement. The backfiller
+     * checkpoints the statement index and the completed key range as it
+     * goes, so a run that ran out of time or failed resumes from there.
+     */
+    private boolean applyBackfill(Liquibase liquibase, java.sql.Connection connection, ChangeSet changeSet)
+            throws LiquibaseException, SQLException, AppException, IOException {
+        String checkpointName = "backfill:" + changeSet.getFilePath() + "::" + changeSet.getId() + "::"
+                + changeSet.getAuthor();
+        CheckpointStore checkpoints = new CheckpointStore(connection);
+        CheckpointStore.Checkpoint checkpoint = checkpoints.load(checkpointName);
+
+        logger.info(String.format("%s backfill changeset '%s::%s'...",
+                checkpoint != null ? "Resuming" : "Applying", changeSet.getId(), changeSet.getAuthor()));
+        ChunkedBackfiller backfiller = new ChunkedBackfiller(this.rdsHostInfo, this.rdsAdminSecret,
+                this.rdsAppSecret.getDatabaseName(), connection, this.logger, this.timeBudget);
+        List<String> statements = getStatements(changeSet, BACKFILL_LABEL);
+        long startTime = System.nanoTime();
+        long rowCount = 0;
+        int chunkCount = 0;
+        int retryCount = 0;
+        try {
+            for (int i = checkpoint != null ? checkpoint.getStep() : 0; i < statements.size(); i++) {
+                String resumePosition = checkpoint != null && i == checkpoint.getStep()
+                        ? checkpoint.getPosition()
+                        : null;
+                boolean isComplete = backfiller.apply(statements.get(i), resumePosition, checkpoints,
+                        checkpointName, i);
+                rowCount += backfiller.getRowCount();
+                chunkCount += backfiller.getChunkCount();
+                retryCount += backfiller.getRetryCount();
+                if (!isComplete) {
+                    return false;
+                }
+                checkpoints.save(checkpointName, i + 1, null);
+            }
+        } finally {
+            this.metrics.recordRetries("throttle", backfiller.getThrottleWaitCount());
+            this.metrics.recordRetries("backfill-chunk", retryCount);
+        }
+
+        liquibase.getDatabase().markChangeSetExecStatus(changeSet, ChangeSet.ExecType.EXECUTED);
+        liquibase.getDatabase().commit();
+        checkpoints.clear(checkpointName);
+        this.appliedChangeSets.add(changeSet);
+
+        this.metrics.recordChangeSet(changeSet.toString(false), (System.nanoTime() - startTime) / 1_000_000,
+                rowCount, true);
+        logger.log(LogLevel.INFO, "Applied backfill changeset",
+                "changeSet", changeSet.toString(false),
+                "rows", rowCount,
+                "chunks", chunkCount,
+                "throttleWaits", backfiller.getThrottleWaitCount());
+        return true;
+    }
+
+    /**
+     * Times the changesets Liquibase runs and remembers them for the
+     * post-migration stage. Liquibase does not report affected rows, so only
+     * durations are recorded.
+     */
+    private class ChangeSetMetricsListener extends AbstractChangeExecListener {
+
+        private long startTime;
+
+        @Override
+        public void willRun(ChangeSet changeSet, DatabaseChangeLog databaseChangeLog, Database database,
+                ChangeSet.RunStatus runStatus) {
+            this.startTime = System.nanoTime();
+        }
+
+        @Override
+        public void ran(ChangeSet changeSet, DatabaseChangeLog databaseChangeLog, Database database,
+                ChangeSet.ExecType execType) {
+            appliedChangeSets.add(changeSet);
+            metrics.recordChangeSet(changeSet.toString(false), (System.nanoTime() - this.startTime) / 1_000_000,
+                    null, true);
+        }
+
+        @Override
+        public void runFailed(ChangeSet changeSet, DatabaseChangeLog databaseChangeLog, Database database,
+                Exception exception) {
+            metrics.recordChangeSet(changeSet.toString(false), (System.nanoTime() - this.startTime) / 1_000_000,
+                    null, false);
+        }
+    }
+
+    private static boolean isOnline(ChangeSet changeSet) {
+        return changeSet.getLabels() != null && changeSet.getLabels().getLabels().contains(ONLINE_LABEL);
+    }
+
+    private static boolean isBackfill(ChangeSet changeSet) {
+        return changeSet.getLabels() != null && changeSet.getLabels().getLabels().contains(BACKFILL_LABEL);
+    }
+
+    /**
+     * Whether {@code changeSet} is applied here rather than by Liquibase.
+     */
+    private static boolean isAppliedByMigrator(ChangeSet changeSet) {
+        return isOnline(changeSet) || isBackfill(changeSet);
+    }
+
+    private static List<String> getStatements(ChangeSet changeSet, String label) throws IOException, AppException {
+        List<String> statements = new ArrayList<String>();
+        for (Change change : changeSet.getChanges()) {
+            if (!(change instanceof RawSQLChange)) {
+                throw new AppException(String.format("Changeset '%s::%s' labelled '%s' may only contain SQL",
+                        changeSet.getId(), changeSet.getAuthor(), label));
+            }
+
+            SqlScriptTokenizer tokenizer = new SqlScriptTokenizer(new StringReader(((RawSQLChange) change).getSql()));
+            SqlStatement statement;
+            while ((statement = tokenizer.next()) != null) {
+                statements.add(statement.getText());
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * Compares the indexed changelog with {@code DATABASECHANGELOG} in a
+     * single query and returns the number of changesets Liquibase still has
+     * to run. Fails on a changeset whose checksum changed since it was
+     * applied, like Liquibase's own validation would.
+     */
+    private static int countPendingChangeSets(java.sql.Connection connection, ChangelogManifest manifest)
+            throws SQLException, AppException {
+        Map<String, String> ranCheckSums = new HashMap<String, String>();
+        String sql = "SELECT ID, AUTHOR, FILENAME, MD5SUM FROM DATABASECHANGELOG";
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery(sql)) {
+            while (resultSet.next()) {
+                // A NULL checksum is recomputed by Liquibase, so it counts as pending
+                ranCheckSums.put(resultSet.getString(1) + "::" + resultSet.getString(2) + "::"
+                        + resultSet.getString(3), resultSet.getString(4) != null ? resultSet.getString(4) : "");
+            }
+        } catch (SQLException e) {
+            if (e.getErrorCode() == ER_NO_SUCH_TABLE) {
+                return manifest.getChangeSets().size();
+            }
+            throw e;
+        }
+
+        int pending = 0;
+        for (ManifestChangeSet changeSet : manifest.getChangeSets()) {
+            String ranCheckSum = ranCheckSums.get(changeSet.getId() + "::" + changeSet.getAuthor() + "::"
+                    + changeSet.getFilePath());
+            if (ranCheckSum == null || changeSet.isAlwaysRun()) {
+                pending++;
+            } else if (!ranCheckSum.equals(changeSet.getCheckSum())
+                    && !changeSet.getValidCheckSums().contains(ranCheckSum)) {
+                boolean sameVersion = ranCheckSum.startsWith(
+                        changeSet.getCheckSum().substring(0, changeSet.getCheckSum().indexOf(':') + 1));
+                if (changeSet.isRunOnChange() || !sameVersion) {
+                    // Rerun, or a checksum of an older Liquibase version that Liquibase upgrades
+                    pending++;
+                } else {
+                    throw new AppException(String.format(
+                            "Changeset '%s::%s::%s' was modified after it was applied (checksum %s, now %s)",
+                            changeSet.getFilePath(), changeSet.getId(), changeSet.getAuthor(), ranCheckSum,
+                            changeSet.getCheckSum()));
+                }
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Reads a fingerprint recorded by the last successful run in a single
+     * query. Returns {@code null} when nothing was recorded yet, including
+     * when the app database does not exist.
+     */
+    private String readAppliedFingerprint(java.sql.Connection connection, int id) throws SQLException {
+        String sql = "SELECT FINGERPRINT FROM " + this.getFingerprintTable() + " WHERE ID = ?";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, id);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getString(1) : null;
+            }
+        } catch (SQLException e) {
+            if (e.getErrorCode() == ER_NO_SUCH_TABLE || e.getErrorCode() == ER_BAD_DB_ERROR) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private void writeAppliedFingerprint(java.sql.Connection connection, int id, String fingerprint)
+            throws SQLException {
+        String table = this.getFingerprintTable();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS " + table + " ("
+                    + "ID int NOT NULL, "
+                    + "FINGERPRINT varchar(64) NOT NULL, "
+                    + "DATEUPDATED datetime NOT NULL, "
+                    + "PRIMARY KEY (ID))");
+        }
+
+        String sql = "INSERT INTO " + table + " (ID, FINGERPRINT, DATEUPDATED) VALUES (?, ?, NOW()) "
+                + "ON DUPLICATE KEY UPDATE FINGERPRINT = VALUES(FINGERPRINT), DATEUPDATED = VALUES(DATEUPDATED)";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, id);
+            statement.setString(2, fingerprint);
+            statement.executeUpdate();
+        }
+        if (!connection.getAutoCommit()) {
+            connection.commit();
+        }
+    }
+
+    /**
+     * {@link #FINGERPRINT_TABLE} qualified with the app database, so it can
+     * be read from a connection without a default database.
+     */
+    private String getFingerprintTable() {
+        return "`" + this.rdsAppSecret.getDatabaseName().replace("`", "``") + "`." + FINGERPRINT_TABLE;
     }
 }
@@ -0,0 +1,456 @@
+package com.silkroad.db.deploy.Online;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.silkroad.db.deploy.Exceptions.AppException;
+import com.silkroad.db.deploy.Types.*;
+import com.silkroad.db.deploy.Utils.*;
+
+/**
+ * Runs a data backfill, a single-table {@code UPDATE ... SET ... [WHERE ...]},
+ * in primary-key ranges instead of as one statement, so that no transaction
+ * holds row locks or grows the undo log for longer than one chunk.
+ *
+ * The caller's connection walks the primary key and hands the ranges to up
+ * to {@code parallelism} workers, each on its own connection; every chunk
+ * commits on its own. Before each range is handed out the
+ * {@link ServerLoadThrottler} is waited on. The chunk size starts at
+ * {@link #DEFAULT_INITIAL_CHUNK_SIZE} rows and is scaled after every chunk
+ * towards the target chunk latency, by at most a factor of two at a time.
+ *
+ * Progress is the upper bound of the ranges completed without a gap. It is
+ * saved to the {@link CheckpointStore} every few seconds, when the
+ * {@link TimeBudget} runs out and when a chunk fails, and a later call
+ * resumes from it. Ranges above it may have completed already and are run
+ * again, so the update must be idempotent, e.g. by only touching rows that
+ * were not backfilled yet ({@code WHERE NewColumn IS NULL}).
+ *
+ * Only tables with a single-column primary key are supported. Rows inserted
+ * above the largest key seen when the last range is handed out are not
+ * backfilled; the application is expected to write the new values by then.
+ */
+public class ChunkedBackfiller {
+
+    public static final int DEFAULT_PARALLELISM = 4;
+    public static final int DEFAULT_INITIAL_CHUNK_SIZE = 1000;
+    public static final long DEFAULT_TARGET_CHUNK_MILLIS = 500;
+
+    private static final int MIN_CHUNK_SIZE = 100;
+    private static final int MAX_CHUNK_SIZE = 50000;
+    private static final double MAX_ADJUSTMENT = 2.0;
+    private static final long CHECKPOINT_INTERVAL_MILLIS = 5000;
+
+    // A chunk losing a deadlock or lock wait to application traffic is retried
+    private static final int MAX_CHUNK_ATTEMPTS = 3;
+    private static final int ER_LOCK_WAIT_TIMEOUT = 1205;
+    private static final int ER_LOCK_DEADLOCK = 1213;
+
+    // Workers only hold row locks for one chunk; don't queue behind a long transaction for long
+    private static final int LOCK_WAIT_TIMEOUT_SECONDS = 10;
+
+    private static final Pattern UPDATE_PATTERN = Pattern.compile(
+            "^UPDATE\\s+(`?)([A-Za-z0-9_$]+)\\1\\s+SET\\s+(.+?)\\s*;?\\s*$",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private final RdsHostInfo rdsHostInfo;
+    private final RdsAdminSecret rdsAdminSecret;
+    private final String databaseName;
+    private final Connection connection;
+    private final ILogger logger;
+    private final ServerLoadThrottler throttler;
+    private final TimeBudget timeBudget;
+    private int parallelism = DEFAULT_PARALLELISM;
+    private int initialChunkSize = DEFAULT_INITIAL_CHUNK_SIZE;
+    private long targetChunkMillis = DEFAULT_TARGET_CHUNK_MILLIS;
+
+    private String suspendedPosition;
+    private long rowCount;
+    private int chunkCount;
+    private int retryCount;
+
+    /**
+     * The worker connections are opened with the same host and credentials
+     * and closed when done.
+     *
+     * @param connection Connection whose default database is the one of the
+     *                   table, used to walk the primary key and to save
+     *                   checkpoints
+     */
+    public ChunkedBackfiller(RdsHostInfo rdsHostInfo, RdsAdminSecret rdsAdminSecret, String databaseName,
+            Connection connection, ILogger logger, TimeBudget timeBudget) {
+        this.rdsHostInfo = rdsHostInfo;
+        this.rdsAdminSecret = rdsAdminSecret;
+        this.databaseName = databaseName;
+        this.connection = connection;
+        this.logger = logger;
+        this.throttler = new ServerLoadThrottler(connection, logger, timeBudget);
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * Number of chunks run at once. With {@code 1} the chunks run on the
+     * caller's connection. Defaults to {@link #DEFAULT_PARALLELISM}.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public void setInitialChunkSize(int initialChunkSize) {
+        this.initialChunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, initialChunkSize));
+    }
+
+    /**
+     * Latency each chunk is sized to reach. Defaults to
+     * {@link #DEFAULT_TARGET_CHUNK_MILLIS}.
+     */
+    public void setTargetChunkMillis(long targetChunkMillis) {
+        this.targetChunkMillis = Math.max(1, targetChunkMillis);
+    }
+
+    /**
+     * Position to pass back to {@link #apply(String, String, CheckpointStore, String, int)}
+     * after it was suspended. An empty string means that no range completed
+     * yet.
+     */
+    public String getSuspendedPosition() {
+        return this.suspendedPosition;
+    }
+
+    /**
+     * Rows updated by the last call.
+     */
+    public long getRowCount() {
+        return this.rowCount;
+    }
+
+    public int getChunkCount() {
+        return this.chunkCount;
+    }
+
+    /**
+     * Chunks run again after a deadlock or lock wait timeout.
+     */
+    public int getRetryCount() {
+        return this.retryCount;
+    }
+
+    public int getThrottleWaitCount() {
+        return this.throttler.getWaitCount();
+    }
+
+    /**
+     * @param resumePosition The position saved by a previous, interrupted
+     *                       call for the same statement, or {@code null} to
+     *                       start over
+     * @param checkpoints    Where progress is saved, as {@code step} and the
+     *                       position under {@code checkpointName}
+     * @return {@code false} when the time budget ran out before the backfill
+     *         completed
+     */
+    public boolean apply(String updateSql, String resumePosition, CheckpointStore checkpoints,
+            String checkpointName, int step) throws SQLException, AppException {
+        Matcher matcher = UPDATE_PATTERN.matcher(updateSql.trim());
+        if (!matcher.matches()) {
+            throw new AppException("Backfills only support single-table 'UPDATE' statements: " + updateSql);
+        }
+        String table = matcher.group(2);
+        String setClause = matcher.group(3);
+        String whereClause = null;
+
+        int whereIndex = indexOfKeyword(setClause, "WHERE");
+        if (whereIndex >= 0) {
+            whereClause = setClause.substring(whereIndex + "WHERE".length()).trim();
+            setClause = setClause.substring(0, whereIndex).trim();
+        }
+        if (indexOfKeyword(setClause, "ORDER") >= 0 || indexOfKeyword(setClause, "LIMIT") >= 0
+                || (whereClause != null
+                        && (indexOfKeyword(whereClause, "ORDER") >= 0 || indexOfKeyword(whereClause, "LIMIT") >= 0))) {
+            throw new AppException(String.format(
+                    "Backfill of '%s' cannot use ORDER BY or LIMIT, rows are updated in primary-key ranges", table));
+        }
+
+        this.suspendedPosition = null;
+        this.rowCount = 0;
+        this.chunkCount = 0;
+        this.retryCount = 0;
+
+        // Every chunk must commit on its own so no long transaction holds row locks
+        boolean autoCommit = this.connection.getAutoCommit();
+        this.connection.setAutoCommit(true);
+        try {
+            String primaryKey = OnlineSql.getPrimaryKeyColumn(this.connection, table, "Backfill");
+            String key = OnlineSql.quoteIdentifier(primaryKey);
+            String filter = whereClause != null ? " AND (" + whereClause + ")" : "";
+            String chunkSql = "UPDATE " + OnlineSql.quoteIdentifier(table) + " SET " + setClause
+                    + " WHERE " + key + " > ? AND " + key + " <= ?" + filter;
+            String firstChunkSql = "UPDATE " + OnlineSql.quoteIdentifier(table) + " SET " + setClause
+                    + " WHERE " + key + " <= ?" + filter;
+            Object lowerBound = resumePosition != null && !resumePosition.isEmpty() ? resumePosition : null;
+
+            this.logger.info(String.format("%s backfill of '%s' in chunks of %d rows...",
+                    lowerBound != null ? "Resuming" : "Starting", table, this.initialChunkSize));
+            long startTime = System.nanoTime();
+
+            if (!this.run(table, key, chunkSql, firstChunkSql, lowerBound, checkpoints, checkpointName, step)) {
+                this.logger.info(String.format(
+                        "Suspended backfill of '%s' after %d rows: time budget exhausted", table, this.rowCount));
+                return false;
+            }
+
+            long durationMillis = (System.nanoTime() - startTime) / 1_000_000;
+            this.logger.info(String.format(
+                    "Backfilled '%s': %d rows in %d chunks in %d ms (%d ms throttled)",
+                    table, this.rowCount, this.chunkCount, durationMillis, this.throttler.getTotalWaitMillis()));
+            return true;
+        } finally {
+            this.connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * A primary-key range, {@code (lowerBound, upperBound]}; the first range
+     * of a run has no lower bound.
+     */
+    private static class Chunk {
+        private final Object lowerBound;
+        private final Object upperBound;
+        private final int size;
+        private int rowCount;
+        private long durationMillis;
+        private int retryCount;
+        private boolean completed;
+
+        Chunk(Object lowerBound, Object upperBound, int size) {
+            this.lowerBound = lowerBound;
+            this.upperBound = upperBound;
+            this.size = size;
+        }
+    }
+
+    private boolean run(String table, String key, String chunkSql, String firstChunkSql, Object lowerBound,
+            CheckpointStore checkpoints, String checkpointName, int step) throws SQLException, AppException {
+        String quotedTable = OnlineSql.quoteIdentifier(table);
+        String maxKeySql = "SELECT MAX(" + key + ") FROM " + quotedTable;
+
+        BlockingQueue<Connection> connections = new ArrayBlockingQueue<Connection>(this.parallelism);
+        List<ConnectionSession> workerSessions = new ArrayList<ConnectionSession>();
+        ExecutorService executor = Executors.newFixedThreadPool(this.parallelism);
+        try {
+            if (this.parallelism == 1) {
+                // The caller's connection is idle while the only chunk runs
+                connections.add(this.connection);
+            } else {
+                for (int i = 0; i < this.parallelism; i++) {
+                    ConnectionSession workerSession = new ConnectionSession(this.rdsHostInfo, this.rdsAdminSecret);
+                    workerSessions.add(workerSession);
+                    Connection workerConnection = workerSession.getConnection(this.databaseName, this.logger);
+                    workerConnection.setAutoCommit(true);
+                    try (Statement statement = workerConnection.createStatement()) {
+                        statement.execute("SET SESSION innodb_lock_wait_timeout = " + LOCK_WAIT_TIMEOUT_SECONDS);
+                    }
+                    connections.add(workerConnection);
+                }
+            }
+
+            CompletionService<Chunk> completionService = new ExecutorCompletionService<Chunk>(executor);
+            // Chunks in the order they were handed out, until they and all before them completed
+            Deque<Chunk> inFlight = new ArrayDeque<Chunk>();
+            int runningCount = 0;
+            int chunkSize = this.initialChunkSize;
+            boolean lastRangeHandedOut = false;
+            boolean suspended = false;
+            Object completedBound = lowerBound;
+            long lastCheckpointTime = System.nanoTime();
+
+            while (true) {
+                while (!lastRangeHandedOut && !suspended && runningCount < this.parallelism) {
+                    if (this.timeBudget.isExhausted() || !this.throttler.await()) {
+                        suspended = true;
+                        break;
+                    }
+
+                    String boundarySql = "SELECT " + key + " FROM " + quotedTable
+                            + (lowerBound != null ? " WHERE " + key + " > ?" : "")
+                            + " ORDER BY " + key + " LIMIT 1 OFFSET " + (chunkSize - 1);
+                    Object upperBound = lowerBound != null
+                            ? OnlineSql.queryValue(this.connection, boundarySql, lowerBound)
+                            : OnlineSql.queryValue(this.connection, boundarySql);
+                    if (upperBound == null) {
+                        // Last, partial range
+                        lastRangeHandedOut = true;
+                        upperBound = lowerBound != null
+                                ? OnlineSql.queryValue(this.connection, maxKeySql + " WHERE " + key + " > ?",
+                                        lowerBound)
+                                : OnlineSql.queryValue(this.connection, maxKeySql);
+                        if (upperBound == null) {
+                            break;
+                        }
+                    }
+
+                    Chunk chunk = new Chunk(lowerBound, upperBound, chunkSize);
+                    inFlight.add(chunk);
+                    String sql = lowerBound != null ? chunkSql : firstChunkSql;
+                    completionService.submit(() -> this.runChunk(connections, sql, chunk));
+                    runningCount++;
+                    lowerBound = upperBound;
+                }
+
+                if (runningCount == 0) {
+                    break;
+                }
+
+                Chunk chunk;
+                try {
+                    chunk = completionService.take().get();
+                } catch (ExecutionException e) {
+                    // Ranges after the last one completed without a gap are run again on the next call
+                    this.saveProgress(checkpoints, checkpointName, step, completedBound);
+                    if (e.getCause() instanceof SQLException) {
+                        throw (SQLException) e.getCause();
+                    }
+                    if (e.getCause() instanceof AppException) {
+                        throw (AppException) e.getCause();
+                    }
+                    throw new AppException(String.format(
+                            "Failed to backfill '%s', see 'Caused by' for details", table), e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new AppException(String.format("Interrupted while backfilling '%s'", table), e);
+                }
+                runningCount--;
+                chunk.completed = true;
+                this.rowCount += chunk.rowCount;
+                this.chunkCount++;
+                this.retryCount += chunk.retryCount;
+                chunkSize = this.nextChunkSize(chunk);
+
+                while (!inFlight.isEmpty() && inFlight.peek().completed) {
+                    completedBound = inFlight.poll().upperBound;
+                }
+                this.logger.log(LogLevel.DEBUG, "Backfilled chunk",
+                        "table", table,
+                        "chunk", this.chunkCount,
+                        "upperBound", chunk.upperBound,
+                        "rows", chunk.rowCount,
+                        "durationMillis", chunk.durationMillis,
+                        "nextChunkSize", chunkSize);
+
+                if ((System.nanoTime() - lastCheckpointTime) / 1_000_000 >= CHECKPOINT_INTERVAL_MILLIS) {
+                    this.saveProgress(checkpoints, checkpointName, step, completedBound);
+                    lastCheckpointTime = System.nanoTime();
+                }
+            }
+
+            if (suspended) {
+                this.suspendedPosition = completedBound == null ? "" : completedBound.toString();
+                this.saveProgress(checkpoints, checkpointName, step, completedBound);
+                return false;
+            }
+            return true;
+        } finally {
+            executor.shutdownNow();
+            for (ConnectionSession workerSession : workerSessions) {
+                workerSession.close();
+            }
+        }
+    }
+
+    private Chunk runChunk(BlockingQueue<Connection> connections, String sql, Chunk chunk)
+            throws SQLException, InterruptedException {
+        // Never more chunks run than there are connections
+        Connection connection = connections.take();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            int index = 1;
+            if (chunk.lowerBound != null) {
+                statement.setObject(index++, chunk.lowerBound);
+            }
+            statement.setObject(index, chunk.upperBound);
+
+            for (int attempt = 1;; attempt++) {
+                long startTime = System.nanoTime();
+                try {
+                    chunk.rowCount = statement.executeUpdate();
+                    chunk.durationMillis = (System.nanoTime() - startTime) / 1_000_000;
+                    return chunk;
+                } catch (SQLException e) {
+                    boolean retryable = e.getErrorCode() == ER_LOCK_DEADLOCK
+                            || e.getErrorCode() == ER_LOCK_WAIT_TIMEOUT;
+                    if (!retryable || attempt >= MAX_CHUNK_ATTEMPTS) {
+                        throw e;
+                    }
+                    chunk.retryCount++;
+                }
+            }
+        } finally {
+            connections.add(connection);
+        }
+    }
+
+    /**
+     * Scales the size of {@code chunk} by how far its latency was from the
+     * target.
+     */
+    private int nextChunkSize(Chunk chunk) {
+        double factor = (double) this.targetChunkMillis / Math.max(1, chunk.durationMillis);
+        factor = Math.min(MAX_ADJUSTMENT, Math.max(1 / MAX_ADJUSTMENT, factor));
+        return (int) Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, Math.round(chunk.size * factor)));
+    }
+
+    private void saveProgress(CheckpointStore checkpoints, String checkpointName, int step, Object completedBound)
+            throws SQLException {
+        if (checkpoints != null) {
+            checkpoints.save(checkpointName, step, completedBound == null ? "" : completedBound.toString());
+        }
+    }
+
+    /**
+     * Position of {@code keyword} in {@code sql} outside of parentheses,
+     * quotes and identifiers, or {@code -1}.
+     */
+    static int indexOfKeyword(String sql, String keyword) {
+        int depth = 0;
+        char quote = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                if (c == '\\' && quote != '`') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && sql.regionMatches(true, i, keyword, 0, keyword.length())
+                    && (i == 0 || !isIdentifierPart(sql.charAt(i - 1)))
+                    && (i + keyword.length() == sql.length()
+                            || !isIdentifierPart(sql.charAt(i + keyword.length())))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+}
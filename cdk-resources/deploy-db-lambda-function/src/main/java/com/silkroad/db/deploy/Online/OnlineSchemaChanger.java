@@ -0,0 +1,432 @@
+package com.silkroad.db.deploy.Online;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.silkroad.db.deploy.Exceptions.AppException;
+import com.silkroad.db.deploy.Utils.CheckpointStore;
+import com.silkroad.db.deploy.Utils.ILogger;
+import com.silkroad.db.deploy.Utils.LogLevel;
+import com.silkroad.db.deploy.Utils.TimeBudget;
+
+/**
+ * Applies an {@code ALTER TABLE} without blocking writers for the duration of
+ * a table rebuild.
+ *
+ * The change is first attempted with {@code ALGORITHM=INSTANT}. When MySQL
+ * cannot do it in place, the altered copy is built as a shadow table:
+ * triggers on the original table replay concurrent writes into the shadow,
+ * existing rows are copied in primary-key chunks (each chunk waits on the
+ * {@link ServerLoadThrottler}), and the tables are finally swapped with a
+ * single atomic {@code RENAME TABLE}.
+ *
+ * When the {@link TimeBudget} runs out during the copy, {@link #apply(String, String)}
+ * returns {@code false} leaving the shadow table and triggers in place; the
+ * copy resumes from {@link #getSuspendedPosition()} on the next call. Given a
+ * {@link CheckpointStore}, the copy position is also saved every few seconds,
+ * so a run that is killed resumes from there instead of starting over.
+ *
+ * Only tables with a single-column primary key and no foreign keys are
+ * supported: inbound ones would follow the original table through the
+ * rename, and outbound ones are not copied by {@code CREATE TABLE ... LIKE}.
+ * Column renames are rejected since rows are copied by column name.
+ */
+public class OnlineSchemaChanger {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private static final long CHECKPOINT_INTERVAL_MILLIS = 5000;
+
+    // MySQL error code for "ALGORITHM=INSTANT is not supported"
+    private static final int ER_ALTER_OPERATION_NOT_SUPPORTED_REASON = 1846;
+    private static final int ER_ALTER_OPERATION_NOT_SUPPORTED = 1845;
+
+    private static final Pattern ALTER_PATTERN = Pattern.compile(
+            "^ALTER\\s+TABLE\\s+(`?)([A-Za-z0-9_$]+)\\1\\s+(.+?)\\s*;?\\s*$",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final Pattern UNSUPPORTED_SPEC_PATTERN = Pattern.compile(
+            "\\b(CHANGE|RENAME)\\b", Pattern.CASE_INSENSITIVE);
+
+    private final Connection connection;
+    private final ILogger logger;
+    private final ServerLoadThrottler throttler;
+    private final int chunkSize;
+    private final TimeBudget timeBudget;
+
+    private String suspendedPosition;
+    private long rowCount;
+
+    public OnlineSchemaChanger(Connection connection, ILogger logger) {
+        this(connection, logger, TimeBudget.unlimited());
+    }
+
+    public OnlineSchemaChanger(Connection connection, ILogger logger, TimeBudget timeBudget) {
+        this(connection, logger, new ServerLoadThrottler(connection, logger, timeBudget), DEFAULT_CHUNK_SIZE,
+                timeBudget);
+    }
+
+    public OnlineSchemaChanger(Connection connection, ILogger logger, ServerLoadThrottler throttler, int chunkSize,
+            TimeBudget timeBudget) {
+        this.connection = connection;
+        this.logger = logger;
+        this.throttler = throttler;
+        this.chunkSize = chunkSize;
+        this.timeBudget = timeBudget;
+    }
+
+    public void apply(String alterSql) throws SQLException, AppException {
+        if (!this.apply(alterSql, null)) {
+            throw new AppException("Online schema change was suspended: time budget exhausted");
+        }
+    }
+
+    /**
+     * Position to pass back to {@link #apply(String, String)} after it was
+     * suspended. An empty string means that no rows were copied yet.
+     */
+    public String getSuspendedPosition() {
+        return this.suspendedPosition;
+    }
+
+    /**
+     * Rows copied by the last {@link #apply(String, String)} call.
+     */
+    public long getRowCount() {
+        return this.rowCount;
+    }
+
+    public int getThrottleWaitCount() {
+        return this.throttler.getWaitCount();
+    }
+
+    /**
+     * @param resumePosition The {@link #getSuspendedPosition()} of a previous,
+     *                       suspended call for the same statement, or
+     *                       {@code null} to start over
+     * @return {@code false} when the time budget ran out before the change
+     *         completed
+     */
+    public boolean apply(String alterSql, String resumePosition) throws SQLException, AppException {
+        return this.apply(alterSql, resumePosition, null, null, 0);
+    }
+
+    /**
+     * Like {@link #apply(String, String)}, also saving the copy position as
+     * {@code step} under {@code checkpointName} while rows are copied.
+     */
+    public boolean apply(String alterSql, String resumePosition, CheckpointStore checkpoints, String checkpointName,
+            int step) throws SQLException, AppException {
+        Matcher matcher = ALTER_PATTERN.matcher(alterSql.trim());
+        if (!matcher.matches()) {
+            throw new AppException("Online schema changes only support single-table 'ALTER TABLE' statements: "
+                    + alterSql);
+        }
+        String table = matcher.group(2);
+        String spec = matcher.group(3);
+
+        // Every chunk must commit on its own so no long transaction holds row locks
+        boolean autoCommit = this.connection.getAutoCommit();
+        this.connection.setAutoCommit(true);
+        try {
+            return this.apply(table, spec, resumePosition, checkpoints, checkpointName, step);
+        } finally {
+            this.connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private boolean apply(String table, String spec, String resumePosition, CheckpointStore checkpoints,
+            String checkpointName, int step) throws SQLException, AppException {
+        this.suspendedPosition = null;
+        this.rowCount = 0;
+        if (resumePosition == null && this.tryInstant(table, spec)) {
+            return true;
+        }
+
+        if (UNSUPPORTED_SPEC_PATTERN.matcher(spec).find()) {
+            throw new AppException(String.format(
+                    "Online schema change of '%s' cannot rename columns or tables: %s", table, spec));
+        }
+        String primaryKey = OnlineSql.getPrimaryKeyColumn(this.connection, table, "Online schema change");
+        this.checkNoInboundForeignKeys(table);
+        this.checkNoOutboundForeignKeys(table);
+
+        return this.rebuild(table, spec, primaryKey, resumePosition, checkpoints, checkpointName, step);
+    }
+
+    private boolean tryInstant(String table, String spec) throws SQLException {
+        try (Statement statement = this.connection.createStatement()) {
+            statement.execute("ALTER TABLE " + OnlineSql.quoteIdentifier(table) + " " + spec + ", ALGORITHM=INSTANT");
+            this.logger.info(String.format("Altered '%s' instantly", table));
+            return true;
+        } catch (SQLException e) {
+            if (e.getErrorCode() == ER_ALTER_OPERATION_NOT_SUPPORTED
+                    || e.getErrorCode() == ER_ALTER_OPERATION_NOT_SUPPORTED_REASON) {
+                this.logger.debug(String.format("'%s' cannot be altered instantly: %s", table, e.getMessage()));
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    private boolean rebuild(String table, String spec, String primaryKey, String resumePosition,
+            CheckpointStore checkpoints, String checkpointName, int step) throws SQLException, AppException {
+        String shadowTable = "_" + table + "_new";
+        String oldTable = "_" + table + "_old";
+        String[] triggers = { "_" + table + "_osc_ins", "_" + table + "_osc_upd", "_" + table + "_osc_del" };
+
+        boolean resuming = resumePosition != null && this.isInProgress(shadowTable, triggers);
+        this.logger.info(String.format("%s '%s' online through shadow table '%s'...",
+                resuming ? "Resuming altering" : "Altering", table, shadowTable));
+        long startTime = System.nanoTime();
+
+        if (!resuming) {
+            // Leftovers of a failed run are never trusted
+            this.cleanUp(shadowTable, triggers);
+        }
+
+        try {
+            if (!resuming) {
+                this.execute("CREATE TABLE " + OnlineSql.quoteIdentifier(shadowTable)
+                        + " LIKE " + OnlineSql.quoteIdentifier(table));
+                this.execute("ALTER TABLE " + OnlineSql.quoteIdentifier(shadowTable) + " " + spec);
+            }
+
+            List<String> columns = this.getCommonColumns(table, shadowTable);
+            if (!columns.contains(primaryKey)) {
+                throw new AppException(String.format(
+                        "Online schema change of '%s' cannot drop the primary key column '%s'", table, primaryKey));
+            }
+            if (!resuming) {
+                this.createTriggers(table, shadowTable, triggers, columns, primaryKey);
+            }
+
+            Object lowerBound = resuming && !resumePosition.isEmpty() ? resumePosition : null;
+            if (!this.copyRows(table, shadowTable, columns, primaryKey, lowerBound, checkpoints, checkpointName,
+                    step)) {
+                this.logger.info(String.format(
+                        "Suspended altering '%s' after copying %d rows: time budget exhausted", table, this.rowCount));
+                return false;
+            }
+
+            this.execute("RENAME TABLE " + OnlineSql.quoteIdentifier(table)
+                    + " TO " + OnlineSql.quoteIdentifier(oldTable) + ", "
+                    + OnlineSql.quoteIdentifier(shadowTable) + " TO " + OnlineSql.quoteIdentifier(table));
+
+            long durationMillis = (System.nanoTime() - startTime) / 1_000_000;
+            this.logger.info(String.format(
+                    "Altered '%s' online: %d rows copied in %d ms (%d ms throttled)",
+                    table, this.rowCount, durationMillis, this.throttler.getTotalWaitMillis()));
+        } catch (SQLException | AppException e) {
+            this.cleanUp(shadowTable, triggers);
+            throw e;
+        }
+
+        // The triggers moved with the original table; the new table is already live
+        for (String trigger : triggers) {
+            this.execute("DROP TRIGGER IF EXISTS " + OnlineSql.quoteIdentifier(trigger));
+        }
+        this.execute("DROP TABLE IF EXISTS " + OnlineSql.quoteIdentifier(oldTable));
+        return true;
+    }
+
+    /**
+     * Whether the shadow table and all its triggers are still there from a
+     * suspended run.
+     */
+    private boolean isInProgress(String shadowTable, String[] triggers) throws SQLException {
+        String sql = "SELECT "
+                + "(SELECT COUNT(*) FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() "
+                + "AND TABLE_NAME = ?), "
+                + "(SELECT COUNT(*) FROM information_schema.TRIGGERS WHERE TRIGGER_SCHEMA = DATABASE() "
+                + "AND TRIGGER_NAME IN (?, ?, ?))";
+        try (PreparedStatement statement = this.connection.prepareStatement(sql)) {
+            statement.setString(1, shadowTable);
+            for (int i = 0; i < triggers.length; i++) {
+                statement.setString(i + 2, triggers[i]);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getInt(1) == 1 && resultSet.getInt(2) == triggers.length;
+            }
+        }
+    }
+
+    private void createTriggers(String table, String shadowTable, String[] triggers, List<String> columns,
+            String primaryKey) throws SQLException {
+        String columnList = joinIdentifiers(columns, "");
+        String newValues = joinIdentifiers(columns, "NEW.");
+        String quotedTable = OnlineSql.quoteIdentifier(table);
+        String quotedShadow = OnlineSql.quoteIdentifier(shadowTable);
+        String key = OnlineSql.quoteIdentifier(primaryKey);
+        String shadowKey = quotedShadow + "." + key;
+        String replaceNew = "REPLACE INTO " + quotedShadow + " (" + columnList + ") VALUES (" + newValues + ")";
+
+        this.execute("CREATE TRIGGER " + OnlineSql.quoteIdentifier(triggers[0]) + " AFTER INSERT ON " + quotedTable
+                + " FOR EACH ROW " + replaceNew);
+        this.execute("CREATE TRIGGER " + OnlineSql.quoteIdentifier(triggers[1]) + " AFTER UPDATE ON " + quotedTable
+                + " FOR EACH ROW BEGIN "
+                + "DELETE IGNORE FROM " + quotedShadow
+                + " WHERE !(OLD." + key + " <=> NEW." + key + ")"
+                + " AND " + shadowKey + " <=> OLD." + key + "; "
+                + replaceNew + "; END");
+        this.execute("CREATE TRIGGER " + OnlineSql.quoteIdentifier(triggers[2]) + " AFTER DELETE ON " + quotedTable
+                + " FOR EACH ROW DELETE IGNORE FROM " + quotedShadow
+                + " WHERE " + shadowKey + " <=> OLD." + key);
+    }
+
+    /**
+     * Copies rows in primary-key ranges. {@code INSERT IGNORE} leaves rows
+     * already written by the triggers alone, since those are newer. Returns
+     * {@code false} when the time budget ran out first.
+     */
+    private boolean copyRows(String table, String shadowTable, List<String> columns, String primaryKey,
+            Object lowerBound, CheckpointStore checkpoints, String checkpointName, int step)
+            throws SQLException, AppException {
+        String columnList = joinIdentifiers(columns, "");
+        String key = OnlineSql.quoteIdentifier(primaryKey);
+        String copySql = "INSERT IGNORE INTO " + OnlineSql.quoteIdentifier(shadowTable) + " (" + columnList + ") "
+                + "SELECT " + columnList + " FROM " + OnlineSql.quoteIdentifier(table) + " FORCE INDEX (PRIMARY) "
+                + "WHERE " + key + " > ? AND " + key + " <= ? LOCK IN SHARE MODE";
+        String firstCopySql = copySql.replace(key + " > ? AND ", "");
+        String boundarySql = "SELECT " + key + " FROM " + OnlineSql.quoteIdentifier(table) + " WHERE " + key + " > ? "
+                + "ORDER BY " + key + " LIMIT 1 OFFSET " + (this.chunkSize - 1);
+        String firstBoundarySql = "SELECT " + key + " FROM " + OnlineSql.quoteIdentifier(table) + " "
+                + "ORDER BY " + key + " LIMIT 1 OFFSET " + (this.chunkSize - 1);
+        String maxKeySql = "SELECT MAX(" + key + ") FROM " + OnlineSql.quoteIdentifier(table);
+
+        int chunkCount = 0;
+        boolean done = false;
+        long lastCheckpointTime = System.nanoTime();
+
+        while (!done) {
+            if (this.timeBudget.isExhausted() || !this.throttler.await()) {
+                this.suspendedPosition = lowerBound == null ? "" : lowerBound.toString();
+                return false;
+            }
+
+            Object upperBound = lowerBound == null
+                    ? OnlineSql.queryValue(this.connection, firstBoundarySql)
+                    : OnlineSql.queryValue(this.connection, boundarySql, lowerBound);
+            if (upperBound == null) {
+                // Last, partial chunk; rows inserted after this point are covered by the triggers
+                upperBound = OnlineSql.queryValue(this.connection, maxKeySql);
+                done = true;
+                if (upperBound == null) {
+                    break;
+                }
+            }
+
+            try (PreparedStatement statement = this.connection.prepareStatement(
+                    lowerBound == null ? firstCopySql : copySql)) {
+                int index = 1;
+                if (lowerBound != null) {
+                    statement.setObject(index++, lowerBound);
+                }
+                statement.setObject(index, upperBound);
+                this.rowCount += statement.executeUpdate();
+            }
+
+            chunkCount++;
+            lowerBound = upperBound;
+            this.logger.log(LogLevel.DEBUG, "Copied chunk",
+                    "table", table,
+                    "chunk", chunkCount,
+                    "upperBound", upperBound);
+
+            if (checkpoints != null
+                    && (System.nanoTime() - lastCheckpointTime) / 1_000_000 >= CHECKPOINT_INTERVAL_MILLIS) {
+                checkpoints.save(checkpointName, step, lowerBound.toString());
+                lastCheckpointTime = System.nanoTime();
+            }
+        }
+        return true;
+    }
+
+    private void checkNoInboundForeignKeys(String table) throws SQLException, AppException {
+        String sql = "SELECT TABLE_NAME FROM information_schema.KEY_COLUMN_USAGE "
+                + "WHERE REFERENCED_TABLE_SCHEMA = DATABASE() AND REFERENCED_TABLE_NAME = ? LIMIT 1";
+        try (PreparedStatement statement = this.connection.prepareStatement(sql)) {
+            statement.setString(1, table);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    throw new AppException(String.format(
+                            "Online schema change of '%s' is not possible, it is referenced by a foreign key of '%s'",
+                            table, resultSet.getString(1)));
+                }
+            }
+        }
+    }
+
+    /**
+     * {@code CREATE TABLE ... LIKE} leaves out foreign keys, so the rebuilt
+     * table would silently lose them.
+     */
+    private void checkNoOutboundForeignKeys(String table) throws SQLException, AppException {
+        String sql = "SELECT CONSTRAINT_NAME FROM information_schema.KEY_COLUMN_USAGE "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND REFERENCED_TABLE_NAME IS NOT NULL LIMIT 1";
+        try (PreparedStatement statement = this.connection.prepareStatement(sql)) {
+            statement.setString(1, table);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    throw new AppException(String.format(
+                            "Online schema change of '%s' is not possible, its foreign key '%s' would be lost",
+                            table, resultSet.getString(1)));
+                }
+            }
+        }
+    }
+
+    private List<String> getCommonColumns(String table, String shadowTable) throws SQLException {
+        List<String> columns = new ArrayList<String>();
+        String sql = "SELECT o.COLUMN_NAME FROM information_schema.COLUMNS o "
+                + "JOIN information_schema.COLUMNS n ON n.TABLE_SCHEMA = o.TABLE_SCHEMA "
+                + "AND n.TABLE_NAME = ? AND n.COLUMN_NAME = o.COLUMN_NAME "
+                + "WHERE o.TABLE_SCHEMA = DATABASE() AND o.TABLE_NAME = ? "
+                + "AND n.GENERATION_EXPRESSION = '' "
+                + "ORDER BY o.ORDINAL_POSITION";
+        try (PreparedStatement statement = this.connection.prepareStatement(sql)) {
+            statement.setString(1, shadowTable);
+            statement.setString(2, table);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    columns.add(resultSet.getString(1));
+                }
+            }
+        }
+        return columns;
+    }
+
+    private void cleanUp(String shadowTable, String[] triggers) {
+        try {
+            for (String trigger : triggers) {
+                this.execute("DROP TRIGGER IF EXISTS " + OnlineSql.quoteIdentifier(trigger));
+            }
+            this.execute("DROP TABLE IF EXISTS " + OnlineSql.quoteIdentifier(shadowTable));
+        } catch (SQLException e) {
+            this.logger.error(String.format("Failed to clean up shadow table '%s': %s", shadowTable, e.getMessage()));
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        this.logger.debug(sql);
+        try (Statement statement = this.connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static String joinIdentifiers(List<String> identifiers, String prefix) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < identifiers.size(); i++) {
+            builder.append(i > 0 ? ", " : "").append(prefix).append(OnlineSql.quoteIdentifier(identifiers.get(i)));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,66 @@
+package com.silkroad.db.deploy.Online;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.silkroad.db.deploy.Exceptions.AppException;
+
+/**
+ * Queries shared by the primary-key chunked operations of this package,
+ * {@link OnlineSchemaChanger} and {@link ChunkedBackfiller}.
+ */
+final class OnlineSql {
+
+    private OnlineSql() {
+    }
+
+    /**
+     * Returns the primary key column of {@code table}, failing when it has
+     * none or a composite one.
+     *
+     * @param operation Names the caller in the error, e.g. "Backfill"
+     */
+    static String getPrimaryKeyColumn(Connection connection, String table, String operation)
+            throws SQLException, AppException {
+        List<String> columns = new ArrayList<String>();
+        String sql = "SELECT COLUMN_NAME FROM information_schema.KEY_COLUMN_USAGE "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND CONSTRAINT_NAME = 'PRIMARY' "
+                + "ORDER BY ORDINAL_POSITION";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, table);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    columns.add(resultSet.getString(1));
+                }
+            }
+        }
+
+        if (columns.size() != 1) {
+            throw new AppException(String.format("%s of '%s' requires a single-column primary key", operation, table));
+        }
+        return columns.get(0);
+    }
+
+    /**
+     * Returns the first column of the first row, or {@code null} when there
+     * is no row.
+     */
+    static Object queryValue(Connection connection, String sql, Object... parameters) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getObject(1) : null;
+            }
+        }
+    }
+
+    static String quoteIdentifier(String identifier) {
+        return "`" + identifier.replace("`", "``") + "`";
+    }
+}
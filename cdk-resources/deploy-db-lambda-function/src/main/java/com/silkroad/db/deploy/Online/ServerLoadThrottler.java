@@ -0,0 +1,128 @@
+package com.silkroad.db.deploy.Online;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import com.silkroad.db.deploy.Exceptions.AppException;
+import com.silkroad.db.deploy.Utils.ILogger;
+import com.silkroad.db.deploy.Utils.LogLevel;
+import com.silkroad.db.deploy.Utils.TimeBudget;
+
+/**
+ * Holds background copy work back while the server is busy. Load is sampled
+ * in one query from {@code Threads_running} and the number of InnoDB
+ * transactions waiting on a lock; while either is above its limit the caller
+ * waits with exponential backoff.
+ *
+ * The wait also ends when the {@link TimeBudget} runs out, so that the caller
+ * can suspend at a safe point instead of being killed while it waits.
+ */
+public class ServerLoadThrottler {
+
+    public static final int DEFAULT_MAX_THREADS_RUNNING = 25;
+    public static final int DEFAULT_MAX_LOCK_WAITS = 2;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 5 * 60 * 1000;
+
+    private static final long INITIAL_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+
+    private static final String LOAD_SQL = "SELECT "
+            + "(SELECT VARIABLE_VALUE FROM performance_schema.global_status WHERE VARIABLE_NAME = 'Threads_running'), "
+            + "(SELECT COUNT(*) FROM information_schema.INNODB_TRX WHERE trx_state = 'LOCK WAIT')";
+
+    private final Connection connection;
+    private final ILogger logger;
+    private final int maxThreadsRunning;
+    private final int maxLockWaits;
+    private final long maxWaitMillis;
+    private final TimeBudget timeBudget;
+
+    private long totalWaitMillis = 0;
+    private int waitCount = 0;
+
+    public ServerLoadThrottler(Connection connection, ILogger logger) {
+        this(connection, logger, TimeBudget.unlimited());
+    }
+
+    public ServerLoadThrottler(Connection connection, ILogger logger, TimeBudget timeBudget) {
+        this(connection, logger, DEFAULT_MAX_THREADS_RUNNING, DEFAULT_MAX_LOCK_WAITS, DEFAULT_MAX_WAIT_MILLIS,
+                timeBudget);
+    }
+
+    public ServerLoadThrottler(Connection connection, ILogger logger, int maxThreadsRunning, int maxLockWaits,
+            long maxWaitMillis, TimeBudget timeBudget) {
+        this.connection = connection;
+        this.logger = logger;
+        this.maxThreadsRunning = maxThreadsRunning;
+        this.maxLockWaits = maxLockWaits;
+        this.maxWaitMillis = maxWaitMillis;
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * Returns once the server load is below the limits, or fails after
+     * waiting {@code maxWaitMillis} in a row.
+     *
+     * @return {@code false} when the time budget ran out while waiting; the
+     *         caller should suspend rather than start more work
+     */
+    public boolean await() throws SQLException, AppException {
+        long backoffMillis = INITIAL_BACKOFF_MILLIS;
+        long waitedMillis = 0;
+
+        while (true) {
+            long threadsRunning;
+            long lockWaits;
+            try (Statement statement = this.connection.createStatement();
+                    ResultSet resultSet = statement.executeQuery(LOAD_SQL)) {
+                resultSet.next();
+                threadsRunning = resultSet.getLong(1);
+                lockWaits = resultSet.getLong(2);
+            }
+
+            if (threadsRunning <= this.maxThreadsRunning && lockWaits <= this.maxLockWaits) {
+                return true;
+            }
+            if (this.timeBudget.isExhausted()) {
+                this.logger.log(LogLevel.INFO, "Stopped waiting for the server load to drop: time budget exhausted",
+                        "waitedMillis", waitedMillis,
+                        "threadsRunning", threadsRunning,
+                        "lockWaits", lockWaits);
+                return false;
+            }
+            if (waitedMillis >= this.maxWaitMillis) {
+                throw new AppException(String.format(
+                        "Server load stayed too high for %d ms (Threads_running: %d, lock waits: %d)",
+                        waitedMillis, threadsRunning, lockWaits));
+            }
+
+            this.logger.log(LogLevel.DEBUG, "Throttling",
+                    "backoffMillis", backoffMillis,
+                    "threadsRunning", threadsRunning,
+                    "lockWaits", lockWaits);
+            try {
+                Thread.sleep(backoffMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AppException("Interrupted while throttling", e);
+            }
+            waitedMillis += backoffMillis;
+            this.waitCount++;
+            this.totalWaitMillis += backoffMillis;
+            backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+        }
+    }
+
+    public long getTotalWaitMillis() {
+        return this.totalWaitMillis;
+    }
+
+    /**
+     * Number of times the caller was held back, i.e. retried after a backoff.
+     */
+    public int getWaitCount() {
+        return this.waitCount;
+    }
+}
@@ -0,0 +1,184 @@
+package com.silkroad.db.deploy.Plan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.silkroad.db.deploy.Sql.SqlStatement;
+import com.silkroad.db.deploy.Types.*;
+
+/**
+ * Predicts how MySQL 8 will execute a statement, without running it. The
+ * rules follow the "Online DDL Operations" tables of the MySQL reference
+ * manual; anything not recognized is assumed to need a table copy.
+ */
+public class DdlClassifier {
+
+    private static final String IDENTIFIER = "`?([A-Za-z0-9_$]+)`?(?:\\.`?([A-Za-z0-9_$]+)`?)?";
+
+    private static final Pattern ALTER_TABLE = Pattern.compile(
+            "^ALTER\\s+(?:ONLINE\\s+|IGNORE\\s+)?TABLE\\s+" + IDENTIFIER + "\\s*(.*)$",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern CREATE_INDEX = Pattern.compile(
+            "^CREATE\\s+(?:UNIQUE\\s+|FULLTEXT\\s+|SPATIAL\\s+)?INDEX\\s+\\S+\\s+ON\\s+" + IDENTIFIER + ".*$",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern DROP_INDEX = Pattern.compile(
+            "^DROP\\s+INDEX\\s+\\S+\\s+ON\\s+" + IDENTIFIER + ".*$",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern METADATA_DDL = Pattern.compile(
+            "^(?:CREATE|DROP|RENAME|TRUNCATE)\\s+(?:TEMPORARY\\s+)?(?:TABLE\\s+)?(?:IF\\s+(?:NOT\\s+)?EXISTS\\s+)?"
+                    + IDENTIFIER + ".*$",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern DML = Pattern.compile(
+            "^(INSERT|REPLACE|UPDATE|DELETE)\\s+(?:LOW_PRIORITY\\s+|IGNORE\\s+|QUICK\\s+)*(?:INTO\\s+|FROM\\s+)?"
+                    + IDENTIFIER + ".*$",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern EXPLICIT_ALGORITHM = Pattern.compile(
+            "^ALGORITHM\\s*=?\\s*(INSTANT|INPLACE|COPY)$", Pattern.CASE_INSENSITIVE);
+
+    private DdlClassifier() {
+    }
+
+    public static PlannedStatement classify(SqlStatement statement) {
+        String text = statement.getText().trim();
+        String summary = statement.getSummary();
+        Matcher matcher;
+
+        if ((matcher = ALTER_TABLE.matcher(text)).matches()) {
+            return classifyAlterTable(summary, tableName(matcher), matcher.group(3));
+        }
+        if ((matcher = CREATE_INDEX.matcher(text)).matches()) {
+            return new PlannedStatement(summary, "DDL", tableName(matcher), DdlAlgorithm.INPLACE, true);
+        }
+        if ((matcher = DROP_INDEX.matcher(text)).matches()) {
+            return new PlannedStatement(summary, "DDL", tableName(matcher), DdlAlgorithm.INPLACE, false);
+        }
+        if ((matcher = DML.matcher(text)).matches()) {
+            String keyword = matcher.group(1).toUpperCase(Locale.ROOT);
+            boolean touchesRows = keyword.equals("UPDATE") || keyword.equals("DELETE");
+            return new PlannedStatement(summary, "DML", tableName(matcher), null, touchesRows);
+        }
+        if ((matcher = METADATA_DDL.matcher(text)).matches()) {
+            // CREATE/DROP/RENAME TABLE, TRUNCATE, views, routines and triggers only touch the data dictionary
+            String table = text.toUpperCase(Locale.ROOT).matches("^\\w+\\s+(TEMPORARY\\s+)?TABLE\\b.*")
+                    || text.toUpperCase(Locale.ROOT).startsWith("TRUNCATE") ? tableName(matcher) : null;
+            return new PlannedStatement(summary, "DDL", table, DdlAlgorithm.INSTANT, false);
+        }
+        return new PlannedStatement(summary, "OTHER", null, null, false);
+    }
+
+    private static PlannedStatement classifyAlterTable(String summary, String table, String spec) {
+        DdlAlgorithm algorithm = DdlAlgorithm.INSTANT;
+        DdlAlgorithm explicitAlgorithm = null;
+        boolean touchesRows = false;
+
+        for (String clause : splitClauses(spec)) {
+            String normalized = clause.trim().replaceAll("\\s+", " ").toUpperCase(Locale.ROOT);
+            if (normalized.isEmpty() || normalized.startsWith("LOCK")) {
+                continue;
+            }
+
+            Matcher matcher = EXPLICIT_ALGORITHM.matcher(normalized);
+            if (matcher.matches()) {
+                explicitAlgorithm = DdlAlgorithm.valueOf(matcher.group(1).toUpperCase(Locale.ROOT));
+                continue;
+            }
+
+            DdlAlgorithm clauseAlgorithm;
+            boolean clauseTouchesRows;
+            if (normalized.matches("^ADD (INDEX|KEY|UNIQUE|FULLTEXT|SPATIAL)\\b.*")
+                    || normalized.matches("^ADD (CONSTRAINT \\S+ )?(PRIMARY|UNIQUE)\\b.*")) {
+                clauseAlgorithm = DdlAlgorithm.INPLACE;
+                clauseTouchesRows = true;
+            } else if (normalized.matches("^ADD (CONSTRAINT \\S+ )?(FOREIGN KEY|CHECK)\\b.*")) {
+                // Validated against every row while foreign_key_checks is on
+                clauseAlgorithm = DdlAlgorithm.COPY;
+                clauseTouchesRows = true;
+            } else if (normalized.startsWith("ADD ")) {
+                boolean positioned = normalized.contains(" FIRST") || normalized.contains(" AFTER ");
+                clauseAlgorithm = positioned ? DdlAlgorithm.INPLACE : DdlAlgorithm.INSTANT;
+                clauseTouchesRows = positioned;
+            } else if (normalized.startsWith("DROP PRIMARY KEY")) {
+                clauseAlgorithm = DdlAlgorithm.COPY;
+                clauseTouchesRows = true;
+            } else if (normalized.matches("^DROP (INDEX|KEY|FOREIGN KEY|CHECK|CONSTRAINT)\\b.*")) {
+                clauseAlgorithm = DdlAlgorithm.INPLACE;
+                clauseTouchesRows = false;
+            } else if (normalized.startsWith("DROP ")) {
+                clauseAlgorithm = DdlAlgorithm.INPLACE;
+                clauseTouchesRows = true;
+            } else if (normalized.matches("^RENAME (COLUMN|TO|AS)\\b.*")
+                    || normalized.matches("^ALTER (COLUMN )?\\S+ (SET|DROP) (DEFAULT|VISIBLE|INVISIBLE)\\b.*")
+                    || normalized.matches("^(DEFAULT )?(CHARACTER SET|CHARSET|COLLATE|COMMENT)\\b.*")) {
+                clauseAlgorithm = DdlAlgorithm.INSTANT;
+                clauseTouchesRows = false;
+            } else if (normalized.matches("^RENAME (INDEX|KEY)\\b.*")
+                    || normalized.matches("^ALTER INDEX\\b.*")
+                    || normalized.startsWith("AUTO_INCREMENT")) {
+                clauseAlgorithm = DdlAlgorithm.INPLACE;
+                clauseTouchesRows = false;
+            } else if (normalized.matches("^(ENGINE|ROW_FORMAT|KEY_BLOCK_SIZE|FORCE)\\b.*")) {
+                clauseAlgorithm = DdlAlgorithm.INPLACE;
+                clauseTouchesRows = true;
+            } else {
+                // MODIFY/CHANGE (data type changes), CONVERT TO CHARACTER SET, partitioning, ...
+                clauseAlgorithm = DdlAlgorithm.COPY;
+                clauseTouchesRows = true;
+            }
+
+            if (clauseAlgorithm.compareTo(algorithm) > 0) {
+                algorithm = clauseAlgorithm;
+            }
+            touchesRows |= clauseTouchesRows;
+        }
+
+        if (explicitAlgorithm != null) {
+            algorithm = explicitAlgorithm;
+            touchesRows |= explicitAlgorithm == DdlAlgorithm.COPY;
+        }
+        return new PlannedStatement(summary, "DDL", table, algorithm, touchesRows);
+    }
+
+    /**
+     * Splits an ALTER TABLE specification on the commas that are outside of
+     * parentheses and quotes.
+     */
+    private static List<String> splitClauses(String spec) {
+        List<String> clauses = new ArrayList<String>();
+        StringBuilder current = new StringBuilder();
+        int depth = 0;
+        char quote = 0;
+
+        for (int i = 0; i < spec.length(); i++) {
+            char c = spec.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else if (c == '\\' && i + 1 < spec.length()) {
+                    current.append(c);
+                    c = spec.charAt(++i);
+                }
+            } else if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                clauses.add(current.toString());
+                current.setLength(0);
+                continue;
+            }
+            current.append(c);
+        }
+        clauses.add(current.toString());
+        return clauses;
+    }
+
+    private static String tableName(Matcher matcher) {
+        // `schema`.`table` or just `table`
+        return matcher.group(2) != null ? matcher.group(2) : matcher.group(1);
+    }
+}
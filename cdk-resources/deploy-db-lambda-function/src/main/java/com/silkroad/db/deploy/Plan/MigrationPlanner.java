@@ -0,0 +1,239 @@
+package com.silkroad.db.deploy.Plan;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.silkroad.db.deploy.Exceptions.AppException;
+import com.silkroad.db.deploy.Sql.*;
+import com.silkroad.db.deploy.Types.*;
+import com.silkroad.db.deploy.Utils.ChangelogIndex;
+import com.silkroad.db.deploy.Utils.ILogger;
+
+import liquibase.change.Change;
+import liquibase.change.core.RawSQLChange;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * Works out which changesets a migration would run and what they would cost,
+ * without executing or writing anything.
+ *
+ * Pending changesets are found by comparing the bundled changelog with the
+ * {@code DATABASECHANGELOG} rows. Every statement is classified with the
+ * {@link DdlClassifier} and its duration estimated from the size of its table
+ * in {@code information_schema.TABLES}. The throughput figures below are
+ * deliberately conservative averages; the estimates are meant to tell a
+ * second from an hour, not to be exact.
+ */
+public class MigrationPlanner {
+
+    private static final long STATEMENT_OVERHEAD_MILLIS = 50;
+    private static final long INPLACE_BYTES_PER_SECOND = 40L * 1024 * 1024;
+    private static final long COPY_BYTES_PER_SECOND = 20L * 1024 * 1024;
+    private static final long ONLINE_COPY_BYTES_PER_SECOND = 10L * 1024 * 1024;
+    private static final long DML_ROWS_PER_SECOND = 20_000;
+
+    // MySQL error codes for "Unknown database" and "Table doesn't exist"
+    private static final int ER_BAD_DB_ERROR = 1049;
+    private static final int ER_NO_SUCH_TABLE = 1146;
+
+    private final Connection connection;
+    private final String databaseName;
+    private final ILogger logger;
+
+    public MigrationPlanner(Connection connection, String databaseName, ILogger logger) {
+        this.connection = connection;
+        this.databaseName = databaseName;
+        this.logger = logger;
+    }
+
+    public MigrationPlan plan(String changeLogFile, String onlineLabel)
+            throws SQLException, LiquibaseException, IOException, AppException {
+        ResourceAccessor resourceAccessor = new ClassLoaderResourceAccessor();
+        DatabaseChangeLog changeLog = ChangelogIndex.loadChangeLog(changeLogFile, resourceAccessor);
+
+        Map<String, String> ranChecksums = this.readRanChangeSets();
+        Map<String, long[]> tableSizes = this.readTableSizes();
+
+        List<PlannedChangeSet> changeSets = new ArrayList<PlannedChangeSet>();
+        for (ChangeSet changeSet : changeLog.getChangeSets()) {
+            String key = changeSetKey(changeSet.getId(), changeSet.getAuthor(), changeSet.getFilePath());
+            String ranChecksum = ranChecksums.get(key);
+            boolean pending = ranChecksum == null
+                    || changeSet.isAlwaysRun()
+                    || (changeSet.isRunOnChange() && !changeSet.generateCheckSum().toString().equals(ranChecksum));
+            if (!pending) {
+                continue;
+            }
+
+            boolean online = changeSet.getLabels() != null
+                    && changeSet.getLabels().getLabels().contains(onlineLabel);
+            PlannedChangeSet plannedChangeSet = new PlannedChangeSet(changeSet.getId(), changeSet.getAuthor(),
+                    changeSet.getFilePath(), online);
+
+            for (Change change : changeSet.getChanges()) {
+                if (!(change instanceof RawSQLChange)) {
+                    plannedChangeSet.getStatements().add(
+                            new PlannedStatement(change.getDescription(), "OTHER", null, null, false));
+                    continue;
+                }
+
+                SqlScriptTokenizer tokenizer = new SqlScriptTokenizer(
+                        new StringReader(((RawSQLChange) change).getSql()));
+                SqlStatement sql;
+                while ((sql = tokenizer.next()) != null) {
+                    PlannedStatement statement = DdlClassifier.classify(sql);
+                    this.estimate(statement, tableSizes, online);
+                    plannedChangeSet.getStatements().add(statement);
+                }
+            }
+            changeSets.add(plannedChangeSet);
+        }
+
+        MigrationPlan plan = new MigrationPlan(this.databaseName, changeSets);
+        this.log(plan);
+        return plan;
+    }
+
+    private void estimate(PlannedStatement statement, Map<String, long[]> tableSizes, boolean online) {
+        long[] size = statement.getTable() != null
+                ? tableSizes.get(statement.getTable().toLowerCase(Locale.ROOT))
+                : null;
+        long rows = size != null ? size[0] : 0;
+        long bytes = size != null ? size[1] : 0;
+        statement.setTableRows(rows);
+        statement.setTableBytes(bytes);
+
+        long millis = STATEMENT_OVERHEAD_MILLIS;
+        if (statement.isTouchesRows()) {
+            if ("DML".equals(statement.getKind())) {
+                millis += rows * 1000 / DML_ROWS_PER_SECOND;
+            } else if (online && statement.getAlgorithm() != DdlAlgorithm.INSTANT) {
+                // Shadow table copy, see OnlineSchemaChanger
+                millis += bytes * 1000 / ONLINE_COPY_BYTES_PER_SECOND;
+            } else if (statement.getAlgorithm() == DdlAlgorithm.COPY) {
+                millis += bytes * 1000 / COPY_BYTES_PER_SECOND;
+                statement.setLocksTable(true);
+            } else {
+                millis += bytes * 1000 / INPLACE_BYTES_PER_SECOND;
+            }
+        }
+        statement.setEstimatedMillis(millis);
+    }
+
+    private Map<String, String> readRanChangeSets() throws SQLException {
+        Map<String, String> checksums = new HashMap<String, String>();
+        String sql = "SELECT ID, AUTHOR, FILENAME, MD5SUM FROM " + quoteIdentifier(this.databaseName)
+                + ".DATABASECHANGELOG";
+        try (Statement statement = this.connection.createStatement();
+                ResultSet resultSet = statement.executeQuery(sql)) {
+            while (resultSet.next()) {
+                checksums.put(changeSetKey(resultSet.getString(1), resultSet.getString(2), resultSet.getString(3)),
+                        resultSet.getString(4));
+            }
+        } catch (SQLException e) {
+            if (e.getErrorCode() != ER_NO_SUCH_TABLE && e.getErrorCode() != ER_BAD_DB_ERROR) {
+                throw e;
+            }
+            this.logger.debug("No changesets were run on this database yet");
+        }
+        return checksums;
+    }
+
+    /**
+     * Reads row counts and data + index sizes of every table of the database
+     * in a single query. The row counts are InnoDB estimates, which is all
+     * the planner needs.
+     */
+    private Map<String, long[]> readTableSizes() throws SQLException {
+        Map<String, long[]> sizes = new HashMap<String, long[]>();
+        String sql = "SELECT TABLE_NAME, TABLE_ROWS, DATA_LENGTH + INDEX_LENGTH FROM information_schema.TABLES "
+                + "WHERE TABLE_SCHEMA = ? AND TABLE_TYPE = 'BASE TABLE'";
+        try (PreparedStatement statement = this.connection.prepareStatement(sql)) {
+            statement.setString(1, this.databaseName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    sizes.put(resultSet.getString(1).toLowerCase(Locale.ROOT),
+                            new long[] { resultSet.getLong(2), resultSet.getLong(3) });
+                }
+            }
+        }
+        return sizes;
+    }
+
+    private void log(MigrationPlan plan) {
+        if (plan.getChangeSets().isEmpty()) {
+            this.logger.info(String.format("Migration plan for '%s': no pending changesets", plan.getDatabaseName()));
+            return;
+        }
+
+        for (PlannedChangeSet changeSet : plan.getChangeSets()) {
+            Set<String> lockedTables = new HashSet<String>();
+            for (PlannedStatement statement : changeSet.getStatements()) {
+                if (statement.isLocksTable()) {
+                    lockedTables.add(statement.getTable());
+                }
+            }
+
+            this.logger.info(String.format("Pending changeset '%s::%s' (%s)%s: %s, ~%s%s",
+                    changeSet.getId(),
+                    changeSet.getAuthor(),
+                    changeSet.getFilePath(),
+                    changeSet.isOnline() ? " [online]" : "",
+                    changeSet.getAlgorithm() != null ? changeSet.getAlgorithm() : "no DDL",
+                    formatDuration(changeSet.getEstimatedMillis()),
+                    lockedTables.isEmpty() ? "" : ", blocks writes to " + String.join(", ", lockedTables)));
+
+            for (PlannedStatement statement : changeSet.getStatements()) {
+                this.logger.debug(() -> String.format("  %s %s on %s (%d rows, %d bytes): ~%s - %s",
+                        statement.getKind(),
+                        statement.getAlgorithm() != null ? statement.getAlgorithm() : "",
+                        statement.getTable() != null ? statement.getTable() : "-",
+                        statement.getTableRows(),
+                        statement.getTableBytes(),
+                        formatDuration(statement.getEstimatedMillis()),
+                        statement.getSummary()));
+            }
+        }
+
+        this.logger.info(String.format(
+                "Migration plan for '%s': %d pending changesets, ~%s estimated, %d blocking writes",
+                plan.getDatabaseName(), plan.getChangeSets().size(), formatDuration(plan.getEstimatedMillis()),
+                plan.getLockingChangeSetCount()));
+    }
+
+    private static String formatDuration(long millis) {
+        if (millis < 1000) {
+            return millis + " ms";
+        } else if (millis < 60_000) {
+            return String.format("%.1f s", millis / 1000.0);
+        } else {
+            return String.format("%.1f min", millis / 60_000.0);
+        }
+    }
+
+    private static String changeSetKey(String id, String author, String filePath) {
+        // Liquibase may store the path with or without the classpath prefix
+        String path = filePath == null ? "" : filePath.replaceFirst("^classpath:", "").replaceFirst("^/+", "");
+        return id + "::" + author + "::" + path;
+    }
+
+    private static String quoteIdentifier(String identifier) {
+        return "`" + identifier.replace("`", "``") + "`";
+    }
+}
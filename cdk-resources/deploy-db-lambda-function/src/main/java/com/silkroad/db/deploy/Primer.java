@@ -0,0 +1,134 @@
+package com.silkroad.db.deploy;
+
+import java.sql.DriverManager;
+
+import org.crac.Context;
+import org.crac.Core;
+import org.crac.Resource;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.silkroad.db.deploy.Sql.SqlTemplate;
+import com.silkroad.db.deploy.Types.*;
+import com.silkroad.db.deploy.Utils.*;
+
+import liquibase.database.DatabaseFactory;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.secretsmanager.SecretsManagerAsyncClient;
+
+/**
+ * Loads and initializes the expensive parts of the function (Gson, the AWS SDK
+ * client builder, the MySQL driver, Liquibase's service locator / changelog
+ * parsers and the compiled SQL templates) outside of {@code handleRequest}.
+ *
+ * Priming runs from the {@link LambdaHandler} static initializer and again
+ * from the CRaC {@code beforeCheckpoint} hook so a snapshot (e.g. Lambda
+ * SnapStart) captures the warmed state. It never opens network connections,
+ * so nothing stale is carried across a restore.
+ */
+public class Primer implements Resource {
+
+    private static final String MYSQL_DRIVER_CLASS = "software.aws.rds.jdbc.mysql.Driver";
+
+    // Priming runs before any invocation, so there is no request logger yet
+    private static final ILogger LOGGER = new ConsoleLogger(LogLevel.INFO);
+
+    // CRaC only keeps weak references to registered resources
+    private static final Primer INSTANCE = new Primer();
+
+    private static boolean primed = false;
+    private static boolean registered = false;
+
+    /**
+     * Entry point used by the {@code cds} build profile to record the classes
+     * loaded while priming.
+     */
+    public static void main(String[] args) {
+        prime();
+    }
+
+    public static synchronized void register() {
+        if (!registered) {
+            Core.getGlobalContext().register(INSTANCE);
+            registered = true;
+        }
+    }
+
+    public static synchronized void prime() {
+        if (primed) {
+            return;
+        }
+
+        long startTime = System.nanoTime();
+        primeStep("gson", Primer::primeGson);
+        primeStep("jdbc-driver", Primer::primeJdbcDriver);
+        primeStep("liquibase", Primer::primeLiquibase);
+        primeStep("secrets-manager", Primer::primeSecretsManager);
+        primeStep("changelog-fingerprint", ChangelogFingerprint::load);
+        primeStep("sql-templates", () -> SqlTemplate.forResource(Migrator.INIT_TEMPLATE_FILE));
+        primed = true;
+
+        Runtime runtime = Runtime.getRuntime();
+        LOGGER.log(LogLevel.INFO, "Priming completed",
+                "durationMillis", (System.nanoTime() - startTime) / 1_000_000,
+                "heapUsedMB", (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024));
+    }
+
+    @Override
+    public void beforeCheckpoint(Context<? extends Resource> context) throws Exception {
+        prime();
+    }
+
+    @Override
+    public void afterRestore(Context<? extends Resource> context) throws Exception {
+        // Nothing to restore: priming never holds connections, credentials or secrets
+    }
+
+    private interface PrimingStep {
+        void run() throws Exception;
+    }
+
+    private static void primeStep(String name, PrimingStep step) {
+        try {
+            step.run();
+        } catch (Throwable e) {
+            // Priming is an optimization only; the handler still works without it
+            LOGGER.log(LogLevel.INFO, "Priming step failed", "step", name, "error", e);
+        }
+    }
+
+    private static void primeGson() {
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        gson.fromJson(
+                "{\"host\":\"localhost\",\"port\":3306,\"username\":\"prime\",\"password\":\"prime\"}",
+                RdsAdminSecret.class);
+        gson.fromJson(
+                "{\"databaseName\":\"prime\",\"username\":\"prime\",\"password\":\"prime\"}",
+                RdsAppSecret.class);
+        gson.toJson(new RdsAppSecret());
+    }
+
+    private static void primeJdbcDriver() throws ClassNotFoundException {
+        Class.forName(MYSQL_DRIVER_CLASS);
+        DriverManager.getDrivers();
+    }
+
+    private static void primeLiquibase() throws Exception {
+        DatabaseFactory.getInstance().getImplementedDatabases();
+
+        ResourceAccessor resourceAccessor = new ClassLoaderResourceAccessor();
+        ChangelogIndex.loadChangeLog(Migrator.CHANGELOG_FILE, resourceAccessor);
+    }
+
+    private static void primeSecretsManager() {
+        String region = System.getenv("AWS_REGION");
+        SecretsManagerAsyncClient client = SecretsManagerAsyncClient.builder()
+                .region(Region.of(region != null ? region : "us-east-1"))
+                .credentialsProvider(DefaultCredentialsProvider.create())
+                .build();
+        client.close();
+    }
+}
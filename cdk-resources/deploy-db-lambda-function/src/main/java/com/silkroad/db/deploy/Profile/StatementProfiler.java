@@ -0,0 +1,464 @@
+package com.silkroad.db.deploy.Profile;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.gson.GsonBuilder;
+import com.silkroad.db.deploy.Types.*;
+import com.silkroad.db.deploy.Utils.*;
+
+/**
+ * Opt-in profiler of the statements sent over a connection.
+ *
+ * {@link #wrap(Connection, Connection)} returns a connection that records
+ * every statement it executes, including those of Liquibase: its text with
+ * passwords redacted, how long the call blocked, the rows it affected and,
+ * from {@code performance_schema}, how long it waited for locks and how many
+ * rows it examined. Statements slower than {@code slowThresholdMillis} are
+ * logged as they complete and, when they can be, explained. The slowest
+ * {@code topCount} statements make up the {@link #getReport() report}.
+ *
+ * {@code performance_schema} is read and statements are explained on a
+ * separate monitor connection, so the profiled session's
+ * {@code ROW_COUNT()}, {@code FOUND_ROWS()} and warnings stay those of its
+ * own statements. This costs one extra query per statement; when the server
+ * or the user cannot read {@code performance_schema}, only the client side
+ * timings are recorded. Parameterized prepared statements are not explained,
+ * their parameter values are not known here, and neither are statements on
+ * temporary tables, which the monitor connection cannot see.
+ */
+public class StatementProfiler {
+
+    public static final long DEFAULT_SLOW_THRESHOLD_MILLIS = 1_000;
+    public static final int DEFAULT_TOP_COUNT = 20;
+
+    private static final int MAX_SQL_LENGTH = 1_000;
+
+    private static final String REDACTED = "'***'";
+
+    private static final String QUOTED = "('(?:[^'\\\\]|\\\\.|'')*'|\"(?:[^\"\\\\]|\\\\.|\"\")*\")";
+
+    // CREATE/ALTER USER ... IDENTIFIED [WITH plugin] BY|AS '...', SET PASSWORD ... = '...', PASSWORD('...')
+    private static final Pattern[] SECRET_PATTERNS = {
+            Pattern.compile("(IDENTIFIED\\s+(?:WITH\\s+\\S+\\s+)?(?:BY|AS)\\s+)" + QUOTED,
+                    Pattern.CASE_INSENSITIVE),
+            Pattern.compile("(PASSWORD\\s*(?:\\(\\s*|=\\s*|FOR\\s+\\S+\\s*=\\s*))" + QUOTED,
+                    Pattern.CASE_INSENSITIVE)
+    };
+
+    private static final Pattern EXPLAINABLE = Pattern.compile("^\\s*(SELECT|INSERT|UPDATE|DELETE|REPLACE|WITH)\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    // The profiled connection is idle while this runs, so its latest event is the profiled statement
+    private static final String PERFORMANCE_SCHEMA_SQL = "SELECT h.LOCK_TIME, h.ROWS_EXAMINED "
+            + "FROM performance_schema.events_statements_history h "
+            + "JOIN performance_schema.threads t ON t.THREAD_ID = h.THREAD_ID "
+            + "WHERE t.PROCESSLIST_ID = ? ORDER BY h.EVENT_ID DESC LIMIT 1";
+
+    private final ILogger logger;
+    private long slowThresholdMillis = DEFAULT_SLOW_THRESHOLD_MILLIS;
+    private int topCount = DEFAULT_TOP_COUNT;
+    private final Set<String> secrets = new LinkedHashSet<String>();
+
+    private final PriorityQueue<StatementProfile> slowest = new PriorityQueue<StatementProfile>(
+            Comparator.comparingLong(StatementProfile::getDurationMillis));
+    private long statementCount;
+    private long totalMillis;
+    private long totalLockWaitMicros;
+    private long slowStatementCount;
+    private volatile boolean performanceSchemaAvailable = true;
+
+    public StatementProfiler(ILogger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Statements taking at least this long are logged and explained.
+     * Defaults to {@link #DEFAULT_SLOW_THRESHOLD_MILLIS}.
+     */
+    public void setSlowThresholdMillis(long slowThresholdMillis) {
+        this.slowThresholdMillis = Math.max(0, slowThresholdMillis);
+    }
+
+    /**
+     * Number of statements in the report. Defaults to
+     * {@link #DEFAULT_TOP_COUNT}.
+     */
+    public void setTopCount(int topCount) {
+        this.topCount = Math.max(1, topCount);
+    }
+
+    /**
+     * Redacts every occurrence of {@code secret}, e.g. a password rendered
+     * into a script, from the recorded statements.
+     */
+    public synchronized void addSecret(String secret) {
+        if (secret != null && !secret.isEmpty()) {
+            this.secrets.add(secret);
+        }
+    }
+
+    /**
+     * Returns {@code connection} with every statement it creates profiled.
+     * The wrapper does not own the connection: closing it closes
+     * {@code connection}, as usual.
+     *
+     * @param monitor Connection to the same server that reads
+     *                {@code performance_schema} and runs {@code EXPLAIN}, may
+     *                be shared by several wrapped connections; without one
+     *                only client side timings are recorded
+     */
+    public Connection wrap(Connection connection, Connection monitor) throws SQLException {
+        long connectionId = 0;
+        if (monitor != null) {
+            // Asked once, before the first profiled statement
+            try (Statement statement = connection.createStatement();
+                    ResultSet resultSet = statement.executeQuery("SELECT CONNECTION_ID()")) {
+                resultSet.next();
+                connectionId = resultSet.getLong(1);
+            }
+        }
+        return (Connection) Proxy.newProxyInstance(StatementProfiler.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new ConnectionHandler(connection, monitor, connectionId));
+    }
+
+    public synchronized StatementProfileReport getReport() {
+        StatementProfileReport report = new StatementProfileReport();
+        report.setStatementCount(this.statementCount);
+        report.setTotalMillis(this.totalMillis);
+        report.setTotalLockWaitMicros(this.totalLockWaitMicros);
+        report.setSlowStatementCount(this.slowStatementCount);
+        report.setSlowThresholdMillis(this.slowThresholdMillis);
+
+        List<StatementProfile> statements = new ArrayList<StatementProfile>(this.slowest);
+        statements.sort(Comparator.comparingLong(StatementProfile::getDurationMillis).reversed());
+        report.setSlowest(statements);
+        return report;
+    }
+
+    /**
+     * Logs the report, one line per statement.
+     */
+    public void logReport() {
+        StatementProfileReport report = this.getReport();
+        this.logger.log(LogLevel.INFO, "Statement profile",
+                "statements", report.getStatementCount(),
+                "totalMillis", report.getTotalMillis(),
+                "totalLockWaitMicros", report.getTotalLockWaitMicros(),
+                "slowStatements", report.getSlowStatementCount(),
+                "slowThresholdMillis", report.getSlowThresholdMillis());
+
+        int rank = 1;
+        for (StatementProfile profile : report.getSlowest()) {
+            this.logger.log(LogLevel.INFO, "Profiled statement",
+                    "rank", rank++,
+                    "durationMillis", profile.getDurationMillis(),
+                    "lockWaitMicros", profile.getLockWaitMicros() != null ? profile.getLockWaitMicros() : "n/a",
+                    "rowsAffected", profile.getRowsAffected() != null ? profile.getRowsAffected() : "n/a",
+                    "rowsExamined", profile.getRowsExamined() != null ? profile.getRowsExamined() : "n/a",
+                    "statements", profile.getStatementCount(),
+                    "failed", profile.isFailed(),
+                    "sql", profile.getSql(),
+                    "explain", String.join(" / ", profile.getExplain()));
+        }
+    }
+
+    /**
+     * Writes the report as JSON.
+     */
+    public void writeReport(Path path) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create().toJson(this.getReport(), writer);
+        }
+    }
+
+    private void record(Connection connection, Connection monitor, long connectionId, String sql, int count,
+            long durationMillis, Long rowsAffected, boolean failed, boolean explainable, boolean completed) {
+        StatementProfile profile = new StatementProfile();
+        profile.setSql(this.summarize(sql));
+        profile.setStatementCount(count);
+        profile.setDurationMillis(durationMillis);
+        profile.setRowsAffected(rowsAffected);
+        profile.setFailed(failed);
+
+        // Until a streaming result set is read, the statement is not in the history yet
+        if (monitor != null && completed) {
+            this.readPerformanceSchema(monitor, connectionId, profile);
+        }
+
+        boolean isSlow = durationMillis >= this.slowThresholdMillis;
+        if (isSlow && !failed && monitor != null && explainable && EXPLAINABLE.matcher(sql).find()) {
+            profile.setExplain(explain(connection, monitor, sql));
+        }
+        if (isSlow) {
+            this.logger.log(LogLevel.INFO, "Slow statement",
+                    "durationMillis", durationMillis,
+                    "lockWaitMicros", profile.getLockWaitMicros() != null ? profile.getLockWaitMicros() : "n/a",
+                    "sql", profile.getSql());
+        }
+
+        synchronized (this) {
+            this.statementCount += count;
+            this.totalMillis += durationMillis;
+            if (profile.getLockWaitMicros() != null) {
+                this.totalLockWaitMicros += profile.getLockWaitMicros();
+            }
+            if (isSlow) {
+                this.slowStatementCount++;
+            }
+            this.slowest.add(profile);
+            if (this.slowest.size() > this.topCount) {
+                this.slowest.poll();
+            }
+        }
+    }
+
+    private void readPerformanceSchema(Connection monitor, long connectionId, StatementProfile profile) {
+        if (!this.performanceSchemaAvailable) {
+            return;
+        }
+        // The monitor connection may be shared by statements on several threads
+        synchronized (monitor) {
+            try (PreparedStatement statement = monitor.prepareStatement(PERFORMANCE_SCHEMA_SQL)) {
+                statement.setLong(1, connectionId);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (resultSet.next()) {
+                        // Picoseconds
+                        profile.setLockWaitMicros(resultSet.getLong(1) / 1_000_000);
+                        profile.setRowsExamined(resultSet.getLong(2));
+                    }
+                }
+            } catch (SQLException e) {
+                this.performanceSchemaAvailable = false;
+                this.logger.log(LogLevel.INFO, "performance_schema is not readable, lock waits are not recorded",
+                        "error", e.getMessage());
+            }
+        }
+    }
+
+    private static List<String> explain(Connection connection, Connection monitor, String sql) {
+        List<String> lines = new ArrayList<String>();
+        synchronized (monitor) {
+            try {
+                // Unqualified table names resolve against the profiled connection's database
+                String catalog = connection.getCatalog();
+                if (catalog != null && !catalog.equals(monitor.getCatalog())) {
+                    monitor.setCatalog(catalog);
+                }
+                try (Statement statement = monitor.createStatement();
+                        ResultSet resultSet = statement.executeQuery("EXPLAIN " + sql)) {
+                    ResultSetMetaData metaData = resultSet.getMetaData();
+                    while (resultSet.next()) {
+                        StringBuilder line = new StringBuilder();
+                        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                            String value = resultSet.getString(i);
+                            if (value != null) {
+                                if (line.length() > 0) {
+                                    line.append(", ");
+                                }
+                                line.append(metaData.getColumnLabel(i)).append('=').append(value);
+                            }
+                        }
+                        lines.add(line.toString());
+                    }
+                }
+            } catch (SQLException e) {
+                lines.add("EXPLAIN failed: " + e.getMessage());
+            }
+        }
+        return lines;
+    }
+
+    private String summarize(String sql) {
+        String text = sql;
+        for (Pattern pattern : SECRET_PATTERNS) {
+            Matcher matcher = pattern.matcher(text);
+            text = matcher.replaceAll(match -> Matcher.quoteReplacement(match.group(1) + REDACTED));
+        }
+        synchronized (this) {
+            for (String secret : this.secrets) {
+                text = text.replace(secret, "***");
+            }
+        }
+        text = text.replaceAll("\\s+", " ").trim();
+        return text.length() > MAX_SQL_LENGTH ? text.substring(0, MAX_SQL_LENGTH) + "..." : text;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private class ConnectionHandler implements InvocationHandler {
+
+        private final Connection connection;
+        private final Connection monitor;
+        private final long connectionId;
+
+        private ConnectionHandler(Connection connection, Connection monitor, long connectionId) {
+            this.connection = connection;
+            this.monitor = monitor;
+            this.connectionId = connectionId;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("equals") && args != null && args.length == 1) {
+                return proxy == args[0];
+            }
+            if (method.getName().equals("hashCode") && args == null) {
+                return System.identityHashCode(proxy);
+            }
+
+            Object result = StatementProfiler.invoke(this.connection, method, args);
+            switch (method.getName()) {
+                case "createStatement":
+                    return this.wrapStatement(Statement.class, (Statement) result, null, (Connection) proxy);
+                case "prepareStatement":
+                    return this.wrapStatement(PreparedStatement.class, (Statement) result, (String) args[0],
+                            (Connection) proxy);
+                case "prepareCall":
+                    return this.wrapStatement(CallableStatement.class, (Statement) result, (String) args[0],
+                            (Connection) proxy);
+                default:
+                    return result;
+            }
+        }
+
+        private Object wrapStatement(Class<? extends Statement> type, Statement statement, String preparedSql,
+                Connection connectionProxy) {
+            return Proxy.newProxyInstance(StatementProfiler.class.getClassLoader(), new Class<?>[] { type },
+                    new StatementHandler(statement, preparedSql, connectionProxy, this));
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler {
+
+        private final Statement statement;
+        private final String preparedSql;
+        private final Connection connectionProxy;
+        private final ConnectionHandler connection;
+        private final List<String> batch = new ArrayList<String>();
+
+        private StatementHandler(Statement statement, String preparedSql, Connection connectionProxy,
+                ConnectionHandler connection) {
+            this.statement = statement;
+            this.preparedSql = preparedSql;
+            this.connectionProxy = connectionProxy;
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getConnection":
+                    return this.connectionProxy;
+                case "addBatch": {
+                    Object result = StatementProfiler.invoke(this.statement, method, args);
+                    this.batch.add(args != null && args.length == 1 ? (String) args[0] : this.preparedSql);
+                    return result;
+                }
+                case "clearBatch":
+                    this.batch.clear();
+                    return StatementProfiler.invoke(this.statement, method, args);
+                case "execute":
+                case "executeQuery":
+                case "executeUpdate":
+                case "executeLargeUpdate": {
+                    String sql = args != null && args.length > 0 && args[0] instanceof String
+                            ? (String) args[0]
+                            : this.preparedSql;
+                    return this.profile(method, args, sql, 1);
+                }
+                case "executeBatch":
+                case "executeLargeBatch": {
+                    if (this.batch.isEmpty()) {
+                        return StatementProfiler.invoke(this.statement, method, args);
+                    }
+                    // Executing a batch empties it, whatever the outcome
+                    List<String> sent = new ArrayList<String>(this.batch);
+                    this.batch.clear();
+                    return this.profile(method, args, sent.get(0), sent.size());
+                }
+                default:
+                    return StatementProfiler.invoke(this.statement, method, args);
+            }
+        }
+
+        private Object profile(Method method, Object[] args, String sql, int count) throws Throwable {
+            long startTime = System.nanoTime();
+            Object result;
+            try {
+                result = StatementProfiler.invoke(this.statement, method, args);
+            } catch (Throwable e) {
+                this.record(sql, count, (System.nanoTime() - startTime) / 1_000_000, null, true, false, true);
+                throw e;
+            }
+            long durationMillis = (System.nanoTime() - startTime) / 1_000_000;
+
+            Long rowsAffected = this.getRowsAffected(result);
+            boolean isParameterized = this.preparedSql != null && this.preparedSql.indexOf('?') >= 0;
+            // A streaming result set is still being sent
+            boolean completed = this.statement.getFetchSize() != Integer.MIN_VALUE;
+            this.record(sql, count, durationMillis, rowsAffected, false, count == 1 && !isParameterized, completed);
+            return result;
+        }
+
+        private void record(String sql, int count, long durationMillis, Long rowsAffected, boolean failed,
+                boolean explainable, boolean completed) {
+            StatementProfiler.this.record(this.connection.connection, this.connection.monitor,
+                    this.connection.connectionId, sql, count, durationMillis, rowsAffected, failed, explainable,
+                    completed);
+        }
+
+        private Long getRowsAffected(Object result) throws SQLException {
+            if (result instanceof int[]) {
+                long rows = 0;
+                for (int count : (int[]) result) {
+                    rows += Math.max(count, 0);
+                }
+                return rows;
+            }
+            if (result instanceof long[]) {
+                long rows = 0;
+                for (long count : (long[]) result) {
+                    rows += Math.max(count, 0);
+                }
+                return rows;
+            }
+            if (result instanceof Number) {
+                return ((Number) result).longValue();
+            }
+            if (Boolean.FALSE.equals(result)) {
+                int updateCount = this.statement.getUpdateCount();
+                return updateCount >= 0 ? (long) updateCount : null;
+            }
+            return null;
+        }
+    }
+}
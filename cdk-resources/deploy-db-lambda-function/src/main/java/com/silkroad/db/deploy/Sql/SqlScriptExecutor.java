@@ -0,0 +1,185 @@
+package com.silkroad.db.deploy.Sql;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.silkroad.db.deploy.Exceptions.AppException;
+import com.silkroad.db.deploy.Utils.ILogger;
+
+/**
+ * Executes a SQL script statement by statement as it is read. Consecutive DML
+ * statements are sent through {@link Statement#addBatch(String)}; with
+ * {@code rewriteBatchedStatements=true} on the connection the driver packs a
+ * whole batch into a single round trip. Any other statement flushes the pending
+ * batch first, so statement order is preserved.
+ *
+ * Failures report the statement position and line. Timings are logged per
+ * statement (or batch) at debug level and the slowest ones are returned in the
+ * {@link SqlScriptResult}.
+ */
+public class SqlScriptExecutor {
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private static final int SLOWEST_STATEMENT_COUNT = 10;
+
+    private final Connection connection;
+    private final ILogger logger;
+    private final int batchSize;
+    private boolean batchAllStatements = false;
+
+    private final List<SqlStatement> batch = new ArrayList<SqlStatement>();
+    private final PriorityQueue<SqlStatementTiming> slowest = new PriorityQueue<SqlStatementTiming>(
+            Comparator.comparingLong(SqlStatementTiming::getDurationMillis));
+    private String scriptName;
+    private int statementCount;
+    private int batchCount;
+    private long rowsAffected;
+
+    public SqlScriptExecutor(Connection connection, ILogger logger) {
+        this(connection, logger, DEFAULT_BATCH_SIZE);
+    }
+
+    public SqlScriptExecutor(Connection connection, ILogger logger, int batchSize) {
+        this.connection = connection;
+        this.logger = logger;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Batches every statement, DDL included, instead of only DML. Meant for
+     * scripts known to apply cleanly, such as the changelog baseline on an
+     * empty database: a failure is only located near the failing statement.
+     */
+    public void setBatchAllStatements(boolean batchAllStatements) {
+        this.batchAllStatements = batchAllStatements;
+    }
+
+    public SqlScriptResult execute(Reader reader, String scriptName) throws SQLException, IOException, AppException {
+        this.scriptName = scriptName;
+        this.batch.clear();
+        this.slowest.clear();
+        this.statementCount = 0;
+        this.batchCount = 0;
+        this.rowsAffected = 0;
+
+        long startTime = System.nanoTime();
+        SqlScriptTokenizer tokenizer = new SqlScriptTokenizer(reader);
+
+        try (Statement statement = this.connection.createStatement()) {
+            SqlStatement sql;
+            while ((sql = tokenizer.next()) != null) {
+                this.statementCount++;
+                if ((this.batchAllStatements || sql.isBatchable()) && this.batchSize > 1) {
+                    statement.addBatch(sql.getText());
+                    this.batch.add(sql);
+                    if (this.batch.size() >= this.batchSize) {
+                        this.flush(statement);
+                    }
+                } else {
+                    this.flush(statement);
+                    this.executeSingle(statement, sql);
+                }
+            }
+            this.flush(statement);
+        }
+
+        long durationMillis = (System.nanoTime() - startTime) / 1_000_000;
+        List<SqlStatementTiming> slowestStatements = new ArrayList<SqlStatementTiming>(this.slowest);
+        slowestStatements.sort(Comparator.comparingLong(SqlStatementTiming::getDurationMillis).reversed());
+
+        this.logger.info(String.format(
+                "Executed '%s': %d statements (%d batches), %d rows affected in %d ms",
+                scriptName, this.statementCount, this.batchCount, this.rowsAffected, durationMillis));
+
+        return new SqlScriptResult(scriptName, this.statementCount, this.batchCount, this.rowsAffected,
+                durationMillis, slowestStatements);
+    }
+
+    private void executeSingle(Statement statement, SqlStatement sql) throws AppException {
+        long startTime = System.nanoTime();
+        long rows;
+        try {
+            boolean hasResultSet = statement.execute(sql.getText());
+            rows = hasResultSet ? 0 : Math.max(statement.getUpdateCount(), 0);
+        } catch (SQLException e) {
+            throw new AppException(String.format(
+                    "Statement %d (line %d) of '%s' failed: %s",
+                    sql.getIndex(), sql.getLineNumber(), this.scriptName, sql.getSummary()), e);
+        }
+
+        this.record(new SqlStatementTiming(
+                sql.getSummary(),
+                sql.getLineNumber(),
+                1,
+                (System.nanoTime() - startTime) / 1_000_000,
+                rows));
+    }
+
+    private void flush(Statement statement) throws AppException, SQLException {
+        if (this.batch.isEmpty()) {
+            return;
+        }
+
+        SqlStatement first = this.batch.get(0);
+        SqlStatement last = this.batch.get(this.batch.size() - 1);
+        long startTime = System.nanoTime();
+        long rows = 0;
+        try {
+            for (int count : statement.executeBatch()) {
+                if (count > 0) {
+                    rows += count;
+                }
+            }
+        } catch (BatchUpdateException e) {
+            int failedIndex = getFailedIndex(e.getUpdateCounts());
+            SqlStatement failed = this.batch.get(Math.min(failedIndex, this.batch.size() - 1));
+            throw new AppException(String.format(
+                    "Batch of statements %d-%d (lines %d-%d) of '%s' failed near statement %d (line %d): %s",
+                    first.getIndex(), last.getIndex(), first.getLineNumber(), last.getLineNumber(),
+                    this.scriptName, failed.getIndex(), failed.getLineNumber(), failed.getSummary()), e);
+        } finally {
+            statement.clearBatch();
+        }
+
+        this.batchCount++;
+        this.record(new SqlStatementTiming(
+                String.format("batch of %d statements: %s", this.batch.size(), first.getSummary()),
+                first.getLineNumber(),
+                this.batch.size(),
+                (System.nanoTime() - startTime) / 1_000_000,
+                rows));
+        this.batch.clear();
+    }
+
+    private static int getFailedIndex(int[] updateCounts) {
+        if (updateCounts == null) {
+            return 0;
+        }
+        // Drivers either stop at the failing statement or continue and flag it
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (updateCounts[i] == Statement.EXECUTE_FAILED) {
+                return i;
+            }
+        }
+        return updateCounts.length;
+    }
+
+    private void record(SqlStatementTiming timing) {
+        this.rowsAffected += timing.getRowsAffected();
+        this.logger.debug(() -> String.format("'%s' %s", this.scriptName, timing));
+
+        this.slowest.add(timing);
+        if (this.slowest.size() > SLOWEST_STATEMENT_COUNT) {
+            this.slowest.poll();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.silkroad.db.deploy.Sql;
+
+import java.util.List;
+
+public class SqlScriptResult {
+
+    private final String scriptName;
+    private final int statementCount;
+    private final int batchCount;
+    private final long rowsAffected;
+    private final long durationMillis;
+    private final List<SqlStatementTiming> slowestStatements;
+
+    public SqlScriptResult(String scriptName, int statementCount, int batchCount, long rowsAffected,
+            long durationMillis, List<SqlStatementTiming> slowestStatements) {
+        this.scriptName = scriptName;
+        this.statementCount = statementCount;
+        this.batchCount = batchCount;
+        this.rowsAffected = rowsAffected;
+        this.durationMillis = durationMillis;
+        this.slowestStatements = slowestStatements;
+    }
+
+    public String getScriptName() {
+        return scriptName;
+    }
+
+    public int getStatementCount() {
+        return statementCount;
+    }
+
+    public int getBatchCount() {
+        return batchCount;
+    }
+
+    public long getRowsAffected() {
+        return rowsAffected;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * The slowest statements (or DML batches) of the script, slowest first.
+     */
+    public List<SqlStatementTiming> getSlowestStatements() {
+        return slowestStatements;
+    }
+}
@@ -0,0 +1,241 @@
+package com.silkroad.db.deploy.Sql;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+
+/**
+ * Splits a MySQL script into statements while reading it, so scripts of any
+ * size are processed with one statement in memory at a time.
+ *
+ * Understands {@code -- }, {@code #} and {@code /* *}{@code /} comments (MySQL
+ * {@code /*! *}{@code /} and optimizer hint comments are kept), single, double
+ * and back-quoted strings with backslash and doubled-quote escapes, and the
+ * client-side {@code DELIMITER} command.
+ */
+public class SqlScriptTokenizer {
+
+    private static final String DELIMITER_COMMAND = "DELIMITER";
+
+    // Progress of matching "DELIMITER <delimiter>" on the first line of a statement. Values
+    // from 0 up to DELIMITER_COMMAND.length() count the letters of the keyword matched so far.
+    private static final int NOT_DELIMITER_COMMAND = -1;
+    private static final int DELIMITER_SPACE = DELIMITER_COMMAND.length() + 1;
+    private static final int DELIMITER_LINE = DELIMITER_COMMAND.length() + 2;
+
+    private final PushbackReader reader;
+    private String delimiter = ";";
+    private int line = 1;
+    private int index = 0;
+
+    public SqlScriptTokenizer(Reader reader) {
+        this.reader = new PushbackReader(reader, 2);
+    }
+
+    /**
+     * Returns the next statement without its delimiter, or {@code null} at the
+     * end of the script.
+     */
+    public SqlStatement next() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        int startLine = -1;
+        int delimiterMatch = 0;
+
+        int c;
+        while ((c = this.read()) != -1) {
+            if (startLine == -1 && Character.isWhitespace(c)) {
+                continue;
+            }
+
+            if (c == '-' && this.peek() == '-' && this.isCommentDash()) {
+                this.skipLine();
+                delimiterMatch = endDelimiterMatch(builder, delimiterMatch);
+                this.appendSeparator(builder);
+                continue;
+            }
+            if (c == '#') {
+                this.skipLine();
+                delimiterMatch = endDelimiterMatch(builder, delimiterMatch);
+                this.appendSeparator(builder);
+                continue;
+            }
+            if (c == '/' && this.peek() == '*') {
+                this.read();
+                int next = this.peek();
+                if (next == '!' || next == '+') {
+                    builder.append("/*");
+                    this.copyBlockComment(builder);
+                } else {
+                    this.skipBlockComment();
+                    delimiterMatch = endDelimiterMatch(builder, delimiterMatch);
+                    this.appendSeparator(builder);
+                    continue;
+                }
+            } else if (c == '\'' || c == '"' || c == '`') {
+                builder.append((char) c);
+                this.copyQuoted(builder, (char) c);
+            } else {
+                builder.append((char) c);
+            }
+
+            if (startLine == -1) {
+                startLine = this.line;
+            }
+
+            delimiterMatch = matchDelimiterCommand(delimiterMatch, c);
+            if (delimiterMatch == DELIMITER_LINE) {
+                // Read up to the end of the line before looking for the delimiter: the new
+                // delimiter may be the current one, e.g. "DELIMITER ;"
+                if (c == '\n') {
+                    this.delimiter = builder.substring(DELIMITER_COMMAND.length()).trim();
+                    builder.setLength(0);
+                    startLine = -1;
+                    delimiterMatch = 0;
+                }
+                continue;
+            }
+
+            if (this.endsWithDelimiter(builder)) {
+                builder.setLength(builder.length() - this.delimiter.length());
+                String text = builder.toString().trim();
+                if (!text.isEmpty()) {
+                    return new SqlStatement(text, ++this.index, startLine);
+                }
+                builder.setLength(0);
+                startLine = -1;
+                delimiterMatch = 0;
+            }
+        }
+
+        if (delimiterMatch == DELIMITER_LINE) {
+            return null;
+        }
+        String text = builder.toString().trim();
+        return text.isEmpty() ? null : new SqlStatement(text, ++this.index, startLine);
+    }
+
+    private int read() throws IOException {
+        int c = this.reader.read();
+        if (c == '\n') {
+            this.line++;
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        int c = this.reader.read();
+        if (c != -1) {
+            this.reader.unread(c);
+        }
+        return c;
+    }
+
+    private boolean isCommentDash() throws IOException {
+        // MySQL only treats "--" as a comment when followed by whitespace or the end of the line
+        this.reader.read();
+        int next = this.reader.read();
+        if (next != -1) {
+            this.reader.unread(next);
+        }
+        this.reader.unread('-');
+        return next == -1 || Character.isWhitespace(next);
+    }
+
+    private void skipLine() throws IOException {
+        int c;
+        while ((c = this.read()) != -1 && c != '\n') {
+            // Skip
+        }
+    }
+
+    private void skipBlockComment() throws IOException {
+        int previous = 0;
+        int c;
+        while ((c = this.read()) != -1) {
+            if (previous == '*' && c == '/') {
+                return;
+            }
+            previous = c;
+        }
+    }
+
+    private void copyBlockComment(StringBuilder builder) throws IOException {
+        int previous = 0;
+        int c;
+        while ((c = this.read()) != -1) {
+            builder.append((char) c);
+            if (previous == '*' && c == '/') {
+                return;
+            }
+            previous = c;
+        }
+    }
+
+    private void copyQuoted(StringBuilder builder, char quote) throws IOException {
+        int c;
+        while ((c = this.read()) != -1) {
+            builder.append((char) c);
+            if (c == '\\' && quote != '`') {
+                int escaped = this.read();
+                if (escaped != -1) {
+                    builder.append((char) escaped);
+                }
+            } else if (c == quote) {
+                if (this.peek() == quote) {
+                    builder.append((char) this.read());
+                } else {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void appendSeparator(StringBuilder builder) {
+        if (builder.length() > 0 && builder.charAt(builder.length() - 1) != '\n') {
+            builder.append('\n');
+        }
+    }
+
+    private boolean endsWithDelimiter(StringBuilder builder) {
+        int start = builder.length() - this.delimiter.length();
+        if (start < 0) {
+            return false;
+        }
+        for (int i = 0; i < this.delimiter.length(); i++) {
+            if (builder.charAt(start + i) != this.delimiter.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Advances {@code match} by the character {@code c} just added to the
+     * statement. Once a character rules out a DELIMITER command, the rest of
+     * the statement is not looked at again.
+     */
+    private static int matchDelimiterCommand(int match, int c) {
+        if (match == NOT_DELIMITER_COMMAND || match == DELIMITER_LINE) {
+            return match;
+        }
+        if (match < DELIMITER_COMMAND.length()) {
+            return Character.toUpperCase(c) == DELIMITER_COMMAND.charAt(match) ? match + 1 : NOT_DELIMITER_COMMAND;
+        }
+        // DELIMITER is a client command and can only appear on its own line at the start of a statement
+        if (c == '\n') {
+            return NOT_DELIMITER_COMMAND;
+        }
+        if (Character.isWhitespace(c)) {
+            return DELIMITER_SPACE;
+        }
+        return match == DELIMITER_SPACE ? DELIMITER_LINE : NOT_DELIMITER_COMMAND;
+    }
+
+    /**
+     * A comment after the start of the statement rules out a DELIMITER
+     * command that is not complete yet.
+     */
+    private static int endDelimiterMatch(StringBuilder builder, int match) {
+        return builder.length() > 0 && match != DELIMITER_LINE ? NOT_DELIMITER_COMMAND : match;
+    }
+}
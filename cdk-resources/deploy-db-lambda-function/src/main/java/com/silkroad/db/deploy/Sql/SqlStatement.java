@@ -0,0 +1,98 @@
+package com.silkroad.db.deploy.Sql;
+
+import java.util.Locale;
+
+public class SqlStatement {
+
+    private static final int SUMMARY_LENGTH = 80;
+
+    private final String text;
+    private final int index;
+    private final int lineNumber;
+
+    public SqlStatement(String text, int index, int lineNumber) {
+        this.text = text;
+        this.index = index;
+        this.lineNumber = lineNumber;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * 1-based position of the statement in its script.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Line of the script on which the statement starts.
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Whether the statement is plain DML that can be sent as part of a JDBC
+     * batch.
+     */
+    public boolean isBatchable() {
+        String keyword = this.getKeyword();
+        return keyword.equals("INSERT")
+                || keyword.equals("UPDATE")
+                || keyword.equals("DELETE")
+                || keyword.equals("REPLACE");
+    }
+
+    public String getKeyword() {
+        int end = 0;
+        while (end < this.text.length() && Character.isLetter(this.text.charAt(end))) {
+            end++;
+        }
+        return this.text.substring(0, end).toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Single-line, truncated form of the statement safe to log: the content of
+     * string literals (passwords, seed values...) is masked.
+     */
+    public String getSummary() {
+        StringBuilder builder = new StringBuilder(SUMMARY_LENGTH + 3);
+        char quote = 0;
+        boolean lastWasSpace = false;
+        for (int i = 0; i < this.text.length() && builder.length() < SUMMARY_LENGTH; i++) {
+            char c = this.text.charAt(i);
+            if (quote != 0) {
+                if (c == '\\' && quote != '`') {
+                    i++;
+                } else if (c == quote && i + 1 < this.text.length() && this.text.charAt(i + 1) == quote) {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                    builder.append("***").append(c);
+                }
+                continue;
+            }
+
+            if (c == '\'' || c == '"') {
+                quote = c;
+                builder.append(c);
+                lastWasSpace = false;
+            } else if (Character.isWhitespace(c)) {
+                if (!lastWasSpace) {
+                    builder.append(' ');
+                }
+                lastWasSpace = true;
+            } else {
+                builder.append(c);
+                lastWasSpace = false;
+            }
+        }
+        if (builder.length() >= SUMMARY_LENGTH) {
+            builder.append("...");
+        }
+        return builder.toString();
+    }
+}
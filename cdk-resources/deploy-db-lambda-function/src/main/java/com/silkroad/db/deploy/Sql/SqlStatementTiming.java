@@ -0,0 +1,44 @@
+package com.silkroad.db.deploy.Sql;
+
+public class SqlStatementTiming {
+
+    private final String description;
+    private final int lineNumber;
+    private final int statementCount;
+    private final long durationMillis;
+    private final long rowsAffected;
+
+    public SqlStatementTiming(String description, int lineNumber, int statementCount, long durationMillis,
+            long rowsAffected) {
+        this.description = description;
+        this.lineNumber = lineNumber;
+        this.statementCount = statementCount;
+        this.durationMillis = durationMillis;
+        this.rowsAffected = rowsAffected;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    public int getStatementCount() {
+        return statementCount;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public long getRowsAffected() {
+        return rowsAffected;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("line %d: %s (%d ms, %d rows)", lineNumber, description, durationMillis, rowsAffected);
+    }
+}
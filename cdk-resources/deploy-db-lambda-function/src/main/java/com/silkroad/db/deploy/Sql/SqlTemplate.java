@@ -0,0 +1,351 @@
+package com.silkroad.db.deploy.Sql;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.silkroad.db.deploy.Exceptions.ValidationException;
+import com.silkroad.db.deploy.Utils.Sha256;
+
+/**
+ * A MySQL script with {@code {{name}}} placeholders, parsed once into
+ * literal text and placeholder segments and rendered in a single pass.
+ *
+ * How a value is escaped follows from where its placeholder sits:
+ * <ul>
+ * <li>inside back quotes (`{{name}}`) it is an identifier, back quotes are
+ * doubled</li>
+ * <li>inside single or double quotes ('{{name}}') it is a string literal,
+ * escaped like {@code mysql_real_escape_string}</li>
+ * <li>outside quotes it must say what it is: {@code {{name|identifier}}}
+ * renders a back-quoted identifier and {@code {{name|literal}}} a
+ * single-quoted string; an unqualified placeholder is rejected when the
+ * template is compiled</li>
+ * </ul>
+ * Comments are copied as they are, placeholders in them are not rendered.
+ *
+ * Templates loaded through {@link #forResource(String)} are compiled once per
+ * class loader and shared, so provisioning many tenants from one process
+ * does not re-read or re-parse them. Rendering reuses a per-thread buffer.
+ */
+public final class SqlTemplate {
+
+    private enum Escaping {
+        QUOTED_IDENTIFIER,
+        QUOTED_LITERAL,
+        IDENTIFIER,
+        LITERAL
+    }
+
+    private static final class Segment {
+        private final String text;
+        private final String name;
+        private final Escaping escaping;
+
+        private Segment(String text, String name, Escaping escaping) {
+            this.text = text;
+            this.name = name;
+            this.escaping = escaping;
+        }
+    }
+
+    private static final Map<String, SqlTemplate> CACHE = new ConcurrentHashMap<String, SqlTemplate>();
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(StringBuilder::new);
+
+    // Keep the per-thread buffer from pinning an unusually large script
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    private final String name;
+    private final Segment[] segments;
+    private final int literalLength;
+    private final String fingerprint;
+
+    private SqlTemplate(String name, Segment[] segments, int literalLength, String fingerprint) {
+        this.name = name;
+        this.segments = segments;
+        this.literalLength = literalLength;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Returns the compiled template for a classpath resource, reading and
+     * compiling it on first use.
+     */
+    public static SqlTemplate forResource(String resource) throws IOException, ValidationException {
+        SqlTemplate template = CACHE.get(resource);
+        if (template == null) {
+            template = compile(resource, readResource(resource));
+            SqlTemplate existing = CACHE.putIfAbsent(resource, template);
+            if (existing != null) {
+                template = existing;
+            }
+        }
+        return template;
+    }
+
+    public static SqlTemplate compile(String name, String text) throws ValidationException {
+        List<Segment> segments = new ArrayList<Segment>();
+        StringBuilder literal = new StringBuilder();
+        int literalLength = 0;
+        char quote = 0;
+        int line = 1;
+
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+
+            if (quote == 0) {
+                // Comments are copied as they are: quotes in them don't open a string, e.g. -- don't
+                int end = commentEnd(text, i);
+                if (end != -1) {
+                    for (int j = i; j < end; j++) {
+                        if (text.charAt(j) == '\n') {
+                            line++;
+                        }
+                    }
+                    literal.append(text, i, end);
+                    i = end;
+                    continue;
+                }
+            }
+
+            if (c == '{' && i + 1 < text.length() && text.charAt(i + 1) == '{') {
+                int end = text.indexOf("}}", i + 2);
+                if (end == -1) {
+                    throw new ValidationException(String.format(
+                            "Unterminated placeholder in SQL template '%s' at line %d", name, line));
+                }
+                String placeholder = text.substring(i + 2, end).trim();
+
+                if (literal.length() > 0) {
+                    literalLength += literal.length();
+                    segments.add(new Segment(literal.toString(), null, null));
+                    literal.setLength(0);
+                }
+                segments.add(toPlaceholder(name, line, placeholder, quote));
+                i = end + 2;
+                continue;
+            }
+
+            if (c == '\n') {
+                line++;
+            }
+            if (quote == 0) {
+                if (c == '\'' || c == '"' || c == '`') {
+                    quote = c;
+                }
+            } else if (c == '\\' && quote != '`' && i + 1 < text.length()) {
+                // Escaped character inside a string, e.g. \' or \\
+                literal.append(c);
+                c = text.charAt(++i);
+            } else if (c == quote) {
+                if (i + 1 < text.length() && text.charAt(i + 1) == quote) {
+                    // Doubled quote
+                    literal.append(c);
+                    c = text.charAt(++i);
+                } else {
+                    quote = 0;
+                }
+            }
+            literal.append(c);
+            i++;
+        }
+
+        if (quote != 0) {
+            throw new ValidationException(String.format("Unterminated %c quote in SQL template '%s'", quote, name));
+        }
+        if (literal.length() > 0) {
+            literalLength += literal.length();
+            segments.add(new Segment(literal.toString(), null, null));
+        }
+        return new SqlTemplate(name, segments.toArray(new Segment[0]), literalLength, Sha256.hex(text));
+    }
+
+    /**
+     * End of the comment starting at {@code i}, before its terminating line
+     * break, or {@code -1} when no comment starts there. Follows
+     * {@link SqlScriptTokenizer}: {@code --} must be followed by whitespace,
+     * and {@code /*!} and {@code /*+} comments are SQL, not comments.
+     */
+    private static int commentEnd(String text, int i) {
+        char c = text.charAt(i);
+        char next = i + 1 < text.length() ? text.charAt(i + 1) : 0;
+        if (c == '#' || (c == '-' && next == '-'
+                && (i + 2 == text.length() || Character.isWhitespace(text.charAt(i + 2))))) {
+            int end = text.indexOf('\n', i);
+            return end == -1 ? text.length() : end;
+        }
+        if (c == '/' && next == '*') {
+            char first = i + 2 < text.length() ? text.charAt(i + 2) : 0;
+            if (first == '!' || first == '+') {
+                return -1;
+            }
+            int end = text.indexOf("*/", i + 2);
+            return end == -1 ? text.length() : end + 2;
+        }
+        return -1;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * SHA-256 of the template text, changes whenever the template does.
+     */
+    public String getFingerprint() {
+        return this.fingerprint;
+    }
+
+    /**
+     * Renders the template with the given placeholder values.
+     *
+     * @throws ValidationException when a placeholder has no value or a value
+     *                             cannot be used as an identifier
+     */
+    public String render(Map<String, String> values) throws ValidationException {
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        try {
+            this.renderTo(values, buffer);
+            return buffer.toString();
+        } finally {
+            buffer.setLength(0);
+            if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+                BUFFER.remove();
+            }
+        }
+    }
+
+    /**
+     * Renders the template at the end of {@code out}.
+     */
+    public void renderTo(Map<String, String> values, StringBuilder out) throws ValidationException {
+        out.ensureCapacity(out.length() + this.literalLength + 64 * this.segments.length);
+        for (Segment segment : this.segments) {
+            if (segment.name == null) {
+                out.append(segment.text);
+                continue;
+            }
+
+            String value = values.get(segment.name);
+            if (value == null) {
+                throw new ValidationException(String.format(
+                        "Missing value for placeholder '%s' of SQL template '%s'", segment.name, this.name));
+            }
+            switch (segment.escaping) {
+                case QUOTED_IDENTIFIER:
+                    appendIdentifier(segment.name, value, out);
+                    break;
+                case QUOTED_LITERAL:
+                    appendLiteral(value, out);
+                    break;
+                case IDENTIFIER:
+                    out.append('`');
+                    appendIdentifier(segment.name, value, out);
+                    out.append('`');
+                    break;
+                default:
+                    out.append('\'');
+                    appendLiteral(value, out);
+                    out.append('\'');
+                    break;
+            }
+        }
+    }
+
+    private static Segment toPlaceholder(String name, int line, String placeholder, char quote)
+            throws ValidationException {
+        String placeholderName = placeholder;
+        String filter = null;
+        int pipe = placeholder.indexOf('|');
+        if (pipe != -1) {
+            placeholderName = placeholder.substring(0, pipe).trim();
+            filter = placeholder.substring(pipe + 1).trim();
+        }
+        if (placeholderName.isEmpty()) {
+            throw new ValidationException(String.format(
+                    "Empty placeholder in SQL template '%s' at line %d", name, line));
+        }
+
+        Escaping escaping;
+        if (quote != 0) {
+            if (filter != null) {
+                throw new ValidationException(String.format(
+                        "Placeholder '%s' in SQL template '%s' at line %d is already quoted and cannot use '|%s'",
+                        placeholderName, name, line, filter));
+            }
+            escaping = quote == '`' ? Escaping.QUOTED_IDENTIFIER : Escaping.QUOTED_LITERAL;
+        } else if ("identifier".equals(filter)) {
+            escaping = Escaping.IDENTIFIER;
+        } else if ("literal".equals(filter)) {
+            escaping = Escaping.LITERAL;
+        } else {
+            throw new ValidationException(String.format(
+                    "Placeholder '%s' in SQL template '%s' at line %d must be quoted or use '|identifier' or "
+                            + "'|literal'",
+                    placeholderName, name, line));
+        }
+        return new Segment(null, placeholderName, escaping);
+    }
+
+    private static void appendIdentifier(String placeholderName, String value, StringBuilder out)
+            throws ValidationException {
+        if (value.isEmpty() || value.indexOf('\0') != -1) {
+            throw new ValidationException(String.format(
+                    "Value of placeholder '%s' is not a valid MySQL identifier", placeholderName));
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '`') {
+                out.append('`');
+            }
+            out.append(c);
+        }
+    }
+
+    private static void appendLiteral(String value, StringBuilder out) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\0':
+                    out.append("\\0");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\u001a':
+                    out.append("\\Z");
+                    break;
+                case '\\':
+                case '\'':
+                case '"':
+                    out.append('\\').append(c);
+                    break;
+                default:
+                    out.append(c);
+                    break;
+            }
+        }
+    }
+
+    private static String readResource(String resource) throws IOException {
+        InputStream is = SqlTemplate.class.getClassLoader().getResourceAsStream(resource);
+        if (is == null) {
+            throw new IOException(String.format("SQL template '%s' was not found", resource));
+        }
+        try {
+            return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        } finally {
+            is.close();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.silkroad.db.deploy.Tuning;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.gson.GsonBuilder;
+import com.silkroad.db.deploy.Exceptions.*;
+import com.silkroad.db.deploy.Types.*;
+import com.silkroad.db.deploy.Utils.*;
+
+/**
+ * Checks the hot queries of the services declared in
+ * {@code db/query-shapes.json} against the migrated schema.
+ *
+ * Every query shape is run through {@code EXPLAIN} with its sample
+ * parameters. A shape whose table is read with a full table or index scan
+ * while no index starts with its declared columns is reported as missing
+ * its index and, when {@code createMissing} is set, the index is created
+ * online ({@code ALGORITHM=INPLACE LOCK=NONE}). A scan despite an existing
+ * index is only reported: the optimizer chose not to use it, and another
+ * index would not change that.
+ *
+ * Run it after the table statistics are refreshed, see
+ * {@link TableStatisticsUpdater}, so that the plans are the ones the
+ * services will get.
+ */
+public class IndexAdvisor {
+
+    public static final String MANIFEST_RESOURCE = "db/query-shapes.json";
+
+    private final Connection connection;
+    private final ILogger logger;
+    private final TimeBudget timeBudget;
+
+    /**
+     * @param connection Connection whose default database is the one to check
+     */
+    public IndexAdvisor(Connection connection, ILogger logger, TimeBudget timeBudget) {
+        this.connection = connection;
+        this.logger = logger;
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * @return one advice per declared query shape, empty when none are
+     *         declared
+     */
+    public List<IndexAdvice> advise(boolean createMissing)
+            throws IOException, SQLException, AppException, ValidationException {
+        List<IndexAdvice> advices = new ArrayList<IndexAdvice>();
+        QueryShapeManifest manifest = readManifest();
+        if (manifest == null || manifest.getQueryShapes().isEmpty()) {
+            logger.debug("No query shapes to check");
+            return advices;
+        }
+
+        Set<String> createdIndexes = new HashSet<String>();
+        for (QueryShape queryShape : manifest.getQueryShapes()) {
+            IndexAdvice advice = this.explain(queryShape);
+            advices.add(advice);
+            IndexDefinition index = queryShape.getIndex();
+
+            if (!advice.isFullScan()) {
+                logger.debug(() -> String.format("Query shape '%s' uses %s (%s)", queryShape.getName(),
+                        advice.getKey(), advice.getAccessType()));
+                continue;
+            }
+
+            logger.log(LogLevel.INFO, advice.isMissing()
+                    ? "Query shape scans its table, the index is missing"
+                    : "Query shape scans its table, the optimizer does not use the index",
+                    "queryShape", queryShape.getName(),
+                    "table", index.getTable(),
+                    "columns", String.join(",", index.getColumns()),
+                    "accessType", advice.getAccessType(),
+                    "estimatedRows", advice.getEstimatedRows());
+
+            String indexKey = (index.getTable() + "." + index.getName()).toLowerCase(Locale.ROOT);
+            if (!createMissing || !advice.isMissing() || createdIndexes.contains(indexKey)) {
+                continue;
+            }
+            if (this.timeBudget.isExhausted()) {
+                logger.info(String.format("Time budget exhausted, not creating index '%s'", index.getName()));
+                continue;
+            }
+            this.createIndex(index);
+            createdIndexes.add(indexKey);
+            advice.setCreated(true);
+        }
+        return advices;
+    }
+
+    private IndexAdvice explain(QueryShape queryShape) throws SQLException, AppException {
+        IndexDefinition index = queryShape.getIndex();
+        String accessType = null;
+        String key = null;
+        long estimatedRows = 0;
+
+        try (PreparedStatement statement = this.connection.prepareStatement("EXPLAIN " + queryShape.getSql())) {
+            int parameterCount = statement.getParameterMetaData().getParameterCount();
+            for (int i = 0; i < parameterCount; i++) {
+                List<Object> parameters = queryShape.getParameters();
+                statement.setObject(i + 1, parameters != null && i < parameters.size() ? parameters.get(i) : "");
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    if (index.getTable().equalsIgnoreCase(resultSet.getString("table"))) {
+                        accessType = resultSet.getString("type");
+                        key = resultSet.getString("key");
+                        estimatedRows = resultSet.getLong("rows");
+                        break;
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new AppException(String.format(
+                    "Failed to explain query shape '%s', see 'Caused by' for details", queryShape.getName()), e);
+        }
+
+        return new IndexAdvice(queryShape.getName(), index, accessType, key, estimatedRows,
+                this.hasIndexStartingWith(index.getTable(), index.getColumns()));
+    }
+
+    /**
+     * Whether an index of {@code table} starts with {@code columns}, in
+     * order.
+     */
+    private boolean hasIndexStartingWith(String table, List<String> columns) throws SQLException {
+        String sql = "SELECT INDEX_NAME, COLUMN_NAME FROM information_schema.STATISTICS "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? ORDER BY INDEX_NAME, SEQ_IN_INDEX";
+        Map<String, List<String>> indexes = new LinkedHashMap<String, List<String>>();
+        try (PreparedStatement statement = this.connection.prepareStatement(sql)) {
+            statement.setString(1, table);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    indexes.computeIfAbsent(resultSet.getString(1), name -> new ArrayList<String>())
+                            .add(resultSet.getString(2));
+                }
+            }
+        }
+
+        for (List<String> indexColumns : indexes.values()) {
+            if (indexColumns.size() < columns.size()) {
+                continue;
+            }
+            boolean matches = true;
+            for (int i = 0; i < columns.size() && matches; i++) {
+                // Functional key parts have no column name
+                matches = columns.get(i).equalsIgnoreCase(indexColumns.get(i));
+            }
+            if (matches) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void createIndex(IndexDefinition index) throws SQLException {
+        StringBuilder columns = new StringBuilder();
+        for (String column : index.getColumns()) {
+            if (columns.length() > 0) {
+                columns.append(", ");
+            }
+            columns.append(quote(column));
+        }
+        String sql = String.format("CREATE INDEX %s ON %s (%s) ALGORITHM=INPLACE LOCK=NONE",
+                quote(index.getName()), quote(index.getTable()), columns);
+
+        logger.info(String.format("Creating index '%s' on '%s'...", index.getName(), index.getTable()));
+        long startTime = System.nanoTime();
+        try (Statement statement = this.connection.createStatement()) {
+            statement.execute(sql);
+        }
+        logger.info(String.format("Created index '%s' in %d ms", index.getName(),
+                (System.nanoTime() - startTime) / 1_000_000));
+    }
+
+    private static QueryShapeManifest readManifest() throws IOException, ValidationException {
+        InputStream is = IndexAdvisor.class.getClassLoader().getResourceAsStream(MANIFEST_RESOURCE);
+        if (is == null) {
+            return null;
+        }
+
+        QueryShapeManifest manifest;
+        try (Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8)) {
+            manifest = new GsonBuilder().create().fromJson(reader, QueryShapeManifest.class);
+        }
+        if (manifest != null) {
+            manifest.validate();
+        }
+        return manifest;
+    }
+
+    private static String quote(String identifier) {
+        return "`" + identifier.replace("`", "``") + "`";
+    }
+}
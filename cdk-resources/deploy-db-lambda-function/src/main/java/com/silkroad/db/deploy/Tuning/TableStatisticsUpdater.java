@@ -0,0 +1,167 @@
+package com.silkroad.db.deploy.Tuning;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.silkroad.db.deploy.Exceptions.AppException;
+import com.silkroad.db.deploy.Types.*;
+import com.silkroad.db.deploy.Utils.*;
+
+/**
+ * Refreshes the optimizer statistics ({@code ANALYZE TABLE}) of the tables a
+ * migration changed, so that queries are planned on the new schema and data
+ * right away instead of once InnoDB's automatic recalculation catches up.
+ *
+ * Tables are analyzed by up to {@code parallelism} connections at once; a
+ * single table is analyzed on the caller's connection. Tables that no longer
+ * exist (e.g. dropped or renamed by a later changeset) and views are
+ * skipped.
+ */
+public class TableStatisticsUpdater {
+
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    // ANALYZE TABLE briefly needs a metadata lock; don't queue behind a long transaction for long
+    private static final int LOCK_WAIT_TIMEOUT_SECONDS = 30;
+
+    private final RdsHostInfo rdsHostInfo;
+    private final RdsAdminSecret rdsAdminSecret;
+    private final String databaseName;
+    private final ILogger logger;
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    /**
+     * The additional connections are opened with the same host and
+     * credentials and closed when done.
+     */
+    public TableStatisticsUpdater(RdsHostInfo rdsHostInfo, RdsAdminSecret rdsAdminSecret, String databaseName,
+            ILogger logger) {
+        this.rdsHostInfo = rdsHostInfo;
+        this.rdsAdminSecret = rdsAdminSecret;
+        this.databaseName = databaseName;
+        this.logger = logger;
+    }
+
+    /**
+     * Number of tables analyzed at once. Defaults to
+     * {@link #DEFAULT_PARALLELISM}.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * @param connection Connection whose default database is the one of the
+     *                   tables
+     * @return the number of tables analyzed
+     */
+    public int analyze(Connection connection, Collection<String> tables) throws SQLException, AppException {
+        List<String> existing = this.filterBaseTables(connection, tables);
+        if (existing.isEmpty()) {
+            return 0;
+        }
+
+        int workerCount = Math.min(this.parallelism, existing.size());
+        if (workerCount == 1) {
+            for (String table : existing) {
+                this.analyzeTable(connection, table);
+            }
+            return existing.size();
+        }
+
+        List<ConnectionSession> workerSessions = new ArrayList<ConnectionSession>();
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        try {
+            ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<String>(existing);
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < workerCount; i++) {
+                ConnectionSession workerSession = new ConnectionSession(this.rdsHostInfo, this.rdsAdminSecret);
+                workerSessions.add(workerSession);
+                Connection workerConnection = workerSession.getConnection(this.databaseName, this.logger);
+                futures.add(executor.submit(() -> {
+                    String table;
+                    while ((table = pending.poll()) != null) {
+                        this.analyzeTable(workerConnection, table);
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof AppException) {
+                        throw (AppException) e.getCause();
+                    }
+                    throw new AppException("Failed to analyze a table, see 'Caused by' for details", e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new AppException("Interrupted while analyzing tables", e);
+                }
+            }
+            return existing.size();
+        } finally {
+            executor.shutdownNow();
+            for (ConnectionSession workerSession : workerSessions) {
+                workerSession.close();
+            }
+        }
+    }
+
+    private void analyzeTable(Connection connection, String table) throws SQLException, AppException {
+        long startTime = System.nanoTime();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET SESSION lock_wait_timeout = " + LOCK_WAIT_TIMEOUT_SECONDS);
+            try (ResultSet resultSet = statement.executeQuery("ANALYZE TABLE " + quote(table))) {
+                // Failures are reported as result rows rather than as errors
+                while (resultSet.next()) {
+                    if ("error".equalsIgnoreCase(resultSet.getString("Msg_type"))) {
+                        throw new AppException(String.format("Failed to analyze table '%s': %s", table,
+                                resultSet.getString("Msg_text")));
+                    }
+                }
+            }
+        }
+        logger.debug(() -> String.format("Analyzed table '%s' in %d ms", table,
+                (System.nanoTime() - startTime) / 1_000_000));
+    }
+
+    /**
+     * Returns the base tables among {@code tables}, in name order.
+     */
+    private List<String> filterBaseTables(Connection connection, Collection<String> tables) throws SQLException {
+        Set<String> requested = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+        requested.addAll(tables);
+
+        List<String> existing = new ArrayList<String>();
+        String sql = "SELECT TABLE_NAME FROM information_schema.TABLES "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_TYPE = 'BASE TABLE' ORDER BY TABLE_NAME";
+        try (PreparedStatement statement = connection.prepareStatement(sql);
+                ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                if (requested.contains(resultSet.getString(1))) {
+                    existing.add(resultSet.getString(1));
+                }
+            }
+        }
+        return existing;
+    }
+
+    private static String quote(String identifier) {
+        return "`" + identifier.replace("`", "``") + "`";
+    }
+}
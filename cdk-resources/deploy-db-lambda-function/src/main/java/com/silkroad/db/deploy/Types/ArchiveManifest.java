@@ -0,0 +1,68 @@
+package com.silkroad.db.deploy.Types;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Table of contents of a database archive written by
+ * {@link com.silkroad.db.deploy.Archive.DatabaseArchiver}. It is written
+ * last, so an archive without a manifest is incomplete.
+ */
+public class ArchiveManifest {
+
+    private String databaseName;
+    private String startedAt;
+    private String completedAt;
+    private String schemaObjectKey;
+    private List<ArchivedTable> tables = new ArrayList<ArchivedTable>();
+
+    public ArchiveManifest() {
+    }
+
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    public void setDatabaseName(String databaseName) {
+        this.databaseName = databaseName;
+    }
+
+    /**
+     * ISO-8601 time the consistent snapshot was taken.
+     */
+    public String getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(String startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public String getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(String completedAt) {
+        this.completedAt = completedAt;
+    }
+
+    /**
+     * Key of the gzip-compressed {@code CREATE TABLE} and
+     * {@code CREATE VIEW} statements.
+     */
+    public String getSchemaObjectKey() {
+        return schemaObjectKey;
+    }
+
+    public void setSchemaObjectKey(String schemaObjectKey) {
+        this.schemaObjectKey = schemaObjectKey;
+    }
+
+    public List<ArchivedTable> getTables() {
+        return tables;
+    }
+
+    public void setTables(List<ArchivedTable> tables) {
+        this.tables = tables;
+    }
+}
@@ -0,0 +1,87 @@
+package com.silkroad.db.deploy.Types;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One table of an {@link ArchiveManifest}.
+ */
+public class ArchivedTable {
+
+    private String name;
+    private String objectKey;
+    private List<String> columns = new ArrayList<String>();
+    private List<String> primaryKey = new ArrayList<String>();
+    private List<String> base64Columns = new ArrayList<String>();
+    private long rowCount;
+    private long durationMillis;
+
+    public ArchivedTable() {
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Key of the gzip-compressed JSON lines object holding the rows.
+     */
+    public String getObjectKey() {
+        return objectKey;
+    }
+
+    public void setObjectKey(String objectKey) {
+        this.objectKey = objectKey;
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public void setColumns(List<String> columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * Primary key columns the rows are ordered by; empty when the table has
+     * no primary key and was exported in server order.
+     */
+    public List<String> getPrimaryKey() {
+        return primaryKey;
+    }
+
+    public void setPrimaryKey(List<String> primaryKey) {
+        this.primaryKey = primaryKey;
+    }
+
+    /**
+     * Binary columns, whose values are written as base64 strings.
+     */
+    public List<String> getBase64Columns() {
+        return base64Columns;
+    }
+
+    public void setBase64Columns(List<String> base64Columns) {
+        this.base64Columns = base64Columns;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public void setRowCount(long rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+}
@@ -0,0 +1,63 @@
+package com.silkroad.db.deploy.Types;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Build-time index of a Liquibase changelog, see
+ * {@link com.silkroad.db.deploy.Utils.ChangelogIndex}.
+ */
+public class ChangelogManifest {
+
+    private String changeLogFile;
+    private List<ManifestChangeSet> changeSets = new ArrayList<ManifestChangeSet>();
+    private int baselineChangeSetCount;
+    private String baselineLastChangeSet;
+
+    public ChangelogManifest() {
+    }
+
+    public String getChangeLogFile() {
+        return changeLogFile;
+    }
+
+    public void setChangeLogFile(String changeLogFile) {
+        this.changeLogFile = changeLogFile;
+    }
+
+    /**
+     * Changesets in execution order.
+     */
+    public List<ManifestChangeSet> getChangeSets() {
+        return changeSets;
+    }
+
+    public void setChangeSets(List<ManifestChangeSet> changeSets) {
+        this.changeSets = changeSets;
+    }
+
+    /**
+     * Number of leading changesets covered by the baseline script, see
+     * {@link com.silkroad.db.deploy.Utils.ChangelogBaseline}; 0 when there
+     * is no baseline.
+     */
+    public int getBaselineChangeSetCount() {
+        return baselineChangeSetCount;
+    }
+
+    public void setBaselineChangeSetCount(int baselineChangeSetCount) {
+        this.baselineChangeSetCount = baselineChangeSetCount;
+    }
+
+    /**
+     * Last changeset covered by the baseline script, as
+     * {@code <file>::<id>::<author>}.
+     */
+    public String getBaselineLastChangeSet() {
+        return baselineLastChangeSet;
+    }
+
+    public void setBaselineLastChangeSet(String baselineLastChangeSet) {
+        this.baselineLastChangeSet = baselineLastChangeSet;
+    }
+}
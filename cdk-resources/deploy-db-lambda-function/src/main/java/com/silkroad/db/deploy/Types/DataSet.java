@@ -0,0 +1,106 @@
+package com.silkroad.db.deploy.Types;
+
+import java.util.List;
+
+import com.silkroad.db.deploy.Exceptions.ValidationException;
+
+import liquibase.util.StringUtil;
+
+public class DataSet {
+
+    private String resource;
+    private String table;
+    private List<String> columns;
+    private String onDuplicate;
+    private Integer chunkSize;
+    private Integer commitInterval;
+
+    public DataSet() {
+    }
+
+    /**
+     * Classpath resource holding the rows, either CSV (with a header row) or
+     * JSON lines.
+     */
+    public String getResource() {
+        return resource;
+    }
+
+    public void setResource(String resource) {
+        this.resource = resource;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public void setTable(String table) {
+        this.table = table;
+    }
+
+    /**
+     * Optional for CSV (the header row is used); for JSON lines defaults to the
+     * keys of the first row.
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public void setColumns(List<String> columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * What to do with rows whose key already exists: {@code update}
+     * (default) or {@code ignore}.
+     */
+    public String getOnDuplicate() {
+        return onDuplicate;
+    }
+
+    public void setOnDuplicate(String onDuplicate) {
+        this.onDuplicate = onDuplicate;
+    }
+
+    public Integer getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(Integer chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public Integer getCommitInterval() {
+        return commitInterval;
+    }
+
+    public void setCommitInterval(Integer commitInterval) {
+        this.commitInterval = commitInterval;
+    }
+
+    public boolean isJsonLines() {
+        return this.resource.endsWith(".jsonl") || this.resource.endsWith(".ndjson");
+    }
+
+    public void validate() throws ValidationException {
+        if (StringUtil.isEmpty(this.resource)) {
+            throw new ValidationException("Missing required field: 'resource'");
+        }
+        if (!this.resource.endsWith(".csv") && !this.isJsonLines()) {
+            throw new ValidationException(
+                    String.format("Unsupported data file '%s', expected .csv or .jsonl", this.resource));
+        }
+        if (StringUtil.isEmpty(this.table)) {
+            throw new ValidationException("Missing required field: 'table'");
+        }
+        if (this.onDuplicate != null && !this.onDuplicate.equals("update") && !this.onDuplicate.equals("ignore")) {
+            throw new ValidationException("Invalid field: 'onDuplicate' must be 'update' or 'ignore'");
+        }
+        if (this.chunkSize != null && this.chunkSize < 1) {
+            throw new ValidationException("Invalid field: 'chunkSize' must be greater than 0");
+        }
+        if (this.commitInterval != null && this.commitInterval < 1) {
+            throw new ValidationException("Invalid field: 'commitInterval' must be greater than 0");
+        }
+    }
+};
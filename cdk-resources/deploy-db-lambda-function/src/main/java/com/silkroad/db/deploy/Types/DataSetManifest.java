@@ -0,0 +1,61 @@
+package com.silkroad.db.deploy.Types;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.silkroad.db.deploy.Exceptions.ValidationException;
+
+public class DataSetManifest {
+
+    private int chunkSize = 1000;
+    private int commitInterval = 10000;
+    private List<DataSet> dataSets = new ArrayList<DataSet>();
+
+    public DataSetManifest() {
+    }
+
+    /**
+     * Default number of rows sent per JDBC batch.
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Default number of rows per transaction.
+     */
+    public int getCommitInterval() {
+        return commitInterval;
+    }
+
+    public void setCommitInterval(int commitInterval) {
+        this.commitInterval = commitInterval;
+    }
+
+    public List<DataSet> getDataSets() {
+        return dataSets;
+    }
+
+    public void setDataSets(List<DataSet> dataSets) {
+        this.dataSets = dataSets;
+    }
+
+    public void validate() throws ValidationException {
+        if (this.chunkSize < 1) {
+            throw new ValidationException("Invalid field: 'chunkSize' must be greater than 0");
+        }
+        if (this.commitInterval < 1) {
+            throw new ValidationException("Invalid field: 'commitInterval' must be greater than 0");
+        }
+        if (this.dataSets == null) {
+            throw new ValidationException("Missing required field: 'dataSets'");
+        }
+        for (DataSet dataSet : this.dataSets) {
+            dataSet.validate();
+        }
+    }
+};
@@ -0,0 +1,13 @@
+package com.silkroad.db.deploy.Types;
+
+/**
+ * How MySQL carries out a DDL statement, from cheapest to most disruptive.
+ */
+public enum DdlAlgorithm {
+    /** Metadata-only change */
+    INSTANT,
+    /** Rebuilt or indexed in place, concurrent DML allowed */
+    INPLACE,
+    /** Copied into a new table, writes are blocked meanwhile */
+    COPY
+};
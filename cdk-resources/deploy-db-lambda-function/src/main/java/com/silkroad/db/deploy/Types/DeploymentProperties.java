@@ -0,0 +1,207 @@
+package com.silkroad.db.deploy.Types;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import com.silkroad.db.deploy.Exceptions.ValidationException;
+
+/**
+ * Typed CloudFormation resource properties of the deploy-db custom resource,
+ * bound by {@link com.silkroad.db.deploy.Utils.ResourcePropertiesBinder}.
+ *
+ * Binding never throws: every missing or malformed property is recorded and
+ * {@link #validate()} reports all of them at once. A 'Delete' event only
+ * needs {@code isDebug}, unless the database is archived, and must not fail
+ * on properties a failed 'Create' never accepted.
+ */
+public class DeploymentProperties {
+
+    private String region;
+    private RdsHostInfo rdsHost;
+    private String rdsAdminSecretArn;
+    private String rdsAppSecretArn;
+    private boolean isDebug = false;
+    private boolean dryRun = false;
+    private String archiveBucket;
+    private String archivePrefix;
+    private boolean createMissingIndexes = false;
+    private boolean profileStatements = false;
+    private Integer slowStatementMillis;
+
+    private final List<String> errors = new ArrayList<String>();
+
+    public String getRegion() {
+        return region;
+    }
+
+    public void setRegion(String region) {
+        this.region = region;
+    }
+
+    public RdsHostInfo getRdsHost() {
+        return rdsHost;
+    }
+
+    public void setRdsHost(RdsHostInfo rdsHost) {
+        this.rdsHost = rdsHost;
+    }
+
+    public String getRdsAdminSecretArn() {
+        return rdsAdminSecretArn;
+    }
+
+    public void setRdsAdminSecretArn(String rdsAdminSecretArn) {
+        this.rdsAdminSecretArn = rdsAdminSecretArn;
+    }
+
+    public String getRdsAppSecretArn() {
+        return rdsAppSecretArn;
+    }
+
+    public void setRdsAppSecretArn(String rdsAppSecretArn) {
+        this.rdsAppSecretArn = rdsAppSecretArn;
+    }
+
+    public boolean isDebug() {
+        return isDebug;
+    }
+
+    public void setDebug(boolean isDebug) {
+        this.isDebug = isDebug;
+    }
+
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * S3 bucket the database is archived to when the resource is deleted. The
+     * database is not archived when it is not set.
+     */
+    public String getArchiveBucket() {
+        return archiveBucket;
+    }
+
+    public void setArchiveBucket(String archiveBucket) {
+        this.archiveBucket = archiveBucket;
+    }
+
+    public String getArchivePrefix() {
+        return archivePrefix;
+    }
+
+    public void setArchivePrefix(String archivePrefix) {
+        this.archivePrefix = archivePrefix;
+    }
+
+    /**
+     * Whether a migration creates the indexes the declared query shapes are
+     * missing instead of only reporting them. Like the query shapes, it is
+     * applied when the changelog is migrated, not on its own.
+     */
+    public boolean isCreateMissingIndexes() {
+        return createMissingIndexes;
+    }
+
+    public void setCreateMissingIndexes(boolean createMissingIndexes) {
+        this.createMissingIndexes = createMissingIndexes;
+    }
+
+    /**
+     * Whether every statement of the migration is profiled and the slowest
+     * ones are logged at the end, see
+     * {@link com.silkroad.db.deploy.Profile.StatementProfiler}.
+     */
+    public boolean isProfileStatements() {
+        return profileStatements;
+    }
+
+    public void setProfileStatements(boolean profileStatements) {
+        this.profileStatements = profileStatements;
+    }
+
+    /**
+     * Statements taking at least this long are explained when profiling.
+     */
+    public Integer getSlowStatementMillis() {
+        return slowStatementMillis;
+    }
+
+    public void setSlowStatementMillis(Integer slowStatementMillis) {
+        this.slowStatementMillis = slowStatementMillis;
+    }
+
+    /**
+     * Names of the properties whose values differ from {@code previous},
+     * e.g. the properties of an 'Update' event's old resource.
+     */
+    public List<String> getChangedProperties(DeploymentProperties previous) {
+        List<String> changed = new ArrayList<String>();
+        if (!Objects.equals(this.region, previous.region)) {
+            changed.add("region");
+        }
+        if (!isSameHost(this.rdsHost, previous.rdsHost)) {
+            changed.add("rdsHost");
+        }
+        if (!Objects.equals(this.rdsAdminSecretArn, previous.rdsAdminSecretArn)) {
+            changed.add("rdsAdminSecretArn");
+        }
+        if (!Objects.equals(this.rdsAppSecretArn, previous.rdsAppSecretArn)) {
+            changed.add("rdsAppSecretArn");
+        }
+        if (this.isDebug != previous.isDebug) {
+            changed.add("isDebug");
+        }
+        if (this.dryRun != previous.dryRun) {
+            changed.add("dryRun");
+        }
+        if (!Objects.equals(this.archiveBucket, previous.archiveBucket)) {
+            changed.add("archiveBucket");
+        }
+        if (!Objects.equals(this.archivePrefix, previous.archivePrefix)) {
+            changed.add("archivePrefix");
+        }
+        if (this.createMissingIndexes != previous.createMissingIndexes) {
+            changed.add("createMissingIndexes");
+        }
+        if (this.profileStatements != previous.profileStatements) {
+            changed.add("profileStatements");
+        }
+        if (!Objects.equals(this.slowStatementMillis, previous.slowStatementMillis)) {
+            changed.add("slowStatementMillis");
+        }
+        return changed;
+    }
+
+    public void addError(String error) {
+        this.errors.add(error);
+    }
+
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(this.errors);
+    }
+
+    public void validate() throws ValidationException {
+        if (this.errors.isEmpty()) {
+            return;
+        }
+        if (this.errors.size() == 1) {
+            throw new ValidationException(this.errors.get(0));
+        }
+        throw new ValidationException("Invalid resource properties:" + System.lineSeparator() + "  - "
+                + String.join(System.lineSeparator() + "  - ", this.errors));
+    }
+
+    private static boolean isSameHost(RdsHostInfo a, RdsHostInfo b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return Objects.equals(a.getHostname(), b.getHostname()) && a.getPort() == b.getPort();
+    }
+}
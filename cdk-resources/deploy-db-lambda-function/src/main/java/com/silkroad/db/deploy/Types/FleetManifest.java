@@ -0,0 +1,38 @@
+package com.silkroad.db.deploy.Types;
+
+import java.util.List;
+
+import com.silkroad.db.deploy.Exceptions.ValidationException;
+
+public class FleetManifest {
+
+    private List<FleetTarget> targets;
+
+    public FleetManifest() {
+    }
+
+    public List<FleetTarget> getTargets() {
+        return targets;
+    }
+
+    public void setTargets(List<FleetTarget> targets) {
+        this.targets = targets;
+    }
+
+    public void validate() throws ValidationException {
+        if (this.targets == null || this.targets.isEmpty()) {
+            throw new ValidationException("Missing required field: 'targets'");
+        }
+        for (int i = 0; i < this.targets.size(); i++) {
+            FleetTarget target = this.targets.get(i);
+            if (target == null) {
+                throw new ValidationException(String.format("Invalid target at index %d: entry is empty", i));
+            }
+            try {
+                target.validate();
+            } catch (ValidationException e) {
+                throw new ValidationException(String.format("Invalid target at index %d: %s", i, e.getMessage()));
+            }
+        }
+    }
+};
@@ -0,0 +1,73 @@
+package com.silkroad.db.deploy.Types;
+
+import com.silkroad.db.deploy.Exceptions.ValidationException;
+
+public class FleetTarget {
+
+    private RdsHostInfo rdsHost;
+    private RdsAdminSecret rdsAdminSecret;
+    private RdsAppSecret rdsAppSecret;
+
+    public FleetTarget() {
+    }
+
+    public FleetTarget(RdsHostInfo rdsHost, RdsAdminSecret rdsAdminSecret, RdsAppSecret rdsAppSecret)
+            throws ValidationException {
+        this.rdsHost = rdsHost;
+        this.rdsAdminSecret = rdsAdminSecret;
+        this.rdsAppSecret = rdsAppSecret;
+        this.validate();
+    }
+
+    public RdsHostInfo getRdsHost() {
+        return rdsHost;
+    }
+
+    public void setRdsHost(RdsHostInfo rdsHost) {
+        this.rdsHost = rdsHost;
+    }
+
+    public RdsAdminSecret getRdsAdminSecret() {
+        return rdsAdminSecret;
+    }
+
+    public void setRdsAdminSecret(RdsAdminSecret rdsAdminSecret) {
+        this.rdsAdminSecret = rdsAdminSecret;
+    }
+
+    public RdsAppSecret getRdsAppSecret() {
+        return rdsAppSecret;
+    }
+
+    public void setRdsAppSecret(RdsAppSecret rdsAppSecret) {
+        this.rdsAppSecret = rdsAppSecret;
+    }
+
+    /**
+     * Key used to group targets sharing the same RDS host for per-host throttling.
+     */
+    public String getHostKey() {
+        return this.rdsHost.getHostname() + ":" + this.rdsHost.getPort();
+    }
+
+    public String getName() {
+        return this.rdsAppSecret.getDatabaseName() + "@" + this.getHostKey();
+    }
+
+    public void validate() throws ValidationException {
+        if (this.rdsHost == null) {
+            throw new ValidationException("Missing required field: 'rdsHost'");
+        }
+        this.rdsHost.validate();
+
+        if (this.rdsAdminSecret == null) {
+            throw new ValidationException("Missing required field: 'rdsAdminSecret'");
+        }
+        this.rdsAdminSecret.validate();
+
+        if (this.rdsAppSecret == null) {
+            throw new ValidationException("Missing required field: 'rdsAppSecret'");
+        }
+        this.rdsAppSecret.validate();
+    }
+};
@@ -0,0 +1,32 @@
+package com.silkroad.db.deploy.Types;
+
+public class FleetTargetResult {
+
+    private final String name;
+    private final boolean success;
+    private final long durationMillis;
+    private final String errorMessage;
+
+    public FleetTargetResult(String name, boolean success, long durationMillis, String errorMessage) {
+        this.name = name;
+        this.success = success;
+        this.durationMillis = durationMillis;
+        this.errorMessage = errorMessage;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+};
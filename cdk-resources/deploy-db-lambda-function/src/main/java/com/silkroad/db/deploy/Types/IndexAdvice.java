@@ -0,0 +1,80 @@
+package com.silkroad.db.deploy.Types;
+
+public class IndexAdvice {
+
+    private final String queryShape;
+    private final IndexDefinition index;
+    private final String accessType;
+    private final String key;
+    private final long estimatedRows;
+    private final boolean indexExists;
+    private boolean created;
+
+    public IndexAdvice(String queryShape, IndexDefinition index, String accessType, String key, long estimatedRows,
+            boolean indexExists) {
+        this.queryShape = queryShape;
+        this.index = index;
+        this.accessType = accessType;
+        this.key = key;
+        this.estimatedRows = estimatedRows;
+        this.indexExists = indexExists;
+    }
+
+    public String getQueryShape() {
+        return queryShape;
+    }
+
+    public IndexDefinition getIndex() {
+        return index;
+    }
+
+    /**
+     * The {@code type} column of {@code EXPLAIN} for the table of the index,
+     * e.g. {@code ref} or {@code ALL}. {@code null} when the optimizer
+     * resolved the table while planning, e.g. through a unique key lookup.
+     */
+    public String getAccessType() {
+        return accessType;
+    }
+
+    /**
+     * The index the query uses, or {@code null}.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public long getEstimatedRows() {
+        return estimatedRows;
+    }
+
+    /**
+     * Whether an index starting with the declared columns exists, whether or
+     * not the optimizer chose it.
+     */
+    public boolean isIndexExists() {
+        return indexExists;
+    }
+
+    /**
+     * Whether the query reads the whole table or index.
+     */
+    public boolean isFullScan() {
+        return "ALL".equals(this.accessType) || "index".equals(this.accessType);
+    }
+
+    /**
+     * Whether the declared index is missing and the query scans the table.
+     */
+    public boolean isMissing() {
+        return !this.indexExists && this.isFullScan();
+    }
+
+    public boolean isCreated() {
+        return created;
+    }
+
+    public void setCreated(boolean created) {
+        this.created = created;
+    }
+};
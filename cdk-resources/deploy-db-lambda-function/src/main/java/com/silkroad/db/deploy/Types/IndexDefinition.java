@@ -0,0 +1,60 @@
+package com.silkroad.db.deploy.Types;
+
+import java.util.List;
+
+import com.silkroad.db.deploy.Exceptions.ValidationException;
+
+import liquibase.util.StringUtil;
+
+public class IndexDefinition {
+
+    private String table;
+    private String name;
+    private List<String> columns;
+
+    public IndexDefinition() {
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public void setTable(String table) {
+        this.table = table;
+    }
+
+    /**
+     * Name given to the index when it is created.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Indexed columns, in order. Any existing index starting with these
+     * columns serves the query.
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public void setColumns(List<String> columns) {
+        this.columns = columns;
+    }
+
+    public void validate() throws ValidationException {
+        if (StringUtil.isEmpty(this.table)) {
+            throw new ValidationException("Missing required field: 'index.table'");
+        }
+        if (StringUtil.isEmpty(this.name)) {
+            throw new ValidationException("Missing required field: 'index.name'");
+        }
+        if (this.columns == null || this.columns.isEmpty()) {
+            throw new ValidationException("Missing required field: 'index.columns'");
+        }
+    }
+};
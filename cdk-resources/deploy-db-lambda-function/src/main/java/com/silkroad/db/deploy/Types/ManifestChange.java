@@ -0,0 +1,56 @@
+package com.silkroad.db.deploy.Types;
+
+/**
+ * One formatted SQL change of a {@link ManifestChangeSet}.
+ */
+public class ManifestChange {
+
+    private String sql;
+    private Boolean splitStatements;
+    private Boolean stripComments;
+    private String endDelimiter;
+    private String dbms;
+
+    public ManifestChange() {
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public void setSql(String sql) {
+        this.sql = sql;
+    }
+
+    public Boolean getSplitStatements() {
+        return splitStatements;
+    }
+
+    public void setSplitStatements(Boolean splitStatements) {
+        this.splitStatements = splitStatements;
+    }
+
+    public Boolean getStripComments() {
+        return stripComments;
+    }
+
+    public void setStripComments(Boolean stripComments) {
+        this.stripComments = stripComments;
+    }
+
+    public String getEndDelimiter() {
+        return endDelimiter;
+    }
+
+    public void setEndDelimiter(String endDelimiter) {
+        this.endDelimiter = endDelimiter;
+    }
+
+    public String getDbms() {
+        return dbms;
+    }
+
+    public void setDbms(String dbms) {
+        this.dbms = dbms;
+    }
+}
@@ -0,0 +1,153 @@
+package com.silkroad.db.deploy.Types;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A changeset of the {@link ChangelogManifest}, with everything Liquibase
+ * needs to run it and the checksum it had when the manifest was built.
+ */
+public class ManifestChangeSet {
+
+    private String id;
+    private String author;
+    private String filePath;
+    private String checkSum;
+    private List<String> validCheckSums = new ArrayList<String>();
+    private boolean alwaysRun;
+    private boolean runOnChange;
+    private boolean runInTransaction = true;
+    private Boolean failOnError;
+    private String contexts;
+    private String labels;
+    private String dbms;
+    private String comments;
+    private List<ManifestChange> changes = new ArrayList<ManifestChange>();
+    private List<String> rollbackSql = new ArrayList<String>();
+
+    public ManifestChangeSet() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(String author) {
+        this.author = author;
+    }
+
+    /**
+     * Path recorded in the {@code FILENAME} column of {@code DATABASECHANGELOG}.
+     */
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+
+    public String getCheckSum() {
+        return checkSum;
+    }
+
+    public void setCheckSum(String checkSum) {
+        this.checkSum = checkSum;
+    }
+
+    public List<String> getValidCheckSums() {
+        return validCheckSums;
+    }
+
+    public void setValidCheckSums(List<String> validCheckSums) {
+        this.validCheckSums = validCheckSums;
+    }
+
+    public boolean isAlwaysRun() {
+        return alwaysRun;
+    }
+
+    public void setAlwaysRun(boolean alwaysRun) {
+        this.alwaysRun = alwaysRun;
+    }
+
+    public boolean isRunOnChange() {
+        return runOnChange;
+    }
+
+    public void setRunOnChange(boolean runOnChange) {
+        this.runOnChange = runOnChange;
+    }
+
+    public boolean isRunInTransaction() {
+        return runInTransaction;
+    }
+
+    public void setRunInTransaction(boolean runInTransaction) {
+        this.runInTransaction = runInTransaction;
+    }
+
+    public Boolean getFailOnError() {
+        return failOnError;
+    }
+
+    public void setFailOnError(Boolean failOnError) {
+        this.failOnError = failOnError;
+    }
+
+    public String getContexts() {
+        return contexts;
+    }
+
+    public void setContexts(String contexts) {
+        this.contexts = contexts;
+    }
+
+    public String getLabels() {
+        return labels;
+    }
+
+    public void setLabels(String labels) {
+        this.labels = labels;
+    }
+
+    public String getDbms() {
+        return dbms;
+    }
+
+    public void setDbms(String dbms) {
+        this.dbms = dbms;
+    }
+
+    public String getComments() {
+        return comments;
+    }
+
+    public void setComments(String comments) {
+        this.comments = comments;
+    }
+
+    public List<ManifestChange> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<ManifestChange> changes) {
+        this.changes = changes;
+    }
+
+    public List<String> getRollbackSql() {
+        return rollbackSql;
+    }
+
+    public void setRollbackSql(List<String> rollbackSql) {
+        this.rollbackSql = rollbackSql;
+    }
+}
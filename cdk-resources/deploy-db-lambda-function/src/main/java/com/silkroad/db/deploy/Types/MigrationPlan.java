@@ -0,0 +1,40 @@
+package com.silkroad.db.deploy.Types;
+
+import java.util.List;
+
+public class MigrationPlan {
+
+    private final String databaseName;
+    private final List<PlannedChangeSet> changeSets;
+
+    public MigrationPlan(String databaseName, List<PlannedChangeSet> changeSets) {
+        this.databaseName = databaseName;
+        this.changeSets = changeSets;
+    }
+
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    public List<PlannedChangeSet> getChangeSets() {
+        return changeSets;
+    }
+
+    public long getEstimatedMillis() {
+        long total = 0;
+        for (PlannedChangeSet changeSet : this.changeSets) {
+            total += changeSet.getEstimatedMillis();
+        }
+        return total;
+    }
+
+    public int getLockingChangeSetCount() {
+        int count = 0;
+        for (PlannedChangeSet changeSet : this.changeSets) {
+            if (changeSet.isLocksTables()) {
+                count++;
+            }
+        }
+        return count;
+    }
+};
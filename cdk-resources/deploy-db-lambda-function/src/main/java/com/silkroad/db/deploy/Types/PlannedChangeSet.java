@@ -0,0 +1,72 @@
+package com.silkroad.db.deploy.Types;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PlannedChangeSet {
+
+    private final String id;
+    private final String author;
+    private final String filePath;
+    private final boolean online;
+    private final List<PlannedStatement> statements = new ArrayList<PlannedStatement>();
+
+    public PlannedChangeSet(String id, String author, String filePath, boolean online) {
+        this.id = id;
+        this.author = author;
+        this.filePath = filePath;
+        this.online = online;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public boolean isOnline() {
+        return online;
+    }
+
+    public List<PlannedStatement> getStatements() {
+        return statements;
+    }
+
+    public long getEstimatedMillis() {
+        long total = 0;
+        for (PlannedStatement statement : this.statements) {
+            total += statement.getEstimatedMillis();
+        }
+        return total;
+    }
+
+    public boolean isLocksTables() {
+        for (PlannedStatement statement : this.statements) {
+            if (statement.isLocksTable()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The most disruptive DDL algorithm of the changeset, {@code null} when it
+     * has no DDL.
+     */
+    public DdlAlgorithm getAlgorithm() {
+        DdlAlgorithm result = null;
+        for (PlannedStatement statement : this.statements) {
+            DdlAlgorithm algorithm = statement.getAlgorithm();
+            if (algorithm != null && (result == null || algorithm.compareTo(result) > 0)) {
+                result = algorithm;
+            }
+        }
+        return result;
+    }
+};
@@ -0,0 +1,86 @@
+package com.silkroad.db.deploy.Types;
+
+public class PlannedStatement {
+
+    private final String summary;
+    private final String kind;
+    private final String table;
+    private final DdlAlgorithm algorithm;
+    private final boolean touchesRows;
+    private long tableRows;
+    private long tableBytes;
+    private long estimatedMillis;
+    private boolean locksTable;
+
+    public PlannedStatement(String summary, String kind, String table, DdlAlgorithm algorithm,
+            boolean touchesRows) {
+        this.summary = summary;
+        this.kind = kind;
+        this.table = table;
+        this.algorithm = algorithm;
+        this.touchesRows = touchesRows;
+    }
+
+    public String getSummary() {
+        return summary;
+    }
+
+    /**
+     * {@code DDL}, {@code DML} or {@code OTHER}
+     */
+    public String getKind() {
+        return kind;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * Only set for DDL statements
+     */
+    public DdlAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Whether the statement reads or rewrites the rows of {@link #getTable()}
+     * (table rebuild, index build, {@code UPDATE}/{@code DELETE}) rather than
+     * only its metadata.
+     */
+    public boolean isTouchesRows() {
+        return touchesRows;
+    }
+
+    public long getTableRows() {
+        return tableRows;
+    }
+
+    public void setTableRows(long tableRows) {
+        this.tableRows = tableRows;
+    }
+
+    public long getTableBytes() {
+        return tableBytes;
+    }
+
+    public void setTableBytes(long tableBytes) {
+        this.tableBytes = tableBytes;
+    }
+
+    public long getEstimatedMillis() {
+        return estimatedMillis;
+    }
+
+    public void setEstimatedMillis(long estimatedMillis) {
+        this.estimatedMillis = estimatedMillis;
+    }
+
+    public boolean isLocksTable() {
+        return locksTable;
+    }
+
+    public void setLocksTable(boolean locksTable) {
+        this.locksTable = locksTable;
+    }
+};
@@ -0,0 +1,77 @@
+package com.silkroad.db.deploy.Types;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.silkroad.db.deploy.Exceptions.ValidationException;
+
+import liquibase.util.StringUtil;
+
+public class QueryShape {
+
+    private String name;
+    private String sql;
+    private List<Object> parameters = new ArrayList<Object>();
+    private IndexDefinition index;
+
+    public QueryShape() {
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * The query as the application sends it, with {@code ?} placeholders.
+     * The table of {@link #getIndex()} must not be aliased.
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    public void setSql(String sql) {
+        this.sql = sql;
+    }
+
+    /**
+     * Sample values bound to the placeholders when the query is explained.
+     * Missing values are bound as empty strings.
+     */
+    public List<Object> getParameters() {
+        return parameters;
+    }
+
+    public void setParameters(List<Object> parameters) {
+        this.parameters = parameters;
+    }
+
+    /**
+     * The index the query is expected to use.
+     */
+    public IndexDefinition getIndex() {
+        return index;
+    }
+
+    public void setIndex(IndexDefinition index) {
+        this.index = index;
+    }
+
+    public void validate() throws ValidationException {
+        if (StringUtil.isEmpty(this.name)) {
+            throw new ValidationException("Missing required field: 'name'");
+        }
+        if (StringUtil.isEmpty(this.sql)) {
+            throw new ValidationException(String.format("Missing required field: 'sql' of query shape '%s'",
+                    this.name));
+        }
+        if (this.index == null) {
+            throw new ValidationException(String.format("Missing required field: 'index' of query shape '%s'",
+                    this.name));
+        }
+        this.index.validate();
+    }
+};
@@ -0,0 +1,31 @@
+package com.silkroad.db.deploy.Types;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.silkroad.db.deploy.Exceptions.ValidationException;
+
+public class QueryShapeManifest {
+
+    private List<QueryShape> queryShapes = new ArrayList<QueryShape>();
+
+    public QueryShapeManifest() {
+    }
+
+    public List<QueryShape> getQueryShapes() {
+        return queryShapes;
+    }
+
+    public void setQueryShapes(List<QueryShape> queryShapes) {
+        this.queryShapes = queryShapes;
+    }
+
+    public void validate() throws ValidationException {
+        if (this.queryShapes == null) {
+            throw new ValidationException("Missing required field: 'queryShapes'");
+        }
+        for (QueryShape queryShape : this.queryShapes) {
+            queryShape.validate();
+        }
+    }
+};
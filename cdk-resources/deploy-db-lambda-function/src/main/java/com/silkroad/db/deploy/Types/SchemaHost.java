@@ -0,0 +1,69 @@
+package com.silkroad.db.deploy.Types;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.silkroad.db.deploy.Exceptions.ValidationException;
+
+/**
+ * The databases of one RDS host whose schemas are verified together, see
+ * {@link com.silkroad.db.deploy.Verify.SchemaVerifier}.
+ */
+public class SchemaHost {
+
+    private RdsHostInfo rdsHost;
+    private RdsAdminSecret rdsAdminSecret;
+    private List<String> databases = new ArrayList<String>();
+
+    public SchemaHost() {
+    }
+
+    public SchemaHost(RdsHostInfo rdsHost, RdsAdminSecret rdsAdminSecret, List<String> databases) {
+        this.rdsHost = rdsHost;
+        this.rdsAdminSecret = rdsAdminSecret;
+        this.databases = databases;
+    }
+
+    public RdsHostInfo getRdsHost() {
+        return rdsHost;
+    }
+
+    public void setRdsHost(RdsHostInfo rdsHost) {
+        this.rdsHost = rdsHost;
+    }
+
+    public RdsAdminSecret getRdsAdminSecret() {
+        return rdsAdminSecret;
+    }
+
+    public void setRdsAdminSecret(RdsAdminSecret rdsAdminSecret) {
+        this.rdsAdminSecret = rdsAdminSecret;
+    }
+
+    /**
+     * Databases to verify. When empty, every database of the host with a
+     * {@code DATABASECHANGELOG} table is verified.
+     */
+    public List<String> getDatabases() {
+        return databases;
+    }
+
+    public void setDatabases(List<String> databases) {
+        this.databases = databases;
+    }
+
+    public String getHostKey() {
+        return this.rdsHost.getHostname() + ":" + this.rdsHost.getPort();
+    }
+
+    public void validate() throws ValidationException {
+        if (this.rdsHost == null) {
+            throw new ValidationException("Missing required field: 'rdsHost'");
+        }
+        this.rdsHost.validate();
+        if (this.rdsAdminSecret == null) {
+            throw new ValidationException("Missing required field: 'rdsAdminSecret'");
+        }
+        this.rdsAdminSecret.validate();
+    }
+};
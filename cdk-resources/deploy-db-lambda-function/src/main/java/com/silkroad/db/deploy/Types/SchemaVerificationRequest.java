@@ -0,0 +1,114 @@
+package com.silkroad.db.deploy.Types;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.silkroad.db.deploy.Exceptions.ValidationException;
+
+import liquibase.util.StringUtil;
+
+/**
+ * Input of the Lambda's schema verification entry point, see
+ * {@link com.silkroad.db.deploy.LambdaHandler#verifySchema}.
+ */
+public class SchemaVerificationRequest {
+
+    /**
+     * One host and the secret of its admin user.
+     */
+    public static class Host {
+
+        private RdsHostInfo rdsHost;
+        private String rdsAdminSecretArn;
+        private List<String> databases = new ArrayList<String>();
+
+        public RdsHostInfo getRdsHost() {
+            return rdsHost;
+        }
+
+        public void setRdsHost(RdsHostInfo rdsHost) {
+            this.rdsHost = rdsHost;
+        }
+
+        public String getRdsAdminSecretArn() {
+            return rdsAdminSecretArn;
+        }
+
+        public void setRdsAdminSecretArn(String rdsAdminSecretArn) {
+            this.rdsAdminSecretArn = rdsAdminSecretArn;
+        }
+
+        /**
+         * See {@link SchemaHost#getDatabases()}.
+         */
+        public List<String> getDatabases() {
+            return databases;
+        }
+
+        public void setDatabases(List<String> databases) {
+            this.databases = databases;
+        }
+    }
+
+    private String region;
+    private boolean isDebug = false;
+    private String expectedSchemaHash;
+    private List<Host> hosts = new ArrayList<Host>();
+
+    public SchemaVerificationRequest() {
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    public void setRegion(String region) {
+        this.region = region;
+    }
+
+    public boolean isDebug() {
+        return isDebug;
+    }
+
+    public void setDebug(boolean isDebug) {
+        this.isDebug = isDebug;
+    }
+
+    /**
+     * Schema hash every database must have. When not set, the hash most
+     * databases have is expected.
+     */
+    public String getExpectedSchemaHash() {
+        return expectedSchemaHash;
+    }
+
+    public void setExpectedSchemaHash(String expectedSchemaHash) {
+        this.expectedSchemaHash = expectedSchemaHash;
+    }
+
+    public List<Host> getHosts() {
+        return hosts;
+    }
+
+    public void setHosts(List<Host> hosts) {
+        this.hosts = hosts;
+    }
+
+    public void validate() throws ValidationException {
+        if (StringUtil.isEmpty(this.region)) {
+            throw new ValidationException("Missing required field: 'region'");
+        }
+        if (this.hosts == null || this.hosts.isEmpty()) {
+            throw new ValidationException("Missing required field: 'hosts'");
+        }
+        for (Host host : this.hosts) {
+            if (host.rdsHost == null) {
+                throw new ValidationException("Missing required field: 'hosts[].rdsHost'");
+            }
+            host.rdsHost.validate();
+            if (StringUtil.isEmpty(host.rdsAdminSecretArn)) {
+                throw new ValidationException("Missing required field: 'hosts[].rdsAdminSecretArn'");
+            }
+        }
+    }
+};
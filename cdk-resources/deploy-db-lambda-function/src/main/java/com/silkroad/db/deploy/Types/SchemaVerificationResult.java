@@ -0,0 +1,66 @@
+package com.silkroad.db.deploy.Types;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SchemaVerificationResult {
+
+    private final String databaseName;
+    private final String hostKey;
+    private final String schemaHash;
+    private final int tableCount;
+    private boolean matches;
+    private List<String> driftedTables = new ArrayList<String>();
+
+    public SchemaVerificationResult(String databaseName, String hostKey, String schemaHash, int tableCount) {
+        this.databaseName = databaseName;
+        this.hostKey = hostKey;
+        this.schemaHash = schemaHash;
+        this.tableCount = tableCount;
+    }
+
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    public String getHostKey() {
+        return hostKey;
+    }
+
+    public String getName() {
+        return this.databaseName + "@" + this.hostKey;
+    }
+
+    /**
+     * Canonical hash of the tables, columns, indexes and constraints, or
+     * {@code null} when the database has no tables or does not exist.
+     */
+    public String getSchemaHash() {
+        return schemaHash;
+    }
+
+    public int getTableCount() {
+        return tableCount;
+    }
+
+    public boolean isMatches() {
+        return matches;
+    }
+
+    public void setMatches(boolean matches) {
+        this.matches = matches;
+    }
+
+    /**
+     * Tables that differ from, are missing from or are not in a database
+     * with the expected hash. Empty when no verified database has the
+     * expected hash to compare with.
+     */
+    public List<String> getDriftedTables() {
+        return driftedTables;
+    }
+
+    public void setDriftedTables(List<String> driftedTables) {
+        this.driftedTables = driftedTables;
+    }
+};
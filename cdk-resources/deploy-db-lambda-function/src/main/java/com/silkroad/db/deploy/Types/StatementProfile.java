@@ -0,0 +1,110 @@
+package com.silkroad.db.deploy.Types;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One statement, or one batch of statements, recorded by the
+ * {@link com.silkroad.db.deploy.Profile.StatementProfiler}.
+ */
+public class StatementProfile {
+
+    private String sql;
+    private int statementCount = 1;
+    private long durationMillis;
+    private Long rowsAffected;
+    private Long lockWaitMicros;
+    private Long rowsExamined;
+    private boolean failed;
+    private List<String> explain = new ArrayList<String>();
+
+    public StatementProfile() {
+    }
+
+    /**
+     * Statement text with secrets redacted and whitespace collapsed,
+     * truncated when long. Batches show their first statement.
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    public void setSql(String sql) {
+        this.sql = sql;
+    }
+
+    public int getStatementCount() {
+        return statementCount;
+    }
+
+    public void setStatementCount(int statementCount) {
+        this.statementCount = statementCount;
+    }
+
+    /**
+     * Time the call blocked the client, round trip included.
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * {@code null} for queries.
+     */
+    public Long getRowsAffected() {
+        return rowsAffected;
+    }
+
+    public void setRowsAffected(Long rowsAffected) {
+        this.rowsAffected = rowsAffected;
+    }
+
+    /**
+     * {@code LOCK_TIME} of the statement in {@code performance_schema}, or
+     * {@code null} when it is not available. For a batch, the lock time of
+     * the last statement sent.
+     */
+    public Long getLockWaitMicros() {
+        return lockWaitMicros;
+    }
+
+    public void setLockWaitMicros(Long lockWaitMicros) {
+        this.lockWaitMicros = lockWaitMicros;
+    }
+
+    /**
+     * {@code ROWS_EXAMINED} of the statement in {@code performance_schema},
+     * or {@code null} when it is not available.
+     */
+    public Long getRowsExamined() {
+        return rowsExamined;
+    }
+
+    public void setRowsExamined(Long rowsExamined) {
+        this.rowsExamined = rowsExamined;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    public void setFailed(boolean failed) {
+        this.failed = failed;
+    }
+
+    /**
+     * {@code EXPLAIN} rows of a slow statement, one line per row. Empty
+     * for fast statements and for statements that cannot be explained.
+     */
+    public List<String> getExplain() {
+        return explain;
+    }
+
+    public void setExplain(List<String> explain) {
+        this.explain = explain;
+    }
+}
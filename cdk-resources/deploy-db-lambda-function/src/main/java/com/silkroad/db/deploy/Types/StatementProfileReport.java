@@ -0,0 +1,78 @@
+package com.silkroad.db.deploy.Types;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Summary of a profiled run with its slowest statements, see
+ * {@link com.silkroad.db.deploy.Profile.StatementProfiler#getReport()}.
+ */
+public class StatementProfileReport {
+
+    private long statementCount;
+    private long totalMillis;
+    private long totalLockWaitMicros;
+    private long slowStatementCount;
+    private long slowThresholdMillis;
+    private List<StatementProfile> slowest = new ArrayList<StatementProfile>();
+
+    public StatementProfileReport() {
+    }
+
+    public long getStatementCount() {
+        return statementCount;
+    }
+
+    public void setStatementCount(long statementCount) {
+        this.statementCount = statementCount;
+    }
+
+    /**
+     * Sum of the durations of all statements.
+     */
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    public void setTotalMillis(long totalMillis) {
+        this.totalMillis = totalMillis;
+    }
+
+    public long getTotalLockWaitMicros() {
+        return totalLockWaitMicros;
+    }
+
+    public void setTotalLockWaitMicros(long totalLockWaitMicros) {
+        this.totalLockWaitMicros = totalLockWaitMicros;
+    }
+
+    /**
+     * Number of statements that took at least {@link #getSlowThresholdMillis()}.
+     */
+    public long getSlowStatementCount() {
+        return slowStatementCount;
+    }
+
+    public void setSlowStatementCount(long slowStatementCount) {
+        this.slowStatementCount = slowStatementCount;
+    }
+
+    public long getSlowThresholdMillis() {
+        return slowThresholdMillis;
+    }
+
+    public void setSlowThresholdMillis(long slowThresholdMillis) {
+        this.slowThresholdMillis = slowThresholdMillis;
+    }
+
+    /**
+     * The slowest statements, slowest first.
+     */
+    public List<StatementProfile> getSlowest() {
+        return slowest;
+    }
+
+    public void setSlowest(List<StatementProfile> slowest) {
+        this.slowest = slowest;
+    }
+}
@@ -0,0 +1,118 @@
+package com.silkroad.db.deploy.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+/**
+ * Hands log lines to a background thread that drains them in batches into
+ * the {@link LambdaLogger}, so the migration never waits on log I/O. Each
+ * line is still written with its own {@code log} call to remain a separate
+ * CloudWatch event.
+ *
+ * Lambda freezes the process as soon as the handler returns, so the handler
+ * must {@link #close()} (or at least {@link #flush()}) the writer before
+ * returning or throwing.
+ */
+public class AsyncLogWriter implements ILogWriter, AutoCloseable {
+
+    private static final int MAX_BATCH_SIZE = 256;
+    private static final String FLUSH_MARKER = new String("flush");
+
+    private final LambdaLogger lambdaLogger;
+    private final LinkedBlockingQueue<String> queue = new LinkedBlockingQueue<String>();
+    private final Thread thread;
+    private final Object flushLock = new Object();
+    private long flushRequested = 0;
+    private long flushCompleted = 0;
+    private volatile boolean closed = false;
+
+    public AsyncLogWriter(LambdaLogger lambdaLogger) {
+        this.lambdaLogger = lambdaLogger;
+        this.thread = new Thread(this::drain, "log-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    @Override
+    public void write(String line) {
+        if (this.closed) {
+            this.lambdaLogger.log(line);
+        } else {
+            this.queue.add(line);
+        }
+    }
+
+    @Override
+    public void flush() {
+        synchronized (this.flushLock) {
+            long ticket = ++this.flushRequested;
+            this.queue.add(FLUSH_MARKER);
+            while (this.flushCompleted < ticket && this.thread.isAlive()) {
+                try {
+                    this.flushLock.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        this.flush();
+        this.closed = true;
+        this.thread.interrupt();
+        try {
+            this.thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Lines that raced with close()
+        String line;
+        while ((line = this.queue.poll()) != null) {
+            if (line != FLUSH_MARKER) {
+                this.lambdaLogger.log(line);
+            }
+        }
+    }
+
+    private void drain() {
+        List<String> batch = new ArrayList<String>(MAX_BATCH_SIZE);
+        while (!this.closed) {
+            try {
+                String first = this.queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                this.queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+            } catch (InterruptedException e) {
+                // Closed
+            }
+
+            int flushes = 0;
+            for (String line : batch) {
+                // Identity check: only the marker instance flushes
+                if (line == FLUSH_MARKER) {
+                    flushes++;
+                } else {
+                    this.lambdaLogger.log(line);
+                }
+            }
+            batch.clear();
+
+            if (flushes > 0) {
+                synchronized (this.flushLock) {
+                    this.flushCompleted += flushes;
+                    this.flushLock.notifyAll();
+                }
+            }
+        }
+    }
+}
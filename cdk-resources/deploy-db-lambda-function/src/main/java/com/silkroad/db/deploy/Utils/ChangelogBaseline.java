@@ -0,0 +1,119 @@
+package com.silkroad.db.deploy.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.silkroad.db.deploy.Types.*;
+
+/**
+ * Squashed baseline of the bundled changelog: the SQL of its leading
+ * changesets concatenated into one script, generated next to the
+ * {@link ChangelogIndex} manifest at build time.
+ *
+ * An empty database gets the baseline applied in a few batched round trips
+ * and the covered changesets recorded as executed, instead of Liquibase
+ * running them one by one; only the changesets after the baseline are then
+ * replayed. The manifest tells how many changesets the baseline covers and
+ * which one is the last.
+ *
+ * The baseline stops at the first changeset that could behave differently
+ * when batched or that Liquibase may skip or re-run: changesets with
+ * contexts, labels (e.g. online changesets), a dbms filter, runAlways,
+ * runOnChange, failOnError=false, or SQL that is not split on ';'.
+ */
+public class ChangelogBaseline {
+
+    public static final String RESOURCE_NAME = "db/changelog.baseline.sql";
+
+    /**
+     * Writes the baseline of {@code manifest} to {@code output} and records
+     * what it covers on the manifest. Nothing is written when not even the
+     * first changeset can be covered.
+     *
+     * @return the number of changesets covered
+     */
+    public static int write(ChangelogManifest manifest, Path output) throws IOException {
+        int count = 0;
+        while (count < manifest.getChangeSets().size() && isCoverable(manifest.getChangeSets().get(count))) {
+            count++;
+        }
+
+        manifest.setBaselineChangeSetCount(count);
+        if (count == 0) {
+            manifest.setBaselineLastChangeSet(null);
+            Files.deleteIfExists(output);
+            return 0;
+        }
+
+        ManifestChangeSet last = manifest.getChangeSets().get(count - 1);
+        String lastName = last.getFilePath() + "::" + last.getId() + "::" + last.getAuthor();
+        manifest.setBaselineLastChangeSet(lastName);
+
+        try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            writer.write("-- Baseline of " + manifest.getChangeLogFile() + ", generated at build time\n");
+            writer.write("-- Covers " + count + " changesets up to " + lastName + "\n");
+            for (int i = 0; i < count; i++) {
+                ManifestChangeSet changeSet = manifest.getChangeSets().get(i);
+                writer.write("\n-- Changeset " + changeSet.getFilePath() + "::" + changeSet.getId() + "::"
+                        + changeSet.getAuthor() + "\n");
+                for (ManifestChange change : changeSet.getChanges()) {
+                    writer.write(change.getSql().trim());
+                    // On its own line, so a trailing line comment cannot swallow it
+                    writer.write("\n;\n");
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Opens the baseline bundled with the application, or returns
+     * {@code null} when there is none.
+     */
+    public static Reader open() {
+        InputStream is = ChangelogBaseline.class.getClassLoader().getResourceAsStream(RESOURCE_NAME);
+        return is != null ? new InputStreamReader(is, StandardCharsets.UTF_8) : null;
+    }
+
+    private static boolean isCoverable(ManifestChangeSet changeSet) {
+        if (changeSet.isAlwaysRun() || changeSet.isRunOnChange()
+                || Boolean.FALSE.equals(changeSet.getFailOnError())
+                || !isEmpty(changeSet.getContexts())
+                || !isEmpty(changeSet.getLabels())
+                || !isMySql(changeSet.getDbms())
+                || changeSet.getChanges().isEmpty()) {
+            return false;
+        }
+        for (ManifestChange change : changeSet.getChanges()) {
+            if (Boolean.FALSE.equals(change.getSplitStatements())
+                    || !(isEmpty(change.getEndDelimiter()) || ";".equals(change.getEndDelimiter()))
+                    || !isMySql(change.getDbms())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isMySql(String dbms) {
+        if (isEmpty(dbms)) {
+            return true;
+        }
+        for (String name : dbms.split(",")) {
+            String trimmed = name.trim();
+            if (trimmed.equals("mysql") || trimmed.equals("all")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
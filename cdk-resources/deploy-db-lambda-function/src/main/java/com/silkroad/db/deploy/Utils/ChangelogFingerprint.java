@@ -0,0 +1,98 @@
+package com.silkroad.db.deploy.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * SHA-256 fingerprint of the bundled changelog ({@code db/changelog-root.xml}
+ * and everything under {@code db/migration}), reference data
+ * ({@code db/data}) and the hot query shapes checked after a migration
+ * ({@code db/query-shapes.json}).
+ *
+ * The fingerprint is computed once at build time (see the
+ * {@code changelog-fingerprint} execution in the pom) and shipped as the
+ * {@code db/changelog.fingerprint} resource so the Lambda never has to scan
+ * the jar to know whether the changelog changed.
+ */
+public class ChangelogFingerprint {
+
+    public static final String RESOURCE_NAME = "db/changelog.fingerprint";
+
+    private static final String[] ROOTS = { "db/changelog-root.xml", "db/migration", "db/data",
+            "db/query-shapes.json" };
+
+    private static String cachedFingerprint;
+
+    /**
+     * Build-time entry point: {@code args[0]} is the output classes directory.
+     */
+    public static void main(String[] args) throws IOException {
+        Path classesDir = Paths.get(args[0]);
+        String fingerprint = compute(classesDir);
+        Path output = classesDir.resolve(RESOURCE_NAME);
+        Files.write(output, fingerprint.getBytes(StandardCharsets.UTF_8));
+        System.out.println("Changelog fingerprint: " + fingerprint + " -> " + output);
+    }
+
+    /**
+     * Returns the fingerprint bundled with the application, or {@code null} when
+     * the resource is missing (e.g. when running from an IDE without the Maven
+     * build).
+     */
+    public static synchronized String load() throws IOException {
+        if (cachedFingerprint == null) {
+            InputStream is = ChangelogFingerprint.class.getClassLoader().getResourceAsStream(RESOURCE_NAME);
+            if (is == null) {
+                return null;
+            }
+            try {
+                cachedFingerprint = new String(is.readAllBytes(), StandardCharsets.UTF_8).trim();
+            } finally {
+                is.close();
+            }
+        }
+        return cachedFingerprint;
+    }
+
+    public static String compute(Path classesDir) throws IOException {
+        MessageDigest digest = Sha256.newDigest();
+        for (String root : ROOTS) {
+            Path rootPath = classesDir.resolve(root);
+            if (!Files.exists(rootPath)) {
+                continue;
+            }
+
+            List<Path> files;
+            try (Stream<Path> stream = Files.walk(rootPath)) {
+                files = stream
+                        .filter(Files::isRegularFile)
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+
+            for (Path file : files) {
+                String relativePath = classesDir.relativize(file).toString().replace('\\', '/');
+                digest.update(relativePath.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(normalizeLineEndings(Files.readAllBytes(file)));
+                digest.update((byte) 0);
+            }
+        }
+        return Sha256.toHex(digest.digest());
+    }
+
+    private static byte[] normalizeLineEndings(byte[] bytes) {
+        // Liquibase checksums ignore line endings, so a CRLF checkout must not change the fingerprint
+        return new String(bytes, StandardCharsets.UTF_8)
+                .replace("\r\n", "\n")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+}
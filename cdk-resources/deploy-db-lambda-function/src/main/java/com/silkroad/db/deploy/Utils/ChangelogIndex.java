@@ -0,0 +1,250 @@
+package com.silkroad.db.deploy.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.silkroad.db.deploy.Types.*;
+
+import liquibase.Labels;
+import liquibase.change.Change;
+import liquibase.change.CheckSum;
+import liquibase.change.core.RawSQLChange;
+import liquibase.changelog.ChangeLogParameters;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.exception.LiquibaseException;
+import liquibase.parser.ChangeLogParserFactory;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * Pre-indexed form of the bundled changelog.
+ *
+ * At build time (see the {@code changelog-manifest} execution in the pom) the
+ * changelog is parsed once and every changeset is written, in execution
+ * order and with its checksum, to the {@code db/changelog.manifest.json}
+ * resource. At run time {@link #loadChangeLog(String, ResourceAccessor)}
+ * rebuilds the {@link DatabaseChangeLog} from that manifest, so Liquibase
+ * neither scans {@code db/migration} nor parses or checksums the SQL files.
+ *
+ * Only formatted SQL changesets without preconditions are indexed. For any
+ * other changelog no manifest is written and the changelog is parsed as
+ * usual.
+ */
+public class ChangelogIndex {
+
+    public static final String RESOURCE_NAME = "db/changelog.manifest.json";
+
+    private static ChangelogManifest cachedManifest;
+    private static boolean loaded = false;
+
+    /**
+     * Build-time entry point: {@code args[0]} is the output classes directory
+     * and {@code args[1]} the changelog to index.
+     */
+    public static void main(String[] args) throws IOException, LiquibaseException {
+        Path classesDir = Paths.get(args[0]);
+        String changeLogFile = args[1];
+        Path output = classesDir.resolve(RESOURCE_NAME);
+
+        ClassLoader classLoader = new URLClassLoader(new URL[] { classesDir.toUri().toURL() },
+                ChangelogIndex.class.getClassLoader());
+        ResourceAccessor resourceAccessor = new ClassLoaderResourceAccessor(classLoader);
+        DatabaseChangeLog changeLog = parse(changeLogFile, resourceAccessor);
+
+        ChangelogManifest manifest;
+        try {
+            manifest = index(changeLogFile, changeLog);
+        } catch (UnsupportedOperationException e) {
+            // Not fatal: Migrator parses the changelog when there is no manifest
+            Files.deleteIfExists(output);
+            Files.deleteIfExists(classesDir.resolve(ChangelogBaseline.RESOURCE_NAME));
+            System.out.println("WARN: Changelog manifest not generated, " + e.getMessage());
+            return;
+        }
+
+        int baselineCount = ChangelogBaseline.write(manifest, classesDir.resolve(ChangelogBaseline.RESOURCE_NAME));
+        try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            new GsonBuilder().create().toJson(manifest, writer);
+        }
+        System.out.println(String.format("Changelog manifest: %d changesets -> %s",
+                manifest.getChangeSets().size(), output));
+        System.out.println(String.format("Changelog baseline: %d changesets%s", baselineCount,
+                baselineCount > 0 ? " up to " + manifest.getBaselineLastChangeSet() : ""));
+    }
+
+    /**
+     * Returns the manifest bundled with the application, or {@code null} when
+     * the resource is missing (e.g. when running from an IDE without the Maven
+     * build, or when the changelog could not be indexed).
+     */
+    public static synchronized ChangelogManifest load() throws IOException {
+        if (!loaded) {
+            InputStream is = ChangelogIndex.class.getClassLoader().getResourceAsStream(RESOURCE_NAME);
+            if (is != null) {
+                try (Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8)) {
+                    cachedManifest = new Gson().fromJson(reader, ChangelogManifest.class);
+                }
+            }
+            loaded = true;
+        }
+        return cachedManifest;
+    }
+
+    /**
+     * Returns the changelog built from the bundled manifest when it indexes
+     * {@code changeLogFile}, and parses {@code changeLogFile} otherwise.
+     */
+    public static DatabaseChangeLog loadChangeLog(String changeLogFile, ResourceAccessor resourceAccessor)
+            throws IOException, LiquibaseException {
+        ChangelogManifest manifest = load();
+        if (manifest != null && changeLogFile.equals(manifest.getChangeLogFile())) {
+            return toDatabaseChangeLog(manifest);
+        }
+        return parse(changeLogFile, resourceAccessor);
+    }
+
+    public static ChangelogManifest index(String changeLogFile, DatabaseChangeLog changeLog) {
+        ChangelogManifest manifest = new ChangelogManifest();
+        manifest.setChangeLogFile(changeLogFile);
+
+        for (ChangeSet changeSet : changeLog.getChangeSets()) {
+            String name = changeSet.toString(false);
+            if (changeSet.getPreconditions() != null
+                    && !changeSet.getPreconditions().getNestedPreconditions().isEmpty()) {
+                throw new UnsupportedOperationException(String.format("changeset '%s' has preconditions", name));
+            }
+            if (changeSet.isIgnore() || !changeSet.getSqlVisitors().isEmpty()) {
+                throw new UnsupportedOperationException(String.format(
+                        "changeset '%s' uses 'ignore' or modifySql", name));
+            }
+
+            ManifestChangeSet entry = new ManifestChangeSet();
+            entry.setId(changeSet.getId());
+            entry.setAuthor(changeSet.getAuthor());
+            entry.setFilePath(changeSet.getFilePath());
+            entry.setCheckSum(changeSet.generateCheckSum().toString());
+            for (CheckSum validCheckSum : changeSet.getValidCheckSums()) {
+                entry.getValidCheckSums().add(validCheckSum.toString());
+            }
+            entry.setAlwaysRun(changeSet.isAlwaysRun());
+            entry.setRunOnChange(changeSet.isRunOnChange());
+            entry.setRunInTransaction(changeSet.isRunInTransaction());
+            entry.setFailOnError(changeSet.getFailOnError());
+            if (changeSet.getContextFilter() != null && !changeSet.getContextFilter().isEmpty()) {
+                entry.setContexts(changeSet.getContextFilter().toString());
+            }
+            if (changeSet.getLabels() != null && !changeSet.getLabels().isEmpty()) {
+                entry.setLabels(changeSet.getLabels().toString());
+            }
+            if (changeSet.getDbmsSet() != null && !changeSet.getDbmsSet().isEmpty()) {
+                entry.setDbms(String.join(",", changeSet.getDbmsSet()));
+            }
+            entry.setComments(changeSet.getComments());
+
+            for (Change change : changeSet.getChanges()) {
+                RawSQLChange sqlChange = toSqlChange(name, change);
+                ManifestChange manifestChange = new ManifestChange();
+                manifestChange.setSql(sqlChange.getSql());
+                manifestChange.setSplitStatements(sqlChange.isSplitStatements());
+                manifestChange.setStripComments(sqlChange.isStripComments());
+                manifestChange.setEndDelimiter(sqlChange.getEndDelimiter());
+                manifestChange.setDbms(sqlChange.getDbms());
+                entry.getChanges().add(manifestChange);
+            }
+            for (Change change : changeSet.getRollback().getChanges()) {
+                entry.getRollbackSql().add(toSqlChange(name, change).getSql());
+            }
+
+            manifest.getChangeSets().add(entry);
+        }
+        return manifest;
+    }
+
+    public static DatabaseChangeLog toDatabaseChangeLog(ChangelogManifest manifest) {
+        DatabaseChangeLog changeLog = new DatabaseChangeLog(manifest.getChangeLogFile());
+        changeLog.setChangeLogParameters(new ChangeLogParameters());
+
+        // Changesets belong to the changelog of the file they were included from
+        Map<String, DatabaseChangeLog> fileChangeLogs = new HashMap<String, DatabaseChangeLog>();
+        for (ManifestChangeSet entry : manifest.getChangeSets()) {
+            DatabaseChangeLog fileChangeLog = fileChangeLogs.computeIfAbsent(entry.getFilePath(), filePath -> {
+                DatabaseChangeLog child = new DatabaseChangeLog(filePath);
+                child.setChangeLogParameters(changeLog.getChangeLogParameters());
+                child.setParentChangeLog(changeLog);
+                return child;
+            });
+
+            ChangeSet changeSet = new IndexedChangeSet(entry, fileChangeLog);
+            for (String validCheckSum : entry.getValidCheckSums()) {
+                changeSet.addValidCheckSum(validCheckSum);
+            }
+            changeSet.setFailOnError(entry.getFailOnError());
+            changeSet.setLabels(new Labels(entry.getLabels()));
+            changeSet.setComments(entry.getComments());
+
+            for (ManifestChange manifestChange : entry.getChanges()) {
+                RawSQLChange change = new RawSQLChange(manifestChange.getSql());
+                change.setSplitStatements(manifestChange.getSplitStatements());
+                change.setStripComments(manifestChange.getStripComments());
+                change.setEndDelimiter(manifestChange.getEndDelimiter());
+                change.setDbms(manifestChange.getDbms());
+                changeSet.addChange(change);
+            }
+            for (String rollbackSql : entry.getRollbackSql()) {
+                changeSet.addRollBackSQL(rollbackSql);
+            }
+
+            fileChangeLog.addChangeSet(changeSet);
+            changeLog.addChangeSet(changeSet);
+        }
+        return changeLog;
+    }
+
+    /**
+     * A changeset whose checksum was computed when the manifest was built.
+     */
+    private static class IndexedChangeSet extends ChangeSet {
+
+        private final CheckSum checkSum;
+
+        IndexedChangeSet(ManifestChangeSet entry, DatabaseChangeLog changeLog) {
+            super(entry.getId(), entry.getAuthor(), entry.isAlwaysRun(), entry.isRunOnChange(), entry.getFilePath(),
+                    entry.getContexts(), entry.getDbms(), entry.isRunInTransaction(), changeLog);
+            this.checkSum = CheckSum.parse(entry.getCheckSum());
+        }
+
+        @Override
+        public CheckSum generateCheckSum() {
+            return this.checkSum;
+        }
+    }
+
+    private static RawSQLChange toSqlChange(String changeSetName, Change change) {
+        if (!(change instanceof RawSQLChange)) {
+            throw new UnsupportedOperationException(String.format(
+                    "changeset '%s' is not a formatted SQL changeset", changeSetName));
+        }
+        return (RawSQLChange) change;
+    }
+
+    private static DatabaseChangeLog parse(String changeLogFile, ResourceAccessor resourceAccessor)
+            throws LiquibaseException {
+        return ChangeLogParserFactory.getInstance()
+                .getParser(changeLogFile, resourceAccessor)
+                .parse(changeLogFile, new ChangeLogParameters(), resourceAccessor);
+    }
+}
@@ -0,0 +1,105 @@
+package com.silkroad.db.deploy.Utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Progress of work that spans several runs, kept in the migrated database
+ * ({@code DATABASECHANGELOGCHECKPOINT}) so a later invocation can pick up
+ * where a suspended one stopped. A checkpoint is a step number plus an
+ * optional position within that step, e.g. the last primary key copied.
+ */
+public class CheckpointStore {
+
+    private static final String TABLE = "DATABASECHANGELOGCHECKPOINT";
+
+    // MySQL error code for "Table doesn't exist"
+    private static final int ER_NO_SUCH_TABLE = 1146;
+
+    private final Connection connection;
+
+    public CheckpointStore(Connection connection) {
+        this.connection = connection;
+    }
+
+    public static class Checkpoint {
+        private final int step;
+        private final String position;
+
+        public Checkpoint(int step, String position) {
+            this.step = step;
+            this.position = position;
+        }
+
+        public int getStep() {
+            return step;
+        }
+
+        public String getPosition() {
+            return position;
+        }
+    }
+
+    /**
+     * Returns the checkpoint saved under {@code name}, or {@code null} when
+     * there is none.
+     */
+    public Checkpoint load(String name) throws SQLException {
+        String sql = "SELECT STEP, POSITION FROM " + TABLE + " WHERE NAME = ?";
+        try (PreparedStatement statement = this.connection.prepareStatement(sql)) {
+            statement.setString(1, name);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? new Checkpoint(resultSet.getInt(1), resultSet.getString(2)) : null;
+            }
+        } catch (SQLException e) {
+            if (e.getErrorCode() == ER_NO_SUCH_TABLE) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    public void save(String name, int step, String position) throws SQLException {
+        try (Statement statement = this.connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+                    + "NAME varchar(512) NOT NULL, "
+                    + "STEP int NOT NULL, "
+                    + "POSITION varchar(1024) NULL, "
+                    + "DATEUPDATED datetime NOT NULL, "
+                    + "PRIMARY KEY (NAME))");
+        }
+
+        String sql = "INSERT INTO " + TABLE + " (NAME, STEP, POSITION, DATEUPDATED) VALUES (?, ?, ?, NOW()) "
+                + "ON DUPLICATE KEY UPDATE STEP = VALUES(STEP), POSITION = VALUES(POSITION), "
+                + "DATEUPDATED = VALUES(DATEUPDATED)";
+        try (PreparedStatement statement = this.connection.prepareStatement(sql)) {
+            statement.setString(1, name);
+            statement.setInt(2, step);
+            statement.setString(3, position);
+            statement.executeUpdate();
+        }
+        this.commitIfNeeded();
+    }
+
+    public void clear(String name) throws SQLException {
+        String sql = "DELETE FROM " + TABLE + " WHERE NAME = ?";
+        try (PreparedStatement statement = this.connection.prepareStatement(sql)) {
+            statement.setString(1, name);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            if (e.getErrorCode() != ER_NO_SUCH_TABLE) {
+                throw e;
+            }
+        }
+        this.commitIfNeeded();
+    }
+
+    private void commitIfNeeded() throws SQLException {
+        if (!this.connection.getAutoCommit()) {
+            this.connection.commit();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.silkroad.db.deploy.Utils;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Objects;
+
+import com.silkroad.db.deploy.Exceptions.AppException;
+import com.silkroad.db.deploy.Types.*;
+
+/**
+ * One admin connection to an RDS host, shared by the initialization script
+ * and the migration scripts and kept open across warm Lambda invocations.
+ *
+ * The connection is opened without a default database; callers switch to the
+ * schema they need through {@link #getConnection(String, ILogger)}. Before a
+ * connection is reused it is checked with {@link Connection#isValid(int)} and
+ * transparently reopened when the server dropped it.
+ */
+public class ConnectionSession implements AutoCloseable {
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    private final RdsHostInfo rdsHostInfo;
+    private final RdsAdminSecret rdsAdminSecret;
+
+    private Connection connection;
+    private int handshakeCount = 0;
+    private long totalHandshakeMillis = 0;
+    private int reconnectCount = 0;
+
+    public ConnectionSession(RdsHostInfo rdsHostInfo, RdsAdminSecret rdsAdminSecret) {
+        this.rdsHostInfo = rdsHostInfo;
+        this.rdsAdminSecret = rdsAdminSecret;
+    }
+
+    /**
+     * Whether this session was opened for the given host and credentials, i.e.
+     * whether it can be reused for them.
+     */
+    public boolean matches(RdsHostInfo rdsHostInfo, RdsAdminSecret rdsAdminSecret) {
+        return Objects.equals(this.rdsHostInfo.getHostname(), rdsHostInfo.getHostname())
+                && this.rdsHostInfo.getPort() == rdsHostInfo.getPort()
+                && Objects.equals(this.rdsAdminSecret.getUsername(), rdsAdminSecret.getUsername())
+                && Objects.equals(this.rdsAdminSecret.getPassword(), rdsAdminSecret.getPassword());
+    }
+
+    /**
+     * Returns the session connection switched to {@code catalog}. A
+     * {@code null} catalog leaves the current database unchanged.
+     */
+    public synchronized Connection getConnection(String catalog, ILogger logger) throws SQLException, AppException {
+        if (this.connection != null) {
+            long startTime = System.nanoTime();
+            boolean valid = !this.connection.isClosed() && this.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+            long validationMillis = (System.nanoTime() - startTime) / 1_000_000;
+
+            if (valid) {
+                logger.debug(() -> String.format("Reusing database connection (validated in %d ms)", validationMillis));
+            } else {
+                logger.info("Database connection is no longer valid, reconnecting...");
+                this.discard();
+                this.reconnectCount++;
+            }
+        }
+
+        if (this.connection == null) {
+            this.open(logger);
+        }
+
+        // A previous run (e.g. Liquibase) may have left the connection in manual commit mode
+        if (!this.connection.getAutoCommit()) {
+            this.connection.setAutoCommit(true);
+        }
+        if (catalog != null && !catalog.equals(this.connection.getCatalog())) {
+            this.connection.setCatalog(catalog);
+        }
+        return this.connection;
+    }
+
+    public synchronized int getHandshakeCount() {
+        return this.handshakeCount;
+    }
+
+    public synchronized long getTotalHandshakeMillis() {
+        return this.totalHandshakeMillis;
+    }
+
+    /**
+     * Number of times a connection found invalid on reuse was reopened.
+     */
+    public synchronized int getReconnectCount() {
+        return this.reconnectCount;
+    }
+
+    /**
+     * Closes the current connection, e.g. after a failure left it in an
+     * unknown state. The next {@link #getConnection(String, ILogger)} call
+     * opens a new one.
+     */
+    public synchronized void discard() {
+        if (this.connection != null) {
+            try {
+                this.connection.close();
+            } catch (SQLException e) {
+                // Already broken, nothing else to do
+            }
+            this.connection = null;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        this.discard();
+    }
+
+    private void open(ILogger logger) throws SQLException, AppException {
+        // rewriteBatchedStatements=true : Send JDBC batches in as few round trips as possible
+        String endpoint = String.format(
+                "jdbc:mysql://%s:%s?rewriteBatchedStatements=true",
+                this.rdsHostInfo.getHostname(),
+                this.rdsHostInfo.getPort());
+
+        long startTime = System.nanoTime();
+        Connection newConnection = DriverManager.getConnection(
+                endpoint,
+                this.rdsAdminSecret.getUsername(),
+                this.rdsAdminSecret.getPassword());
+        long handshakeMillis = (System.nanoTime() - startTime) / 1_000_000;
+
+        if (newConnection == null) {
+            throw new AppException("Failed to open connection");
+        }
+
+        this.connection = newConnection;
+        this.handshakeCount++;
+        this.totalHandshakeMillis += handshakeMillis;
+
+        logger.info(String.format(
+                "Opened database connection to %s:%d in %d ms",
+                this.rdsHostInfo.getHostname(), this.rdsHostInfo.getPort(), handshakeMillis));
+    }
+}
@@ -1,17 +1,34 @@
 package com.silkroad.db.deploy.Utils;
 
 public class ConsoleLogger implements ILogger {
+
+    private final LogLevel minLevel;
+
     public ConsoleLogger() {
+        this(LogLevel.DEBUG);
+    }
+
+    public ConsoleLogger(LogLevel minLevel) {
+        this.minLevel = minLevel;
+    }
+
+    @Override
+    public boolean isEnabled(LogLevel level) {
+        return level.compareTo(this.minLevel) >= 0;
     }
 
     @Override
     public void debug(String message) {
-        System.out.println("DEBUG: " + message);
+        if (this.isEnabled(LogLevel.DEBUG)) {
+            System.out.println("DEBUG: " + message);
+        }
     }
 
     @Override
     public void info(String message) {
-        System.out.println("INFO: " + message);
+        if (this.isEnabled(LogLevel.INFO)) {
+            System.out.println("INFO: " + message);
+        }
     }
 
     @Override
@@ -19,4 +36,4 @@ public class ConsoleLogger implements ILogger {
         System.err.println("ERROR: " + message);
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,12 @@
+package com.silkroad.db.deploy.Utils;
+
+public interface ILogWriter {
+
+    public void write(String line);
+
+    /**
+     * Blocks until every line written so far reached its destination.
+     */
+    public default void flush() {
+    }
+}
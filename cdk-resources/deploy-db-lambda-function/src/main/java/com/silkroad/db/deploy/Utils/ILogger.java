@@ -1,5 +1,7 @@
 package com.silkroad.db.deploy.Utils;
 
+import java.util.function.Supplier;
+
 public interface ILogger {
 
     public void debug(String message);
@@ -7,4 +9,50 @@ public interface ILogger {
     public void info(String message);
 
     public void error(String message);
+
+    /**
+     * Whether messages of {@code level} are written at all. Callers building
+     * expensive messages should check this first or use
+     * {@link #debug(Supplier)}.
+     */
+    public default boolean isEnabled(LogLevel level) {
+        return true;
+    }
+
+    /**
+     * Builds the message only when debug logging is enabled.
+     */
+    public default void debug(Supplier<String> message) {
+        if (this.isEnabled(LogLevel.DEBUG)) {
+            this.debug(message.get());
+        }
+    }
+
+    /**
+     * Writes {@code message} with structured fields; {@code keyValues}
+     * alternates field names and values. Loggers without structured output
+     * append the fields as {@code key=value} pairs.
+     */
+    public default void log(LogLevel level, String message, Object... keyValues) {
+        if (!this.isEnabled(level)) {
+            return;
+        }
+
+        StringBuilder builder = new StringBuilder(message);
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            builder.append(' ').append(keyValues[i]).append('=').append(keyValues[i + 1]);
+        }
+
+        switch (level) {
+            case DEBUG:
+                this.debug(builder.toString());
+                break;
+            case INFO:
+                this.info(builder.toString());
+                break;
+            default:
+                this.error(builder.toString());
+                break;
+        }
+    }
 }
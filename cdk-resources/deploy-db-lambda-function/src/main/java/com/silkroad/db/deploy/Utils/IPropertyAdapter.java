@@ -0,0 +1,16 @@
+package com.silkroad.db.deploy.Utils;
+
+import com.silkroad.db.deploy.Exceptions.ValidationException;
+
+/**
+ * Converts one raw resource property value, as deserialized from the
+ * CloudFormation event ({@code String}, {@code Boolean}, {@code Number},
+ * {@code Map} or {@code List}), into its typed form.
+ */
+public interface IPropertyAdapter<T> {
+    /**
+     * @param value never {@code null}
+     * @throws ValidationException with a message completing "'name' ..."
+     */
+    T adapt(Object value) throws ValidationException;
+}
@@ -0,0 +1,104 @@
+package com.silkroad.db.deploy.Utils;
+
+/**
+ * Writes one JSON object per message, e.g.
+ * {@code {"level":"INFO","message":"...","table":"Tenant","rows":1000}}, so
+ * the fields can be queried with CloudWatch Logs Insights.
+ *
+ * Messages below the minimum level are dropped before anything is formatted.
+ */
+public class JsonLogger implements ILogger {
+
+    private final ILogWriter writer;
+    private volatile LogLevel minLevel;
+
+    public JsonLogger(ILogWriter writer, LogLevel minLevel) {
+        this.writer = writer;
+        this.minLevel = minLevel;
+    }
+
+    public void setMinLevel(LogLevel minLevel) {
+        this.minLevel = minLevel;
+    }
+
+    @Override
+    public boolean isEnabled(LogLevel level) {
+        return level.compareTo(this.minLevel) >= 0;
+    }
+
+    @Override
+    public void debug(String message) {
+        this.log(LogLevel.DEBUG, message);
+    }
+
+    @Override
+    public void info(String message) {
+        this.log(LogLevel.INFO, message);
+    }
+
+    @Override
+    public void error(String message) {
+        this.log(LogLevel.ERROR, message);
+    }
+
+    @Override
+    public void log(LogLevel level, String message, Object... keyValues) {
+        if (!this.isEnabled(level)) {
+            return;
+        }
+
+        StringBuilder builder = new StringBuilder(message.length() + 64);
+        builder.append("{\"level\":\"").append(level.name()).append("\",\"message\":");
+        appendString(builder, message);
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            builder.append(',');
+            appendString(builder, String.valueOf(keyValues[i]));
+            builder.append(':');
+            appendValue(builder, keyValues[i + 1]);
+        }
+        builder.append('}');
+        this.writer.write(builder.toString());
+    }
+
+    private static void appendValue(StringBuilder builder, Object value) {
+        if (value == null) {
+            builder.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            builder.append(value);
+        } else {
+            appendString(builder, value.toString());
+        }
+    }
+
+    private static void appendString(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+                    break;
+            }
+        }
+        builder.append('"');
+    }
+}
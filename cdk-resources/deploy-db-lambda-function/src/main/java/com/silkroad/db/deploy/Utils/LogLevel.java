@@ -0,0 +1,7 @@
+package com.silkroad.db.deploy.Utils;
+
+public enum LogLevel {
+    DEBUG,
+    INFO,
+    ERROR
+};
@@ -0,0 +1,56 @@
+package com.silkroad.db.deploy.Utils;
+
+import java.util.function.Supplier;
+
+public class PrefixedLogger implements ILogger {
+
+    private ILogger logger;
+    private String name;
+    private String prefix;
+
+    public PrefixedLogger(ILogger logger, String prefix) {
+        this.logger = logger;
+        this.name = prefix;
+        this.prefix = "[" + prefix + "] ";
+    }
+
+    @Override
+    public boolean isEnabled(LogLevel level) {
+        return this.logger.isEnabled(level);
+    }
+
+    @Override
+    public void debug(String message) {
+        this.logger.debug(this.prefix + message);
+    }
+
+    @Override
+    public void debug(Supplier<String> message) {
+        if (this.logger.isEnabled(LogLevel.DEBUG)) {
+            this.logger.debug(this.prefix + message.get());
+        }
+    }
+
+    @Override
+    public void info(String message) {
+        this.logger.info(this.prefix + message);
+    }
+
+    @Override
+    public void error(String message) {
+        this.logger.error(this.prefix + message);
+    }
+
+    @Override
+    public void log(LogLevel level, String message, Object... keyValues) {
+        if (!this.logger.isEnabled(level)) {
+            return;
+        }
+        // The prefix becomes a field for structured loggers
+        Object[] prefixed = new Object[keyValues.length + 2];
+        prefixed[0] = "target";
+        prefixed[1] = this.name;
+        System.arraycopy(keyValues, 0, prefixed, 2, keyValues.length);
+        this.logger.log(level, message, prefixed);
+    }
+}
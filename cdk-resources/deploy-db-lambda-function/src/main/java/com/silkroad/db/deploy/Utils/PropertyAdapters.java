@@ -0,0 +1,92 @@
+package com.silkroad.db.deploy.Utils;
+
+import java.util.Map;
+
+import com.silkroad.db.deploy.Exceptions.ValidationException;
+import com.silkroad.db.deploy.Types.RdsHostInfo;
+
+/**
+ * Adapters for the property types used by the deploy-db resource.
+ *
+ * CloudFormation passes every scalar of a custom resource as a string
+ * ({@code "3306"}, {@code "true"}), while the App and tests may pass real
+ * numbers and booleans, so the scalar adapters accept both.
+ */
+public final class PropertyAdapters {
+
+    public static final IPropertyAdapter<String> STRING = value -> {
+        if (value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return value.toString();
+        }
+        throw new ValidationException("must be a string");
+    };
+
+    public static final IPropertyAdapter<Boolean> BOOLEAN = value -> {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value instanceof String) {
+            String text = ((String) value).trim();
+            if ("true".equalsIgnoreCase(text)) {
+                return true;
+            }
+            if ("false".equalsIgnoreCase(text)) {
+                return false;
+            }
+        }
+        throw new ValidationException("must be 'true' or 'false'");
+    };
+
+    public static final IPropertyAdapter<Integer> INTEGER = value -> {
+        if (value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            if (number == Math.rint(number) && Math.abs(number) <= Integer.MAX_VALUE) {
+                return (int) number;
+            }
+        } else if (value instanceof String) {
+            try {
+                return Integer.parseInt(((String) value).trim());
+            } catch (NumberFormatException e) {
+                // Reported below
+            }
+        }
+        throw new ValidationException("must be an integer");
+    };
+
+    /**
+     * An {@code {"hostname": ..., "port": ...}} object, e.g. a CDK cluster
+     * endpoint.
+     */
+    public static final IPropertyAdapter<RdsHostInfo> RDS_HOST = value -> {
+        if (!(value instanceof Map)) {
+            throw new ValidationException("must be an object with 'hostname' and 'port'");
+        }
+        Map<?, ?> map = (Map<?, ?>) value;
+
+        Object hostname = map.get("hostname");
+        if (hostname == null || "".equals(hostname)) {
+            throw new ValidationException("is missing 'hostname'");
+        }
+        Object port = map.get("port");
+        if (port == null || "".equals(port)) {
+            throw new ValidationException("is missing 'port'");
+        }
+
+        int portNumber;
+        try {
+            portNumber = INTEGER.adapt(port);
+        } catch (ValidationException e) {
+            throw new ValidationException("has an invalid 'port': " + e.getMessage());
+        }
+        if (portNumber < 1 || portNumber > 65535) {
+            throw new ValidationException("has an invalid 'port': must be between 1 and 65535");
+        }
+        return new RdsHostInfo(STRING.adapt(hostname), portNumber);
+    };
+
+    private PropertyAdapters() {
+    }
+}
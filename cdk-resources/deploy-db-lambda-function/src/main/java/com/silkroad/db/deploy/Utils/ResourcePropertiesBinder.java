@@ -0,0 +1,87 @@
+package com.silkroad.db.deploy.Utils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import com.silkroad.db.deploy.Exceptions.ValidationException;
+import com.silkroad.db.deploy.Types.*;
+
+/**
+ * Binds the raw CloudFormation resource properties map into
+ * {@link DeploymentProperties}.
+ *
+ * The bindings (property name, adapter and setter) are built once per class
+ * load; binding an event is a single walk over them with no JSON
+ * round trip or reflection. Every problem found is recorded on the result,
+ * see {@link DeploymentProperties#validate()}.
+ */
+public final class ResourcePropertiesBinder {
+
+    private static final class Binding<T> {
+        private final String name;
+        private final boolean required;
+        private final IPropertyAdapter<T> adapter;
+        private final BiConsumer<DeploymentProperties, T> setter;
+
+        private Binding(String name, boolean required, IPropertyAdapter<T> adapter,
+                BiConsumer<DeploymentProperties, T> setter) {
+            this.name = name;
+            this.required = required;
+            this.adapter = adapter;
+            this.setter = setter;
+        }
+
+        private void bind(Map<String, Object> map, DeploymentProperties properties) {
+            Object value = map.get(this.name);
+            if (value == null || "".equals(value)) {
+                if (this.required) {
+                    properties.addError(String.format("Missing required resource property: '%s'", this.name));
+                }
+                return;
+            }
+
+            try {
+                this.setter.accept(properties, this.adapter.adapt(value));
+            } catch (ValidationException e) {
+                properties.addError(String.format("Resource property '%s' %s", this.name, e.getMessage()));
+            }
+        }
+    }
+
+    private static final List<Binding<?>> BINDINGS = Arrays.asList(
+            new Binding<Boolean>("isDebug", false, PropertyAdapters.BOOLEAN, DeploymentProperties::setDebug),
+            new Binding<Boolean>("dryRun", false, PropertyAdapters.BOOLEAN, DeploymentProperties::setDryRun),
+            new Binding<String>("region", true, PropertyAdapters.STRING, DeploymentProperties::setRegion),
+            new Binding<RdsHostInfo>("rdsHost", true, PropertyAdapters.RDS_HOST,
+                    DeploymentProperties::setRdsHost),
+            new Binding<String>("rdsAdminSecretArn", true, PropertyAdapters.STRING,
+                    DeploymentProperties::setRdsAdminSecretArn),
+            new Binding<String>("rdsAppSecretArn", true, PropertyAdapters.STRING,
+                    DeploymentProperties::setRdsAppSecretArn),
+            new Binding<String>("archiveBucket", false, PropertyAdapters.STRING,
+                    DeploymentProperties::setArchiveBucket),
+            new Binding<String>("archivePrefix", false, PropertyAdapters.STRING,
+                    DeploymentProperties::setArchivePrefix),
+            new Binding<Boolean>("createMissingIndexes", false, PropertyAdapters.BOOLEAN,
+                    DeploymentProperties::setCreateMissingIndexes),
+            new Binding<Boolean>("profileStatements", false, PropertyAdapters.BOOLEAN,
+                    DeploymentProperties::setProfileStatements),
+            new Binding<Integer>("slowStatementMillis", false, PropertyAdapters.INTEGER,
+                    DeploymentProperties::setSlowStatementMillis));
+
+    public static DeploymentProperties bind(Map<String, Object> map) {
+        DeploymentProperties properties = new DeploymentProperties();
+        if (map == null) {
+            map = Map.of();
+        }
+        for (Binding<?> binding : BINDINGS) {
+            binding.bind(map, properties);
+        }
+        return properties;
+    }
+
+    private ResourcePropertiesBinder() {
+    }
+}
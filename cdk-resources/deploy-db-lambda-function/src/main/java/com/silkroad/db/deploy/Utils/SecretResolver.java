@@ -0,0 +1,139 @@
+package com.silkroad.db.deploy.Utils;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.silkroad.db.deploy.Exceptions.AppException;
+
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.secretsmanager.SecretsManagerAsyncClient;
+import software.amazon.awssdk.services.secretsmanager.SecretsManagerAsyncClientBuilder;
+import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueRequest;
+import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueResponse;
+
+/**
+ * Resolves JSON secrets from AWS Secrets Manager through one shared async
+ * client per region, so several secrets can be fetched at the same time and
+ * the client survives warm Lambda invocations.
+ *
+ * Parsed values are cached for {@code ttlMillis}. Once the TTL expires the
+ * secret is fetched again for its {@code AWSCURRENT} stage; the cached object
+ * is reused when the version id did not change and replaced when the secret was
+ * rotated. Callers should {@link #invalidate(String...)} secrets that turned
+ * out to be stale (e.g. authentication failed) before the TTL expired.
+ */
+public class SecretResolver {
+
+    public static final String VERSION_STAGE = "AWSCURRENT";
+    public static final long DEFAULT_TTL_MILLIS = 5 * 60 * 1000;
+
+    private static final Map<String, SecretResolver> resolvers = new ConcurrentHashMap<String, SecretResolver>();
+
+    private final SecretsManagerAsyncClient client;
+    private final long ttlMillis;
+    private final Gson gson = new GsonBuilder().create();
+    private final Map<String, CachedSecret> cache = new ConcurrentHashMap<String, CachedSecret>();
+
+    private static class CachedSecret {
+        private final Object value;
+        private final String versionId;
+        private final long expiresAt;
+
+        private CachedSecret(Object value, String versionId, long expiresAt) {
+            this.value = value;
+            this.versionId = versionId;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public SecretResolver(SecretsManagerAsyncClient client, long ttlMillis) {
+        this.client = client;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Returns the shared resolver for a region, creating its client on first
+     * use. {@code endpointOverride} may point to a local Secrets Manager
+     * stand-in; pass {@code null} to use the regional AWS endpoint.
+     */
+    public static SecretResolver forRegion(String region, URI endpointOverride) {
+        String key = endpointOverride == null ? region : region + "|" + endpointOverride;
+        return resolvers.computeIfAbsent(key, k -> {
+            SecretsManagerAsyncClientBuilder builder = SecretsManagerAsyncClient.builder()
+                    .region(Region.of(region))
+                    .credentialsProvider(DefaultCredentialsProvider.create());
+            if (endpointOverride != null) {
+                builder.endpointOverride(endpointOverride);
+            }
+            return new SecretResolver(builder.build(), DEFAULT_TTL_MILLIS);
+        });
+    }
+
+    public <T> CompletableFuture<T> resolveAsync(String secretId, Class<T> type) {
+        long now = System.currentTimeMillis();
+        CachedSecret cached = this.cache.get(secretId);
+        if (cached != null && cached.expiresAt > now && type.isInstance(cached.value)) {
+            return CompletableFuture.completedFuture(type.cast(cached.value));
+        }
+
+        GetSecretValueRequest request = GetSecretValueRequest.builder()
+                .secretId(secretId)
+                .versionStage(VERSION_STAGE)
+                .build();
+
+        return this.client.getSecretValue(request).thenApply(response -> this.update(secretId, type, response, now));
+    }
+
+    /**
+     * Version id of the value last resolved for {@code secretId}, or
+     * {@code null} when it was not resolved yet or was invalidated. Every
+     * change of a secret, e.g. a rotation, creates a new version.
+     */
+    public String getVersionId(String secretId) {
+        CachedSecret cached = this.cache.get(secretId);
+        return cached != null ? cached.versionId : null;
+    }
+
+    public void invalidate(String... secretIds) {
+        for (String secretId : secretIds) {
+            this.cache.remove(secretId);
+        }
+    }
+
+    /**
+     * Waits for a pending resolution and unwraps its failure.
+     */
+    public static <T> T await(CompletableFuture<T> future, String secretId) throws AppException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AppException(String.format("Interrupted while resolving secret '%s'", secretId), e);
+        } catch (ExecutionException | CompletionException e) {
+            throw new AppException(String.format("Failed to resolve secret '%s'", secretId), e.getCause());
+        }
+    }
+
+    private <T> T update(String secretId, Class<T> type, GetSecretValueResponse response, long fetchedAt) {
+        CachedSecret previous = this.cache.get(secretId);
+        Object value;
+        if (previous != null
+                && previous.versionId != null
+                && previous.versionId.equals(response.versionId())
+                && type.isInstance(previous.value)) {
+            value = previous.value;
+        } else {
+            value = this.gson.fromJson(response.secretString(), type);
+        }
+
+        this.cache.put(secretId, new CachedSecret(value, response.versionId(), fetchedAt + this.ttlMillis));
+        return type.cast(value);
+    }
+}
@@ -0,0 +1,42 @@
+package com.silkroad.db.deploy.Utils;
+
+import liquibase.Scope;
+import liquibase.ScopeManager;
+
+/**
+ * Liquibase keeps its current {@link Scope} in a process-wide singleton by
+ * default, which is not safe when several {@code Liquibase} instances run on
+ * different threads. This manager gives each thread its own scope chain rooted
+ * at the shared root scope.
+ */
+public class ThreadLocalScopeManager extends ScopeManager {
+
+    private static boolean installed = false;
+
+    private final ThreadLocal<Scope> threadScope = new ThreadLocal<Scope>();
+    private Scope rootScope;
+
+    public static synchronized void install() {
+        if (!installed) {
+            Scope.setScopeManager(new ThreadLocalScopeManager());
+            installed = true;
+        }
+    }
+
+    @Override
+    public Scope getCurrentScope() {
+        Scope scope = this.threadScope.get();
+        return scope != null ? scope : this.rootScope;
+    }
+
+    @Override
+    protected void setCurrentScope(Scope scope) {
+        this.threadScope.set(scope);
+    }
+
+    @Override
+    protected Scope init(Scope scope) throws Exception {
+        this.rootScope = scope;
+        return scope;
+    }
+}
@@ -0,0 +1,42 @@
+package com.silkroad.db.deploy.Utils;
+
+import java.util.function.LongSupplier;
+
+/**
+ * How much longer the current run may keep starting new work. Long-running
+ * steps check {@link #isExhausted()} between changesets and chunks, and stop
+ * at the next safe point once less than {@code reserveMillis} remain.
+ */
+public class TimeBudget {
+
+    private static final TimeBudget UNLIMITED = new TimeBudget(() -> Long.MAX_VALUE, 0);
+
+    private final LongSupplier remainingMillis;
+    private final long reserveMillis;
+
+    /**
+     * @param remainingMillis E.g. {@code Context::getRemainingTimeInMillis}
+     * @param reserveMillis   Time kept back for the step in progress and for
+     *                        reporting back
+     */
+    public TimeBudget(LongSupplier remainingMillis, long reserveMillis) {
+        this.remainingMillis = remainingMillis;
+        this.reserveMillis = reserveMillis;
+    }
+
+    public static TimeBudget unlimited() {
+        return UNLIMITED;
+    }
+
+    public boolean isLimited() {
+        return this != UNLIMITED;
+    }
+
+    public boolean isExhausted() {
+        return this.remainingMillis.getAsLong() < this.reserveMillis;
+    }
+
+    public long getRemainingMillis() {
+        return this.remainingMillis.getAsLong();
+    }
+}
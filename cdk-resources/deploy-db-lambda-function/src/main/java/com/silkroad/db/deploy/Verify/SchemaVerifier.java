@@ -0,0 +1,355 @@
+package com.silkroad.db.deploy.Verify;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.silkroad.db.deploy.Exceptions.AppException;
+import com.silkroad.db.deploy.Metrics.MetricsRecorder;
+import com.silkroad.db.deploy.Types.*;
+import com.silkroad.db.deploy.Utils.*;
+
+/**
+ * Verifies that databases have the schema they are expected to have, from
+ * the actual structure rather than from {@code DATABASECHANGELOG}.
+ *
+ * The table, column, index and constraint metadata of up to
+ * {@code batchSize} databases is read from {@code information_schema} in a
+ * single query, so a host with hundreds of tenant databases needs one or a
+ * few round trips instead of one per table. Hosts are read in parallel, on
+ * one connection each.
+ *
+ * The metadata of each table is reduced to sorted, canonical lines and
+ * hashed, and the table hashes to a schema hash. Anything that depends on
+ * the data or on the database name (row counts, AUTO_INCREMENT values,
+ * index cardinality, the schema of foreign key references) is left out, so
+ * databases migrated by the same changelog get the same hash. The
+ * bookkeeping tables ({@code DATABASECHANGELOG*}) are left out too.
+ *
+ * Without an expected hash, the hash shared by most databases is expected.
+ */
+public class SchemaVerifier {
+
+    public static final int DEFAULT_PARALLELISM = 8;
+    public static final int DEFAULT_BATCH_SIZE = 200;
+
+    private static final String DISCOVERY_SQL = "SELECT DISTINCT TABLE_SCHEMA FROM information_schema.TABLES "
+            + "WHERE TABLE_NAME = 'DATABASECHANGELOG' ORDER BY TABLE_SCHEMA";
+
+    // Number of SELECTs in buildMetadataSql, each filtered by the list of databases
+    private static final int METADATA_QUERY_PARTS = 5;
+
+    private static class DatabaseSchema {
+        private final String databaseName;
+        private final String hostKey;
+        private final Map<String, List<String>> lines = new TreeMap<String, List<String>>();
+        private final Map<String, String> tableHashes = new TreeMap<String, String>();
+        private String hash;
+
+        private DatabaseSchema(String databaseName, String hostKey) {
+            this.databaseName = databaseName;
+            this.hostKey = hostKey;
+        }
+    }
+
+    private final ILogger logger;
+    private int parallelism = DEFAULT_PARALLELISM;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private MetricsRecorder metrics = MetricsRecorder.disabled();
+
+    public SchemaVerifier(ILogger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Number of hosts read at once. Defaults to {@link #DEFAULT_PARALLELISM}.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Number of databases read per query. Defaults to
+     * {@link #DEFAULT_BATCH_SIZE}.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public void setMetrics(MetricsRecorder metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Groups fleet targets by host and admin user, so that each host is read
+     * on one connection.
+     */
+    public static List<SchemaHost> groupByHost(List<FleetTarget> targets) {
+        Map<String, SchemaHost> hosts = new LinkedHashMap<String, SchemaHost>();
+        for (FleetTarget target : targets) {
+            String key = target.getHostKey() + "/" + target.getRdsAdminSecret().getUsername();
+            hosts.computeIfAbsent(key, k -> new SchemaHost(target.getRdsHost(), target.getRdsAdminSecret(),
+                    new ArrayList<String>()))
+                    .getDatabases().add(target.getRdsAppSecret().getDatabaseName());
+        }
+        return new ArrayList<SchemaHost>(hosts.values());
+    }
+
+    /**
+     * @param expectedHash The schema hash every database must have, or
+     *                     {@code null} to expect the most common one
+     * @return one result per database, in host order
+     */
+    public List<SchemaVerificationResult> verify(List<SchemaHost> hosts, String expectedHash) throws AppException {
+        long startTime = System.nanoTime();
+        List<DatabaseSchema> schemas = new ArrayList<DatabaseSchema>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(this.parallelism, hosts.size())));
+        try {
+            List<Future<List<DatabaseSchema>>> futures = new ArrayList<Future<List<DatabaseSchema>>>();
+            for (SchemaHost host : hosts) {
+                futures.add(executor.submit(() -> this.readHost(host)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    schemas.addAll(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    throw new AppException(String.format(
+                            "Failed to read the schemas of host '%s', see 'Caused by' for details",
+                            hosts.get(i).getHostKey()), e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new AppException("Interrupted while reading schemas", e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        String expected = expectedHash != null ? expectedHash : mostCommonHash(schemas);
+        Map<String, String> referenceTables = null;
+        for (DatabaseSchema schema : schemas) {
+            if (expected != null && expected.equals(schema.hash)) {
+                referenceTables = schema.tableHashes;
+                break;
+            }
+        }
+
+        List<SchemaVerificationResult> results = new ArrayList<SchemaVerificationResult>();
+        List<String> drifted = new ArrayList<String>();
+        for (DatabaseSchema schema : schemas) {
+            SchemaVerificationResult result = new SchemaVerificationResult(schema.databaseName, schema.hostKey,
+                    schema.hash, schema.tableHashes.size());
+            result.setMatches(expected != null && expected.equals(schema.hash));
+            if (!result.isMatches()) {
+                drifted.add(result.getName());
+                if (referenceTables != null) {
+                    result.setDriftedTables(diffTables(referenceTables, schema.tableHashes));
+                }
+                logger.log(LogLevel.ERROR, "Database schema differs from the expected schema",
+                        "database", result.getName(),
+                        "schemaHash", schema.hash != null ? schema.hash : "none",
+                        "driftedTables", String.join(",", result.getDriftedTables()));
+            }
+            results.add(result);
+        }
+
+        long durationMillis = (System.nanoTime() - startTime) / 1_000_000;
+        this.metrics.recordPhase("verify-schema", durationMillis, (long) results.size());
+        logger.log(LogLevel.INFO, "Database schemas verified",
+                "expectedSchemaHash", expected != null ? expected : "none",
+                "hosts", hosts.size(),
+                "databases", results.size(),
+                "drifted", drifted.size(),
+                "durationMillis", durationMillis);
+        return results;
+    }
+
+    private List<DatabaseSchema> readHost(SchemaHost host) throws SQLException, AppException {
+        try (ConnectionSession session = new ConnectionSession(host.getRdsHost(), host.getRdsAdminSecret())) {
+            Connection connection = session.getConnection(null, this.logger);
+            List<String> databases = host.getDatabases() != null && !host.getDatabases().isEmpty()
+                    ? new ArrayList<String>(new LinkedHashSet<String>(host.getDatabases()))
+                    : discoverDatabases(connection);
+
+            List<DatabaseSchema> schemas = new ArrayList<DatabaseSchema>();
+            for (int i = 0; i < databases.size(); i += this.batchSize) {
+                schemas.addAll(readSchemas(connection, host.getHostKey(),
+                        databases.subList(i, Math.min(i + this.batchSize, databases.size()))));
+            }
+            this.logger.debug(() -> String.format("Read the schemas of %d databases on '%s'", databases.size(),
+                    host.getHostKey()));
+            return schemas;
+        }
+    }
+
+    private static List<String> discoverDatabases(Connection connection) throws SQLException {
+        List<String> databases = new ArrayList<String>();
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery(DISCOVERY_SQL)) {
+            while (resultSet.next()) {
+                databases.add(resultSet.getString(1));
+            }
+        }
+        return databases;
+    }
+
+    /**
+     * Reads the metadata of {@code databases} in one query.
+     */
+    private static List<DatabaseSchema> readSchemas(Connection connection, String hostKey, List<String> databases)
+            throws SQLException {
+        Map<String, DatabaseSchema> schemas = new LinkedHashMap<String, DatabaseSchema>();
+        for (String database : databases) {
+            schemas.put(database, new DatabaseSchema(database, hostKey));
+        }
+
+        String sql = buildMetadataSql(databases.size());
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            int parameterIndex = 1;
+            for (int part = 0; part < METADATA_QUERY_PARTS; part++) {
+                for (String database : databases) {
+                    statement.setString(parameterIndex++, database);
+                }
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    DatabaseSchema schema = schemas.get(resultSet.getString(1));
+                    if (schema != null) {
+                        schema.lines.computeIfAbsent(resultSet.getString(2), table -> new ArrayList<String>())
+                                .add(resultSet.getString(3));
+                    }
+                }
+            }
+        }
+
+        for (DatabaseSchema schema : schemas.values()) {
+            hash(schema);
+        }
+        return new ArrayList<DatabaseSchema>(schemas.values());
+    }
+
+    /**
+     * One row per table, column, index part and constraint part, as
+     * {@code (schema, table, line)}.
+     */
+    private static String buildMetadataSql(int databaseCount) {
+        String in = "IN (" + String.join(", ", Collections.nCopies(databaseCount, "?")) + ")";
+        String ownTables = " AND %s NOT LIKE 'DATABASECHANGELOG%%'";
+        return String.join(" UNION ALL ",
+                select("TABLE_SCHEMA", "TABLE_NAME",
+                        "CONCAT_WS('|', 'table', TABLE_TYPE, IFNULL(ENGINE, ''), IFNULL(TABLE_COLLATION, ''), "
+                                + "CREATE_OPTIONS)")
+                        + " FROM information_schema.TABLES WHERE TABLE_SCHEMA " + in
+                        + String.format(ownTables, "TABLE_NAME"),
+                select("TABLE_SCHEMA", "TABLE_NAME",
+                        "CONCAT_WS('|', 'column', COLUMN_NAME, ORDINAL_POSITION, COLUMN_TYPE, IS_NULLABLE, "
+                                + "COLUMN_DEFAULT IS NULL, IFNULL(COLUMN_DEFAULT, ''), EXTRA, "
+                                + "IFNULL(COLLATION_NAME, ''), GENERATION_EXPRESSION)")
+                        + " FROM information_schema.COLUMNS WHERE TABLE_SCHEMA " + in
+                        + String.format(ownTables, "TABLE_NAME"),
+                select("TABLE_SCHEMA", "TABLE_NAME",
+                        "CONCAT_WS('|', 'index', INDEX_NAME, NON_UNIQUE, SEQ_IN_INDEX, "
+                                + "IFNULL(COLUMN_NAME, IFNULL(EXPRESSION, '')), IFNULL(SUB_PART, ''), "
+                                + "IFNULL(COLLATION, ''), INDEX_TYPE, IS_VISIBLE)")
+                        + " FROM information_schema.STATISTICS WHERE TABLE_SCHEMA " + in
+                        + String.format(ownTables, "TABLE_NAME"),
+                select("k.TABLE_SCHEMA", "k.TABLE_NAME",
+                        "CONCAT_WS('|', 'key', k.CONSTRAINT_NAME, k.ORDINAL_POSITION, k.COLUMN_NAME, "
+                                + "IFNULL(k.REFERENCED_TABLE_NAME, ''), IFNULL(k.REFERENCED_COLUMN_NAME, ''), "
+                                + "IFNULL(r.UPDATE_RULE, ''), IFNULL(r.DELETE_RULE, ''))")
+                        + " FROM information_schema.KEY_COLUMN_USAGE k"
+                        + " LEFT JOIN information_schema.REFERENTIAL_CONSTRAINTS r"
+                        + " ON r.CONSTRAINT_SCHEMA = k.CONSTRAINT_SCHEMA AND r.CONSTRAINT_NAME = k.CONSTRAINT_NAME"
+                        + " AND r.TABLE_NAME = k.TABLE_NAME"
+                        + " WHERE k.TABLE_SCHEMA " + in + String.format(ownTables, "k.TABLE_NAME"),
+                select("t.TABLE_SCHEMA", "t.TABLE_NAME",
+                        "CONCAT_WS('|', 'check', c.CONSTRAINT_NAME, c.CHECK_CLAUSE, t.ENFORCED)")
+                        + " FROM information_schema.TABLE_CONSTRAINTS t"
+                        + " JOIN information_schema.CHECK_CONSTRAINTS c"
+                        + " ON c.CONSTRAINT_SCHEMA = t.CONSTRAINT_SCHEMA AND c.CONSTRAINT_NAME = t.CONSTRAINT_NAME"
+                        + " WHERE t.CONSTRAINT_TYPE = 'CHECK' AND t.TABLE_SCHEMA " + in
+                        + String.format(ownTables, "t.TABLE_NAME"));
+    }
+
+    private static String select(String schema, String table, String line) {
+        // information_schema columns have different collations, which UNION cannot mix
+        return "SELECT " + toBinaryText(schema) + ", " + toBinaryText(table) + ", " + toBinaryText(line);
+    }
+
+    private static String toBinaryText(String expression) {
+        return "CONVERT(" + expression + " USING utf8mb4) COLLATE utf8mb4_bin";
+    }
+
+    private static void hash(DatabaseSchema schema) {
+        if (schema.lines.isEmpty()) {
+            return;
+        }
+
+        MessageDigest schemaDigest = Sha256.newDigest();
+        for (Map.Entry<String, List<String>> table : schema.lines.entrySet()) {
+            List<String> lines = table.getValue();
+            Collections.sort(lines);
+            MessageDigest tableDigest = Sha256.newDigest();
+            for (String line : lines) {
+                tableDigest.update(line.getBytes(StandardCharsets.UTF_8));
+                tableDigest.update((byte) '\n');
+            }
+            String tableHash = Sha256.toHex(tableDigest.digest());
+            schema.tableHashes.put(table.getKey(), tableHash);
+
+            schemaDigest.update(table.getKey().getBytes(StandardCharsets.UTF_8));
+            schemaDigest.update((byte) 0);
+            schemaDigest.update(tableHash.getBytes(StandardCharsets.UTF_8));
+            schemaDigest.update((byte) '\n');
+        }
+        schema.hash = Sha256.toHex(schemaDigest.digest());
+    }
+
+    private static String mostCommonHash(List<DatabaseSchema> schemas) {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        String mostCommon = null;
+        int maxCount = 0;
+        for (DatabaseSchema schema : schemas) {
+            if (schema.hash == null) {
+                continue;
+            }
+            int count = counts.merge(schema.hash, 1, Integer::sum);
+            if (count > maxCount) {
+                maxCount = count;
+                mostCommon = schema.hash;
+            }
+        }
+        return mostCommon;
+    }
+
+    private static List<String> diffTables(Map<String, String> expected, Map<String, String> actual) {
+        Set<String> tables = new TreeSet<String>(expected.keySet());
+        tables.addAll(actual.keySet());
+        List<String> drifted = new ArrayList<String>();
+        for (String table : tables) {
+            if (!Objects.equals(expected.get(table), actual.get(table))) {
+                drifted.add(table);
+            }
+        }
+        return drifted;
+    }
+}
@@ -0,0 +1,355 @@
+package com.silkroad.db.deploy.ScaleTest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.cli.*;
+
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import com.silkroad.db.deploy.App;
+import com.silkroad.db.deploy.Exceptions.*;
+import com.silkroad.db.deploy.Types.*;
+import com.silkroad.db.deploy.Utils.*;
+
+/**
+ * Deploys to hundreds of tenant databases on one local MySQL server and
+ * reports how the deployment scales: throughput, p50/p99 latency per
+ * database (overall and per phase), connections and peak heap.
+ *
+ * The server is a Testcontainers MySQL unless {@code --host_name} points at
+ * an existing one. The harness drives {@link App} in fleet mode, in process,
+ * in two passes:
+ * <ol>
+ * <li>{@code provision}: initialization script and migrations on empty
+ * databases</li>
+ * <li>{@code redeploy}: the same deployment again, after {@code Tenant} and
+ * {@code DeploymentSetting} were seeded with {@link TenantDataSeeder}</li>
+ * </ol>
+ * Arguments after {@code --} are passed on to {@code App} in both passes,
+ * e.g. {@code -- --create_missing_indexes} or {@code -- --dry_run}, so new
+ * modes are covered without changing the harness.
+ *
+ * Databases and users are named {@code scale_tenant_NNNN} and
+ * {@code scale_app_NNNN}. On an existing server, leftovers of an earlier run
+ * are dropped first and everything is dropped at the end unless
+ * {@code --keep_databases} is given.
+ */
+public class ScaleTestHarness {
+
+    public static final String DATABASE_PREFIX = "scale_tenant_";
+    public static final String USER_PREFIX = "scale_app_";
+
+    private final RdsHostInfo rdsHostInfo;
+    private final RdsAdminSecret rdsAdminSecret;
+    private final ILogger logger;
+    private final int databaseCount;
+    private int tenantRows = 500;
+    private int settingRows = 100;
+    private int maxConcurrency = 16;
+    private int maxConcurrencyPerHost = 16;
+    private boolean keepDatabases = false;
+
+    public ScaleTestHarness(RdsHostInfo rdsHostInfo, RdsAdminSecret rdsAdminSecret, int databaseCount,
+            ILogger logger) {
+        this.rdsHostInfo = rdsHostInfo;
+        this.rdsAdminSecret = rdsAdminSecret;
+        this.databaseCount = databaseCount;
+        this.logger = logger;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new Options();
+        options.addOption(Option.builder("h").longOpt("help").desc("Display help").build());
+        options.addOption(Option.builder("n").longOpt("databases").hasArg(true)
+                .desc("Number of tenant databases (Default: 200)").build());
+        options.addOption(Option.builder("tr").longOpt("tenant_rows").hasArg(true)
+                .desc("Tenant rows seeded per database (Default: 500)").build());
+        options.addOption(Option.builder("sr").longOpt("setting_rows").hasArg(true)
+                .desc("DeploymentSetting rows seeded per database (Default: 100)").build());
+        options.addOption(Option.builder("mc").longOpt("max_concurrency").hasArg(true)
+                .desc("Databases deployed at once (Default: 16)").build());
+        options.addOption(Option.builder("hn").longOpt("host_name").hasArg(true)
+                .desc("Existing MySQL server to use instead of a container").build());
+        options.addOption(Option.builder("hp").longOpt("host_port").hasArg(true)
+                .desc("Port of the existing server (Default: 3306)").build());
+        options.addOption(Option.builder("adun").longOpt("admin_user_name").hasArg(true)
+                .desc("Admin user of the existing server (Default: root)").build());
+        options.addOption(Option.builder("adup").longOpt("admin_user_password").hasArg(true)
+                .desc("Admin password of the existing server").build());
+        options.addOption(Option.builder("mi").longOpt("mysql_image").hasArg(true)
+                .desc("Container image (Default: mysql:8.0)").build());
+        options.addOption(Option.builder("kd").longOpt("keep_databases")
+                .desc("Don't drop the databases at the end (existing server only)").build());
+        options.addOption(Option.builder("rp").longOpt("report").hasArg(true)
+                .desc("Also write the report to this JSON file").build());
+
+        CommandLine cmd = new DefaultParser().parse(options, args);
+        if (cmd.hasOption("help")) {
+            new HelpFormatter().printHelp("scale-test [options] [-- app options]", options);
+            return;
+        }
+        ConsoleLogger logger = new ConsoleLogger(LogLevel.INFO);
+
+        MySQLContainer<?> container = null;
+        RdsHostInfo rdsHostInfo;
+        RdsAdminSecret rdsAdminSecret;
+        if (cmd.hasOption("host_name")) {
+            int port = Integer.parseInt(cmd.getOptionValue("host_port", "3306"));
+            rdsHostInfo = new RdsHostInfo(cmd.getOptionValue("host_name"), port);
+            rdsAdminSecret = new RdsAdminSecret(cmd.getOptionValue("host_name"), port,
+                    cmd.getOptionValue("admin_user_name", "root"), cmd.getOptionValue("admin_user_password"));
+        } else {
+            container = new MySQLContainer<>(DockerImageName.parse(cmd.getOptionValue("mysql_image", "mysql:8.0")))
+                    .withUsername("root")
+                    .withPassword("scale-test")
+                    .withCommand("--max_connections=1000");
+            logger.info("Starting MySQL container...");
+            container.start();
+            int port = container.getMappedPort(MySQLContainer.MYSQL_PORT);
+            rdsHostInfo = new RdsHostInfo(container.getHost(), port);
+            rdsAdminSecret = new RdsAdminSecret(container.getHost(), port, "root", "scale-test");
+        }
+
+        try {
+            ScaleTestHarness harness = new ScaleTestHarness(rdsHostInfo, rdsAdminSecret,
+                    Integer.parseInt(cmd.getOptionValue("databases", "200")), logger);
+            harness.tenantRows = Integer.parseInt(cmd.getOptionValue("tenant_rows", "500"));
+            harness.settingRows = Integer.parseInt(cmd.getOptionValue("setting_rows", "100"));
+            harness.maxConcurrency = Integer.parseInt(cmd.getOptionValue("max_concurrency", "16"));
+            // One local server: the per-host cap is the overall cap
+            harness.maxConcurrencyPerHost = harness.maxConcurrency;
+            harness.keepDatabases = container == null && cmd.hasOption("keep_databases");
+
+            List<ScaleTestPassReport> reports = harness.run(cmd.getArgList());
+            if (cmd.hasOption("report")) {
+                try (Writer writer = Files.newBufferedWriter(Paths.get(cmd.getOptionValue("report")),
+                        StandardCharsets.UTF_8)) {
+                    new GsonBuilder().setPrettyPrinting().create().toJson(reports, writer);
+                }
+            }
+
+            int failed = reports.stream().mapToInt(ScaleTestPassReport::getFailedCount).sum();
+            if (failed > 0) {
+                throw new AppException(String.format("%d database deployment(s) failed", failed));
+            }
+        } finally {
+            if (container != null) {
+                container.stop();
+            }
+        }
+    }
+
+    public List<ScaleTestPassReport> run(List<String> appArgs)
+            throws SQLException, AppException, IOException, ValidationException {
+        List<FleetTarget> targets = new ArrayList<FleetTarget>();
+        for (int i = 1; i <= this.databaseCount; i++) {
+            String suffix = String.format("%04d", i);
+            targets.add(new FleetTarget(this.rdsHostInfo, this.rdsAdminSecret,
+                    new RdsAppSecret(DATABASE_PREFIX + suffix, USER_PREFIX + suffix, "ScaleTest-" + suffix)));
+        }
+
+        FleetManifest manifest = new FleetManifest();
+        manifest.setTargets(targets);
+        Path manifestFile = Files.createTempFile("scale-test-manifest", ".json");
+        Files.write(manifestFile, new Gson().toJson(manifest).getBytes(StandardCharsets.UTF_8));
+
+        List<ScaleTestPassReport> reports = new ArrayList<ScaleTestPassReport>();
+        try (ConnectionSession session = new ConnectionSession(this.rdsHostInfo, this.rdsAdminSecret)) {
+            Connection connection = session.getConnection(null, this.logger);
+            this.dropDatabases(connection);
+
+            reports.add(this.runPass("provision", manifestFile, appArgs, connection));
+            this.seed(connection, targets);
+            reports.add(this.runPass("redeploy", manifestFile, appArgs, connection));
+
+            if (!this.keepDatabases) {
+                this.dropDatabases(connection);
+            }
+        } finally {
+            Files.deleteIfExists(manifestFile);
+        }
+        return reports;
+    }
+
+    private ScaleTestPassReport runPass(String name, Path manifestFile, List<String> appArgs, Connection connection)
+            throws SQLException, IOException {
+        Path metricsFile = Files.createTempFile("scale-test-" + name, ".jsonl");
+        List<String> args = new ArrayList<String>();
+        Collections.addAll(args,
+                "--manifest", manifestFile.toString(),
+                "--max_concurrency", String.valueOf(this.maxConcurrency),
+                "--max_concurrency_per_host", String.valueOf(this.maxConcurrencyPerHost),
+                "--metrics_file", metricsFile.toString());
+        args.addAll(appArgs);
+
+        this.logger.info(String.format("Pass '%s': deploying %d databases...", name, this.databaseCount));
+        ScaleTestPassReport report = new ScaleTestPassReport(name);
+        report.setDatabaseCount(this.databaseCount);
+        // Start from a collected heap, so the peak reflects this pass
+        System.gc();
+
+        try (ScaleTestMonitor monitor = new ScaleTestMonitor(connection)) {
+            long startTime = System.nanoTime();
+            try {
+                App.main(args.toArray(new String[0]));
+            } catch (Exception e) {
+                // Failed databases are counted from the metrics below
+                this.logger.error(String.format("Pass '%s' failed: %s", name, e.getMessage()));
+            }
+            report.setDurationMillis((System.nanoTime() - startTime) / 1_000_000);
+            report.setConnectionsOpened(monitor.getConnectionsOpened());
+            report.setPeakThreadsConnected(monitor.getPeakThreadsConnected());
+            report.setPeakHeapBytes(monitor.getPeakHeapBytes());
+        }
+
+        try {
+            this.summarizeMetrics(metricsFile, report);
+        } finally {
+            Files.deleteIfExists(metricsFile);
+        }
+        report.setDatabasesPerMinute(this.databaseCount / (Math.max(report.getDurationMillis(), 1) / 60_000.0));
+
+        this.logger.log(LogLevel.INFO, "Scale-test pass completed",
+                "pass", name,
+                "databases", report.getDatabaseCount(),
+                "failed", report.getFailedCount(),
+                "durationMillis", report.getDurationMillis(),
+                "databasesPerMinute", String.format("%.1f", report.getDatabasesPerMinute()),
+                "p50Millis", report.getP50Millis(),
+                "p99Millis", report.getP99Millis(),
+                "maxMillis", report.getMaxMillis(),
+                "peakThreadsConnected", report.getPeakThreadsConnected(),
+                "connectionsOpened", report.getConnectionsOpened(),
+                "peakHeapMb", report.getPeakHeapBytes() / (1024 * 1024));
+        for (Map.Entry<String, long[]> phase : report.getPhaseP50P99Millis().entrySet()) {
+            this.logger.log(LogLevel.INFO, "Scale-test phase",
+                    "pass", name,
+                    "phase", phase.getKey(),
+                    "p50Millis", phase.getValue()[0],
+                    "p99Millis", phase.getValue()[1]);
+        }
+        return report;
+    }
+
+    /**
+     * Reads the per-database durations out of the EMF documents App wrote:
+     * the fleet's {@code target} and {@code target-failed} phases and every
+     * phase of the migrators.
+     */
+    private void summarizeMetrics(Path metricsFile, ScaleTestPassReport report) throws IOException {
+        Map<String, List<Long>> durations = new TreeMap<String, List<Long>>();
+        int failedCount = 0;
+        try (BufferedReader reader = Files.newBufferedReader(metricsFile, StandardCharsets.UTF_8)) {
+            Gson gson = new Gson();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JsonObject document = gson.fromJson(line, JsonObject.class);
+                if (!document.has("Phase") || !document.has("Duration")) {
+                    continue;
+                }
+                String phase = document.get("Phase").getAsString();
+                if (phase.equals("target-failed")) {
+                    failedCount++;
+                }
+                durations.computeIfAbsent(phase, k -> new ArrayList<Long>()).add(document.get("Duration").getAsLong());
+            }
+        }
+
+        List<Long> targetDurations = durations.remove("target");
+        durations.remove("target-failed");
+        // Databases App never got to, e.g. after a fatal error, count as failed too
+        int succeededCount = targetDurations != null ? targetDurations.size() : 0;
+        report.setFailedCount(Math.max(failedCount, report.getDatabaseCount() - succeededCount));
+        if (targetDurations != null) {
+            Collections.sort(targetDurations);
+            report.setP50Millis(percentile(targetDurations, 50));
+            report.setP99Millis(percentile(targetDurations, 99));
+            report.setMaxMillis(targetDurations.get(targetDurations.size() - 1));
+        }
+
+        Map<String, long[]> phases = new LinkedHashMap<String, long[]>();
+        for (Map.Entry<String, List<Long>> phase : durations.entrySet()) {
+            List<Long> values = phase.getValue();
+            Collections.sort(values);
+            phases.put(phase.getKey(), new long[] { percentile(values, 50), percentile(values, 99) });
+        }
+        report.setPhaseP50P99Millis(phases);
+    }
+
+    /**
+     * Nearest-rank percentile of {@code sorted}.
+     */
+    private static long percentile(List<Long> sorted, int percentile) {
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+        return sorted.get(Math.max(0, rank - 1));
+    }
+
+    private void seed(Connection connection, List<FleetTarget> targets) throws SQLException, AppException {
+        this.logger.info(String.format("Seeding %d Tenant and %d DeploymentSetting rows into %d databases...",
+                this.tenantRows, this.settingRows, targets.size()));
+        long startTime = System.nanoTime();
+        TenantDataSeeder seeder = new TenantDataSeeder(connection);
+        for (FleetTarget target : targets) {
+            String databaseName = target.getRdsAppSecret().getDatabaseName();
+            try {
+                connection.setCatalog(databaseName);
+                seeder.seed("Tenant", this.tenantRows);
+                seeder.seed("DeploymentSetting", this.settingRows);
+            } catch (SQLException | AppException e) {
+                // A database that failed to provision is already counted; the redeploy pass retries it
+                this.logger.error(String.format("Failed to seed '%s': %s", databaseName, e.getMessage()));
+            }
+        }
+        this.logger.info(String.format("Seeded in %d ms", (System.nanoTime() - startTime) / 1_000_000));
+    }
+
+    private void dropDatabases(Connection connection) throws SQLException {
+        List<String> statements = new ArrayList<String>();
+        String databasesSql = "SELECT SCHEMA_NAME FROM information_schema.SCHEMATA WHERE SCHEMA_NAME LIKE '"
+                + DATABASE_PREFIX + "%'";
+        String usersSql = "SELECT User FROM mysql.user WHERE User LIKE '" + USER_PREFIX + "%'";
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery(databasesSql)) {
+                while (resultSet.next()) {
+                    statements.add("DROP DATABASE " + quote(resultSet.getString(1)));
+                }
+            }
+            try (ResultSet resultSet = statement.executeQuery(usersSql)) {
+                while (resultSet.next()) {
+                    statements.add("DROP USER '" + resultSet.getString(1).replace("'", "''") + "'@'%'");
+                }
+            }
+            for (String sql : statements) {
+                statement.execute(sql);
+            }
+        }
+        if (!statements.isEmpty()) {
+            this.logger.info(String.format("Dropped %d scale-test databases and users", statements.size()));
+        }
+    }
+
+    private static String quote(String identifier) {
+        return "`" + identifier.replace("`", "``") + "`";
+    }
+}
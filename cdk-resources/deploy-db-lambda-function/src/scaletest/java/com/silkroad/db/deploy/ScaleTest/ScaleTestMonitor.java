@@ -0,0 +1,103 @@
+package com.silkroad.db.deploy.ScaleTest;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Samples the harness JVM's heap and the server's connection count while a
+ * pass runs. Peaks are sampled every {@link #SAMPLE_INTERVAL_MILLIS}, so
+ * shorter spikes can be missed; the number of connections opened is exact,
+ * taken from the server's {@code Connections} counter.
+ */
+public class ScaleTestMonitor implements AutoCloseable {
+
+    public static final long SAMPLE_INTERVAL_MILLIS = 100;
+
+    private final Connection connection;
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final Thread thread;
+    private final long startConnections;
+
+    private volatile boolean running = true;
+    private volatile long peakHeapBytes = 0;
+    private volatile long peakThreadsConnected = 0;
+    private volatile SQLException error;
+
+    /**
+     * Starts sampling on its own thread.
+     *
+     * @param connection Connection reserved for the monitor
+     */
+    public ScaleTestMonitor(Connection connection) throws SQLException {
+        this.connection = connection;
+        this.startConnections = this.queryStatus("Connections");
+        this.thread = new Thread(this::sample, "scale-test-monitor");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public long getPeakHeapBytes() {
+        return this.peakHeapBytes;
+    }
+
+    /**
+     * Highest {@code Threads_connected} seen, including the harness's own
+     * connections.
+     */
+    public long getPeakThreadsConnected() {
+        return this.peakThreadsConnected;
+    }
+
+    /**
+     * Connections opened on the server since the monitor started.
+     */
+    public long getConnectionsOpened() throws SQLException {
+        return this.queryStatus("Connections") - this.startConnections;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        // Not interrupted: an interrupt during a query could break the connection
+        this.running = false;
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (this.error != null) {
+            throw this.error;
+        }
+    }
+
+    private void sample() {
+        while (this.running) {
+            this.peakHeapBytes = Math.max(this.peakHeapBytes, this.memory.getHeapMemoryUsage().getUsed());
+            try {
+                this.peakThreadsConnected = Math.max(this.peakThreadsConnected,
+                        this.queryStatus("Threads_connected"));
+            } catch (SQLException e) {
+                this.error = e;
+                return;
+            }
+
+            try {
+                Thread.sleep(SAMPLE_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private synchronized long queryStatus(String name) throws SQLException {
+        try (Statement statement = this.connection.createStatement();
+                ResultSet resultSet = statement.executeQuery(
+                        "SELECT VARIABLE_VALUE FROM performance_schema.global_status WHERE VARIABLE_NAME = '"
+                                + name + "'")) {
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        }
+    }
+}
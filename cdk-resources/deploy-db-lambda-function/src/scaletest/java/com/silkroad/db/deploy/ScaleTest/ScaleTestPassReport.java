@@ -0,0 +1,134 @@
+package com.silkroad.db.deploy.ScaleTest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Results of one pass of {@code App} over all scale-test databases.
+ */
+public class ScaleTestPassReport {
+
+    private String name;
+    private int databaseCount;
+    private int failedCount;
+    private long durationMillis;
+    private double databasesPerMinute;
+    private long p50Millis;
+    private long p99Millis;
+    private long maxMillis;
+    private Map<String, long[]> phaseP50P99Millis = new LinkedHashMap<String, long[]>();
+    private long peakThreadsConnected;
+    private long connectionsOpened;
+    private long peakHeapBytes;
+
+    public ScaleTestPassReport() {
+    }
+
+    public ScaleTestPassReport(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getDatabaseCount() {
+        return databaseCount;
+    }
+
+    public void setDatabaseCount(int databaseCount) {
+        this.databaseCount = databaseCount;
+    }
+
+    public int getFailedCount() {
+        return failedCount;
+    }
+
+    public void setFailedCount(int failedCount) {
+        this.failedCount = failedCount;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    public double getDatabasesPerMinute() {
+        return databasesPerMinute;
+    }
+
+    public void setDatabasesPerMinute(double databasesPerMinute) {
+        this.databasesPerMinute = databasesPerMinute;
+    }
+
+    /**
+     * Median time to deploy one database, from the fleet's {@code target}
+     * metric.
+     */
+    public long getP50Millis() {
+        return p50Millis;
+    }
+
+    public void setP50Millis(long p50Millis) {
+        this.p50Millis = p50Millis;
+    }
+
+    public long getP99Millis() {
+        return p99Millis;
+    }
+
+    public void setP99Millis(long p99Millis) {
+        this.p99Millis = p99Millis;
+    }
+
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+
+    public void setMaxMillis(long maxMillis) {
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * p50 and p99 across databases of every phase the migrator recorded,
+     * e.g. {@code changesets} or {@code lock-wait}.
+     */
+    public Map<String, long[]> getPhaseP50P99Millis() {
+        return phaseP50P99Millis;
+    }
+
+    public void setPhaseP50P99Millis(Map<String, long[]> phaseP50P99Millis) {
+        this.phaseP50P99Millis = phaseP50P99Millis;
+    }
+
+    public long getPeakThreadsConnected() {
+        return peakThreadsConnected;
+    }
+
+    public void setPeakThreadsConnected(long peakThreadsConnected) {
+        this.peakThreadsConnected = peakThreadsConnected;
+    }
+
+    public long getConnectionsOpened() {
+        return connectionsOpened;
+    }
+
+    public void setConnectionsOpened(long connectionsOpened) {
+        this.connectionsOpened = connectionsOpened;
+    }
+
+    public long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    public void setPeakHeapBytes(long peakHeapBytes) {
+        this.peakHeapBytes = peakHeapBytes;
+    }
+};
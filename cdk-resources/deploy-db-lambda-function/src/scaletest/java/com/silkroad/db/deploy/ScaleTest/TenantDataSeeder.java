@@ -0,0 +1,176 @@
+package com.silkroad.db.deploy.ScaleTest;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.silkroad.db.deploy.Exceptions.AppException;
+
+/**
+ * Fills tables of a migrated tenant database with generated rows, e.g.
+ * {@code Tenant} and {@code DeploymentSetting}, so that later migrations run
+ * against data rather than empty tables.
+ *
+ * Values are derived from the column definitions in
+ * {@code information_schema} instead of a hard-coded column list, so the
+ * seeder keeps working as migrations add columns. Every generated string
+ * contains the row number, which keeps unique keys unique. Auto-increment
+ * and generated columns are left to MySQL.
+ */
+public class TenantDataSeeder {
+
+    private static final int ROWS_PER_INSERT = 500;
+
+    private final Connection connection;
+
+    /**
+     * @param connection Connection whose default database is the one to seed
+     */
+    public TenantDataSeeder(Connection connection) {
+        this.connection = connection;
+    }
+
+    private static class Column {
+        private final String name;
+        private final String dataType;
+        private final String columnType;
+        private final long maxLength;
+        private final boolean nullable;
+
+        Column(String name, String dataType, String columnType, long maxLength, boolean nullable) {
+            this.name = name;
+            this.dataType = dataType;
+            this.columnType = columnType;
+            this.maxLength = maxLength;
+            this.nullable = nullable;
+        }
+    }
+
+    /**
+     * Inserts {@code rowCount} rows into {@code table} in multi-row batches.
+     */
+    public void seed(String table, int rowCount) throws SQLException, AppException {
+        List<Column> columns = this.getColumns(table);
+        if (columns.isEmpty()) {
+            throw new AppException(String.format("Table '%s' does not exist or has no insertable columns", table));
+        }
+
+        StringBuilder columnList = new StringBuilder();
+        StringBuilder placeholders = new StringBuilder("(");
+        for (int i = 0; i < columns.size(); i++) {
+            columnList.append(i > 0 ? ", " : "").append(quote(columns.get(i).name));
+            placeholders.append(i > 0 ? ", ?" : "?");
+        }
+        placeholders.append(")");
+
+        boolean autoCommit = this.connection.getAutoCommit();
+        this.connection.setAutoCommit(false);
+        try {
+            for (int first = 0; first < rowCount; first += ROWS_PER_INSERT) {
+                int count = Math.min(ROWS_PER_INSERT, rowCount - first);
+                StringBuilder sql = new StringBuilder("INSERT INTO ").append(quote(table))
+                        .append(" (").append(columnList).append(") VALUES ");
+                for (int row = 0; row < count; row++) {
+                    sql.append(row > 0 ? ", " : "").append(placeholders);
+                }
+
+                try (PreparedStatement statement = this.connection.prepareStatement(sql.toString())) {
+                    int index = 1;
+                    for (int row = first; row < first + count; row++) {
+                        for (Column column : columns) {
+                            statement.setObject(index++, generateValue(table, column, row));
+                        }
+                    }
+                    statement.executeUpdate();
+                }
+            }
+            this.connection.commit();
+        } catch (SQLException | AppException e) {
+            this.connection.rollback();
+            throw e;
+        } finally {
+            this.connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private List<Column> getColumns(String table) throws SQLException {
+        List<Column> columns = new ArrayList<Column>();
+        String sql = "SELECT COLUMN_NAME, DATA_TYPE, COLUMN_TYPE, CHARACTER_MAXIMUM_LENGTH, IS_NULLABLE "
+                + "FROM information_schema.COLUMNS "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? "
+                + "AND EXTRA NOT LIKE '%auto_increment%' AND GENERATION_EXPRESSION = '' "
+                + "ORDER BY ORDINAL_POSITION";
+        try (PreparedStatement statement = this.connection.prepareStatement(sql)) {
+            statement.setString(1, table);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    columns.add(new Column(
+                            resultSet.getString(1),
+                            resultSet.getString(2).toLowerCase(),
+                            resultSet.getString(3).toLowerCase(),
+                            resultSet.getLong(4),
+                            "YES".equals(resultSet.getString(5))));
+                }
+            }
+        }
+        return columns;
+    }
+
+    private static Object generateValue(String table, Column column, int row) throws AppException {
+        switch (column.dataType) {
+            case "char":
+            case "varchar":
+            case "tinytext":
+            case "text":
+            case "mediumtext":
+            case "longtext":
+                // The row number goes first so that truncation never makes two values equal
+                String value = row + "-" + column.name.toLowerCase();
+                if (column.maxLength > 0 && value.length() > column.maxLength) {
+                    value = value.substring(0, (int) column.maxLength);
+                }
+                return value;
+            case "tinyint":
+                return column.columnType.startsWith("tinyint(1)") ? row % 2 : row % 100;
+            case "bit":
+                return row % 2 == 1;
+            case "smallint":
+                return row % 30000;
+            case "mediumint":
+            case "int":
+            case "integer":
+            case "decimal":
+            case "float":
+            case "double":
+                return row;
+            case "bigint":
+                // Most bigint columns in this schema hold epoch milliseconds
+                return System.currentTimeMillis() - row * 1000L;
+            case "date":
+            case "datetime":
+            case "timestamp":
+                return new Timestamp(System.currentTimeMillis() - row * 1000L);
+            case "json":
+                return "{}";
+            case "enum":
+            case "set":
+                // First declared value, e.g. enum('a','b') -> a
+                int start = column.columnType.indexOf('\'') + 1;
+                return column.columnType.substring(start, column.columnType.indexOf('\'', start));
+            default:
+                if (column.nullable) {
+                    return null;
+                }
+                throw new AppException(String.format("Cannot generate values for column '%s.%s' of type '%s'",
+                        table, column.name, column.columnType));
+        }
+    }
+
+    private static String quote(String identifier) {
+        return "`" + identifier.replace("`", "``") + "`";
+    }
+}
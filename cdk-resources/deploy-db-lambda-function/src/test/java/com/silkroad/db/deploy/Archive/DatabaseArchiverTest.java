@@ -0,0 +1,359 @@
+package com.silkroad.db.deploy.Archive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.silkroad.db.deploy.Types.*;
+import com.silkroad.db.deploy.Utils.*;
+
+/**
+ * Archives a small database served by an in-memory JDBC driver into a
+ * {@link FileSystemArchiveSink} and reads the archive back.
+ */
+public class DatabaseArchiverTest {
+
+    private static final String HOST = "archiver.test";
+    private static final String DATABASE = "tenant_1";
+
+    private static final byte[] PAYLOAD = { 0, 1, (byte) 0xfe, (byte) 0xff };
+
+    // orders(id INT PRIMARY KEY, note VARCHAR, payload BLOB), paged by id
+    private static final List<Object[]> ORDERS = List.of(
+            new Object[] { 1L, "first", PAYLOAD },
+            new Object[] { 2L, "it's \"quoted\"", null },
+            new Object[] { 3L, null, new byte[0] },
+            new Object[] { 4L, "fourth", PAYLOAD },
+            new Object[] { 5L, "fifth", PAYLOAD });
+
+    // audit_log(message TEXT) has no primary key, so it is streamed
+    private static final List<Object[]> AUDIT_LOG = List.of(
+            new Object[] { "created" },
+            new Object[] { "deleted" });
+
+    @Test
+    public void archivesTablesToFiles() throws Exception {
+        Path root = Files.createTempDirectory("archive");
+        FakeDriver driver = new FakeDriver();
+        try {
+            ArchiveManifest manifest = archive(driver, DATABASE, root);
+
+            String prefix = manifest.getSchemaObjectKey().replace(DatabaseArchiver.SCHEMA_OBJECT, "");
+            assertTrue(prefix.startsWith(DATABASE + "/"));
+            try (Reader reader = Files.newBufferedReader(root.resolve(prefix + DatabaseArchiver.MANIFEST_OBJECT))) {
+                ArchiveManifest written = new Gson().fromJson(reader, ArchiveManifest.class);
+                assertEquals(DATABASE, written.getDatabaseName());
+                assertEquals(2, written.getTables().size());
+            }
+
+            String schema = String.join("\n", readGzipLines(root.resolve(manifest.getSchemaObjectKey())));
+            assertTrue(schema.contains("CREATE TABLE `audit_log`"));
+            assertTrue(schema.contains("CREATE TABLE `orders`"));
+
+            ArchivedTable auditLog = manifest.getTables().get(0);
+            assertEquals("audit_log", auditLog.getName());
+            assertEquals(2, auditLog.getRowCount());
+            List<JsonObject> auditRows = readRows(root.resolve(auditLog.getObjectKey()));
+            assertEquals("created", auditRows.get(0).get("message").getAsString());
+            assertEquals("deleted", auditRows.get(1).get("message").getAsString());
+
+            ArchivedTable orders = manifest.getTables().get(1);
+            assertEquals("orders", orders.getName());
+            assertEquals(List.of("id"), orders.getPrimaryKey());
+            assertEquals(List.of("payload"), orders.getBase64Columns());
+            assertEquals(ORDERS.size(), orders.getRowCount());
+            List<JsonObject> orderRows = readRows(root.resolve(orders.getObjectKey()));
+            assertEquals(ORDERS.size(), orderRows.size());
+            for (int i = 0; i < ORDERS.size(); i++) {
+                Object[] expected = ORDERS.get(i);
+                JsonObject row = orderRows.get(i);
+                assertTrue(row.get("id").getAsJsonPrimitive().isNumber());
+                assertEquals((long) expected[0], row.get("id").getAsLong());
+                assertEquals(expected[1], row.get("note").isJsonNull() ? null : row.get("note").getAsString());
+                byte[] payload = row.get("payload").isJsonNull()
+                        ? null
+                        : Base64.getDecoder().decode(row.get("payload").getAsString());
+                if (expected[2] == null) {
+                    assertNull(payload);
+                } else {
+                    assertEquals(Base64.getEncoder().encodeToString((byte[]) expected[2]),
+                            Base64.getEncoder().encodeToString(payload));
+                }
+            }
+
+            assertTrue(driver.executed.contains("UNLOCK TABLES"));
+            try (Stream<Path> files = Files.walk(root)) {
+                assertFalse(files.anyMatch(file -> file.toString().endsWith(".partial")));
+            }
+        } finally {
+            deleteRecursively(root);
+        }
+    }
+
+    @Test
+    public void returnsNullForMissingDatabase() throws Exception {
+        Path root = Files.createTempDirectory("archive");
+        try {
+            assertNull(archive(new FakeDriver(), "missing", root));
+            try (Stream<Path> files = Files.list(root)) {
+                assertEquals(0, files.count());
+            }
+        } finally {
+            deleteRecursively(root);
+        }
+    }
+
+    /**
+     * Archives {@code database} with {@code driver} as the only registered
+     * driver, so that the MySQL driver does not try to reach the fake host.
+     */
+    private static ArchiveManifest archive(FakeDriver driver, String database, Path root) throws Exception {
+        List<Driver> otherDrivers = Collections.list(DriverManager.getDrivers());
+        for (Driver other : otherDrivers) {
+            DriverManager.deregisterDriver(other);
+        }
+        DriverManager.registerDriver(driver);
+        try {
+            RdsHostInfo host = new RdsHostInfo(HOST, 3306);
+            RdsAdminSecret secret = new RdsAdminSecret(HOST, 3306, "admin", "secret");
+            try (ConnectionSession session = new ConnectionSession(host, secret)) {
+                DatabaseArchiver archiver = new DatabaseArchiver(host, secret, session, database,
+                        new FileSystemArchiveSink(root), new ConsoleLogger(LogLevel.ERROR));
+                archiver.setParallelism(2);
+                archiver.setPageSize(2);
+                return archiver.archive();
+            }
+        } finally {
+            DriverManager.deregisterDriver(driver);
+            for (Driver other : otherDrivers) {
+                DriverManager.registerDriver(other);
+            }
+        }
+    }
+
+    private static List<String> readGzipLines(Path file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            return reader.lines().collect(Collectors.toList());
+        }
+    }
+
+    private static List<JsonObject> readRows(Path file) throws IOException {
+        List<JsonObject> rows = new ArrayList<JsonObject>();
+        for (String line : readGzipLines(file)) {
+            rows.add(JsonParser.parseString(line).getAsJsonObject());
+        }
+        return rows;
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Answers the queries of {@link DatabaseArchiver} for {@link #DATABASE}
+     * from {@link #ORDERS} and {@link #AUDIT_LOG}. Statements that return no
+     * result (locks, transactions, session settings) are only recorded.
+     */
+    private static class FakeDriver implements Driver {
+
+        private final List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public Connection connect(String url, Properties info) {
+            if (!this.acceptsURL(url)) {
+                return null;
+            }
+            Map<String, Object> state = new HashMap<String, Object>();
+            state.put("autoCommit", true);
+            return proxy(Connection.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "createStatement":
+                        return this.statement(null);
+                    case "prepareStatement":
+                        return this.statement((String) args[0]);
+                    case "getAutoCommit":
+                        return state.get("autoCommit");
+                    case "setAutoCommit":
+                        state.put("autoCommit", args[0]);
+                        return null;
+                    case "getCatalog":
+                        return state.get("catalog");
+                    case "setCatalog":
+                        state.put("catalog", args[0]);
+                        return null;
+                    case "isValid":
+                        return true;
+                    case "isClosed":
+                        return false;
+                    case "close":
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        }
+
+        private Statement statement(String preparedSql) {
+            Map<Integer, Object> parameters = new HashMap<Integer, Object>();
+            return proxy(PreparedStatement.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "setString":
+                    case "setInt":
+                    case "setObject":
+                        parameters.put((Integer) args[0], args[1]);
+                        return null;
+                    case "execute":
+                        this.executed.add((String) args[0]);
+                        return false;
+                    case "executeQuery":
+                        return this.query(args != null ? (String) args[0] : preparedSql, parameters);
+                    case "setFetchSize":
+                    case "close":
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        }
+
+        private ResultSet query(String sql, Map<Integer, Object> parameters) {
+            if (sql.contains("information_schema.SCHEMATA")) {
+                return resultSet(DATABASE.equals(parameters.get(1))
+                        ? List.<Object[]>of(new Object[] { 1L })
+                        : List.<Object[]>of());
+            }
+            if (sql.contains("information_schema.TABLES")) {
+                return resultSet(List.of(new Object[] { "audit_log", 16L }, new Object[] { "orders", 4096L }));
+            }
+            if (sql.contains("information_schema.COLUMNS")) {
+                return resultSet(List.of(
+                        new Object[] { "audit_log", "message", "text" },
+                        new Object[] { "orders", "id", "int" },
+                        new Object[] { "orders", "note", "varchar" },
+                        new Object[] { "orders", "payload", "blob" }));
+            }
+            if (sql.contains("information_schema.STATISTICS")) {
+                return resultSet(List.<Object[]>of(new Object[] { "orders", "id" }));
+            }
+            if (sql.contains("information_schema.VIEWS")) {
+                return resultSet(List.of());
+            }
+            if (sql.startsWith("SHOW CREATE TABLE `" + DATABASE + "`.")) {
+                String table = sql.substring(sql.lastIndexOf('.') + 1);
+                return resultSet(List.<Object[]>of(new Object[] { table, "CREATE TABLE " + table + " ()" }));
+            }
+            if (sql.equals("SELECT `message` FROM `audit_log`")) {
+                return resultSet(AUDIT_LOG);
+            }
+            if (sql.startsWith("SELECT `id`, `note`, `payload` FROM `orders`")) {
+                boolean after = sql.contains("WHERE (`id`) > (?)");
+                long lastId = after ? (Long) parameters.get(1) : Long.MIN_VALUE;
+                int limit = (Integer) parameters.get(after ? 2 : 1);
+                return resultSet(ORDERS.stream()
+                        .filter(row -> (Long) row[0] > lastId)
+                        .limit(limit)
+                        .collect(Collectors.toList()));
+            }
+            throw new UnsupportedOperationException(sql);
+        }
+
+        private static ResultSet resultSet(List<Object[]> rows) {
+            int[] position = { -1 };
+            return proxy(ResultSet.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "next":
+                        return ++position[0] < rows.size();
+                    case "getObject":
+                    case "getBytes":
+                        return rows.get(position[0])[(Integer) args[0] - 1];
+                    case "getString": {
+                        Object value = rows.get(position[0])[(Integer) args[0] - 1];
+                        return value != null ? value.toString() : null;
+                    }
+                    case "getLong":
+                        return ((Number) rows.get(position[0])[(Integer) args[0] - 1]).longValue();
+                    case "close":
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        }
+
+        private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler));
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith("jdbc:mysql://" + HOST + ":");
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.silkroad.db.deploy.Sql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class SqlScriptTokenizerTest {
+
+    private static List<String> tokenize(String script) throws IOException {
+        SqlScriptTokenizer tokenizer = new SqlScriptTokenizer(new StringReader(script));
+        List<String> statements = new ArrayList<String>();
+        SqlStatement statement;
+        while ((statement = tokenizer.next()) != null) {
+            statements.add(statement.getText());
+        }
+        return statements;
+    }
+
+    @Test
+    public void splitsOnSemicolons() throws IOException {
+        assertEquals(List.of("SELECT 1", "SELECT 2"), tokenize("SELECT 1;\n\nSELECT 2;"));
+        assertEquals(List.of("SELECT 1", "SELECT 2"), tokenize("SELECT 1; SELECT 2"));
+    }
+
+    @Test
+    public void tracksLineNumbers() throws IOException {
+        SqlScriptTokenizer tokenizer = new SqlScriptTokenizer(new StringReader("SELECT 1;\n\n  SELECT\n2;"));
+        assertEquals(1, tokenizer.next().getLineNumber());
+        SqlStatement second = tokenizer.next();
+        assertEquals(3, second.getLineNumber());
+        assertEquals(2, second.getIndex());
+    }
+
+    @Test
+    public void changesDelimiter() throws IOException {
+        String script = "DELIMITER //\n"
+                + "CREATE TRIGGER t AFTER INSERT ON a FOR EACH ROW BEGIN INSERT INTO b VALUES (1); END//\n"
+                + "DELIMITER ;\n"
+                + "SELECT 1;";
+        assertEquals(List.of(
+                "CREATE TRIGGER t AFTER INSERT ON a FOR EACH ROW BEGIN INSERT INTO b VALUES (1); END",
+                "SELECT 1"), tokenize(script));
+    }
+
+    @Test
+    public void acceptsTheCurrentDelimiterAsNewDelimiter() throws IOException {
+        assertEquals(List.of("SELECT 1", "SELECT 2"), tokenize("SELECT 1;\nDELIMITER ;\nSELECT 2;"));
+        assertEquals(List.of("SELECT 1"), tokenize("delimiter $$\nSELECT 1$$\nDELIMITER $$\n"));
+    }
+
+    @Test
+    public void ignoresDelimiterCommandAfterTheFirstLine() throws IOException {
+        assertEquals(List.of("SELECT 1\nDELIMITER //"), tokenize("SELECT 1\nDELIMITER //\n;"));
+    }
+
+    @Test
+    public void handlesLongSingleLineStatement() throws IOException {
+        StringBuilder insert = new StringBuilder("INSERT INTO t VALUES (0, 'x')");
+        for (int i = 1; i < 200_000; i++) {
+            insert.append(", (").append(i).append(", 'x')");
+        }
+        assertEquals(List.of(insert.toString(), "SELECT 1"), tokenize(insert + ";\nSELECT 1;"));
+        assertEquals(List.of("DELIMITERS " + insert), tokenize("DELIMITERS " + insert + ";"));
+    }
+
+    @Test
+    public void skipsComments() throws IOException {
+        String script = "-- leading comment;\n"
+                + "SELECT 1; # trailing; comment\n"
+                + "SELECT /* inline; */ 2;\n"
+                + "SELECT 3 --not a comment\n;";
+        assertEquals(List.of("SELECT 1", "SELECT \n 2", "SELECT 3 --not a comment"), tokenize(script));
+    }
+
+    @Test
+    public void keepsExecutableComments() throws IOException {
+        assertEquals(List.of("SELECT /*+ MAX_EXECUTION_TIME(1) */ 1", "/*!40101 SET NAMES utf8mb4 */"),
+                tokenize("SELECT /*+ MAX_EXECUTION_TIME(1) */ 1;\n/*!40101 SET NAMES utf8mb4 */;"));
+    }
+
+    @Test
+    public void keepsDelimitersAndCommentsInQuotes() throws IOException {
+        assertEquals(List.of("SELECT 'a;b', \"-- c\", `#d`"), tokenize("SELECT 'a;b', \"-- c\", `#d`;"));
+    }
+
+    @Test
+    public void handlesEscapedQuotes() throws IOException {
+        assertEquals(List.of("SELECT 'it\\'s;', 'it''s;'", "SELECT `a``;`"),
+                tokenize("SELECT 'it\\'s;', 'it''s;';\nSELECT `a``;`;"));
+    }
+}
@@ -0,0 +1,67 @@
+package com.silkroad.db.deploy.Sql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.silkroad.db.deploy.Exceptions.ValidationException;
+
+public class SqlTemplateTest {
+
+    private static final Map<String, String> VALUES = Map.of("name", "o'brien", "db", "tenant`1");
+
+    private static String render(String text) throws ValidationException {
+        return SqlTemplate.compile("test", text).render(VALUES);
+    }
+
+    @Test
+    public void escapesByQuoteContext() throws ValidationException {
+        assertEquals("SELECT 'o\\'brien' FROM `tenant``1`;", render("SELECT '{{name}}' FROM `{{db}}`;"));
+        assertEquals("SELECT 'o\\'brien' FROM `tenant``1`;", render("SELECT {{name|literal}} FROM {{db|identifier}};"));
+    }
+
+    @Test
+    public void rejectsUnqualifiedPlaceholderOutsideQuotes() {
+        assertThrows(ValidationException.class, () -> SqlTemplate.compile("test", "USE {{db}};"));
+    }
+
+    @Test
+    public void ignoresQuotesInLineComments() throws ValidationException {
+        assertEquals("-- don't\nUSE `tenant``1`;", render("-- don't\nUSE {{db|identifier}};"));
+        assertEquals("# it's `here\nUSE `tenant``1`;", render("# it's `here\nUSE {{db|identifier}};"));
+    }
+
+    @Test
+    public void ignoresQuotesInBlockComments() throws ValidationException {
+        assertEquals("/* don't\n \"x */ USE `tenant``1`;", render("/* don't\n \"x */ USE {{db|identifier}};"));
+    }
+
+    @Test
+    public void tracksQuotesInExecutableComments() throws ValidationException {
+        assertEquals("/*!50100 SELECT 'o\\'brien' */;", render("/*!50100 SELECT '{{name}}' */;"));
+    }
+
+    @Test
+    public void requiresWhitespaceAfterDoubleDash() throws ValidationException {
+        // Not a comment, so the quote opens a string
+        assertEquals("SELECT 1--'o\\'brien';", render("SELECT 1--'{{name}}';"));
+    }
+
+    @Test
+    public void ignoresCommentMarkersInStrings() throws ValidationException {
+        assertEquals("SELECT '-- #', 'o\\'brien';", render("SELECT '-- #', '{{name}}';"));
+    }
+
+    @Test
+    public void leavesPlaceholdersInCommentsUnrendered() throws ValidationException {
+        assertEquals("-- {{db}}\nSELECT 1;", render("-- {{db}}\nSELECT 1;"));
+    }
+
+    @Test
+    public void rejectsUnterminatedQuote() {
+        assertThrows(ValidationException.class, () -> SqlTemplate.compile("test", "-- ok\nSELECT 'x;"));
+    }
+}
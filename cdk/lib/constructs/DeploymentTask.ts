@@ -32,6 +32,21 @@ export interface DeploymentTaskProps {
    */
   isCompleteHandler?: lambda.IFunction;
 
+  /**
+   * Time between calls to the `isComplete` handler.
+   *
+   * @default Duration.seconds(5)
+   */
+  queryInterval?: cdk.Duration;
+
+  /**
+   * Total time the `isComplete` handler may keep reporting that the operation
+   * is still in progress.
+   *
+   * @default Duration.minutes(30)
+   */
+  totalTimeout?: cdk.Duration;
+
   taskName: string;
 
   arguments:
@@ -56,6 +71,8 @@ export class DeploymentTask extends Construct {
     const provider = new cr.Provider(this, "deployment-task-provider", {
       onEventHandler: props.onDeployHandler,
       isCompleteHandler: props.isCompleteHandler, // optional async "waiter"
+      queryInterval: props.queryInterval,
+      totalTimeout: props.totalTimeout,
       logRetention: logs.RetentionDays.ONE_DAY,
       role: role, // must be assumable by the `lambda.amazonaws.com` service principal
       providerFunctionName: buildConfig.canonizeResourceName(props.taskName + "-provider-func").substring(0, 63) // Function name can not be longer than 64 characters but has 76 characters.
@@ -36,6 +36,7 @@ export class TenantManagementApi extends Construct {
   public readonly appDatabaseInfo: AppDatabaseInfo;
   public readonly rdsProxyGrant: Grant;
   public readonly dbInitFunction: lambda.Function;
+  public readonly dbInitIsCompleteFunction: lambda.Function;
   public readonly dbInitTask: DeploymentTask;
   public readonly publicUrl: string;
 
@@ -62,12 +63,35 @@ export class TenantManagementApi extends Construct {
       securityGroups: [props.rdsCluster.mysqlSecurityGroup]
     });
 
+    // Resumes migrations that did not fit in a single invocation of the function above
+    this.dbInitIsCompleteFunction = new lambda.Function(this, "deploy-db-is-complete-function", {
+      functionName: `${buildConfig.getStackId()}-deploy-tenant-management-db-wait-func`,
+      description: "Lambda function used to resume and complete database schema migrations",
+      runtime: lambda.Runtime.JAVA_11,
+      code: lambda.Code.fromAsset(
+        path.join(__dirname, "../../../cdk-resources/deploy-db-lambda-function/target/deploy-db-lambda-function-1.0-full.jar")
+      ),
+      handler: "com.silkroad.db.deploy.LambdaHandler::isComplete",
+      memorySize: 512,
+      timeout: cdk.Duration.minutes(2),
+      vpc: props.vpc,
+      vpcSubnets: {
+        subnetType: SubnetType.PRIVATE_WITH_NAT
+      },
+      securityGroups: [props.rdsCluster.mysqlSecurityGroup]
+    });
+
     props.rdsCluster.adminSecret.grantRead(this.dbInitFunction);
     props.appDatabaseInfo.databaseUserSecret.grantRead(this.dbInitFunction);
+    props.rdsCluster.adminSecret.grantRead(this.dbInitIsCompleteFunction);
+    props.appDatabaseInfo.databaseUserSecret.grantRead(this.dbInitIsCompleteFunction);
 
     this.dbInitTask = new DeploymentTask(this, "deploy-db", buildConfig, {
       taskName: "deploy-tenant-management-db",
       onDeployHandler: this.dbInitFunction,
+      isCompleteHandler: this.dbInitIsCompleteFunction,
+      queryInterval: cdk.Duration.seconds(10),
+      totalTimeout: cdk.Duration.hours(2),
       arguments: {
         region: buildConfig.region,
         rdsHost: props.rdsCluster.cluster.clusterEndpoint,